@@ -0,0 +1,52 @@
+package obf.swag;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Пиковое использование кучи за итерацию: сумма пиков всех пулов кучи,
+ * пики сбрасываются перед каждой итерацией. Сумма пиков пулов - верхняя оценка
+ * одновременного пика, ее достаточно для сравнения прогонов между собой.
+ *
+ * Подключение: -prof obf.swag.PeakHeapProfiler
+ */
+public class PeakHeapProfiler implements InternalProfiler {
+
+    @Override
+    public String getDescription() {
+        return "Peak heap usage per iteration (sum of heap pool peaks)";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams,
+                                                       IterationResult result) {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return List.of(new ScalarResult("peak.heap", peak / (1024.0 * 1024.0), "MB", AggregationPolicy.MAX));
+    }
+}
@@ -0,0 +1,204 @@
+package obf.swag;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Этапы обфускации по отдельности на синтетическом JAR.
+ *
+ * Каждый бенчмарк выполняет один этап над всем JAR, счетчик classes показывает
+ * пропускную способность в классах в секунду. Состояние, нужное этапу (распакованная
+ * директория, собранная информация, маппинги), готовится один раз в setup.
+ *
+ * Скорость выделения памяти - профайлер -prof gc, пиковая куча - -prof obf.swag.PeakHeapProfiler.
+ * Вывод в консоль на время прогона отключен.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    @Param({"10"})
+    public int members;
+
+    @Param({"2"})
+    public int innerDepth;
+
+    @Param({"1"})
+    public int threads;
+
+    private Path workDir;
+    private Path jarPath;
+    private Path extractedDir;
+    private List<String> extractedEntries;
+    private int classFileCount;
+    private PrintStream originalOut;
+    private ParallelEngine engine;
+
+    private List<JarObfuscator.ClassEntry> entries;
+    // Собранная информация и иерархия - вход generateMappings
+    private JarObfuscator collected;
+    // Готовые маппинги и индекс переименований - вход переписывания и записи
+    private JarObfuscator prepared;
+    private List<JarObfuscator.ClassEntry> obfuscatedEntries;
+
+    /** Счетчик обработанных классов, JMH выводит его как классы в секунду. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ClassCounter {
+        public long classes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            classes = 0;
+        }
+    }
+
+    /** Пустая директория для результата одного вызова. */
+    @State(Scope.Thread)
+    public static class Scratch {
+        Path directory;
+
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            directory = Files.createTempDirectory("obf-bench-scratch");
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws IOException {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        workDir = Files.createTempDirectory("obf-bench");
+        jarPath = workDir.resolve("input.jar");
+        classFileCount = SyntheticJar.write(jarPath, classes, members, innerDepth);
+        engine = new ParallelEngine(threads);
+
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+            entries = new JarObfuscator().readClassEntries(jarFile);
+        }
+        extractedDir = workDir.resolve("extracted");
+        extractedEntries = new TempDirPipeline(new JarObfuscator()).extractJar(jarPath, extractedDir);
+
+        collected = collect();
+
+        prepared = collect();
+        prepared.generateMappings();
+        prepared.buildRemapper();
+        obfuscatedEntries = new ArrayList<>();
+        for (JarObfuscator.ClassEntry entry : entries) {
+            obfuscatedEntries.add(new JarObfuscator.ClassEntry(entry.entryName, prepared.transformClass(entry.data)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        engine.close();
+        deleteDirectory(workDir);
+    }
+
+    private JarObfuscator collect() throws IOException {
+        JarObfuscator obfuscator = new JarObfuscator();
+        obfuscator.useEngine(engine);
+        obfuscator.collectClassInfo(entries);
+        obfuscator.buildHierarchy();
+        return obfuscator;
+    }
+
+    @Benchmark
+    public void extractJar(Scratch scratch, ClassCounter counter) throws IOException {
+        new TempDirPipeline(new JarObfuscator()).extractJar(jarPath, scratch.directory);
+        counter.classes += classFileCount;
+    }
+
+    @Benchmark
+    public List<JarObfuscator.ClassEntry> readClassEntries(ClassCounter counter) throws IOException {
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+            counter.classes += classFileCount;
+            return new JarObfuscator().readClassEntries(jarFile);
+        }
+    }
+
+    @Benchmark
+    public JarObfuscator collectClassInfo(ClassCounter counter) throws IOException {
+        JarObfuscator obfuscator = new JarObfuscator();
+        obfuscator.useEngine(engine);
+        obfuscator.collectClassInfo(entries);
+        counter.classes += classFileCount;
+        return obfuscator;
+    }
+
+    @Benchmark
+    public JarObfuscator buildHierarchy(ClassCounter counter) throws IOException {
+        collected.buildHierarchy();
+        counter.classes += classFileCount;
+        return collected;
+    }
+
+    @Benchmark
+    public JarObfuscator generateMappings(ClassCounter counter) {
+        // Повторный вызов заново выдает имена всем символам
+        collected.generateMappings();
+        counter.classes += classFileCount;
+        return collected;
+    }
+
+    @Benchmark
+    public long obfuscateClassBytes(ClassCounter counter) {
+        long size = 0;
+        for (JarObfuscator.ClassEntry entry : entries) {
+            size += prepared.transformClass(entry.data).length;
+        }
+        counter.classes += classFileCount;
+        return size;
+    }
+
+    @Benchmark
+    public void createJar(Scratch scratch, ClassCounter counter) throws IOException {
+        new TempDirPipeline(prepared).createJar(extractedDir, extractedEntries, scratch.directory.resolve("output.jar"));
+        counter.classes += classFileCount;
+    }
+
+    @Benchmark
+    public void writeJar(Scratch scratch, ClassCounter counter) throws IOException {
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+            new InMemoryPipeline(prepared).writeJar(jarFile, obfuscatedEntries, scratch.directory.resolve("output.jar"));
+        }
+        counter.classes += classFileCount;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package obf.swag;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость переписывания одного класса в зависимости от размера JAR.
+ *
+ * prebuiltIndex должен оставаться постоянным при росте classCount,
+ * rebuildPerClass (старая схема из obfuscateClassBytes) растет линейно,
+ * то есть весь прогон по JAR - квадратично.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RemapperBenchmark {
+    private static final int MEMBERS_PER_CLASS = 10;
+
+    @Param({"1000", "4000", "16000"})
+    public int classCount;
+
+    private Map<String, String> classMappings;
+    private Map<String, String> fieldMappings;
+    private Map<String, String> methodMappings;
+    private MappingRemapper remapper;
+    private byte[] sampleClass;
+
+    @Setup
+    public void setup() {
+        classMappings = new HashMap<>();
+        fieldMappings = new HashMap<>();
+        methodMappings = new HashMap<>();
+        for (int i = 0; i < classCount; i++) {
+            String owner = "bench/C" + i;
+            classMappings.put(owner, "c" + i);
+            for (int j = 0; j < MEMBERS_PER_CLASS; j++) {
+                fieldMappings.put(owner + ".f" + j, "x" + j);
+                methodMappings.put(owner + ".m" + j + "()V", "y" + j);
+            }
+        }
+        remapper = MappingRemapper.build(classMappings, fieldMappings, methodMappings);
+        sampleClass = generateClass("bench/C0", "bench/C1");
+    }
+
+    @Benchmark
+    public byte[] prebuiltIndex() {
+        return rewrite(sampleClass, remapper);
+    }
+
+    @Benchmark
+    public byte[] rebuildPerClass() {
+        Map<String, String> remapMappings = new HashMap<>();
+        for (Map.Entry<String, String> entry : classMappings.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue())) {
+                remapMappings.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : fieldMappings.entrySet()) {
+            String[] parts = entry.getKey().split("\\.");
+            if (parts.length == 2) {
+                remapMappings.put(parts[0] + "." + parts[1], entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : methodMappings.entrySet()) {
+            String[] parts = entry.getKey().split("\\.");
+            if (parts.length == 2) {
+                remapMappings.put(parts[0] + "." + parts[1], entry.getValue());
+            }
+        }
+        return rewrite(sampleClass, new SimpleRemapper(remapMappings));
+    }
+
+    @Benchmark
+    public void buildIndex(Blackhole bh) {
+        bh.consume(MappingRemapper.build(classMappings, fieldMappings, methodMappings));
+    }
+
+    private static byte[] rewrite(byte[] classData, org.objectweb.asm.commons.Remapper mapper) {
+        ClassReader classReader = new ClassReader(classData);
+        ClassWriter classWriter = new ClassWriter(classReader, ClassWriter.COMPUTE_MAXS);
+        classReader.accept(new ClassRemapper(classWriter, mapper), ClassReader.EXPAND_FRAMES);
+        return classWriter.toByteArray();
+    }
+
+    private static byte[] generateClass(String name, String other) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        for (int j = 0; j < MEMBERS_PER_CLASS; j++) {
+            cw.visitField(Opcodes.ACC_PRIVATE, "f" + j, "I", null, null).visitEnd();
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m" + j, "()V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, name, "f" + j, "I");
+            mv.visitInsn(Opcodes.POP);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, other, "m" + j, "()V", false);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
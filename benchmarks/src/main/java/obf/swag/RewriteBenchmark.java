@@ -0,0 +1,105 @@
+package obf.swag;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Переписывание всех классов JAR в быстром режиме (сжатые фреймы, без пересчета
+ * max_stack/max_locals, копирование классов без переименованных ссылок) и в режиме
+ * --full-rewrite.
+ *
+ * По умолчанию вход - синтетический JAR, свой JAR задается параметром:
+ * -p input=/path/to/app.jar. Выделение памяти на класс - профайлер -prof gc
+ * (gc.alloc.rate.norm делится на число классов в JAR).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RewriteBenchmark {
+
+    @Param({"synthetic"})
+    public String input;
+
+    @Param({"fast", "full"})
+    public String mode;
+
+    private Path workDir;
+    private PrintStream originalOut;
+    private List<JarObfuscator.ClassEntry> entries;
+    private JarObfuscator prepared;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ClassCounter {
+        public long classes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            classes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Path jarPath;
+        if (input.equals("synthetic")) {
+            workDir = Files.createTempDirectory("obf-bench");
+            jarPath = workDir.resolve("input.jar");
+            SyntheticJar.write(jarPath, 10000, 10, 2);
+        } else {
+            jarPath = Paths.get(input);
+        }
+
+        prepared = new JarObfuscator();
+        prepared.setSeed(1);
+        prepared.setFullRewrite(mode.equals("full"));
+        try (JarFile jarFile = new JarFile(jarPath.toFile());
+             ParallelEngine engine = new ParallelEngine(1)) {
+            entries = prepared.readClassEntries(jarFile);
+            prepared.useEngine(engine);
+            prepared.collectClassInfo(entries);
+        }
+        prepared.buildHierarchy();
+        prepared.generateMappings();
+        prepared.buildRemapper();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        if (workDir != null) {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public long transformClasses(ClassCounter counter) {
+        long size = 0;
+        for (JarObfuscator.ClassEntry entry : entries) {
+            size += prepared.transformClass(entry.data).length;
+        }
+        counter.classes += entries.size();
+        return size;
+    }
+}
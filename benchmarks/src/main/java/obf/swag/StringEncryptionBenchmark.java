@@ -0,0 +1,135 @@
+package obf.swag;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Доступ к строковым литералам на горячем пути до и после --encrypt-strings.
+ *
+ * Классы генерируются здесь же и грузятся отдельным загрузчиком: literals кладет восемь
+ * литералов (ldc) в массив, concat - конкатенация с постоянными частями рецепта
+ * (invokedynamic makeConcatWithConstants). В режиме encrypted классы пропущены через
+ * {@link StringEncryptor}: первое обращение расшифровывает строку, дальше она берется
+ * из кэша класса (ldc) или уже вшита в место вызова (ConstantDynamic).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringEncryptionBenchmark {
+    private static final int LITERALS = 8;
+
+    @Param({"plain", "encrypted"})
+    public String mode;
+
+    private UnaryOperator<Object> literals;
+    private UnaryOperator<Object> concat;
+    private final Object[] buffer = new Object[LITERALS];
+    private final Object value = 42;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        literals = load("bench/Literals", generateLiterals());
+        concat = load("bench/Concat", generateConcat());
+    }
+
+    @Benchmark
+    public Object literals() {
+        return literals.apply(buffer);
+    }
+
+    @Benchmark
+    public Object concat() {
+        return concat.apply(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private UnaryOperator<Object> load(String name, byte[] classData) throws ReflectiveOperationException {
+        if (mode.equals("encrypted")) {
+            ClassReader reader = new ClassReader(classData);
+            ClassWriter writer = new ClassWriter(0);
+            reader.accept(new StringEncryptor(writer, reader, new SimpleRemapper(Map.of()), 1), 0);
+            classData = writer.toByteArray();
+        }
+        byte[] bytes = classData;
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String className) throws ClassNotFoundException {
+                if (className.equals(name.replace('/', '.'))) {
+                    return defineClass(className, bytes, 0, bytes.length);
+                }
+                throw new ClassNotFoundException(className);
+            }
+        };
+        return (UnaryOperator<Object>) loader.loadClass(name.replace('/', '.'))
+                .getDeclaredConstructor().newInstance();
+    }
+
+    /** apply(Object[] out): out[k] = "literal k", return out. */
+    private static byte[] generateLiterals() {
+        ClassWriter writer = startClass("bench/Literals");
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "apply",
+                "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+        mv.visitVarInsn(Opcodes.ASTORE, 2);
+        for (int k = 0; k < LITERALS; k++) {
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitIntInsn(Opcodes.BIPUSH, k);
+            mv.visitLdcInsn("literal number " + k);
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(3, 3);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /** apply(Object value): "value=" + value + " (cached)". */
+    private static byte[] generateConcat() {
+        ClassWriter writer = startClass("bench/Concat");
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "apply",
+                "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInvokeDynamicInsn("makeConcatWithConstants", "(Ljava/lang/Object;)Ljava/lang/String;",
+                new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory",
+                        "makeConcatWithConstants",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+                                + "Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;", false),
+                "value=\u0001 (cached)");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(1, 2);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static ClassWriter startClass(String name) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object",
+                new String[]{"java/util/function/UnaryOperator"});
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(1, 1);
+        init.visitEnd();
+        return writer;
+    }
+}
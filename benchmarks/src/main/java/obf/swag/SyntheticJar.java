@@ -0,0 +1,153 @@
+package obf.swag;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Генератор синтетических JAR для бенчмарков.
+ *
+ * Классы разложены по пакетам по 100 штук и образуют цепочки наследования по 5 классов.
+ * У каждого класса есть поля и методы (методы читают свое поле, вызывают метод
+ * следующего класса и переопределяют метод предка) и цепочка вложенных классов
+ * заданной глубины. Код без ветвлений, поэтому фреймы не нужны.
+ *
+ * Запуск отдельно, например для сравнения с другими инструментами:
+ * java -cp benchmarks.jar obf.swag.SyntheticJar out.jar 10000 10 2
+ */
+public final class SyntheticJar {
+    private static final int CLASSES_PER_PACKAGE = 100;
+    private static final int HIERARCHY_DEPTH = 5;
+
+    private SyntheticJar() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.out.println("Использование: SyntheticJar <выход.jar> <классов> <членов_в_классе> <глубина_вложенности>");
+            return;
+        }
+        int written = write(Paths.get(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        System.out.println("Записано классов: " + written);
+    }
+
+    /**
+     * Пишет JAR и возвращает общее число классов в нем (вместе с вложенными и Main).
+     */
+    public static int write(Path jarPath, int classCount, int membersPerClass, int innerDepth) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "bench.Main");
+
+        int written = 0;
+        try (OutputStream out = Files.newOutputStream(jarPath);
+             JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            for (int i = 0; i < classCount; i++) {
+                String name = className(i);
+                String superName = i % HIERARCHY_DEPTH == 0 ? "java/lang/Object" : className(i - 1);
+                String next = className((i + 1) % classCount);
+                writeClass(jar, name, generateClass(name, superName, next, membersPerClass,
+                        innerDepth > 0 ? name + "$I1" : null));
+                written++;
+
+                String outer = name;
+                for (int depth = 1; depth <= innerDepth; depth++) {
+                    String inner = outer + "$I" + depth;
+                    writeClass(jar, inner, generateClass(inner, "java/lang/Object", name, Math.max(1, membersPerClass / 2),
+                            depth < innerDepth ? inner + "$I" + (depth + 1) : null));
+                    written++;
+                    outer = inner;
+                }
+            }
+            writeClass(jar, "bench/Main", generateMain(className(0)));
+            written++;
+        }
+        return written;
+    }
+
+    static String className(int index) {
+        return "bench/p" + (index / CLASSES_PER_PACKAGE) + "/C" + index;
+    }
+
+    private static void writeClass(JarOutputStream jar, String name, byte[] classData) throws IOException {
+        jar.putNextEntry(new JarEntry(name + ".class"));
+        jar.write(classData);
+        jar.closeEntry();
+    }
+
+    private static byte[] generateClass(String name, String superName, String next, int members, String inner) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, name, null, superName, null);
+
+        for (int j = 0; j < members; j++) {
+            int access = j % 2 == 0 ? Opcodes.ACC_PRIVATE : Opcodes.ACC_PUBLIC;
+            cw.visitField(access, "field" + j, "I", null, null).visitEnd();
+        }
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int j = 0; j < members; j++) {
+            // Одинаковые имена и дескрипторы в цепочке наследования - переопределения
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + j, "()I", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, name, "field" + j, "I");
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, next, "helper" + j, "()I", false);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "helper" + j, "()I", null, null);
+            mv.visitCode();
+            if (inner != null) {
+                mv.visitTypeInsn(Opcodes.NEW, inner);
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, inner, "<init>", "()V", false);
+                mv.visitInsn(Opcodes.POP);
+            }
+            mv.visitLdcInsn(j);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] generateMain(String first) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "bench/Main", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main",
+                "([Ljava/lang/String;)V", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, first);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, first, "<init>", "()V", false);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, first, "method0", "()I", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
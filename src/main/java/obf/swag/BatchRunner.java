@@ -0,0 +1,354 @@
+package obf.swag;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пакетный режим: обфускация нескольких JAR в одной JVM.
+ *
+ * Библиотечные классы (--libs и JDK) читаются один раз на весь пакет. JAR с общими
+ * классами образуют группу и обрабатываются по очереди в порядке аргументов: каждый
+ * следующий получает имена, выданные предыдущими, поэтому общий класс (и его члены)
+ * везде называется одинаково. Группы без общих классов обрабатываются параллельно,
+ * результат не зависит от того, как они распределились по потокам. Новые имена классов
+ * у групп не пересекаются ({@link PartitionedNameGenerator}) и не совпадают с исходными
+ * именами классов пакета, поэтому JAR пакета можно запускать на одном classpath.
+ */
+final class BatchRunner {
+    // Опции обфускатора, которые применяются к каждому JAR как есть
+    private final List<String> jobOptions = new ArrayList<>();
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    // Потоков на один JAR; 0 - ядра делятся между одновременно обрабатываемыми JAR
+    private int threads = 0;
+    private List<Path> libraryPaths = new ArrayList<>();
+    private Path mappingInput = null;
+    // Директории для файлов каждого JAR (null - не сохранять)
+    private Path mappingDir = null;
+    private Path reportDir = null;
+    private Path cacheDir = null;
+
+    /** Один JAR пакета. */
+    private static final class Job {
+        final int index;
+        final Path path;
+        final String name;
+        final Set<String> classNames;
+
+        Job(int index, Path path, String name, Set<String> classNames) {
+            this.index = index;
+            this.path = path;
+            this.name = name;
+            this.classNames = classNames;
+        }
+    }
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        List<Path> inputs = new ArrayList<>();
+        // Опции обфускатора проверяются на пробном экземпляре и запоминаются строками
+        JarObfuscator probe = new JarObfuscator();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--jobs") && i + 1 < args.length) {
+                runner.setJobs(Integer.parseInt(args[++i]));
+            } else if (arg.equals("--threads") && i + 1 < args.length) {
+                runner.setThreads(Integer.parseInt(args[++i]));
+            } else if (arg.equals("--libs") && i + 1 < args.length) {
+                runner.libraryPaths = LibraryClassPath.parsePaths(args[++i]);
+            } else if (arg.equals("--mapping-in") && i + 1 < args.length) {
+                runner.mappingInput = Paths.get(args[++i]);
+            } else if (arg.equals("--mapping-out") && i + 1 < args.length) {
+                runner.mappingDir = Paths.get(args[++i]);
+            } else if (arg.equals("--report") && i + 1 < args.length) {
+                runner.reportDir = Paths.get(args[++i]);
+            } else if (arg.equals("--incremental") && i + 1 < args.length) {
+                runner.cacheDir = Paths.get(args[++i]);
+            } else if (arg.equals("--jmx")) {
+                System.out.println("--jmx в пакетном режиме не поддерживается и пропущен");
+            } else {
+                int next = CommandLine.parseOption(probe, args, i);
+                if (next >= 0) {
+                    runner.jobOptions.addAll(Arrays.asList(args).subList(i, next + 1));
+                    i = next;
+                } else if (!arg.startsWith("--")) {
+                    inputs.add(Paths.get(arg));
+                } else {
+                    inputs.clear();
+                    break;
+                }
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            printUsage();
+            return;
+        }
+
+        try {
+            int failed = runner.run(inputs);
+            if (failed > 0) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка пакетной обфускации: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Использование: java -jar obfuscator.jar batch [опции] <jar или директория>...");
+        System.out.println("Из директории берутся все *.jar, кроме *_obfuscated.jar.");
+        System.out.println("Опции обфускатора применяются к каждому JAR, кроме:");
+        System.out.println("  --jobs <n>           сколько JAR обрабатывать одновременно (по умолчанию - число ядер)");
+        System.out.println("  --threads <n>        потоков на один JAR (по умолчанию ядра делятся между JAR)");
+        System.out.println("  --mapping-out <dir>  директория для маппингов, <имя JAR>.txt");
+        System.out.println("  --report <dir>       директория для отчетов, <имя JAR>.json");
+        System.out.println("  --incremental <dir>  директория кэшей, <dir>/<имя JAR>");
+        System.out.println("  --mapping-in <file>  общие готовые имена для всех JAR");
+    }
+
+    public void setJobs(int jobs) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Количество одновременных JAR должно быть больше 0: " + jobs);
+        }
+        this.jobs = jobs;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть больше 0: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Обрабатывает JAR и директории с JAR. Возвращает количество JAR, обработка которых
+     * завершилась ошибкой; остальные JAR пакета обрабатываются в любом случае.
+     */
+    int run(List<Path> inputs) throws IOException {
+        List<Job> allJobs = listJobs(inputs);
+        if (allJobs.isEmpty()) {
+            System.out.println("JAR для обфускации не найдены");
+            return 0;
+        }
+
+        List<List<Job>> groups = groupBySharedClasses(allJobs);
+        int parallel = Math.min(jobs, groups.size());
+        int threadsPerJob = threads > 0 ? threads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / parallel);
+        MappingSet initialMappings = mappingInput != null ? MappingSet.read(mappingInput) : null;
+        for (Path directory : new Path[]{mappingDir, reportDir, cacheDir}) {
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+        }
+
+        System.out.println("JAR в пакете: " + allJobs.size() + ", групп с общими классами: "
+                + groups.stream().filter(group -> group.size() > 1).count()
+                + " (одновременно: " + parallel + ", потоков на JAR: " + threadsPerJob + ")");
+
+        Set<String> batchClassNames = new HashSet<>();
+        for (Job job : allJobs) {
+            batchClassNames.addAll(job.classNames);
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger failed = new AtomicInteger();
+        try (LibraryClassPath libraries = new LibraryClassPath(libraryPaths);
+             ParallelEngine engine = new ParallelEngine(parallel)) {
+            List<Integer> partitions = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i++) {
+                partitions.add(i);
+            }
+            engine.forEach(partitions, partition -> {
+                runGroup(groups.get(partition), partition, groups.size(), batchClassNames, libraries,
+                        initialMappings, threadsPerJob, failed);
+                return null;
+            });
+            System.out.println("Обработано JAR: " + (allJobs.size() - failed.get()) + " из " + allJobs.size()
+                    + " за " + (System.nanoTime() - start) / 1_000_000 + " мс"
+                    + ", библиотечных классов в общем кэше: " + libraries.cachedClassCount());
+        }
+        return failed.get();
+    }
+
+    /**
+     * JAR группы по очереди. Имена, выданные JAR, становятся готовыми именами следующих;
+     * первое выданное имя символа не меняется.
+     */
+    private void runGroup(List<Job> group, int partition, int partitions, Set<String> batchClassNames,
+                          LibraryClassPath libraries, MappingSet initialMappings,
+                          int threadsPerJob, AtomicInteger failed) {
+        Map<String, String> classes = new HashMap<>();
+        Map<String, String> fields = new HashMap<>();
+        Map<String, String> methods = new HashMap<>();
+        if (initialMappings != null) {
+            collect(initialMappings, classes, fields, methods);
+        }
+
+        for (Job job : group) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            PrintStream log = new PrintStream(buffer, true);
+            boolean success = false;
+            try {
+                JarObfuscator obfuscator = createObfuscator(job, threadsPerJob, libraries, log);
+                obfuscator.useNamePartition(partition, partitions, batchClassNames);
+                if (!classes.isEmpty() || !fields.isEmpty() || !methods.isEmpty()) {
+                    obfuscator.useAppliedMappings(MappingSet.fromMappings(
+                            classes, fields, methods, Collections.emptyMap()));
+                }
+                obfuscator.obfuscateJar(job.path.toString());
+                collect(obfuscator.getResultMappings(), classes, fields, methods);
+                success = true;
+            } catch (Exception e) {
+                log.println("Ошибка при обфускации: " + e.getMessage());
+                e.printStackTrace(log);
+                failed.incrementAndGet();
+            }
+            // Вывод JAR печатается целиком, чтобы не перемешиваться с выводом других групп
+            synchronized (System.out) {
+                System.out.println("=== [" + (job.index + 1) + "] " + job.path + (success ? "" : " - ОШИБКА"));
+                System.out.print(buffer);
+            }
+        }
+    }
+
+    private JarObfuscator createObfuscator(Job job, int threadsPerJob, LibraryClassPath libraries,
+                                           PrintStream log) {
+        JarObfuscator obfuscator = new JarObfuscator();
+        String[] options = jobOptions.toArray(new String[0]);
+        for (int i = 0; i < options.length; i++) {
+            i = CommandLine.parseOption(obfuscator, options, i);
+        }
+        obfuscator.setThreads(threadsPerJob);
+        obfuscator.setLog(log);
+        obfuscator.useLibraries(libraries);
+        if (mappingDir != null) {
+            obfuscator.setMappingOutput(mappingDir.resolve(job.name + ".txt"));
+        }
+        if (reportDir != null) {
+            obfuscator.setReportPath(reportDir.resolve(job.name + ".json"));
+        }
+        if (cacheDir != null) {
+            obfuscator.setIncrementalCacheDir(cacheDir.resolve(job.name));
+        }
+        return obfuscator;
+    }
+
+    /** Добавляет имена набора, которых еще нет в таблицах. */
+    private static void collect(MappingSet mappings, Map<String, String> classes,
+                                Map<String, String> fields, Map<String, String> methods) {
+        for (String owner : mappings.owners()) {
+            String newOwner = mappings.getOwnerName(owner);
+            if (!newOwner.equals(owner)) {
+                classes.putIfAbsent(owner, newOwner);
+            }
+            for (Map.Entry<String, String> field : mappings.fieldsOf(owner).entrySet()) {
+                fields.putIfAbsent(owner + "." + field.getKey(), field.getValue());
+            }
+            for (Map.Entry<String, String> method : mappings.methodsOf(owner).entrySet()) {
+                methods.putIfAbsent(owner + "." + method.getKey(), method.getValue());
+            }
+        }
+    }
+
+    /** JAR из аргументов в порядке перечисления, из директорий - по алфавиту. */
+    private List<Job> listJobs(List<Path> inputs) throws IOException {
+        Set<Path> jars = new LinkedHashSet<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> files = Files.list(input)) {
+                    files.filter(file -> isInputJar(file.getFileName().toString()) && Files.isRegularFile(file))
+                            .sorted()
+                            .forEach(file -> jars.add(file.toAbsolutePath().normalize()));
+                }
+            } else if (Files.exists(input)) {
+                jars.add(input.toAbsolutePath().normalize());
+            } else {
+                throw new FileNotFoundException("JAR файл не найден: " + input);
+            }
+        }
+
+        List<Job> result = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+        for (Path jar : jars) {
+            String fileName = jar.getFileName().toString();
+            String baseName = fileName.toLowerCase().endsWith(".jar")
+                    ? fileName.substring(0, fileName.length() - 4) : fileName;
+            // Одинаковые имена JAR из разных директорий не должны делить файлы отчетов и кэша
+            String name = baseName;
+            for (int n = 2; !usedNames.add(name); n++) {
+                name = baseName + "-" + n;
+            }
+            result.add(new Job(result.size(), jar, name, readClassNames(jar)));
+        }
+        return result;
+    }
+
+    private static boolean isInputJar(String fileName) {
+        String lower = fileName.toLowerCase();
+        return lower.endsWith(".jar") && !lower.endsWith("_obfuscated.jar");
+    }
+
+    /**
+     * Имена классов JAR, которые переименовываются. module-info, package-info, классы JDK
+     * и загрузчиков одинаковы во многих JAR, но имен не получают и групп не связывают.
+     */
+    private static Set<String> readClassNames(Path jar) throws IOException {
+        // Читается только центральный каталог
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            return jarFile.stream()
+                    .map(JarEntry::getName)
+                    .filter(name -> name.endsWith(".class"))
+                    .map(JarObfuscator::classNameOf)
+                    .filter(JarObfuscator::shouldObfuscate)
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * Разбивает JAR на группы, связанные общими классами (union-find по индексам JAR).
+     * Группы упорядочены по первому JAR, внутри группы - порядок аргументов.
+     */
+    private static List<List<Job>> groupBySharedClasses(List<Job> jobs) {
+        int[] parent = new int[jobs.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        Map<String, Integer> firstOwner = new HashMap<>();
+        for (Job job : jobs) {
+            for (String className : job.classNames) {
+                Integer other = firstOwner.putIfAbsent(className, job.index);
+                if (other != null) {
+                    int a = find(parent, other);
+                    int b = find(parent, job.index);
+                    if (a != b) {
+                        parent[Math.max(a, b)] = Math.min(a, b);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<Job>> groups = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            groups.computeIfAbsent(find(parent, job.index), root -> new ArrayList<>()).add(job);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,523 @@
+package obf.swag;
+
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Граф наследования классов JAR и их библиотечных предков.
+ *
+ * Классы и методы получают целочисленные номера, связи хранятся в массивах. Методы
+ * с одинаковой сигнатурой (имя + дескриптор), которые переопределяют друг друга,
+ * объединяются в группы через систему непересекающихся множеств за один проход по
+ * классам JAR. Вся группа получает одно новое имя. Группа фиксирована (не переименовывается),
+ * если в нее входит библиотечный метод или класс с предком, которого нет ни в JAR, ни в библиотеках.
+ *
+ * Классы JAR, связанные наследованием, образуют семейство - общую область имен полей
+ * и методов, чтобы новые имена не совпали у предка и потомка.
+ */
+final class ClassHierarchy {
+    private static final byte KIND_JAR = 0;
+    private static final byte KIND_LIBRARY = 1;
+    private static final byte KIND_UNRESOLVED = 2;
+    private static final int[] NO_CLASSES = new int[0];
+
+    // Классы: номер -> имя, метаданные, вид, суперкласс, интерфейсы
+    private final Map<String, Integer> classIds = new HashMap<>();
+    private final List<String> classNames = new ArrayList<>();
+    private final List<ClassMetadata> classMetadata = new ArrayList<>();
+    private byte[] kinds;
+    private int[] superIds;
+    private int[][] interfaceIds;
+    private int[][] ancestors;
+    private boolean[] unresolvedAncestor;
+    private int jarClassCount;
+
+    // Сигнатуры методов "name(desc)" -> номер; конструкторы и <clinit> отмечены отдельно
+    private final SymbolTable signatures = new SymbolTable();
+    private final BitSet initializerSignatures = new BitSet();
+
+    // Методы: (номер класса << 32 | номер сигнатуры) -> номер метода
+    private final MethodIndex declaredMethods = new MethodIndex();
+    // Методы класса JAR i - номера с jarMethodStart[i] по jarMethodStart[i + 1] - 1
+    private int[] jarMethodStart;
+    private int[] methodSignature = new int[64];
+    private int[] methodAccess = new int[64];
+    private int[] methodParent = new int[64];
+    private boolean[] methodFixed = new boolean[64];
+    private int methodCount;
+
+    // Семейства классов JAR: система непересекающихся множеств по номерам классов
+    private int[] familyParent;
+
+    private ClassHierarchy() {
+    }
+
+    /**
+     * Строит граф по метаданным классов JAR. Предки, которых нет в JAR, ищутся в библиотеках.
+     */
+    static ClassHierarchy build(Map<String, ClassMetadata> jarClasses, LibraryClassPath libraries) {
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        hierarchy.resolveClasses(jarClasses, libraries);
+        hierarchy.registerJarMethods();
+        hierarchy.linkOverrides();
+        hierarchy.linkFamilies();
+        return hierarchy;
+    }
+
+    private void resolveClasses(Map<String, ClassMetadata> jarClasses, LibraryClassPath libraries) {
+        for (ClassMetadata metadata : jarClasses.values()) {
+            addClass(metadata.name, metadata);
+        }
+        jarClassCount = classNames.size();
+
+        // Обход в ширину по предкам: новые классы добавляются в конец списка
+        List<int[]> supers = new ArrayList<>();
+        for (int id = 0; id < classNames.size(); id++) {
+            ClassMetadata metadata = classMetadata.get(id);
+            if (metadata == null) {
+                supers.add(null);
+                continue;
+            }
+            int[] ids = new int[metadata.interfaces.length + 1];
+            ids[0] = metadata.superName != null ? resolve(metadata.superName, libraries) : -1;
+            for (int i = 0; i < metadata.interfaces.length; i++) {
+                ids[i + 1] = resolve(metadata.interfaces[i], libraries);
+            }
+            supers.add(ids);
+        }
+
+        int count = classNames.size();
+        kinds = new byte[count];
+        superIds = new int[count];
+        interfaceIds = new int[count][];
+        ancestors = new int[count][];
+        unresolvedAncestor = new boolean[count];
+        for (int id = 0; id < count; id++) {
+            int[] ids = supers.get(id);
+            if (id < jarClassCount) {
+                kinds[id] = KIND_JAR;
+            } else {
+                kinds[id] = classMetadata.get(id) != null ? KIND_LIBRARY : KIND_UNRESOLVED;
+            }
+            superIds[id] = ids != null ? ids[0] : -1;
+            interfaceIds[id] = ids != null ? Arrays.copyOfRange(ids, 1, ids.length) : NO_CLASSES;
+        }
+        for (int id = 0; id < count; id++) {
+            ancestorsOf(id);
+        }
+    }
+
+    private int addClass(String name, ClassMetadata metadata) {
+        int id = classNames.size();
+        classIds.put(name, id);
+        classNames.add(name);
+        classMetadata.add(metadata);
+        return id;
+    }
+
+    private int resolve(String name, LibraryClassPath libraries) {
+        Integer id = classIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        return addClass(name, libraries.find(name));
+    }
+
+    /** Все предки класса без повторов: суперклассы и интерфейсы на любой глубине. */
+    private int[] ancestorsOf(int id) {
+        int[] cached = ancestors[id];
+        if (cached != null) {
+            return cached;
+        }
+        // Защита от циклов в некорректном байткоде
+        ancestors[id] = NO_CLASSES;
+
+        Set<Integer> result = new LinkedHashSet<>();
+        boolean unresolved = false;
+        List<Integer> direct = new ArrayList<>();
+        if (superIds[id] >= 0) {
+            direct.add(superIds[id]);
+        }
+        for (int iface : interfaceIds[id]) {
+            direct.add(iface);
+        }
+        for (int parent : direct) {
+            result.add(parent);
+            for (int ancestor : ancestorsOf(parent)) {
+                result.add(ancestor);
+            }
+            unresolved |= kinds[parent] == KIND_UNRESOLVED || unresolvedAncestor[parent];
+        }
+
+        int[] array = new int[result.size()];
+        int i = 0;
+        for (int ancestor : result) {
+            array[i++] = ancestor;
+        }
+        ancestors[id] = array;
+        unresolvedAncestor[id] = unresolved;
+        return array;
+    }
+
+    private int signatureId(String signature) {
+        int id = signatures.intern(signature);
+        if (signature.charAt(0) == '<') {
+            initializerSignatures.set(id);
+        }
+        return id;
+    }
+
+    private void registerJarMethods() {
+        jarMethodStart = new int[jarClassCount + 1];
+        for (int classId = 0; classId < jarClassCount; classId++) {
+            jarMethodStart[classId] = methodCount;
+            // Сортировка делает номера методов независимыми от порядка обхода HashMap
+            List<String> names = new ArrayList<>(classMetadata.get(classId).methods.keySet());
+            Collections.sort(names);
+            for (String signature : names) {
+                addMethod(classId, signatureId(signature), classMetadata.get(classId).methods.get(signature));
+            }
+        }
+        jarMethodStart[jarClassCount] = methodCount;
+    }
+
+    private int addMethod(int classId, int signatureId, int access) {
+        if (methodCount == methodParent.length) {
+            int size = methodCount * 2;
+            methodSignature = Arrays.copyOf(methodSignature, size);
+            methodAccess = Arrays.copyOf(methodAccess, size);
+            methodParent = Arrays.copyOf(methodParent, size);
+            methodFixed = Arrays.copyOf(methodFixed, size);
+        }
+        int id = methodCount++;
+        methodSignature[id] = signatureId;
+        methodAccess[id] = access;
+        methodParent[id] = id;
+        methodFixed[id] = kinds[classId] != KIND_JAR;
+        declaredMethods.put(key(classId, signatureId), id);
+        return id;
+    }
+
+    /**
+     * Метод с сигнатурой, объявленный в классе, или -1. Методы библиотечных классов
+     * добавляются в граф только при первом запросе.
+     */
+    private int findDeclared(int classId, int signatureId) {
+        int id = declaredMethods.get(key(classId, signatureId));
+        if (id >= 0) {
+            return id;
+        }
+        if (kinds[classId] == KIND_LIBRARY) {
+            Integer access = classMetadata.get(classId).methods.get(signatures.get(signatureId));
+            if (access != null) {
+                return addMethod(classId, signatureId, access);
+            }
+        }
+        return -1;
+    }
+
+    private static long key(int classId, int signatureId) {
+        return ((long) classId << 32) | (signatureId & 0xFFFFFFFFL);
+    }
+
+    private boolean isVirtual(int methodId) {
+        return (methodAccess[methodId] & (Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC)) == 0
+                && !initializerSignatures.get(methodSignature[methodId]);
+    }
+
+    /**
+     * Для каждого класса JAR объединяет виртуальные методы с одинаковой сигнатурой
+     * в нем и во всех его предках. Сигнатуры берутся из самого класса и его предков
+     * из JAR, библиотечные предки только проверяются на наличие такой же сигнатуры.
+     */
+    private void linkOverrides() {
+        BitSet classSignatures = new BitSet();
+        for (int classId = 0; classId < jarClassCount; classId++) {
+            int[] classAncestors = ancestors[classId];
+
+            classSignatures.clear();
+            collectVirtualSignatures(classId, classSignatures);
+            for (int ancestor : classAncestors) {
+                if (kinds[ancestor] == KIND_JAR) {
+                    collectVirtualSignatures(ancestor, classSignatures);
+                }
+            }
+
+            for (int sig = classSignatures.nextSetBit(0); sig >= 0; sig = classSignatures.nextSetBit(sig + 1)) {
+                int first = findVirtual(classId, sig);
+                for (int ancestor : classAncestors) {
+                    int method = findVirtual(ancestor, sig);
+                    if (method >= 0) {
+                        first = first >= 0 ? union(first, method) : method;
+                    }
+                }
+                // Неизвестный предок может объявлять такой же метод
+                if (first >= 0 && unresolvedAncestor[classId]) {
+                    methodFixed[findRoot(first)] = true;
+                }
+            }
+        }
+    }
+
+    private void collectVirtualSignatures(int classId, BitSet result) {
+        for (int method = jarMethodStart[classId]; method < jarMethodStart[classId + 1]; method++) {
+            if (isVirtual(method)) {
+                result.set(methodSignature[method]);
+            }
+        }
+    }
+
+    private int findVirtual(int classId, int signatureId) {
+        if (kinds[classId] == KIND_UNRESOLVED) {
+            return -1;
+        }
+        int method = findDeclared(classId, signatureId);
+        return method >= 0 && isVirtual(method) ? method : -1;
+    }
+
+    private int findRoot(int methodId) {
+        while (methodParent[methodId] != methodId) {
+            methodParent[methodId] = methodParent[methodParent[methodId]];
+            methodId = methodParent[methodId];
+        }
+        return methodId;
+    }
+
+    private int union(int a, int b) {
+        int rootA = findRoot(a);
+        int rootB = findRoot(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        // Корень - метод с меньшим номером, чтобы результат не зависел от порядка объединений
+        int root = Math.min(rootA, rootB);
+        int child = Math.max(rootA, rootB);
+        methodParent[child] = root;
+        methodFixed[root] |= methodFixed[child];
+        return root;
+    }
+
+    private void linkFamilies() {
+        familyParent = new int[jarClassCount];
+        for (int classId = 0; classId < jarClassCount; classId++) {
+            familyParent[classId] = classId;
+        }
+        for (int classId = 0; classId < jarClassCount; classId++) {
+            for (int ancestor : ancestors[classId]) {
+                if (kinds[ancestor] == KIND_JAR) {
+                    int rootA = findFamily(classId);
+                    int rootB = findFamily(ancestor);
+                    familyParent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+                }
+            }
+        }
+    }
+
+    private int findFamily(int classId) {
+        while (familyParent[classId] != classId) {
+            familyParent[classId] = familyParent[familyParent[classId]];
+            classId = familyParent[classId];
+        }
+        return classId;
+    }
+
+    private int jarClassId(String className) {
+        Integer id = classIds.get(className);
+        return id != null && id < jarClassCount ? id : -1;
+    }
+
+    /**
+     * Номер группы переопределения для виртуального метода класса JAR
+     * или -1 для приватных, статических методов и конструкторов.
+     */
+    int methodGroup(String owner, String signature) {
+        int classId = jarClassId(owner);
+        int signatureId = signatures.find(signature);
+        if (classId < 0 || signatureId == SymbolTable.NONE) {
+            return -1;
+        }
+        int method = declaredMethods.get(key(classId, signatureId));
+        return method >= 0 && isVirtual(method) ? findRoot(method) : -1;
+    }
+
+    /** Группа связана с библиотекой или неизвестным предком и должна сохранить имя. */
+    boolean isFixed(int group) {
+        return methodFixed[findRoot(group)];
+    }
+
+    /**
+     * Группы всех виртуальных методов с указанным именем в классе и его предках из JAR.
+     */
+    Set<Integer> groupsNamed(String owner, String name) {
+        Set<Integer> groups = new HashSet<>();
+        int classId = jarClassId(owner);
+        if (classId < 0) {
+            return groups;
+        }
+        String prefix = name + "(";
+        collectGroupsNamed(classId, prefix, groups);
+        for (int ancestor : ancestors[classId]) {
+            if (kinds[ancestor] == KIND_JAR) {
+                collectGroupsNamed(ancestor, prefix, groups);
+            }
+        }
+        return groups;
+    }
+
+    private void collectGroupsNamed(int classId, String prefix, Set<Integer> groups) {
+        for (int method = jarMethodStart[classId]; method < jarMethodStart[classId + 1]; method++) {
+            if (isVirtual(method) && signatures.get(methodSignature[method]).startsWith(prefix)) {
+                groups.add(findRoot(method));
+            }
+        }
+    }
+
+    /**
+     * Имя семейства класса (первый по порядку класс семейства) - область, в которой
+     * имена полей и методов не должны повторяться.
+     */
+    String familyOf(String className) {
+        int classId = jarClassId(className);
+        return classId >= 0 ? classNames.get(findFamily(classId)) : className;
+    }
+
+    /**
+     * Имена полей и методов библиотечных предков класса. Новые имена не должны с ними
+     * совпадать, иначе метод может случайно переопределить библиотечный.
+     */
+    Set<String> libraryMemberNames(String className) {
+        Set<String> names = new HashSet<>();
+        int classId = jarClassId(className);
+        if (classId < 0) {
+            return names;
+        }
+        for (int ancestor : ancestors[classId]) {
+            if (kinds[ancestor] == KIND_LIBRARY) {
+                ClassMetadata metadata = classMetadata.get(ancestor);
+                names.addAll(metadata.fields.keySet());
+                for (String signature : metadata.methods.keySet()) {
+                    names.add(signature.substring(0, signature.indexOf('(')));
+                }
+            }
+        }
+        return names;
+    }
+
+    /** Класс JAR наследует указанный класс или реализует интерфейс (на любой глубине). */
+    boolean hasAncestor(String className, String ancestorName) {
+        int classId = jarClassId(className);
+        Integer ancestorId = classIds.get(ancestorName);
+        if (classId < 0 || ancestorId == null) {
+            return false;
+        }
+        for (int ancestor : ancestors[classId]) {
+            if (ancestor == ancestorId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Прямые предки классов JAR: [суперкласс, интерфейсы...], для поиска членов по иерархии. */
+    Map<String, String[]> jarSupertypes() {
+        Map<String, String[]> result = new HashMap<>();
+        for (int classId = 0; classId < jarClassCount; classId++) {
+            ClassMetadata metadata = classMetadata.get(classId);
+            String[] supertypes = new String[metadata.interfaces.length + 1];
+            supertypes[0] = metadata.superName;
+            System.arraycopy(metadata.interfaces, 0, supertypes, 1, metadata.interfaces.length);
+            result.put(metadata.name, supertypes);
+        }
+        return result;
+    }
+
+    int jarClassCount() {
+        return jarClassCount;
+    }
+
+    int libraryClassCount() {
+        int count = 0;
+        for (byte kind : kinds) {
+            if (kind == KIND_LIBRARY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Предки, которых нет ни в JAR, ни в библиотеках. */
+    List<String> unresolvedClasses() {
+        List<String> result = new ArrayList<>();
+        for (int id = 0; id < kinds.length; id++) {
+            if (kinds[id] == KIND_UNRESOLVED) {
+                result.add(classNames.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Открытая адресация long -> int для объявленных методов: без Long, Integer
+     * и узла HashMap на каждый метод.
+     */
+    private static final class MethodIndex {
+        private static final long EMPTY = -1L;
+
+        private long[] keys = newKeys(1024);
+        private int[] values = new int[1024];
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                if (keys[slot] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+}
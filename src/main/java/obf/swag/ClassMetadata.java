@@ -0,0 +1,207 @@
+package obf.swag;
+
+import org.objectweb.asm.*;
+
+import java.util.*;
+
+/**
+ * Заголовок класса и объявленные члены с флагами доступа, без байткода методов.
+ * Используется для классов JAR и библиотечных классов при построении иерархии.
+ */
+final class ClassMetadata {
+    final String name;
+    final String superName;
+    final String[] interfaces;
+    final int access;
+    // name+desc -> access
+    final Map<String, Integer> methods;
+    // name -> access
+    final Map<String, Integer> fields;
+
+    ClassMetadata(String name, String superName, String[] interfaces, int access,
+                  Map<String, Integer> methods, Map<String, Integer> fields) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces != null ? interfaces : new String[0];
+        this.access = access;
+        this.methods = methods;
+        this.fields = fields;
+    }
+
+    boolean isInterface() {
+        return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    boolean isAnnotation() {
+        return (access & Opcodes.ACC_ANNOTATION) != 0;
+    }
+
+    boolean isEnum() {
+        return (access & Opcodes.ACC_ENUM) != 0;
+    }
+
+    boolean isRecord() {
+        return "java/lang/Record".equals(superName);
+    }
+
+    /**
+     * Та же информация, но имена членов хранятся номерами в таблице символов, а флаги -
+     * в массиве int (режим --low-memory). Порядок обхода членов сохраняется.
+     */
+    ClassMetadata compact(SymbolTable symbols) {
+        return new ClassMetadata(name, superName, interfaces, access,
+                new MemberTable(symbols, methods), new MemberTable(symbols, fields));
+    }
+
+    /** Читает только заголовок и объявления членов, пропуская код. */
+    static ClassMetadata read(byte[] classData) {
+        Map<String, Integer> methods = new HashMap<>();
+        Map<String, Integer> fields = new HashMap<>();
+        Object[] header = new Object[4];
+
+        new ClassReader(classData).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature,
+                              String superName, String[] interfaces) {
+                header[0] = name;
+                header[1] = superName;
+                header[2] = interfaces;
+                header[3] = access;
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor,
+                                           String signature, Object value) {
+                fields.put(name, access);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                methods.put(name + descriptor, access);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        return new ClassMetadata((String) header[0], (String) header[1], (String[]) header[2],
+                (Integer) header[3], methods, fields);
+    }
+
+    /**
+     * Неизменяемая карта имя члена -> флаги. В маленьких классах поиск - перебор
+     * номеров, в больших - открытая адресация по номеру символа.
+     */
+    private static final class MemberTable extends AbstractMap<String, Integer> {
+        private static final int LINEAR_LIMIT = 8;
+
+        private final SymbolTable symbols;
+        private final int[] names;
+        private final int[] flags;
+        // позиция + 1, 0 - пустая ячейка; null - поиск перебором
+        private final int[] index;
+
+        MemberTable(SymbolTable symbols, Map<String, Integer> members) {
+            this.symbols = symbols;
+            this.names = new int[members.size()];
+            this.flags = new int[members.size()];
+            int position = 0;
+            for (Map.Entry<String, Integer> member : members.entrySet()) {
+                names[position] = symbols.intern(member.getKey());
+                flags[position] = member.getValue();
+                position++;
+            }
+            if (names.length > LINEAR_LIMIT) {
+                index = new int[Integer.highestOneBit(names.length) * 4];
+                for (position = 0; position < names.length; position++) {
+                    int slot = slot(names[position]);
+                    while (index[slot] != 0) {
+                        slot = (slot + 1) & (index.length - 1);
+                    }
+                    index[slot] = position + 1;
+                }
+            } else {
+                index = null;
+            }
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return position(key) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int position = position(key);
+            return position >= 0 ? flags[position] : null;
+        }
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return names.length;
+                }
+
+                @Override
+                public Iterator<Entry<String, Integer>> iterator() {
+                    return new Iterator<Entry<String, Integer>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Integer> next() {
+                            if (next >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int position = next++;
+                            return new SimpleImmutableEntry<>(symbols.get(names[position]), flags[position]);
+                        }
+                    };
+                }
+            };
+        }
+
+        private int position(Object key) {
+            if (!(key instanceof String) || names.length == 0) {
+                return -1;
+            }
+            int id = symbols.find((String) key);
+            if (id == SymbolTable.NONE) {
+                return -1;
+            }
+            if (index == null) {
+                for (int position = 0; position < names.length; position++) {
+                    if (names[position] == id) {
+                        return position;
+                    }
+                }
+                return -1;
+            }
+            for (int slot = slot(id); ; slot = (slot + 1) & (index.length - 1)) {
+                int position = index[slot] - 1;
+                if (position < 0) {
+                    return -1;
+                }
+                if (names[position] == id) {
+                    return position;
+                }
+            }
+        }
+
+        private int slot(int id) {
+            int hash = id * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & (index.length - 1);
+        }
+    }
+}
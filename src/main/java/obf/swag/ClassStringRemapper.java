@@ -0,0 +1,72 @@
+package obf.swag;
+
+import org.objectweb.asm.commons.Remapper;
+
+/**
+ * Обертка над индексом переименований, которая меняет и строковые константы, целиком
+ * равные имени переименованного класса через точку: Class.forName("com.example.Impl"),
+ * значения аннотаций, ConstantValue полей. Имя ищется через {@link #map}, поэтому
+ * запросы видит и {@link IncrementalCache.RecordingRemapper}.
+ */
+final class ClassStringRemapper extends Remapper {
+    private final Remapper delegate;
+
+    ClassStringRemapper(Remapper delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object mapValue(Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            if (!isQualifiedName(string)) {
+                return value;
+            }
+            String internalName = string.replace('.', '/');
+            String mapped = delegate.map(internalName);
+            return mapped != null && !mapped.equals(internalName) ? mapped.replace('/', '.') : value;
+        }
+        return super.mapValue(value);
+    }
+
+    /** a.b.C или a.b.C$D: Java-идентификаторы через точку, хотя бы одна точка. */
+    static boolean isQualifiedName(String value) {
+        boolean dot = false;
+        boolean partStart = true;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '.') {
+                if (partStart) {
+                    return false;
+                }
+                dot = true;
+                partStart = true;
+            } else if (partStart ? Character.isJavaIdentifierStart(c) : Character.isJavaIdentifierPart(c)) {
+                partStart = false;
+            } else {
+                return false;
+            }
+        }
+        return dot && !partStart;
+    }
+
+    @Override
+    public String map(String internalName) {
+        return delegate.map(internalName);
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String descriptor) {
+        return delegate.mapFieldName(owner, name, descriptor);
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String descriptor) {
+        return delegate.mapMethodName(owner, name, descriptor);
+    }
+
+    @Override
+    public String mapInvokeDynamicMethodName(String name, String descriptor) {
+        return delegate.mapInvokeDynamicMethodName(name, descriptor);
+    }
+}
@@ -0,0 +1,581 @@
+package obf.swag;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Проверка выходных классов после обфускации (отключается --no-verify).
+ *
+ * Первый проход ({@link #addClass}) собирает заголовки всех выходных классов, второй
+ * ({@link #verify}) проверяет каждый класс:
+ *  - структуру класса и инструкций - CheckClassAdapter без анализа потока данных;
+ *  - стек и локальные переменные методов - Analyzer с BasicVerifier;
+ *  - ссылки на классы, поля и методы - разрешаются как в JVM: среди выходных классов,
+ *    затем в --libs и JDK;
+ *  - конкретный класс реализует все абстрактные методы своих предков.
+ *
+ * Ошибка - то, что могла сломать обфускация: неверный байткод, ссылка на старое имя
+ * переименованного класса, член класса JAR, который не находится, нереализованный
+ * абстрактный метод класса JAR. Ссылки, которые не разрешились бы и до обфускации
+ * (библиотеки нет в --libs, в fat JAR собраны несовместимые версии), - предупреждения:
+ * такие члены и абстрактные методы сверяются с исходным JAR ({@link #compareWith}),
+ * недостающий класс упоминается один раз. Оба прохода потокобезопасны и идут параллельно.
+ */
+final class ClassVerifier {
+    private static final int FOUND = 0;
+    private static final int NOT_FOUND = 1;
+    // В иерархии есть ненайденный класс: член мог быть объявлен в нем
+    private static final int UNKNOWN = 2;
+
+    private final Map<String, ClassMetadata> classes = new ConcurrentHashMap<>();
+    private final LibraryClassPath libraries;
+    private final Predicate<String> staleName;
+    private final SymbolTable symbols;
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+    // Исходный JAR для сверки: классы по старым именам, новые имена -> старые, маппинги членов
+    private Function<String, ClassMetadata> inputClasses;
+    private final Map<String, String> originalNames = new HashMap<>();
+    private Remapper originalDescriptors;
+    private Map<String, String> fieldMappings = Collections.emptyMap();
+    private Map<String, String> methodMappings = Collections.emptyMap();
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+    private final Queue<Problem> problems = new ConcurrentLinkedQueue<>();
+    private final LongAdder verifiedClasses = new LongAdder();
+    private final LongAdder verifiedMethods = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder warnings = new LongAdder();
+
+    /** Замечание проверки: класс, где найдено, и текст. */
+    static final class Problem {
+        final boolean error;
+        final String className;
+        final String message;
+
+        Problem(boolean error, String className, String message) {
+            this.error = error;
+            this.className = className;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return className + ": " + message;
+        }
+    }
+
+    /**
+     * @param staleName старое имя переименованного класса (ссылка на него - ошибка)
+     * @param symbols   таблица символов для компактных заголовков (--low-memory) или null
+     */
+    ClassVerifier(LibraryClassPath libraries, Predicate<String> staleName, SymbolTable symbols) {
+        this.libraries = libraries;
+        this.staleName = staleName;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Сверка с исходным JAR: поле, метод или абстрактный метод, которых нет и в исходных
+     * классах, - не ошибка обфускации. Вызывается до проходов.
+     *
+     * @param inputClasses   классы исходного JAR, библиотеки и JDK по старым именам
+     * @param classMappings  старое внутреннее имя -> новое
+     * @param fieldMappings  владелец.поле -> новое имя поля
+     * @param methodMappings владелец.метод(дескриптор) -> новое имя метода
+     */
+    void compareWith(Function<String, ClassMetadata> inputClasses, Map<String, String> classMappings,
+                     Map<String, String> fieldMappings, Map<String, String> methodMappings) {
+        this.inputClasses = inputClasses;
+        for (Map.Entry<String, String> entry : classMappings.entrySet()) {
+            if (entry.getValue() != null) {
+                originalNames.put(entry.getValue(), entry.getKey());
+            }
+        }
+        this.originalDescriptors = new SimpleRemapper(originalNames);
+        this.fieldMappings = fieldMappings;
+        this.methodMappings = methodMappings;
+    }
+
+    /** Имя класса до обфускации. */
+    String originalName(String className) {
+        return originalNames.getOrDefault(className, className);
+    }
+
+    /** Первый проход: заголовок выходного класса. */
+    void addClass(byte[] classData) {
+        ClassMetadata metadata;
+        try {
+            metadata = ClassMetadata.read(classData);
+        } catch (RuntimeException e) {
+            // Класс не читается - об этом сообщит второй проход
+            return;
+        }
+        if (symbols != null) {
+            synchronized (symbols) {
+                metadata = metadata.compact(symbols);
+            }
+        }
+        // Версии multi-release JAR: для разрешения ссылок хватает основной
+        classes.putIfAbsent(metadata.name, metadata);
+    }
+
+    /** Второй проход: байткод и ссылки класса. */
+    void verify(byte[] classData) {
+        ClassNode node = new ClassNode();
+        String className = "?";
+        try {
+            ClassReader reader = new ClassReader(classData);
+            className = reader.getClassName();
+            // Отладочная информация для проверки не нужна, без нее разбор почти вдвое быстрее
+            reader.accept(new CheckClassAdapter(node, false), ClassReader.SKIP_DEBUG);
+        } catch (RuntimeException e) {
+            error(className, "неверная структура класса: " + e);
+            return;
+        }
+        verifiedClasses.increment();
+
+        checkClass(node.name, node.superName);
+        for (String anInterface : node.interfaces) {
+            checkClass(node.name, anInterface);
+        }
+        checkStale(node.name, node.outerClass);
+        checkStale(node.name, node.nestHostClass);
+        checkStaleAll(node.name, node.nestMembers);
+        checkStaleAll(node.name, node.permittedSubclasses);
+        for (InnerClassNode innerClass : node.innerClasses) {
+            checkStale(node.name, innerClass.name);
+            checkStale(node.name, innerClass.outerName);
+        }
+        for (FieldNode field : node.fields) {
+            checkDescriptor(node.name, field.desc);
+        }
+        for (MethodNode method : node.methods) {
+            checkDescriptor(node.name, method.desc);
+            checkStaleAll(node.name, method.exceptions);
+            if (method.instructions.size() > 0) {
+                verifyCode(node, method);
+            }
+        }
+        if ((node.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) == 0) {
+            checkAbstractMethods(node.name);
+        }
+    }
+
+    private void verifyCode(ClassNode owner, MethodNode method) {
+        verifiedMethods.increment();
+        try {
+            new Analyzer<>(new BasicVerifier()).analyze(owner.name, method);
+        } catch (AnalyzerException | RuntimeException e) {
+            error(owner.name, "метод " + method.name + method.desc + ": " + e.getMessage());
+        }
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.FIELD_INSN: {
+                    FieldInsnNode field = (FieldInsnNode) insn;
+                    checkField(owner.name, field.owner, field.name, field.desc);
+                    break;
+                }
+                case AbstractInsnNode.METHOD_INSN: {
+                    MethodInsnNode call = (MethodInsnNode) insn;
+                    checkMethod(owner.name, call.owner, call.name, call.desc);
+                    break;
+                }
+                case AbstractInsnNode.TYPE_INSN:
+                    checkClass(owner.name, ((TypeInsnNode) insn).desc);
+                    break;
+                case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                    checkClass(owner.name, ((MultiANewArrayInsnNode) insn).desc);
+                    break;
+                case AbstractInsnNode.LDC_INSN:
+                    checkConstant(owner.name, ((LdcInsnNode) insn).cst);
+                    break;
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                    InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                    checkDescriptor(owner.name, indy.desc);
+                    checkConstant(owner.name, indy.bsm);
+                    for (Object argument : indy.bsmArgs) {
+                        checkConstant(owner.name, argument);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        for (TryCatchBlockNode tryCatch : method.tryCatchBlocks) {
+            if (tryCatch.type != null) {
+                checkClass(owner.name, tryCatch.type);
+            }
+        }
+    }
+
+    private void checkConstant(String from, Object constant) {
+        if (constant instanceof Type) {
+            Type type = (Type) constant;
+            if (type.getSort() == Type.METHOD) {
+                checkDescriptor(from, type.getDescriptor());
+            } else {
+                checkClass(from, type.getSort() == Type.OBJECT ? type.getInternalName() : type.getDescriptor());
+            }
+        } else if (constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            if (handle.getTag() <= Opcodes.H_PUTSTATIC) {
+                checkField(from, handle.getOwner(), handle.getName(), handle.getDesc());
+            } else {
+                checkMethod(from, handle.getOwner(), handle.getName(), handle.getDesc());
+            }
+        } else if (constant instanceof ConstantDynamic) {
+            ConstantDynamic condy = (ConstantDynamic) constant;
+            checkConstant(from, condy.getBootstrapMethod());
+            for (int i = 0; i < condy.getBootstrapMethodArgumentCount(); i++) {
+                checkConstant(from, condy.getBootstrapMethodArgument(i));
+            }
+        }
+    }
+
+    /** Класс должен найтись; name - внутреннее имя или дескриптор массива. */
+    private void checkClass(String from, String name) {
+        name = elementClass(name);
+        if (name == null || find(name) != null) {
+            return;
+        }
+        if (staleName.test(name)) {
+            error(from, "ссылка на старое имя класса " + name);
+        } else if (missingClasses.add(name)) {
+            warning(from, "класс не найден: " + name);
+        }
+    }
+
+    /** Классы дескриптора грузятся лениво, ошибка - только старое имя. */
+    private void checkDescriptor(String from, String descriptor) {
+        Type type = Type.getType(descriptor);
+        if (type.getSort() == Type.METHOD) {
+            for (Type argument : type.getArgumentTypes()) {
+                checkStale(from, elementClass(argument.getDescriptor()));
+            }
+            checkStale(from, elementClass(type.getReturnType().getDescriptor()));
+        } else {
+            checkStale(from, elementClass(descriptor));
+        }
+    }
+
+    private void checkStaleAll(String from, List<String> names) {
+        if (names != null) {
+            for (String name : names) {
+                checkStale(from, name);
+            }
+        }
+    }
+
+    private void checkStale(String from, String name) {
+        if (name != null && staleName.test(name) && find(name) == null) {
+            error(from, "ссылка на старое имя класса " + name);
+        }
+    }
+
+    /** Внутреннее имя класса-элемента: a/B, [La/B;, La/B; -> a/B; примитивы - null. */
+    private static String elementClass(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (name.startsWith("[") || (name.startsWith("L") && name.endsWith(";"))) {
+            Type type = Type.getType(name);
+            if (type.getSort() == Type.ARRAY) {
+                type = type.getElementType();
+            }
+            return type.getSort() == Type.OBJECT ? type.getInternalName() : null;
+        }
+        return name.length() == 1 && "VZBCSIJFD".contains(name) ? null : name;
+    }
+
+    private void checkField(String from, String owner, String name, String descriptor) {
+        checkDescriptor(from, descriptor);
+        if (owner.startsWith("[")) {
+            checkClass(from, owner);
+            return;
+        }
+        if (find(owner) == null) {
+            checkClass(from, owner);
+            return;
+        }
+        int result = resolveField(this::find, owner, (c, metadata) -> metadata.fields.containsKey(name),
+                new HashSet<>());
+        if (result == NOT_FOUND) {
+            problem(isOutputClass(owner) && hadField(owner, name), from,
+                    "поле не найдено: " + owner + "." + name + " " + descriptor);
+        }
+    }
+
+    private void checkMethod(String from, String owner, String name, String descriptor) {
+        checkDescriptor(from, descriptor);
+        if (owner.startsWith("[")) {
+            // clone() и методы Object у массивов
+            checkClass(from, owner);
+            return;
+        }
+        if (find(owner) == null) {
+            checkClass(from, owner);
+            return;
+        }
+        String nameAndDescriptor = name + descriptor;
+        int result = isSignaturePolymorphic(owner) ? FOUND : resolveMethod(this::find, owner,
+                (c, metadata) -> metadata.methods.containsKey(nameAndDescriptor));
+        if (result == NOT_FOUND) {
+            problem(isOutputClass(owner) && hadMethod(owner, name, descriptor), from,
+                    "метод не найден: " + owner + "." + nameAndDescriptor);
+        }
+    }
+
+    /** MethodHandle.invoke*, VarHandle.get* и т.п.: дескриптор вызова свой у каждого места. */
+    private static boolean isSignaturePolymorphic(String owner) {
+        return owner.equals("java/lang/invoke/MethodHandle") || owner.equals("java/lang/invoke/VarHandle");
+    }
+
+    /**
+     * Поле: в самом классе, затем в интерфейсах, затем в суперклассе (JVMS 5.4.3.2).
+     * declares - объявляет ли класс искомое поле.
+     */
+    private static int resolveField(Function<String, ClassMetadata> lookup, String owner,
+                                    BiPredicate<String, ClassMetadata> declares, Set<String> visited) {
+        if (owner == null || !visited.add(owner)) {
+            return NOT_FOUND;
+        }
+        ClassMetadata metadata = lookup.apply(owner);
+        if (metadata == null) {
+            return UNKNOWN;
+        }
+        if (declares.test(owner, metadata)) {
+            return FOUND;
+        }
+        int result = NOT_FOUND;
+        for (String anInterface : metadata.interfaces) {
+            result = Math.max(result, resolveField(lookup, anInterface, declares, visited));
+            if (result == FOUND) {
+                return FOUND;
+            }
+        }
+        int inSuperclass = resolveField(lookup, metadata.superName, declares, visited);
+        return inSuperclass == FOUND ? FOUND : Math.max(result, inSuperclass);
+    }
+
+    /** Метод: в классе и суперклассах, во всех суперинтерфейсах, затем в Object (JVMS 5.4.3.3). */
+    private static int resolveMethod(Function<String, ClassMetadata> lookup, String owner,
+                                     BiPredicate<String, ClassMetadata> declares) {
+        Set<String> visited = new HashSet<>();
+        int result = resolveMethod(lookup, owner, declares, visited);
+        // Методы Object доступны и через интерфейс
+        return result != NOT_FOUND ? result : resolveMethod(lookup, "java/lang/Object", declares, visited);
+    }
+
+    private static int resolveMethod(Function<String, ClassMetadata> lookup, String owner,
+                                     BiPredicate<String, ClassMetadata> declares, Set<String> visited) {
+        int result = NOT_FOUND;
+        List<String> interfaces = new ArrayList<>();
+        for (String current = owner; current != null; ) {
+            if (!visited.add(current)) {
+                break;
+            }
+            ClassMetadata metadata = lookup.apply(current);
+            if (metadata == null) {
+                result = UNKNOWN;
+                break;
+            }
+            if (declares.test(current, metadata)) {
+                return FOUND;
+            }
+            Collections.addAll(interfaces, metadata.interfaces);
+            current = metadata.superName;
+        }
+        for (String anInterface : interfaces) {
+            int found = resolveMethod(lookup, anInterface, declares, visited);
+            if (found == FOUND) {
+                return FOUND;
+            }
+            result = Math.max(result, found);
+        }
+        return result;
+    }
+
+    /**
+     * Разрешалось ли поле до обфускации: в исходной иерархии владельца есть поле, которое
+     * называлось name (ссылку забыли переименовать) или получило имя name (объявление
+     * потерялось). Без сверки ({@link #compareWith}) - считается, что да.
+     */
+    private boolean hadField(String owner, String name) {
+        if (inputClasses == null) {
+            return true;
+        }
+        int result = resolveField(inputClasses, originalName(owner), (c, metadata) -> {
+            for (String field : metadata.fields.keySet()) {
+                if (name.equals(field) || name.equals(newName(fieldMappings.get(c + "." + field), field))) {
+                    return true;
+                }
+            }
+            return false;
+        }, new HashSet<>());
+        return result != NOT_FOUND;
+    }
+
+    /** То же для метода: имя и дескриптор - выходные, дескриптор сравнивается в старых именах. */
+    private boolean hadMethod(String owner, String name, String descriptor) {
+        if (inputClasses == null) {
+            return true;
+        }
+        String originalDescriptor = originalDescriptors.mapMethodDesc(descriptor);
+        int result = resolveMethod(inputClasses, originalName(owner), (c, metadata) -> {
+            for (String method : metadata.methods.keySet()) {
+                int paren = method.indexOf('(');
+                if (!method.startsWith(originalDescriptor, paren) || method.length() - paren != originalDescriptor.length()) {
+                    continue;
+                }
+                String methodName = method.substring(0, paren);
+                if (name.equals(methodName) || name.equals(newName(methodMappings.get(c + "." + method), methodName))) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return result != NOT_FOUND;
+    }
+
+    private static String newName(String mapped, String name) {
+        return mapped != null ? mapped : name;
+    }
+
+    /**
+     * Конкретный класс: каждый абстрактный метод суперклассов и интерфейсов реализован
+     * методом цепочки суперклассов или методом по умолчанию интерфейса.
+     */
+    private void checkAbstractMethods(String className) {
+        Map<String, String> unimplemented = unimplementedMethods(this::find, className);
+        if (unimplemented == null || unimplemented.isEmpty()) {
+            return;
+        }
+        // Класс, который не реализовал метод и до обфускации, - не ошибка
+        boolean hadUnimplemented = false;
+        if (inputClasses != null) {
+            Map<String, String> before = unimplementedMethods(inputClasses, originalName(className));
+            hadUnimplemented = before != null && !before.isEmpty();
+        }
+        for (Map.Entry<String, String> method : unimplemented.entrySet()) {
+            problem(isOutputClass(method.getValue()) && !hadUnimplemented, className,
+                    "не реализован абстрактный метод " + method.getValue() + "." + method.getKey());
+        }
+    }
+
+    /** Нереализованные абстрактные методы (имя+дескриптор -> кто объявил); null - иерархия неполная. */
+    private static Map<String, String> unimplementedMethods(Function<String, ClassMetadata> lookup,
+                                                            String className) {
+        Set<String> implemented = new HashSet<>();
+        Map<String, String> required = new LinkedHashMap<>();
+        Deque<String> interfaces = new ArrayDeque<>();
+        for (String current = className; current != null; ) {
+            ClassMetadata metadata = lookup.apply(current);
+            if (metadata == null) {
+                return null;
+            }
+            for (Map.Entry<String, Integer> method : metadata.methods.entrySet()) {
+                int access = method.getValue();
+                if ((access & Opcodes.ACC_STATIC) != 0 || method.getKey().startsWith("<")) {
+                    continue;
+                }
+                if ((access & Opcodes.ACC_ABSTRACT) != 0) {
+                    required.putIfAbsent(method.getKey(), current);
+                } else {
+                    implemented.add(method.getKey());
+                }
+            }
+            Collections.addAll(interfaces, metadata.interfaces);
+            current = metadata.superName;
+        }
+        Set<String> visited = new HashSet<>();
+        while (!interfaces.isEmpty()) {
+            String anInterface = interfaces.poll();
+            if (!visited.add(anInterface)) {
+                continue;
+            }
+            ClassMetadata metadata = lookup.apply(anInterface);
+            if (metadata == null) {
+                return null;
+            }
+            for (Map.Entry<String, Integer> method : metadata.methods.entrySet()) {
+                int access = method.getValue();
+                if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) != 0 || method.getKey().startsWith("<")) {
+                    continue;
+                }
+                if ((access & Opcodes.ACC_ABSTRACT) != 0) {
+                    required.putIfAbsent(method.getKey(), anInterface);
+                } else {
+                    implemented.add(method.getKey());
+                }
+            }
+            Collections.addAll(interfaces, metadata.interfaces);
+        }
+        required.keySet().removeAll(implemented);
+        return required;
+    }
+
+    private ClassMetadata find(String name) {
+        ClassMetadata metadata = classes.get(name);
+        return metadata != null ? metadata : libraries.find(name);
+    }
+
+    private boolean isOutputClass(String name) {
+        return classes.containsKey(name);
+    }
+
+    /** Ошибка, найденная вне проверки байткода (например, класс не удалось переписать). */
+    void error(String className, String message) {
+        problem(true, className, message);
+    }
+
+    private void warning(String className, String message) {
+        problem(false, className, message);
+    }
+
+    private void problem(boolean error, String className, String message) {
+        // Одна и та же ссылка в нескольких местах класса - одно замечание
+        if (!reported.add(className + ": " + message)) {
+            return;
+        }
+        (error ? errors : warnings).increment();
+        problems.add(new Problem(error, className, message));
+    }
+
+    List<Problem> problems() {
+        List<Problem> sorted = new ArrayList<>(problems);
+        // Порядок не зависит от распределения классов по потокам
+        sorted.sort(Comparator.comparing((Problem p) -> !p.error)
+                .thenComparing(p -> p.className).thenComparing(p -> p.message));
+        return sorted;
+    }
+
+    long classCount() {
+        return verifiedClasses.sum();
+    }
+
+    long methodCount() {
+        return verifiedMethods.sum();
+    }
+
+    long errorCount() {
+        return errors.sum();
+    }
+
+    long warningCount() {
+        return warnings.sum();
+    }
+}
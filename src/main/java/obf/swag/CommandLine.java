@@ -0,0 +1,162 @@
+package obf.swag;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Командная строка обфускатора: подкоманды (retrace, batch, serve), опции и справка.
+ * Опции одного JAR разбирает {@link #parseOption}, им же пользуются пакетный режим
+ * и сервер.
+ */
+final class CommandLine {
+    private CommandLine() {
+    }
+
+    static void run(String[] args) {
+        if (args.length > 0 && args[0].equals("retrace")) {
+            Retracer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            ObfuscationServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        JarObfuscator obfuscator = new JarObfuscator();
+        String jarPath = null;
+
+        for (int i = 0; i < args.length; i++) {
+            int next = parseOption(obfuscator, args, i);
+            if (next >= 0) {
+                i = next;
+            } else if (!args[i].startsWith("--") && jarPath == null) {
+                jarPath = args[i];
+            } else {
+                jarPath = null;
+                break;
+            }
+        }
+
+        if (jarPath == null) {
+            printUsage();
+            return;
+        }
+
+        try {
+            System.out.println("Начало обфускации: " + jarPath);
+            obfuscator.obfuscateJar(jarPath);
+            System.out.println("Обфускация завершена успешно!");
+        } catch (VerificationException e) {
+            // Замечания уже в логе, стек не нужен
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            System.err.println("Ошибка при обфускации: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Применяет опцию args[i] к обфускатору. Возвращает индекс последнего
+     * использованного аргумента или -1, если это не опция обфускатора.
+     */
+    static int parseOption(JarObfuscator obfuscator, String[] args, int i) {
+        String arg = args[i];
+        if (arg.equals("--threads") && i + 1 < args.length) {
+            obfuscator.setThreads(Integer.parseInt(args[++i]));
+        } else if (arg.equals("--incremental") && i + 1 < args.length) {
+            obfuscator.setIncrementalCacheDir(Paths.get(args[++i]));
+        } else if (arg.equals("--mapping-in") && i + 1 < args.length) {
+            obfuscator.setMappingInput(Paths.get(args[++i]));
+        } else if (arg.equals("--mapping-out") && i + 1 < args.length) {
+            obfuscator.setMappingOutput(Paths.get(args[++i]));
+        } else if (arg.equals("--names") && i + 1 < args.length) {
+            obfuscator.setNamingMode(args[++i]);
+        } else if (arg.equals("--libs") && i + 1 < args.length) {
+            obfuscator.setLibraries(LibraryClassPath.parsePaths(args[++i]));
+        } else if (arg.equals("--seed") && i + 1 < args.length) {
+            obfuscator.setSeed(Long.parseLong(args[++i]));
+        } else if (arg.equals("--shrink")) {
+            obfuscator.setShrink(true);
+        } else if (arg.equals("--keep") && i + 1 < args.length) {
+            for (String rule : args[++i].split(",")) {
+                obfuscator.addKeepRule(rule.trim());
+            }
+        } else if (arg.equals("--report") && i + 1 < args.length) {
+            obfuscator.setReportPath(Paths.get(args[++i]));
+        } else if (arg.equals("--jmx")) {
+            obfuscator.setJmx(true);
+        } else if (arg.equals("--quiet")) {
+            obfuscator.setQuiet(true);
+        } else if (arg.equals("--full-rewrite")) {
+            obfuscator.setFullRewrite(true);
+        } else if (arg.equals("--temp-dir")) {
+            obfuscator.setUseTempDir(true);
+        } else if (arg.equals("--low-memory")) {
+            obfuscator.setLowMemory(true);
+        } else if (arg.equals("--nested-jars")) {
+            obfuscator.setNestedJars(true);
+        } else if (arg.equals("--encrypt-strings")) {
+            obfuscator.setEncryptStrings(true);
+        } else if (arg.equals("--no-verify")) {
+            obfuscator.setVerify(false);
+        } else if (arg.equals("--no-resource-rewrite")) {
+            obfuscator.setRewriteResources(false);
+        } else if (arg.equals("--load-order") && i + 1 < args.length) {
+            obfuscator.setLoadOrderTrace(Paths.get(args[++i]));
+        } else if (arg.equals("--compression") && i + 1 < args.length) {
+            obfuscator.setCompression(args[++i]);
+        } else if (arg.equals("--flow")) {
+            obfuscator.setFlowObfuscation(true);
+        } else if (arg.equals("--flow-budget") && i + 1 < args.length) {
+            obfuscator.setFlowObfuscation(true);
+            obfuscator.setFlowBudget(Integer.parseInt(args[++i]));
+        } else if (arg.equals("--flow-exclude") && i + 1 < args.length) {
+            obfuscator.setFlowObfuscation(true);
+            obfuscator.setFlowProfile(Paths.get(args[++i]));
+        } else {
+            return -1;
+        }
+        return i;
+    }
+
+    private static void printUsage() {
+        System.out.println("Использование: java -jar obfuscator.jar [опции] <путь_к_jar_файлу>");
+        System.out.println("Опции:");
+        System.out.println("  --threads <n>    количество потоков (по умолчанию - число ядер)");
+        System.out.println("  --temp-dir       распаковывать JAR во временную директорию (старый режим)");
+        System.out.println("  --low-memory     потоковая обработка с компактной таблицей символов (большие JAR)");
+        System.out.println("  --nested-jars    обфусцировать и вложенные JAR (BOOT-INF/lib, jar-in-jar Eclipse)");
+        System.out.println("  --names <mode>   random - случайные имена (по умолчанию), short - короткие a, b, ..., aa");
+        System.out.println("  --seed <n>       seed для воспроизводимых случайных имен");
+        System.out.println("  --libs <paths>   библиотеки приложения (JAR или директории через " + File.pathSeparator
+                + "), их методы не переименовываются в наследниках");
+        System.out.println("  --encrypt-strings  зашифровать строковые константы (расшифровка один раз на строку)");
+        System.out.println("  --flow           запутать поток управления методов (диспетчер, непрозрачные предикаты)");
+        System.out.println("  --flow-budget <bytes>  сколько байт кода --flow может добавить методу (по умолчанию 256)");
+        System.out.println("  --flow-exclude <file>  профиль горячих методов (jfr print, пакет.Класс.метод), --flow их не трогает");
+        System.out.println("  --no-verify      не проверять выходной JAR (байткод и ссылки классов)");
+        System.out.println("  --no-resource-rewrite  не менять имена классов в ресурсах (services, XML, ...) и строках Class.forName");
+        System.out.println("  --load-order <file>  трасса загрузки классов (-Xlog:class+load): порядок записей и список классов CDS");
+        System.out.println("  --compression <rules>  сжатие записей: 9, stored или class=9,jar=stored (по умолчанию deflate 6)");
+        System.out.println("  --shrink         удалить классы, методы и поля, недостижимые из точек входа");
+        System.out.println("  --keep <rules>   классы, которые всегда сохраняются целиком (через запятую, com.example.api.**)");
+        System.out.println("  --incremental <dir>  инкрементальный режим с кэшем в указанной директории");
+        System.out.println("  --mapping-in <file>  применить маппинги из файла (ProGuard или .bin)");
+        System.out.println("  --mapping-out <file> сохранить маппинги (.bin - двоичный формат, иначе ProGuard)");
+        System.out.println("  --quiet          не выводить строку на каждый переименованный символ");
+        System.out.println("  --report <file>  отчет о запуске: время этапов, счетчики, гистограмма (.csv - CSV, иначе JSON)");
+        System.out.println("  --full-rewrite   переписывать каждый класс с развернутыми фреймами (медленнее)");
+        System.out.println("  --jmx            публиковать статистику запуска через JMX (obf.swag:type=RunStats)");
+        System.out.println("Пример: java -jar obfuscator.jar myapp.jar");
+        System.out.println("Восстановление стектрейса: java -jar obfuscator.jar retrace <маппинги> [вход] [выход]");
+        System.out.println("Несколько JAR в одной JVM: java -jar obfuscator.jar batch [опции] <jar или директория>...");
+        System.out.println("Локальный сервер: java -jar obfuscator.jar serve [--port <n>] [--workers <n>] ...");
+    }
+}
@@ -0,0 +1,79 @@
+package obf.swag;
+
+import java.util.*;
+
+/**
+ * Короткие имена по счетчику: биективная запись числа в алфавите a-z
+ * (0 -> a, 25 -> z, 26 -> aa, ...). Разные номера всегда дают разные имена,
+ * поэтому множество выданных имен не нужно - пропускаются только зарезервированные.
+ *
+ * Счетчики полей и методов свои у каждого владельца: имена a, b, c переиспользуются
+ * в каждом классе, что уменьшает пулы констант и размер JAR.
+ */
+final class CompactNameGenerator implements NameGenerator {
+    private static final int ALPHABET = 26;
+
+    private final Set<String> reserved = new HashSet<>();
+    private int classCounter = 0;
+    // Для каждого владельца: [счетчик полей, счетчик методов]
+    private final Map<String, int[]> memberCounters = new HashMap<>();
+    private final Map<String, Set<String>> reservedMembers = new HashMap<>();
+
+    @Override
+    public void reserve(String name) {
+        reserved.add(name);
+    }
+
+    @Override
+    public void reserveMember(String owner, String name) {
+        reservedMembers.computeIfAbsent(owner, o -> new HashSet<>()).add(name);
+    }
+
+    @Override
+    public String nextClassName() {
+        String name;
+        do {
+            name = encode(classCounter++);
+        } while (reserved.contains(name));
+        return name;
+    }
+
+    @Override
+    public String nextFieldName(String owner) {
+        return nextMemberName(owner, 0);
+    }
+
+    @Override
+    public String nextMethodName(String owner) {
+        return nextMemberName(owner, 1);
+    }
+
+    private String nextMemberName(String owner, int kind) {
+        int[] counters = memberCounters.computeIfAbsent(owner, o -> new int[2]);
+        Set<String> ownerReserved = reservedMembers.getOrDefault(owner, Collections.emptySet());
+        String name;
+        do {
+            name = encode(counters[kind]++);
+        } while (reserved.contains(name) || ownerReserved.contains(name));
+        return name;
+    }
+
+    static String encode(int index) {
+        int length = 1;
+        for (long limit = ALPHABET, value = index; value >= limit; limit *= ALPHABET) {
+            value -= limit;
+            length++;
+        }
+        char[] chars = new char[length];
+        long value = index;
+        for (long skip = ALPHABET, i = 1; i < length; i++) {
+            value -= skip;
+            skip *= ALPHABET;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char) ('a' + (value % ALPHABET));
+            value /= ALPHABET;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,499 @@
+package obf.swag;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Запутывание потока управления (--flow). Стоит в цепочке после ClassRemapper и
+ * StringEncryptor и видит код таким, каким он будет записан.
+ *
+ * Метод режется на участки в точках, где стек пуст и все локальные переменные
+ * инициализированы (вне try-блоков). Первый участок остается первым, остальные
+ * перемешиваются. Переход между соседними участками делается так:
+ *
+ *  - участки с одинаковым фреймом на входе собираются за диспетчер: номер следующего
+ *    участка кладется в новую локальную переменную, lookupswitch по ней выбирает участок;
+ *  - остальные переходы прячутся за непрозрачным предикатом x*x + x четно всегда,
+ *    где x - статическое поле $$o; ветка "нечетно" бросает null.
+ *
+ * Преобразование ограничено бюджетом, чтобы не испортить JIT горячим методам:
+ *  - методы из профиля (например, горячие методы из JFR) не трогаются;
+ *  - метод растет не больше чем на budget байт;
+ *  - методы до MaxInlineSize (35 байт) не трогаются вовсе, методы до FreqInlineSize
+ *    (325 байт) остаются в его пределах, остальные - в пределах HugeMethodLimit (8000).
+ * Размер кода оценивается сверху по инструкциям, фактический рост не больше оценки.
+ *
+ * Нужны развернутые фреймы (ClassReader.EXPAND_FRAMES), классы версии 50+.
+ * Интерфейсы не меняются. Таблицы локальных переменных измененных методов удаляются:
+ * диапазоны в них не переживают перестановку участков.
+ */
+final class FlowObfuscator extends ClassVisitor {
+    static final int MAX_INLINE_SIZE = 35;
+    static final int FREQ_INLINE_SIZE = 325;
+    static final int HUGE_METHOD_LIMIT = 8000;
+    private static final String OPAQUE = "$$o";
+    // Не режем чаще, чем раз в столько инструкций
+    private static final int MIN_SEGMENT = 6;
+    // Размер перехода через непрозрачный предикат
+    private static final int OPAQUE_JUMP_SIZE = 14;
+    // Переход через диспетчер: sipush, istore (wide), goto
+    private static final int DISPATCH_JUMP_SIZE = 10;
+    // Диспетчер без ключей: iload (wide), lookupswitch с выравниванием
+    private static final int DISPATCHER_SIZE = 16;
+
+    private final long seed;
+    private final int budget;
+    private final Predicate<String> excluded;
+
+    private String owner;
+    private boolean enabled;
+    private boolean opaqueUsed;
+    private int transformedMethods;
+    private int addedBytes;
+    private int skippedHot;
+    private int skippedBudget;
+
+    /**
+     * @param excluded получает "владелец.имя" (новые имена), true - метод не трогать
+     */
+    FlowObfuscator(ClassVisitor classVisitor, long seed, int budget, Predicate<String> excluded) {
+        super(Opcodes.ASM9, classVisitor);
+        this.seed = seed;
+        this.budget = budget;
+        this.excluded = excluded;
+    }
+
+    int transformedMethods() {
+        return transformedMethods;
+    }
+
+    int addedBytes() {
+        return addedBytes;
+    }
+
+    int skippedHot() {
+        return skippedHot;
+    }
+
+    int skippedBudget() {
+        return skippedBudget;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+                      String[] interfaces) {
+        owner = name;
+        enabled = (access & (Opcodes.ACC_INTERFACE | Opcodes.ACC_MODULE)) == 0
+                && (version & 0xFFFF) >= Opcodes.V1_6;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        if (enabled && name.equals(OPAQUE)) {
+            throw new NameClashException(owner, name);
+        }
+        return super.visitField(access, name, descriptor, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                     String[] exceptions) {
+        MethodVisitor target = super.visitMethod(access, name, descriptor, signature, exceptions);
+        // Служебные методы StringEncryptor ($$s, $$l...) идут со сжатыми фреймами
+        if (!enabled || target == null || name.startsWith("$$")
+                || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+            return target;
+        }
+        return new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions) {
+            @Override
+            public void visitEnd() {
+                transform(this);
+                accept(target);
+            }
+        };
+    }
+
+    @Override
+    public void visitEnd() {
+        if (opaqueUsed) {
+            FieldVisitor fv = super.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                    OPAQUE, "I", null, null);
+            if (fv != null) {
+                fv.visitEnd();
+            }
+        }
+        super.visitEnd();
+    }
+
+    private void transform(MethodNode method) {
+        int originalSize = codeSize(method.instructions);
+        if (originalSize <= MAX_INLINE_SIZE) {
+            return;
+        }
+        if (excluded.test(owner + "." + method.name)) {
+            skippedHot++;
+            return;
+        }
+        int limit = originalSize <= FREQ_INLINE_SIZE ? FREQ_INLINE_SIZE : HUGE_METHOD_LIMIT;
+        int allowed = Math.min(budget, limit - originalSize);
+
+        AbstractInsnNode[] nodes = method.instructions.toArray();
+        List<Integer> cuts = findCuts(method, nodes);
+        if (cuts == null || cuts.isEmpty()) {
+            return;
+        }
+        List<List<Object>> entryFrames = new ArrayList<>();
+        List<Integer> fitting = fit(method, nodes, cuts, entryFrames, allowed);
+        if (fitting.isEmpty()) {
+            skippedBudget++;
+            return;
+        }
+
+        rebuild(method, nodes, fitting, entryFrames);
+        int added = codeSize(method.instructions) - originalSize;
+        transformedMethods++;
+        addedBytes += added;
+    }
+
+    /**
+     * Точки разреза - номера узлов-инструкций, перед которыми стек пуст, все локальные
+     * переменные инициализированы и нет ни одного активного try-блока.
+     * null - метод не подходит (jsr/ret).
+     */
+    private List<Integer> findCuts(MethodNode method, AbstractInsnNode[] nodes) {
+        Set<LabelNode> tryStarts = new HashSet<>();
+        Set<LabelNode> tryEnds = new HashSet<>();
+        for (TryCatchBlockNode block : method.tryCatchBlocks) {
+            tryStarts.add(block.start);
+            tryEnds.add(block.end);
+        }
+        AnalyzerAdapter analyzer = new AnalyzerAdapter(owner, method.access, method.name, method.desc, null);
+        List<Integer> cuts = new ArrayList<>();
+        int activeTries = 0;
+        boolean tryBoundary = false;
+        boolean first = true;
+        int sinceCut = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            AbstractInsnNode node = nodes[i];
+            if (node instanceof LabelNode) {
+                // Один и тот же label может открывать один блок и закрывать другой
+                if (tryEnds.contains(node)) {
+                    activeTries -= count(method.tryCatchBlocks, (LabelNode) node, false);
+                    tryBoundary = true;
+                }
+                if (tryStarts.contains(node)) {
+                    activeTries += count(method.tryCatchBlocks, (LabelNode) node, true);
+                    tryBoundary = true;
+                }
+            }
+            int opcode = node.getOpcode();
+            if (opcode == Opcodes.JSR || opcode == Opcodes.RET) {
+                return null;
+            }
+            if (opcode >= 0) {
+                if (!first && activeTries == 0 && !tryBoundary && sinceCut >= MIN_SEGMENT
+                        && cleanState(analyzer)) {
+                    cuts.add(i);
+                    sinceCut = 0;
+                }
+                first = false;
+                tryBoundary = false;
+                sinceCut++;
+            }
+            node.accept(analyzer);
+        }
+        return cuts;
+    }
+
+    private static int count(List<TryCatchBlockNode> blocks, LabelNode label, boolean start) {
+        int count = 0;
+        for (TryCatchBlockNode block : blocks) {
+            if ((start ? block.start : block.end) == label) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean cleanState(AnalyzerAdapter analyzer) {
+        if (analyzer.locals == null || analyzer.stack == null || !analyzer.stack.isEmpty()) {
+            return false;
+        }
+        for (Object local : analyzer.locals) {
+            if (local instanceof Label || local == Opcodes.UNINITIALIZED_THIS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Оставляет столько точек разреза, сколько укладывается в разрешенный рост.
+     * entryFrames заполняется фреймами на входе в оставленные участки (с первого).
+     */
+    private List<Integer> fit(MethodNode method, AbstractInsnNode[] nodes, List<Integer> cuts,
+                              List<List<Object>> entryFrames, int allowed) {
+        // Фреймы в точках разреза: второй проход анализатора, только по нужным точкам
+        Map<Integer, List<Object>> frames = new HashMap<>();
+        AnalyzerAdapter analyzer = new AnalyzerAdapter(owner, method.access, method.name, method.desc, null);
+        Set<Integer> cutSet = new HashSet<>(cuts);
+        for (int i = 0; i < nodes.length; i++) {
+            if (cutSet.contains(i)) {
+                frames.put(i, frameLocals(analyzer.locals));
+            }
+            nodes[i].accept(analyzer);
+        }
+        List<Integer> fitting = new ArrayList<>(cuts);
+        while (!fitting.isEmpty() && estimate(fitting, frames) > allowed) {
+            fitting.remove(fitting.size() - 1);
+        }
+        for (int cut : fitting) {
+            entryFrames.add(frames.get(cut));
+        }
+        return fitting;
+    }
+
+    private static int estimate(List<Integer> cuts, Map<Integer, List<Object>> frames) {
+        Map<List<Object>, Integer> groups = new HashMap<>();
+        for (int cut : cuts) {
+            groups.merge(frames.get(cut), 1, Integer::sum);
+        }
+        int size = 0;
+        for (int members : groups.values()) {
+            size += members > 1
+                    ? DISPATCHER_SIZE + members * (8 + DISPATCH_JUMP_SIZE)
+                    : OPAQUE_JUMP_SIZE;
+        }
+        return size;
+    }
+
+    private void rebuild(MethodNode method, AbstractInsnNode[] nodes, List<Integer> cuts,
+                         List<List<Object>> entryFrames) {
+        Random random = new Random(seed * 31 + (owner + "." + method.name + method.desc).hashCode());
+        int count = cuts.size() + 1;
+
+        // Участок k начинается сразу за последней инструкцией участка k-1: метки, номера
+        // строк и фрейм перед точкой разреза уходят вместе с участком
+        int[] starts = new int[count + 1];
+        boolean[] hasFrame = new boolean[count];
+        for (int k = 1; k < count; k++) {
+            int start = cuts.get(k - 1);
+            while (nodes[start - 1].getOpcode() < 0) {
+                start--;
+                hasFrame[k] |= nodes[start] instanceof FrameNode;
+            }
+            starts[k] = start;
+        }
+        starts[count] = nodes.length;
+
+        // Группы участков с одинаковым фреймом на входе - кандидаты на диспетчер
+        Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int k = 1; k < count; k++) {
+            groups.computeIfAbsent(entryFrames.get(k - 1), frame -> new ArrayList<>()).add(k);
+        }
+        int stateVar = method.maxLocals;
+        boolean dispatched = false;
+        LabelNode[] entries = new LabelNode[count];
+        LabelNode[] dispatchers = new LabelNode[count];
+        int[] ids = new int[count];
+        Set<Integer> usedIds = new HashSet<>();
+        for (int k = 1; k < count; k++) {
+            entries[k] = new LabelNode();
+            int id;
+            do {
+                id = random.nextInt(Short.MAX_VALUE);
+            } while (!usedIds.add(id));
+            ids[k] = id;
+        }
+        for (List<Integer> members : groups.values()) {
+            if (members.size() > 1) {
+                LabelNode dispatcher = new LabelNode();
+                for (int k : members) {
+                    dispatchers[k] = dispatcher;
+                }
+                dispatched = true;
+            }
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int k = 1; k < count; k++) {
+            order.add(k);
+        }
+        Collections.shuffle(order, random);
+        order.add(0, 0);
+
+        // clear() оставляет узлам старые ссылки на соседей, remove() их сбрасывает
+        for (AbstractInsnNode node : nodes) {
+            method.instructions.remove(node);
+        }
+        InsnList code = new InsnList();
+        for (int k : order) {
+            if (k > 0) {
+                code.add(entries[k]);
+                if (!hasFrame[k]) {
+                    code.add(newFrame(entryFrames.get(k - 1), -1));
+                }
+            }
+            AbstractInsnNode last = null;
+            for (int i = starts[k]; i < starts[k + 1]; i++) {
+                code.add(nodes[i]);
+                if (nodes[i].getOpcode() >= 0) {
+                    last = nodes[i];
+                }
+            }
+            if (k + 1 < count && fallsThrough(last)) {
+                int next = k + 1;
+                if (dispatchers[next] != null) {
+                    code.add(pushInt(ids[next]));
+                    code.add(new VarInsnNode(Opcodes.ISTORE, stateVar));
+                    code.add(new JumpInsnNode(Opcodes.GOTO, dispatchers[next]));
+                } else {
+                    addOpaqueJump(code, entries[next]);
+                }
+            }
+        }
+        for (List<Integer> members : groups.values()) {
+            if (members.size() < 2) {
+                continue;
+            }
+            int[] keys = new int[members.size()];
+            LabelNode[] labels = new LabelNode[members.size()];
+            List<Integer> sorted = new ArrayList<>(members);
+            sorted.sort(Comparator.comparingInt(k -> ids[k]));
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = ids[sorted.get(i)];
+                labels[i] = entries[sorted.get(i)];
+            }
+            code.add(dispatchers[members.get(0)]);
+            code.add(newFrame(entryFrames.get(members.get(0) - 1), stateVar));
+            code.add(new VarInsnNode(Opcodes.ILOAD, stateVar));
+            code.add(new LookupSwitchInsnNode(labels[0], keys, labels));
+        }
+        method.instructions = code;
+
+        if (dispatched) {
+            method.maxLocals = stateVar + 1;
+        }
+        method.maxStack = Math.max(method.maxStack, 3);
+        method.localVariables = null;
+        method.visibleLocalVariableAnnotations = null;
+        method.invisibleLocalVariableAnnotations = null;
+    }
+
+    private void addOpaqueJump(InsnList code, LabelNode target) {
+        opaqueUsed = true;
+        code.add(new FieldInsnNode(Opcodes.GETSTATIC, owner, OPAQUE, "I"));
+        code.add(new InsnNode(Opcodes.DUP));
+        code.add(new InsnNode(Opcodes.DUP));
+        code.add(new InsnNode(Opcodes.IMUL));
+        code.add(new InsnNode(Opcodes.IADD));
+        code.add(new InsnNode(Opcodes.ICONST_1));
+        code.add(new InsnNode(Opcodes.IAND));
+        code.add(new JumpInsnNode(Opcodes.IFEQ, target));
+        code.add(new InsnNode(Opcodes.ACONST_NULL));
+        code.add(new InsnNode(Opcodes.ATHROW));
+    }
+
+    private static boolean fallsThrough(AbstractInsnNode last) {
+        if (last == null) {
+            return true;
+        }
+        int opcode = last.getOpcode();
+        return !(opcode == Opcodes.GOTO || opcode == Opcodes.ATHROW
+                || (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+                || last instanceof TableSwitchInsnNode || last instanceof LookupSwitchInsnNode);
+    }
+
+    private static AbstractInsnNode pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            return new InsnNode(Opcodes.ICONST_0 + value);
+        }
+        return new IntInsnNode(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE
+                ? Opcodes.BIPUSH : Opcodes.SIPUSH, value);
+    }
+
+    /**
+     * Локальные переменные AnalyzerAdapter (long и double занимают две ячейки, вторая TOP)
+     * в виде для F_NEW: одна запись на long/double, хвостовые TOP отброшены.
+     */
+    private static List<Object> frameLocals(List<Object> slots) {
+        List<Object> locals = new ArrayList<>();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            Object type = slots.get(slot);
+            locals.add(type);
+            if (type == Opcodes.LONG || type == Opcodes.DOUBLE) {
+                slot++;
+            }
+        }
+        while (!locals.isEmpty() && locals.get(locals.size() - 1) == Opcodes.TOP) {
+            locals.remove(locals.size() - 1);
+        }
+        return locals;
+    }
+
+    /** Фрейм с пустым стеком; stateVar >= 0 - добавить int в эту переменную. */
+    private static FrameNode newFrame(List<Object> locals, int stateVar) {
+        List<Object> frame = new ArrayList<>(locals);
+        if (stateVar >= 0) {
+            int slots = 0;
+            for (Object type : frame) {
+                slots += type == Opcodes.LONG || type == Opcodes.DOUBLE ? 2 : 1;
+            }
+            for (; slots < stateVar; slots++) {
+                frame.add(Opcodes.TOP);
+            }
+            frame.add(Opcodes.INTEGER);
+        }
+        return new FrameNode(Opcodes.F_NEW, frame.size(), frame.toArray(), 0, new Object[0]);
+    }
+
+    /** Оценка сверху размера кода: ldc считается ldc_w, switch - с полным выравниванием. */
+    static int codeSize(InsnList instructions) {
+        int size = 0;
+        for (AbstractInsnNode node : instructions) {
+            size += insnSize(node);
+        }
+        return size;
+    }
+
+    private static int insnSize(AbstractInsnNode node) {
+        int opcode = node.getOpcode();
+        if (opcode < 0) {
+            return 0;
+        }
+        switch (node.getType()) {
+            case AbstractInsnNode.INT_INSN:
+                return opcode == Opcodes.SIPUSH ? 3 : 2;
+            case AbstractInsnNode.VAR_INSN: {
+                int var = ((VarInsnNode) node).var;
+                return var < 4 && opcode != Opcodes.RET ? 1 : var < 256 ? 2 : 4;
+            }
+            case AbstractInsnNode.IINC_INSN: {
+                IincInsnNode iinc = (IincInsnNode) node;
+                return iinc.var < 256 && iinc.incr >= Byte.MIN_VALUE && iinc.incr <= Byte.MAX_VALUE ? 3 : 6;
+            }
+            case AbstractInsnNode.TYPE_INSN:
+            case AbstractInsnNode.FIELD_INSN:
+            case AbstractInsnNode.JUMP_INSN:
+            case AbstractInsnNode.LDC_INSN:
+                return 3;
+            case AbstractInsnNode.METHOD_INSN:
+                return opcode == Opcodes.INVOKEINTERFACE ? 5 : 3;
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                return 5;
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                return 4;
+            case AbstractInsnNode.TABLESWITCH_INSN:
+                return 16 + 4 * ((TableSwitchInsnNode) node).labels.size();
+            case AbstractInsnNode.LOOKUPSWITCH_INSN:
+                return 12 + 8 * ((LookupSwitchInsnNode) node).labels.size();
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package obf.swag;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Обработка без временных файлов (режим по умолчанию): классы читаются прямо из JarFile
+ * и держатся в памяти, остальные записи копируются из исходного JAR в выходной поток
+ * при записи.
+ */
+final class InMemoryPipeline {
+    private final JarObfuscator obfuscator;
+    private final PrintStream log;
+
+    InMemoryPipeline(JarObfuscator obfuscator) {
+        this.obfuscator = obfuscator;
+        this.log = obfuscator.getLog();
+    }
+
+    void run(Path originalPath, Path outputPath) throws IOException {
+        RunStats stats = obfuscator.getStats();
+        try (JarFile jarFile = new JarFile(originalPath.toFile());
+             ParallelEngine engine = new ParallelEngine(obfuscator.getThreads())) {
+            obfuscator.useEngine(engine);
+
+            log.println("Чтение JAR...");
+            List<JarObfuscator.ClassEntry> classes = stats.phase("readJar", () -> {
+                List<JarObfuscator.ClassEntry> entries = obfuscator.readClassEntries(jarFile);
+                obfuscator.readOriginalManifest(jarFile);
+                return entries;
+            });
+
+            log.println("Сбор информации о классах...");
+            stats.phase("collectClassInfo", () -> obfuscator.collectClassInfo(classes));
+
+            obfuscator.prepareMappings();
+
+            log.println("Обфускация байткода...");
+            stats.phase("transform", () -> obfuscateAllClasses(classes, engine));
+
+            log.println("Создание нового JAR...");
+            stats.phase("writeJar", () -> writeJar(jarFile, classes, outputPath));
+
+            log.println("Результат сохранен в: " + outputPath);
+
+        } finally {
+            obfuscator.useEngine(null);
+        }
+    }
+
+    private void obfuscateAllClasses(List<JarObfuscator.ClassEntry> classes, ParallelEngine engine)
+            throws IOException {
+        // Классы вложенных JAR нужны были только для анализа, переписываются при записи
+        classes.removeIf(entry -> entry.container != null || obfuscator.isShrunkClass(entry.className));
+        log.println("Найдено классов для обфускации: " + classes.size()
+                + " (потоков: " + engine.getThreads() + ")");
+
+        engine.forEach(classes, entry -> {
+            entry.data = obfuscator.transformClass(entry.data);
+            return null;
+        });
+    }
+
+    /**
+     * Пишет выходной JAR в порядке {@link JarWriter#OUTPUT_ORDER} (с --load-order классы
+     * трассы идут первыми): классы - из памяти под новыми именами, остальные файлы - из
+     * исходного JAR.
+     */
+    void writeJar(JarFile jarFile, List<JarObfuscator.ClassEntry> classes, Path outputPath) throws IOException {
+        Map<String, JarObfuscator.ClassEntry> classesByEntry = new HashMap<>();
+        for (JarObfuscator.ClassEntry entry : classes) {
+            classesByEntry.put(entry.entryName, entry);
+        }
+
+        try (JarWriter writer = obfuscator.newJarWriter(Files.newOutputStream(outputPath))) {
+            for (JarObfuscator.OutputEntry output : obfuscator.outputEntries(jarFile)) {
+                JarEntry entry = output.source;
+                if (entry.isDirectory()) {
+                    writer.add(output.name, new byte[0], ZipEntry.STORED);
+                    continue;
+                }
+                JarObfuscator.ClassEntry classEntry = classesByEntry.get(entry.getName());
+                if (classEntry == null && output.isClass()
+                        && obfuscator.isShrunkClass(JarObfuscator.classNameOf(output.sourceName))) {
+                    continue;
+                }
+                if (classEntry != null) {
+                    obfuscator.writeClassEntry(writer, classEntry);
+                } else if (obfuscator.isNestedJar(output.sourceName)) {
+                    obfuscator.writeNestedJar(jarFile, entry, output.name, writer);
+                } else {
+                    obfuscator.copyEntry(jarFile, entry, output.name, writer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package obf.swag;
+
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш инкрементальной обфускации.
+ *
+ * В директории кэша хранятся маппинги прошлого запуска (mapping.bin) и пакет
+ * переписанных классов (classes.bin). Запись пакета - это хэш исходных байтов,
+ * результат переписывания и список запросов к Remapper с полученными ответами.
+ * Переписывание детерминировано, поэтому если байты класса не изменились и все
+ * записанные запросы сейчас дают те же ответы, результат можно взять из кэша.
+ */
+final class IncrementalCache {
+    private static final String MAPPING_FILE = "mapping.bin";
+    private static final String CLASSES_FILE = "classes.bin";
+    private static final int CLASSES_MAGIC = 0x4F424643; // "OBFC"
+    private static final int CLASSES_VERSION = 2;
+
+    private static final byte DEP_CLASS = 0;
+    private static final byte DEP_FIELD = 1;
+    private static final byte DEP_METHOD = 2;
+    // Имя метода лямбды: в поле owner хранится имя, в descriptor - дескриптор invokedynamic
+    private static final byte DEP_INDY = 3;
+
+    // null - кэш только в памяти (сервер)
+    private final Path directory;
+    private MappingSet previousMappings = new MappingSet();
+    private final Map<String, CachedClass> previousEntries = new HashMap<>();
+    private final Map<String, CachedClass> currentEntries = new ConcurrentHashMap<>();
+
+    private IncrementalCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Открывает кэш в директории. Отсутствующие или поврежденные файлы означают пустой кэш.
+     */
+    static IncrementalCache open(Path directory) throws IOException {
+        IncrementalCache cache = new IncrementalCache(directory);
+        Files.createDirectories(directory);
+        try {
+            Path mappingFile = directory.resolve(MAPPING_FILE);
+            if (Files.exists(mappingFile)) {
+                cache.previousMappings = MappingSet.read(mappingFile);
+            }
+            cache.loadEntries(directory.resolve(CLASSES_FILE));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Кэш поврежден и будет пересоздан: " + e.getMessage());
+            cache.previousMappings = new MappingSet();
+            cache.previousEntries.clear();
+        }
+        return cache;
+    }
+
+    /** Кэш без директории: живет, пока жив объект, save() только переключает запуск. */
+    static IncrementalCache inMemory() {
+        return new IncrementalCache(null);
+    }
+
+    /** Маппинги прошлого запуска: эти имена переиспользуются для неизменившихся символов. */
+    MappingSet previousMappings() {
+        return previousMappings;
+    }
+
+    int previousEntryCount() {
+        return previousEntries.size();
+    }
+
+    /** Размер переписанных классов прошлого запуска в байтах. */
+    long cachedBytes() {
+        long bytes = 0;
+        for (CachedClass cached : previousEntries.values()) {
+            bytes += cached.output.length;
+        }
+        return bytes;
+    }
+
+    static String hash(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(data);
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Возвращает переписанные байты, если класс с таким хэшем уже обрабатывался
+     * и все его зависимости от маппингов не изменились.
+     */
+    byte[] lookup(String hash, Remapper remapper) {
+        CachedClass cached = currentEntries.get(hash);
+        if (cached == null) {
+            cached = previousEntries.get(hash);
+        }
+        if (cached == null || !cached.isValid(remapper)) {
+            return null;
+        }
+        currentEntries.put(hash, cached);
+        return cached.output;
+    }
+
+    void store(String hash, RecordingRemapper recorder, byte[] output) {
+        currentEntries.put(hash, recorder.toCachedClass(output));
+    }
+
+    /**
+     * Сохраняет маппинги текущего запуска и записи кэша, использованные в нем.
+     * Записи классов, которых больше нет в JAR, удаляются. После сохранения
+     * текущий запуск становится прошлым, объект можно использовать для следующего.
+     */
+    void save(MappingSet mappings) throws IOException {
+        if (directory != null) {
+            write(mappings);
+        }
+        previousMappings = mappings;
+        previousEntries.clear();
+        previousEntries.putAll(currentEntries);
+        currentEntries.clear();
+    }
+
+    private void write(MappingSet mappings) throws IOException {
+        writeAtomically(directory.resolve(MAPPING_FILE), out -> {
+            OutputStream buffered = new BufferedOutputStream(out);
+            mappings.writeBinary(buffered);
+            buffered.flush();
+        });
+
+        writeAtomically(directory.resolve(CLASSES_FILE), out -> {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(CLASSES_MAGIC);
+            data.writeInt(CLASSES_VERSION);
+            List<String> hashes = new ArrayList<>(currentEntries.keySet());
+            Collections.sort(hashes);
+            data.writeInt(hashes.size());
+            for (String hash : hashes) {
+                data.writeUTF(hash);
+                currentEntries.get(hash).write(data);
+            }
+            data.flush();
+        });
+    }
+
+    private void loadEntries(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CLASSES_MAGIC || in.readInt() != CLASSES_VERSION) {
+                throw new IOException("неизвестный формат " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String hash = in.readUTF();
+                previousEntries.put(hash, CachedClass.read(in));
+            }
+        }
+    }
+
+    private interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static void writeAtomically(Path target, StreamWriter writer) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            writer.write(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Обертка над индексом переименований, которая запоминает все запросы
+     * одного класса и ответы на них. Создается отдельно для каждого класса.
+     */
+    static final class RecordingRemapper extends Remapper {
+        private final Remapper delegate;
+        private final Map<String, Dependency> dependencies = new LinkedHashMap<>();
+
+        RecordingRemapper(Remapper delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String map(String internalName) {
+            String mapped = delegate.map(internalName);
+            record(DEP_CLASS, internalName, null, null, mapped);
+            return mapped;
+        }
+
+        @Override
+        public String mapFieldName(String owner, String name, String descriptor) {
+            String mapped = delegate.mapFieldName(owner, name, descriptor);
+            record(DEP_FIELD, owner, name, descriptor, mapped);
+            return mapped;
+        }
+
+        @Override
+        public String mapMethodName(String owner, String name, String descriptor) {
+            String mapped = delegate.mapMethodName(owner, name, descriptor);
+            record(DEP_METHOD, owner, name, descriptor, mapped);
+            return mapped;
+        }
+
+        @Override
+        public String mapInvokeDynamicMethodName(String name, String descriptor) {
+            String mapped = delegate.mapInvokeDynamicMethodName(name, descriptor);
+            record(DEP_INDY, name, null, descriptor, mapped);
+            return mapped;
+        }
+
+        private void record(byte kind, String owner, String name, String descriptor, String answer) {
+            String key = kind + owner + '\u0000' + name + '\u0000' + descriptor;
+            dependencies.putIfAbsent(key, new Dependency(kind, owner, name, descriptor, answer));
+        }
+
+        CachedClass toCachedClass(byte[] output) {
+            return new CachedClass(dependencies.values().toArray(new Dependency[0]), output);
+        }
+    }
+
+    private static final class Dependency {
+        final byte kind;
+        final String owner;
+        final String name;
+        final String descriptor;
+        final String answer;
+
+        Dependency(byte kind, String owner, String name, String descriptor, String answer) {
+            this.kind = kind;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.answer = answer;
+        }
+
+        boolean isValid(Remapper remapper) {
+            String current;
+            switch (kind) {
+                case DEP_CLASS:
+                    current = remapper.map(owner);
+                    break;
+                case DEP_FIELD:
+                    current = remapper.mapFieldName(owner, name, descriptor);
+                    break;
+                case DEP_INDY:
+                    current = remapper.mapInvokeDynamicMethodName(owner, descriptor);
+                    break;
+                default:
+                    current = remapper.mapMethodName(owner, name, descriptor);
+                    break;
+            }
+            return Objects.equals(current, answer);
+        }
+    }
+
+    private static final class CachedClass {
+        private final Dependency[] dependencies;
+        private final byte[] output;
+
+        CachedClass(Dependency[] dependencies, byte[] output) {
+            this.dependencies = dependencies;
+            this.output = output;
+        }
+
+        boolean isValid(Remapper remapper) {
+            for (Dependency dependency : dependencies) {
+                if (!dependency.isValid(remapper)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(dependencies.length);
+            for (Dependency dependency : dependencies) {
+                out.writeByte(dependency.kind);
+                out.writeUTF(dependency.owner);
+                writeNullable(out, dependency.name);
+                writeNullable(out, dependency.descriptor);
+                writeNullable(out, dependency.answer);
+            }
+            out.writeInt(output.length);
+            out.write(output);
+        }
+
+        static CachedClass read(DataInputStream in) throws IOException {
+            Dependency[] dependencies = new Dependency[in.readInt()];
+            for (int i = 0; i < dependencies.length; i++) {
+                byte kind = in.readByte();
+                String owner = in.readUTF();
+                String name = readNullable(in);
+                String descriptor = readNullable(in);
+                String answer = readNullable(in);
+                dependencies[i] = new Dependency(kind, owner, name, descriptor, answer);
+            }
+            byte[] output = new byte[in.readInt()];
+            in.readFully(output);
+            return new CachedClass(dependencies, output);
+        }
+
+        private static void writeNullable(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
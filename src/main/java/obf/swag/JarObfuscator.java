@@ -2,51 +2,304 @@ package obf.swag;
 
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.ClassRemapper;
-import org.objectweb.asm.commons.SimpleRemapper;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.jar.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 public class JarObfuscator {
-    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789";
-    private static final int CLASS_NAME_LENGTH = 10;
-    private static final int FIELD_NAME_LENGTH = 8;
-    private static final int METHOD_NAME_LENGTH = 8;
+    // Порция классов в режиме --low-memory (по несжатому размеру)
+    static final long STREAM_CHUNK_BYTES = 4L << 20;
+    // Корни классов внутри JAR: Spring Boot и WAR
+    private static final List<String> CLASS_ROOTS = List.of("BOOT-INF/classes/", "WEB-INF/classes/");
+    private static final Set<String> SERIALIZATION_FIELDS = Set.of("serialVersionUID", "serialPersistentFields");
+    private static final Set<String> SERIALIZATION_METHODS = Set.of(
+            "writeObject(Ljava/io/ObjectOutputStream;)V",
+            "readObject(Ljava/io/ObjectInputStream;)V",
+            "readObjectNoData()V",
+            "writeReplace()Ljava/lang/Object;",
+            "readResolve()Ljava/lang/Object;");
 
     private String mainClassName = null;
+    private String originalMainClass = null;
     private String obfuscatedMainClassName = null;
     private boolean originalManifestPresent = false;
     private String rsrcMainClass = null;
     private String rsrcClassPath = null;
     private String obfuscatedRsrcMainClass = null;
-
-    private final Random random = new Random();
-    private final Map<String, String> classMappings = new HashMap<>();
-    private final Map<String, String> fieldMappings = new HashMap<>();
-    private final Map<String, String> methodMappings = new HashMap<>();
-    private final Set<String> usedNames = new HashSet<>();
+    // Остальные атрибуты исходного манифеста и Start-Class загрузчика Spring Boot
+    private Attributes originalAttributes = null;
+    private String startClass = null;
+    private String obfuscatedStartClass = null;
+
+    private Map<String, String> classMappings = new HashMap<>();
+    private Map<String, String> fieldMappings = new HashMap<>();
+    private Map<String, String> methodMappings = new HashMap<>();
+    // Режим генерации имен ("random" или "short") и seed для воспроизводимого результата
+    private String namingMode = "random";
+    private Long seed = null;
+    private NameGenerator nameGenerator;
+    // Пакетный режим: доля имен классов этой группы JAR и исходные имена классов всего пакета
+    private int namePartition = 0;
+    private int namePartitions = 1;
+    private Set<String> batchClassNames = Collections.emptySet();
+    // Число ссылок на классы ("owner"), поля ("owner.name") и методы ("owner.name(desc)"):
+    // счетчик по номеру символа в referenceKeys
+    private SymbolTable referenceKeys = new SymbolTable();
+    private int[] referenceCounts = new int[1024];
+    // Заголовки и члены классов JAR в порядке чтения
+    private Map<String, ClassMetadata> classMetadata = new LinkedHashMap<>();
+    // Библиотеки (JAR и директории), которые задают иерархию, но не обфусцируются
+    private List<Path> libraryPaths = new ArrayList<>();
+    // Общий для нескольких запусков кэш библиотечных классов (пакетный режим), иначе открывается свой
+    private LibraryClassPath sharedLibraries;
+    // Граф наследования, строится перед generateMappings()
+    private ClassHierarchy hierarchy;
+    // Удаление недостижимого кода: правила --keep, ссылки классов и провайдеры ServiceLoader
+    private boolean shrink = false;
+    private final List<Pattern> keepRules = new ArrayList<>();
+    private final Map<String, Shrinker.ClassUsage> classUsages = new HashMap<>();
+    private final Set<String> serviceClasses = new HashSet<>();
+    private Shrinker.Result shrinkResult;
+    // Группы переопределения, в которых есть метод, сохраняющий имя
+    private final Set<Integer> keptMethodGroups = new HashSet<>();
+    // Методы функциональных интерфейсов, реализуемые лямбдами: "owner.name" -> "(desc)"
+    private final Map<String, String> lambdaDescriptors = new HashMap<>();
+    // Лямбды, для которых дескриптор неоднозначен (перегрузки, мосты) - имена таких методов не меняются
+    private final Set<String> ambiguousLambdas = new HashSet<>();
+    // Индекс переименований, строится один раз после generateMappings()
+    private MappingRemapper remapper;
+    // Количество потоков для анализа и переписывания классов
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ParallelEngine engine;
+    // Старый режим: распаковка во временную директорию вместо обработки в памяти
+    private boolean useTempDir = false;
+    // Директория кэша инкрементальной обфускации (null - инкрементальный режим выключен)
+    private Path cacheDir = null;
+    private IncrementalCache cache;
+    // Измерения запуска: этапы, счетчики, время переписывания классов
+    private RunStats stats = new RunStats("");
+    private Path reportPath = null;
+    private boolean jmx = false;
+    // Без вывода строки на каждый переименованный символ и файл
+    private boolean quiet = false;
+    // Вывод хода работы; пакетный режим собирает вывод каждого JAR отдельно
+    private PrintStream log = System.out;
+    // Старый режим: каждый класс переписывается с развернутыми фреймами и пересчетом max_stack/max_locals
+    private boolean fullRewrite = false;
+    private ReferenceScanner referenceScanner;
+    // Файлы маппингов для импорта и экспорта (ProGuard mapping.txt или двоичный .bin)
+    private Path mappingInput = null;
+    private Path mappingOutput = null;
+    // Готовые имена (из импортированного файла или кэша), генерация для них не выполняется
+    private MappingSet appliedMappings;
+    private MappingSet resultMappings;
+    // Дескрипторы полей по ключу fieldMappings, нужны для экспорта маппингов
+    private Map<String, String> fieldDescriptors = new HashMap<>();
+    // Экономия памяти: символы маппингов в общей таблице, классы читаются и пишутся
+    // порциями прямо из JAR, данные анализа освобождаются после построения индекса
+    private boolean lowMemory = false;
+    private SymbolTable symbols;
+    // Классы вложенных JAR (BOOT-INF/lib, jar-in-jar) обфусцируются вместе с основными
+    private boolean nestedJars = false;
+    // Шифрование строковых констант с ленивой расшифровкой
+    private boolean encryptStrings = false;
+    // Запутывание потока управления: рост кода метода не больше flowBudget байт,
+    // методы из профиля (flowProfile) не меняются
+    private boolean flowObfuscation = false;
+    private int flowBudget = 256;
+    private Path flowProfile = null;
+    // Методы из профиля в новых именах: "владелец.имя"
+    private Set<String> flowExcluded = Collections.emptySet();
+    // Уровень deflate или STORED по расширению записи, "*" - остальные записи
+    private Map<String, Integer> compressionLevels = new HashMap<>();
+    // Трасса загрузки классов: порядок записей JAR и список классов для CDS
+    private Path loadOrderTrace = null;
+    private LoadOrder loadOrder;
+    private Comparator<String> entryOrder = JarWriter.OUTPUT_ORDER;
+    // Имена переименованных классов в текстовых ресурсах и строковых константах
+    private boolean rewriteResources = true;
+    private ResourceRewriter resourceRewriter;
+    // Проверка выходного JAR и классы, которые не удалось переписать (имя -> ошибка)
+    private boolean verify = true;
+    private final Map<String, String> failedClasses = new ConcurrentHashMap<>();
+    private long verificationErrors = 0;
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Использование: java -jar obfuscator.jar <путь_к_jar_файлу>");
-            System.out.println("Пример: java -jar obfuscator.jar myapp.jar");
-            return;
+        CommandLine.run(args);
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть больше 0: " + threads);
         }
+        this.threads = threads;
+    }
 
-        String jarPath = args[0];
-        JarObfuscator obfuscator = new JarObfuscator();
+    public void setUseTempDir(boolean useTempDir) {
+        this.useTempDir = useTempDir;
+    }
 
-        try {
-            System.out.println("Начало обфускации: " + jarPath);
-            obfuscator.obfuscateJar(jarPath);
-            System.out.println("Обфускация завершена успешно!");
-        } catch (Exception e) {
-            System.err.println("Ошибка при обфускации: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Классы вложенных *.jar (на любой глубине) участвуют в анализе и переименовании,
+     * сами вложенные JAR пересобираются с прежним методом сжатия записей.
+     * Не поддерживается вместе с --temp-dir.
+     */
+    public void setNestedJars(boolean nestedJars) {
+        this.nestedJars = nestedJars;
+    }
+
+    /** Строковые константы классов шифруются, см. {@link StringEncryptor}. */
+    public void setEncryptStrings(boolean encryptStrings) {
+        this.encryptStrings = encryptStrings;
+    }
+
+    /**
+     * Имена переименованных классов меняются и в текстовых ресурсах ({@link ResourceRewriter}),
+     * и в строковых константах вида "com.example.Impl" ({@link ClassStringRemapper}).
+     * Включено по умолчанию.
+     */
+    public void setRewriteResources(boolean rewriteResources) {
+        this.rewriteResources = rewriteResources;
+    }
+
+    /**
+     * Выходной JAR проверяется ({@link ClassVerifier}), ошибки прерывают запуск с
+     * {@link VerificationException}. Включено по умолчанию.
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /** Поток управления методов запутывается, см. {@link FlowObfuscator}. */
+    public void setFlowObfuscation(boolean flowObfuscation) {
+        this.flowObfuscation = flowObfuscation;
+    }
+
+    /** Сколько байт кода --flow может добавить одному методу. */
+    public void setFlowBudget(int flowBudget) {
+        if (flowBudget < 0) {
+            throw new IllegalArgumentException("Бюджет --flow не может быть отрицательным: " + flowBudget);
         }
+        this.flowBudget = flowBudget;
+    }
+
+    /**
+     * Профиль горячих методов: текст, в каждой строке первое вхождение пакет.Класс.метод
+     * (вывод jfr print --events jdk.ExecutionSample, список из профилировщика).
+     * Строки с # - комментарии. Исключаются все перегрузки метода.
+     */
+    public void setFlowProfile(Path flowProfile) {
+        this.flowProfile = flowProfile;
+    }
+
+    /**
+     * Трасса загрузки классов при старте (-Xlog:class+load, -verbose:class или список
+     * классов CDS): классы пишутся в JAR в порядке загрузки, рядом с JAR сохраняется
+     * список классов с новыми именами для -XX:SharedClassListFile.
+     */
+    public void setLoadOrderTrace(Path loadOrderTrace) {
+        this.loadOrderTrace = loadOrderTrace;
+    }
+
+    /**
+     * Сжатие записей выходного JAR, см. {@link JarWriter#parseLevels}:
+     * "9", "stored" или правила по расширению "class=9,jar=stored,*=6".
+     */
+    public void setCompression(String rules) {
+        this.compressionLevels = JarWriter.parseLevels(rules);
+    }
+
+    /**
+     * Режим для больших JAR: маппинги хранятся в {@link SymbolMap} поверх одной таблицы
+     * символов, байты классов не держатся в памяти. Включается до запуска.
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+        if (lowMemory) {
+            symbols = new SymbolTable();
+            classMappings = new SymbolMap(symbols);
+            fieldMappings = new SymbolMap(symbols);
+            methodMappings = new SymbolMap(symbols);
+            fieldDescriptors = new SymbolMap(symbols);
+        } else {
+            symbols = null;
+            classMappings = new HashMap<>();
+            fieldMappings = new HashMap<>();
+            methodMappings = new HashMap<>();
+            fieldDescriptors = new HashMap<>();
+        }
+    }
+
+    public void setIncrementalCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public void setNamingMode(String namingMode) {
+        NameGenerator.create(namingMode, null);
+        this.namingMode = namingMode;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setMappingInput(Path mappingInput) {
+        this.mappingInput = mappingInput;
+    }
+
+    public void setMappingOutput(Path mappingOutput) {
+        this.mappingOutput = mappingOutput;
+    }
+
+    public void setShrink(boolean shrink) {
+        this.shrink = shrink;
+    }
+
+    public void addKeepRule(String rule) {
+        if (!rule.isEmpty()) {
+            keepRules.add(Shrinker.compileKeepRule(rule));
+        }
+    }
+
+    public void setReportPath(Path reportPath) {
+        this.reportPath = reportPath;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Прежний путь переписывания: копия исходного пула констант, развернутые фреймы,
+     * пересчет max_stack/max_locals, без копирования нетронутых классов.
+     */
+    public void setFullRewrite(boolean fullRewrite) {
+        this.fullRewrite = fullRewrite;
+    }
+
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    List<Path> getLibraries() {
+        return libraryPaths;
+    }
+
+    public void setLibraries(List<Path> libraryPaths) {
+        this.libraryPaths = new ArrayList<>(libraryPaths);
     }
 
     public void obfuscateJar(String jarPath) throws IOException {
@@ -55,60 +308,311 @@ public class JarObfuscator {
             throw new FileNotFoundException("JAR файл не найден: " + jarPath);
         }
 
-        Path tempDir = Files.createTempDirectory("jar_obfuscate");
         Path outputPath = getOutputPath(originalPath);
 
+        stats = new RunStats(originalPath.toString());
+        if (jmx) {
+            stats.registerMBean();
+        }
         try {
-            System.out.println("Распаковка JAR...");
-            extractJar(originalPath, tempDir);
+            runPipeline(originalPath, outputPath);
+        } finally {
+            stats.unregisterMBean();
+        }
 
-            System.out.println("Чтение манифеста...");
-            readOriginalManifest(tempDir);
+        stats.printSummary(log);
+        if (reportPath != null) {
+            stats.writeReport(reportPath);
+            log.println("Отчет сохранен в: " + reportPath);
+        }
+        if (verificationErrors > 0) {
+            throw new VerificationException(outputPath, verificationErrors);
+        }
+    }
 
-            System.out.println("Сбор информации о классах...");
-            collectClassInfo(tempDir);
+    private void runPipeline(Path originalPath, Path outputPath) throws IOException {
+        stats.add("jar.bytesIn", Files.size(originalPath));
+        failedClasses.clear();
+        verificationErrors = 0;
+
+        if (mappingInput != null) {
+            stats.phase("loadMappings", () -> {
+                log.println("Загрузка маппингов: " + mappingInput);
+                appliedMappings = MappingSet.read(mappingInput);
+                log.println("Загружено классов: " + appliedMappings.size());
+            });
+        }
 
-            System.out.println("Генерация новых имен...");
-            generateMappings();
+        if (cache == null && cacheDir != null) {
+            stats.phase("loadCache", () -> {
+                log.println("Загрузка кэша: " + cacheDir);
+                cache = IncrementalCache.open(cacheDir);
+            });
+        }
+        if (cache != null) {
+            log.println("Классов в кэше: " + cache.previousEntryCount());
+            // Импортированные маппинги важнее маппингов прошлого запуска
+            if (appliedMappings == null) {
+                appliedMappings = cache.previousMappings();
+            }
+        }
 
-            // Обновляем Rsrc-Main-Class после генерации маппингов
-            updateRsrcMainClass();
+        if (useTempDir) {
+            if (nestedJars) {
+                log.println("--nested-jars не поддерживается с --temp-dir, вложенные JAR копируются как есть");
+            }
+            new TempDirPipeline(this).run(originalPath, outputPath);
+        } else if (lowMemory) {
+            new StreamingPipeline(this).run(originalPath, outputPath);
+        } else {
+            new InMemoryPipeline(this).run(originalPath, outputPath);
+        }
+        stats.add("jar.bytesOut", Files.size(outputPath));
+        if (resourceRewriter != null) {
+            stats.add("resources.names", resourceRewriter.replacedNames());
+        }
+        if (verify) {
+            stats.phase("verify", () -> verifyOutput(originalPath, outputPath));
+        }
 
-            System.out.println("Обфускация байткода...");
-            obfuscateAllClasses(tempDir);
+        if (loadOrder != null) {
+            Path classList = classListPath(outputPath);
+            loadOrder.writeClassList(classList);
+            log.println("Список классов для CDS сохранен в: " + classList);
+        }
 
-            System.out.println("Создание нового JAR...");
-            createJar(tempDir, outputPath);
+        resultMappings = MappingSet.fromMappings(
+                classMappings, fieldMappings, methodMappings, fieldDescriptors);
 
-            System.out.println("Результат сохранен в: " + outputPath);
+        if (mappingOutput != null) {
+            stats.phase("saveMappings", () -> resultMappings.write(mappingOutput));
+            log.println("Маппинги сохранены в: " + mappingOutput);
+        }
 
-        } finally {
-            System.out.println("Очистка временных файлов...");
-            deleteDirectory(tempDir);
+        if (cache != null && verificationErrors > 0) {
+            log.println("Кэш не сохранен: выходной JAR не прошел проверку");
+        } else if (cache != null) {
+            log.println("Взято из кэша классов: " + stats.get("cache.hits"));
+            stats.phase("saveCache", () -> cache.save(resultMappings));
         }
     }
 
-    private void readOriginalManifest(Path tempDir) throws IOException {
-        Path manifestPath = tempDir.resolve("META-INF/MANIFEST.MF");
-        if (Files.exists(manifestPath)) {
-            try (InputStream is = Files.newInputStream(manifestPath)) {
-                Manifest manifest = new Manifest(is);
-                Attributes attrs = manifest.getMainAttributes();
+    void prepareMappings() throws IOException {
+        preferManifestMainClass();
+        stats.add("classes", classMetadata.size());
+        stats.add("fields", fieldMappings.size());
+        stats.add("methods", methodMappings.size());
 
-                rsrcMainClass = attrs.getValue("Rsrc-Main-Class");
-                rsrcClassPath = attrs.getValue("Rsrc-Class-Path");
+        stats.phase("buildHierarchy", () -> buildHierarchy());
 
-                if (rsrcMainClass != null) {
-                    System.out.println("Найден Rsrc-Main-Class: " + rsrcMainClass);
-                }
+        if (shrink) {
+            log.println("Удаление недостижимого кода...");
+            stats.phase("shrink", () -> shrinkClasses());
+        }
 
-                if (rsrcClassPath != null) {
-                    System.out.println("Найден Rsrc-Class-Path: " + rsrcClassPath);
-                }
+        log.println("Генерация новых имен...");
+        stats.phase("generateMappings", () -> generateMappings());
+        stats.phase("buildRemapper", () -> buildRemapper());
+
+        // Обновляем Rsrc-Main-Class после генерации маппингов
+        updateRsrcMainClass();
+
+        if (flowObfuscation && flowProfile != null) {
+            flowExcluded = excludedFlowMethods(readHotMethods(flowProfile));
+            log.println("Горячих методов в профиле --flow: " + flowExcluded.size());
+        }
+        if (loadOrderTrace != null) {
+            loadOrder = LoadOrder.read(loadOrderTrace)
+                    .renamed(name -> isShrunkClass(name) ? null : newClassName(name));
+            entryOrder = loadOrder.entryOrder();
+            stats.add("loadOrder.classes", loadOrder.size());
+            log.println("Классов в трассе загрузки: " + loadOrder.size());
+        }
+    }
+
+    private static final Pattern HOT_METHOD = Pattern.compile(
+            "([A-Za-z_$][\\w$]*(?:[./][A-Za-z_$][\\w$]*)*)[.#]([\\w$]+|<init>|<clinit>)\\s*(?:\\(|$|\\s)");
+
+    /** Методы профиля в исходных именах: "пакет/Класс.метод". */
+    static Set<String> readHotMethods(Path profile) throws IOException {
+        Set<String> methods = new HashSet<>();
+        for (String line : Files.readAllLines(profile, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = HOT_METHOD.matcher(line);
+            if (matcher.find()) {
+                methods.add(matcher.group(1).replace('.', '/') + "." + matcher.group(2));
+            }
+        }
+        return methods;
+    }
+
+    /** Переводит методы профиля в новые имена классов и методов. */
+    private Set<String> excludedFlowMethods(Set<String> hotMethods) {
+        Set<String> excluded = new HashSet<>();
+        for (String hot : hotMethods) {
+            int dot = hot.lastIndexOf('.');
+            // Имя метода могло сохраниться, а класс - переименоваться
+            excluded.add(newClassName(hot.substring(0, dot)) + hot.substring(dot));
+        }
+        for (Map.Entry<String, String> method : methodMappings.entrySet()) {
+            String key = method.getKey();
+            int paren = key.indexOf('(');
+            int dot = key.lastIndexOf('.', paren);
+            if (method.getValue() != null && hotMethods.contains(key.substring(0, paren))) {
+                excluded.add(newClassName(key.substring(0, dot)) + "." + method.getValue());
+            }
+        }
+        return excluded;
+    }
+
+    String newClassName(String className) {
+        String newName = classMappings.get(className);
+        return newName != null ? newName : className;
+    }
+
+    // Этапы конвейера доступны в пакете для модуля benchmarks
+
+    void useEngine(ParallelEngine engine) {
+        this.engine = engine;
+    }
+
+    /** Библиотеки, открытые снаружи; закрывает их вызывающий. */
+    void useLibraries(LibraryClassPath libraries) {
+        this.sharedLibraries = libraries;
+    }
+
+    /** Готовые имена, которые важнее маппингов прошлого запуска из кэша. */
+    void useAppliedMappings(MappingSet mappings) {
+        this.appliedMappings = mappings;
+    }
+
+    /**
+     * Пакетный режим: имена классов берутся только из своей доли (см.
+     * {@link PartitionedNameGenerator}), исходные имена классов других JAR не выдаются.
+     */
+    void useNamePartition(int partition, int partitions, Set<String> reservedClassNames) {
+        this.namePartition = partition;
+        this.namePartitions = partitions;
+        this.batchClassNames = reservedClassNames;
+    }
+
+    /** Кэш, открытый снаружи (например, в памяти сервера) вместо --incremental. */
+    void useCache(IncrementalCache cache) {
+        this.cache = cache;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    PrintStream getLog() {
+        return log;
+    }
+
+    boolean isQuiet() {
+        return quiet;
+    }
+
+    boolean isShrink() {
+        return shrink;
+    }
+
+    Comparator<String> getEntryOrder() {
+        return entryOrder;
+    }
+
+    RunStats getStats() {
+        return stats;
+    }
+
+    /** Маппинги последнего запуска obfuscateJar. */
+    MappingSet getResultMappings() {
+        return resultMappings;
+    }
+
+    void buildHierarchy() throws IOException {
+        log.println("Построение иерархии классов...");
+        if (sharedLibraries != null) {
+            hierarchy = ClassHierarchy.build(classMetadata, sharedLibraries);
+        } else {
+            try (LibraryClassPath libraries = new LibraryClassPath(libraryPaths)) {
+                hierarchy = ClassHierarchy.build(classMetadata, libraries);
+            }
+        }
+        log.println("Классов в иерархии: " + hierarchy.jarClassCount()
+                + ", библиотечных: " + hierarchy.libraryClassCount());
+        List<String> unresolved = hierarchy.unresolvedClasses();
+        if (!unresolved.isEmpty()) {
+            // Методы наследников таких классов сохраняют имена: они могут переопределять неизвестные методы
+            log.println("Не найдены предки (" + unresolved.size() + "), укажите их через --libs: "
+                    + String.join(", ", unresolved.subList(0, Math.min(5, unresolved.size())))
+                    + (unresolved.size() > 5 ? ", ..." : ""));
+        }
+    }
+
+    void buildRemapper() {
+        Map<String, String> resolvedLambdas = new HashMap<>(lambdaDescriptors);
+        resolvedLambdas.keySet().removeAll(ambiguousLambdas);
+        Map<String, String[]> supertypes = hierarchy.jarSupertypes();
+        if (lowMemory) {
+            releaseAnalysis();
+            remapper = MappingRemapper.direct(classMappings, fieldMappings, methodMappings,
+                    supertypes, resolvedLambdas);
+        } else {
+            remapper = MappingRemapper.build(classMappings, fieldMappings, methodMappings,
+                    supertypes, resolvedLambdas);
+        }
+        referenceScanner = ReferenceScanner.fromMappings(classMappings, fieldMappings, methodMappings,
+                rewriteResources);
+        if (rewriteResources) {
+            resourceRewriter = ResourceRewriter.build(classMappings);
+        }
+    }
+
+    /**
+     * После генерации имен иерархия, заголовки классов и счетчики ссылок не нужны:
+     * в режиме --low-memory они освобождаются до построения индекса переименований.
+     */
+    private void releaseAnalysis() {
+        hierarchy = null;
+        classMetadata = new LinkedHashMap<>();
+        referenceKeys = new SymbolTable();
+        referenceCounts = new int[1024];
+        keptMethodGroups.clear();
+        lambdaDescriptors.clear();
+    }
+
+    void readOriginalManifest(JarFile jarFile) throws IOException {
+        JarEntry manifestEntry = jarFile.getJarEntry("META-INF/MANIFEST.MF");
+        if (manifestEntry != null) {
+            try (InputStream is = jarFile.getInputStream(manifestEntry)) {
+                readManifestAttributes(is);
             }
         }
     }
 
+    void readManifestAttributes(InputStream is) throws IOException {
+        Manifest manifest = new Manifest(is);
+        Attributes attrs = manifest.getMainAttributes();
+
+        originalAttributes = attrs;
+        originalMainClass = attrs.getValue(Attributes.Name.MAIN_CLASS);
+        rsrcMainClass = attrs.getValue("Rsrc-Main-Class");
+        rsrcClassPath = attrs.getValue("Rsrc-Class-Path");
+        startClass = attrs.getValue("Start-Class");
+
+        if (rsrcMainClass != null) {
+            log.println("Найден Rsrc-Main-Class: " + rsrcMainClass);
+        }
+
+        if (rsrcClassPath != null) {
+            log.println("Найден Rsrc-Class-Path: " + rsrcClassPath);
+        }
+    }
+
     private void updateRsrcMainClass() {
         if (rsrcMainClass != null) {
             // Преобразуем в internal name для поиска в маппингах
@@ -117,71 +621,268 @@ public class JarObfuscator {
 
             if (obfuscatedRsrcMainClass != null) {
                 obfuscatedRsrcMainClass = obfuscatedRsrcMainClass.replace('/', '.');
-                System.out.println("Обфусцированный Rsrc-Main-Class: " + obfuscatedRsrcMainClass);
+                log.println("Обфусцированный Rsrc-Main-Class: " + obfuscatedRsrcMainClass);
             } else {
                 // Если класс не найден в маппингах, оставляем оригинальное имя
                 obfuscatedRsrcMainClass = rsrcMainClass;
-                System.out.println("Rsrc-Main-Class не найден в маппингах, используется оригинальное имя");
+                log.println("Rsrc-Main-Class не найден в маппингах, используется оригинальное имя");
             }
         }
+        if (startClass != null) {
+            // Start-Class запускает JarLauncher Spring Boot из BOOT-INF/classes
+            String obfuscated = classMappings.get(startClass.trim().replace('.', '/'));
+            obfuscatedStartClass = obfuscated != null ? obfuscated.replace('/', '.') : startClass;
+            log.println("Start-Class: " + startClass + " -> " + obfuscatedStartClass);
+        }
     }
 
-    private void collectClassInfo(Path tempDir) throws IOException {
-        Files.walk(tempDir)
-                .filter(path -> path.toString().endsWith(".class"))
-                .forEach(path -> {
-                    try {
-                        analyzeClassFile(path);
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                });
+    /**
+     * Main-Class из манифеста, если это класс JAR, важнее последнего найденного метода main:
+     * в Spring Boot и jar-in-jar это загрузчик, а main есть и у класса приложения.
+     */
+    private void preferManifestMainClass() {
+        if (originalMainClass != null) {
+            String declared = originalMainClass.trim().replace('.', '/');
+            if (classMetadata.containsKey(declared)) {
+                mainClassName = declared;
+            }
+        }
     }
 
-    private void analyzeClassFile(Path classFile) throws IOException {
-        byte[] classData = Files.readAllBytes(classFile);
+    void collectClassInfo(List<ClassEntry> classes) throws IOException {
+        collectClassInfo(classes, entry -> entry.data);
+    }
+
+    /** Чтение и разбор классов идут параллельно, регистрация - последовательно в исходном порядке. */
+    <T> void collectClassInfo(List<T> sources, ParallelEngine.Task<T, byte[]> reader) throws IOException {
+        List<ClassInfoCollector> collected = engine.map(sources, source -> analyzeClassBytes(reader.apply(source)));
+        for (ClassInfoCollector collector : collected) {
+            registerClassInfo(collector);
+        }
+    }
+
+    private ClassInfoCollector analyzeClassBytes(byte[] classData) {
         ClassReader classReader = new ClassReader(classData);
 
-        ClassInfoCollector collector = new ClassInfoCollector();
+        ClassInfoCollector collector = new ClassInfoCollector(shrink);
         classReader.accept(collector, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return collector;
+    }
 
-        String className = collector.getClassName();
+    private void registerClassInfo(ClassInfoCollector collector) {
+        ClassMetadata metadata = collector.getMetadata();
+        if (lowMemory) {
+            metadata = metadata.compact(symbols);
+        }
+        String className = metadata.name;
         classMappings.putIfAbsent(className, null);
+        classMetadata.put(className, metadata);
+        if (collector.getUsage() != null) {
+            classUsages.put(className, collector.getUsage());
+        }
 
         // проверяем наличие метода main
-        for (String method : collector.getMethods()) {
+        for (String method : metadata.methods.keySet()) {
             if (method.startsWith("main([Ljava/lang/String;)V")) {
                 mainClassName = className;
-                System.out.println("Найден main метод в классе: " + className);
+                log.println("Найден main метод в классе: " + className);
             }
         }
 
         // сохраняем поля и методы...
-        for (String field : collector.getFields()) {
+        for (String field : metadata.fields.keySet()) {
             String fieldKey = className + "." + field;
             fieldMappings.putIfAbsent(fieldKey, null);
+            fieldDescriptors.put(fieldKey, collector.getFieldDescriptors().get(field));
         }
 
-        for (String method : collector.getMethods()) {
+        for (String method : metadata.methods.keySet()) {
             String methodKey = className + "." + method;
             methodMappings.putIfAbsent(methodKey, null);
         }
+
+        for (Map.Entry<String, String> lambda : collector.getLambdaDescriptors().entrySet()) {
+            String previous = lambdaDescriptors.putIfAbsent(lambda.getKey(), lambda.getValue());
+            if (lambda.getValue() == null || (previous != null && !previous.equals(lambda.getValue()))) {
+                ambiguousLambdas.add(lambda.getKey());
+            }
+        }
+
+        for (Map.Entry<String, Integer> reference : collector.getReferenceCounts().entrySet()) {
+            int id = referenceKeys.intern(reference.getKey());
+            if (id >= referenceCounts.length) {
+                referenceCounts = Arrays.copyOf(referenceCounts, referenceCounts.length * 2);
+            }
+            referenceCounts[id] += reference.getValue();
+        }
     }
 
-    private void generateMappings() {
-        // 1) Сначала установим для всех классов значение по умолчанию
-        List<String> classNames = new ArrayList<>(classMappings.keySet());
+    /**
+     * Точки входа: Main-Class, Rsrc-Main-Class и Start-Class, класс с методом main, провайдеры
+     * из META-INF/services, необфусцируемые классы и правила --keep. Недостижимые
+     * классы и члены убираются из маппингов и не попадают в выходной JAR.
+     */
+    private void shrinkClasses() {
+        Shrinker shrinker = new Shrinker(classMetadata, classUsages, hierarchy,
+                key -> !shouldObfuscateField(key), key -> !shouldObfuscateMethod(key));
+
+        for (String entryPoint : Arrays.asList(originalMainClass, rsrcMainClass, startClass, mainClassName)) {
+            if (entryPoint != null) {
+                shrinker.keepClass(entryPoint.trim().replace('.', '/'));
+            }
+        }
+        for (String serviceClass : serviceClasses) {
+            shrinker.keepClass(serviceClass);
+        }
+        for (String className : classMetadata.keySet()) {
+            if (!shouldObfuscate(className) || matchesKeepRule(className)) {
+                shrinker.keepClassWithMembers(className);
+            }
+        }
+        classUsages.clear();
+
+        if (!shrinker.hasRoots()) {
+            log.println("Точки входа не найдены (нет Main-Class и правил --keep), удаление пропущено");
+            return;
+        }
+
+        shrinkResult = shrinker.shrink();
+        for (String className : shrinkResult.removedClasses) {
+            classMappings.remove(className);
+            classMetadata.remove(className);
+        }
+        fieldMappings.keySet().removeIf(shrinkResult::isRemoved);
+        fieldDescriptors.keySet().removeIf(shrinkResult::isRemoved);
+        methodMappings.keySet().removeIf(shrinkResult::isRemoved);
+
+        stats.add("shrink.removedClasses", shrinkResult.removedClasses.size());
+        stats.add("shrink.removedMethods", shrinkResult.removedMethodCount);
+        stats.add("shrink.removedFields", shrinkResult.removedFieldCount);
+        log.println("Удалено классов: " + shrinkResult.removedClasses.size()
+                + ", методов: " + shrinkResult.removedMethodCount
+                + ", полей: " + shrinkResult.removedFieldCount);
+    }
+
+    private boolean matchesKeepRule(String className) {
+        for (Pattern rule : keepRules) {
+            if (rule.matcher(className).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isShrunkClass(String className) {
+        return shrinkResult != null && shrinkResult.removedClasses.contains(className);
+    }
+
+    /** Удаляемые члены класса (имена полей, имена + дескрипторы методов) или null. */
+    private Set<String> removedMembersOf(byte[] classData) {
+        if (shrinkResult == null || shrinkResult.removedMembers.isEmpty()) {
+            return null;
+        }
+        return shrinkResult.removedMembers.get(new ClassReader(classData).getClassName());
+    }
+
+    /** Запоминает интерфейс и провайдеры из файла META-INF/services/<интерфейс>. */
+    void readServiceProviders(String entryName, InputStream is) throws IOException {
+        serviceClasses.add(entryName.substring("META-INF/services/".length()).replace('.', '/'));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (!provider.isEmpty()) {
+                serviceClasses.add(provider.replace('.', '/'));
+            }
+        }
+    }
+
+    static boolean isServiceEntry(String entryName) {
+        return entryName.startsWith("META-INF/services/") && entryName.length() > "META-INF/services/".length();
+    }
+
+    void generateMappings() {
+        nameGenerator = NameGenerator.create(namingMode, seed);
+        if (namePartitions > 1) {
+            nameGenerator = new PartitionedNameGenerator(nameGenerator, namePartition, namePartitions);
+        }
+        batchClassNames.forEach(nameGenerator::reserve);
+
+        // 1) Сначала установим для всех классов значение по умолчанию.
+        // Порядок обхода фиксирован: больше ссылок - раньше (и короче) имя, затем по алфавиту
+        List<String> classNames = sortByReferences(classMappings);
 
         for (String className : classNames) {
             classMappings.put(className, className);
         }
 
-        // 2) Сгенерируем новые имена для всех классов (кроме системных)
+        List<String> fieldKeys = sortByReferences(fieldMappings);
+        List<String> methodKeys = sortByReferences(methodMappings);
+
+        // Группа переопределения сохраняет имя целиком, если хотя бы один ее метод
+        // нельзя переименовать
+        keptMethodGroups.clear();
+        for (String methodKey : methodKeys) {
+            if (!shouldObfuscateMethod(methodKey)) {
+                int group = methodGroup(methodKey);
+                if (group >= 0) {
+                    keptMethodGroups.add(group);
+                }
+            }
+        }
+        for (String lambda : ambiguousLambdas) {
+            int dot = lambda.lastIndexOf('.');
+            keptMethodGroups.addAll(hierarchy.groupsNamed(lambda.substring(0, dot), lambda.substring(dot + 1)));
+        }
+
+        // Имена, которые остаются без изменений, и готовые имена не выдаются новым символам.
+        // Имена членов резервируются в семействе класса (классы, связанные наследованием),
+        // туда же попадают имена членов библиотечных предков
+        // (члены готовых маппингов разбираются только для классов, которые есть в JAR)
+        for (String className : classNames) {
+            if (!shouldObfuscate(className)) {
+                nameGenerator.reserve(className);
+            }
+            String family = hierarchy.familyOf(className);
+            for (String memberName : hierarchy.libraryMemberNames(className)) {
+                nameGenerator.reserveMember(family, memberName);
+            }
+        }
+        for (String fieldKey : fieldKeys) {
+            if (!isObfuscatedField(fieldKey)) {
+                nameGenerator.reserveMember(familyOf(fieldKey), fieldKey.substring(fieldKey.indexOf('.') + 1));
+            }
+        }
+        for (String methodKey : methodKeys) {
+            if (!isObfuscatedMethod(methodKey)) {
+                nameGenerator.reserveMember(familyOf(methodKey),
+                        methodKey.substring(methodKey.indexOf('.') + 1, methodKey.indexOf('(')));
+            }
+        }
+        if (appliedMappings != null) {
+            appliedMappings.classNames().forEach(nameGenerator::reserve);
+            for (String className : classNames) {
+                String family = hierarchy.familyOf(className);
+                for (String memberName : appliedMappings.memberNames(className)) {
+                    nameGenerator.reserveMember(family, memberName);
+                }
+            }
+        }
+
+        // 2) Сгенерируем новые имена для всех классов (кроме системных).
+        // Внутренние классы получат имя внешнего на шаге 3, для них имя не генерируется
         for (String className : classNames) {
-            if (shouldObfuscate(className)) {
-                String newName = generateUniqueClassName();
+            if (shouldObfuscate(className) && !isRenamedWithOuter(className)) {
+                String newName = appliedMappings != null ? appliedMappings.getClassName(className) : null;
+                if (newName == null) {
+                    newName = nameGenerator.nextClassName();
+                }
                 classMappings.put(className, newName);
-                System.out.println("Класс " + className + " -> " + newName);
+                stats.add("renamed.classes", 1);
+                if (!quiet) {
+                    log.println("Класс " + className + " -> " + newName);
+                }
             }
         }
 
@@ -195,30 +896,61 @@ public class JarObfuscator {
                 if (mappedOuter != null && !mappedOuter.equals(outer)) {
                     String newInnerName = mappedOuter + suffix;
                     classMappings.put(className, newInnerName);
-                    System.out.println("Внутренний класс " + className + " -> " + newInnerName);
+                    stats.add("renamed.classes", 1);
+                    if (!quiet) {
+                        log.println("Внутренний класс " + className + " -> " + newInnerName);
+                    }
                 }
             }
         }
 
         // 4) Генерация имён для полей
-        List<String> fieldKeys = new ArrayList<>(fieldMappings.keySet());
         for (String fieldKey : fieldKeys) {
-            if (shouldObfuscateField(fieldKey)) {
-                String newFieldName = generateUniqueFieldName();
+            if (isObfuscatedField(fieldKey)) {
+                String newFieldName = appliedMappings != null ? appliedMappings.getFieldName(fieldKey) : null;
+                if (newFieldName == null) {
+                    newFieldName = nameGenerator.nextFieldName(familyOf(fieldKey));
+                }
                 fieldMappings.put(fieldKey, newFieldName);
-                System.out.println("Поле " + fieldKey + " -> " + newFieldName);
+                stats.add("renamed.fields", 1);
+                if (!quiet) {
+                    log.println("Поле " + fieldKey + " -> " + newFieldName);
+                }
             } else {
                 fieldMappings.put(fieldKey, fieldKey.substring(fieldKey.indexOf('.') + 1));
             }
         }
 
-        // 5) Генерация имён для методов
-        List<String> methodKeys = new ArrayList<>(methodMappings.keySet());
+        // 5) Генерация имён для методов. Все методы группы переопределения получают одно имя;
+        // готовое имя любого метода группы становится именем всей группы
+        Map<Integer, String> groupNames = new HashMap<>();
+        if (appliedMappings != null) {
+            for (String methodKey : methodKeys) {
+                int group = methodGroup(methodKey);
+                String appliedName = appliedMappings.getMethodName(methodKey);
+                if (group >= 0 && appliedName != null && isObfuscatedMethod(methodKey)) {
+                    groupNames.putIfAbsent(group, appliedName);
+                }
+            }
+        }
         for (String methodKey : methodKeys) {
-            if (shouldObfuscateMethod(methodKey)) {
-                String newMethodName = generateUniqueMethodName();
+            if (isObfuscatedMethod(methodKey)) {
+                int group = methodGroup(methodKey);
+                String newMethodName = group >= 0 ? groupNames.get(group) : null;
+                if (newMethodName == null && appliedMappings != null) {
+                    newMethodName = appliedMappings.getMethodName(methodKey);
+                }
+                if (newMethodName == null) {
+                    newMethodName = nameGenerator.nextMethodName(familyOf(methodKey));
+                }
+                if (group >= 0) {
+                    groupNames.putIfAbsent(group, newMethodName);
+                }
                 methodMappings.put(methodKey, newMethodName);
-                System.out.println("Метод " + methodKey + " -> " + newMethodName);
+                stats.add("renamed.methods", 1);
+                if (!quiet) {
+                    log.println("Метод " + methodKey + " -> " + newMethodName);
+                }
             } else {
                 String part = methodKey.substring(methodKey.indexOf('.') + 1);
                 methodMappings.put(methodKey, part);
@@ -228,110 +960,225 @@ public class JarObfuscator {
         // 6) Обновляем main class name
         if (mainClassName != null) {
             obfuscatedMainClassName = classMappings.get(mainClassName);
-            System.out.println("Main класс: " + mainClassName.replace('/', '.') +
+            log.println("Main класс: " + mainClassName.replace('/', '.') +
                     " -> " + (obfuscatedMainClassName != null ?
                     obfuscatedMainClassName.replace('/', '.') : "не обфусцирован"));
         } else {
-            System.out.println("Main-класс не найден среди классов.");
+            log.println("Main-класс не найден среди классов.");
         }
     }
 
-    private void obfuscateAllClasses(Path tempDir) throws IOException {
-        List<Path> classFiles = Files.walk(tempDir)
-                .filter(path -> path.toString().endsWith(".class"))
-                .toList();
+    byte[] transformClass(byte[] classData) {
+        long start = System.nanoTime();
+        byte[] obfuscatedData = transformClassCached(classData);
+        stats.recordTransform(classData, System.nanoTime() - start);
+        stats.add("class.bytesIn", classData.length);
+        stats.add("class.bytesOut", obfuscatedData.length);
+        return obfuscatedData;
+    }
 
-        System.out.println("Найдено классов для обфускации: " + classFiles.size());
+    private byte[] transformClassCached(byte[] classData) {
+        // Класс без ссылок на переименованные символы копируется как есть.
+        // В кэш он не попадает: проверка пула констант дешевле поиска в кэше
+        if (!fullRewrite && !referenceScanner.references(classData) && removedMembersOf(classData) == null
+                && !(encryptStrings && StringEncryptor.hasStrings(classData)) && !flowObfuscation) {
+            stats.add("classes.copied", 1);
+            return classData;
+        }
 
-        for (Path classFile : classFiles) {
-            obfuscateSingleClass(classFile);
+        if (cache == null) {
+            return obfuscateClassBytes(classData, remapper);
         }
 
-        for (Path classFile : classFiles) {
-            renameClassFile(tempDir, classFile);
+        // Класс переписывается заново, только если изменились его байты
+        // или ответ хотя бы на один запрос к маппингам, сделанный в прошлый раз
+        String hash = IncrementalCache.hash(classData);
+        Set<String> removedMembers = removedMembersOf(classData);
+        if (removedMembers != null) {
+            // Результат зависит и от набора удаляемых членов
+            hash = IncrementalCache.hash((hash + new TreeSet<>(removedMembers))
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        if (encryptStrings) {
+            // ...и от ключа шифрования строк
+            hash = IncrementalCache.hash((hash + "strings:" + encryptionSeed())
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        if (rewriteResources) {
+            // ...и от замены имен классов в строках
+            hash = IncrementalCache.hash((hash + "classStrings").getBytes(StandardCharsets.UTF_8));
+        }
+        if (fullRewrite) {
+            // ...и от пути записи: --full-rewrite - база для сравнения, не быстрый путь
+            hash = IncrementalCache.hash((hash + "fullRewrite").getBytes(StandardCharsets.UTF_8));
+        }
+        if (flowObfuscation) {
+            // ...и от бюджета и профиля --flow
+            hash = IncrementalCache.hash((hash + "flow:" + encryptionSeed() + ":" + flowBudget + ":"
+                    + new TreeSet<>(flowExcluded)).getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] cached = cache.lookup(hash, remapper);
+        if (cached != null) {
+            stats.add("cache.hits", 1);
+            return cached;
         }
-    }
 
-    private void obfuscateSingleClass(Path classFile) throws IOException {
-        byte[] originalData = Files.readAllBytes(classFile);
-        byte[] obfuscatedData = obfuscateClassBytes(originalData);
-        Files.write(classFile, obfuscatedData);
+        IncrementalCache.RecordingRemapper recorder = new IncrementalCache.RecordingRemapper(remapper);
+        byte[] obfuscatedData = obfuscateClassBytes(classData, recorder);
+        if (obfuscatedData != classData) {
+            cache.store(hash, recorder, obfuscatedData);
+        }
+        return obfuscatedData;
     }
 
-    private byte[] obfuscateClassBytes(byte[] classData) {
+    private byte[] obfuscateClassBytes(byte[] classData, org.objectweb.asm.commons.Remapper remapper) {
         try {
-            ClassReader classReader = new ClassReader(classData);
-            ClassWriter classWriter = new ClassWriter(classReader, ClassWriter.COMPUTE_MAXS);
-
-            Map<String, String> remapMappings = new HashMap<>();
-
-            // Добавляем маппинг классов
-            for (Map.Entry<String, String> entry : classMappings.entrySet()) {
-                if (!entry.getKey().equals(entry.getValue())) {
-                    remapMappings.put(entry.getKey(), entry.getValue());
+            if (encryptStrings || flowObfuscation) {
+                try {
+                    return rewriteClass(classData, remapper, true);
+                } catch (MethodTooLargeException | ClassTooLargeException | NameClashException e) {
+                    // Вызовы вместо ldc не поместились в метод или имя служебного члена занято
+                    stats.add("protect.skippedClasses", 1);
+                    if (!quiet) {
+                        log.println("Класс без шифрования строк и --flow: " + e.getMessage());
+                    }
                 }
             }
+            return rewriteClass(classData, remapper, false);
 
-            // Добавляем маппинг полей
-            for (Map.Entry<String, String> entry : fieldMappings.entrySet()) {
-                String[] parts = entry.getKey().split("\\.");
-                if (parts.length == 2) {
-                    String className = parts[0];
-                    String fieldName = parts[1];
-                    String newFieldName = entry.getValue();
-                    String mappedClass = classMappings.getOrDefault(className, className);
+        } catch (Exception e) {
+            System.err.println("Ошибка при обфускации класса: " + e.getMessage());
+            e.printStackTrace();
+            failedClasses.put(classNameIn(classData), String.valueOf(e));
+            return classData;
+        }
+    }
 
-                    if (!fieldName.equals(newFieldName)) {
-                        remapMappings.put(className + "/" + fieldName, mappedClass + "/" + newFieldName);
-                    }
+    private byte[] rewriteClass(byte[] classData, org.objectweb.asm.commons.Remapper remapper, boolean protect) {
+        ClassReader classReader = new ClassReader(classData);
+        // Пул констант собирается заново: копия исходного пула (ClassWriter(classReader, ...))
+        // оставила бы в классе старые имена рядом с новыми.
+        // Переименование не меняет ни стек, ни локальные переменные, поэтому сжатые фреймы
+        // и max_stack/max_locals переносятся как есть.
+        // --full-rewrite - прежний путь без изменений, база для сравнения в RewriteBenchmark
+        ClassWriter classWriter = fullRewrite
+                ? new ClassWriter(classReader, ClassWriter.COMPUTE_MAXS)
+                : new ClassWriter(0);
+
+        ClassVisitor next = classWriter;
+        FlowObfuscator flow = null;
+        if (protect && flowObfuscation) {
+            // Разрезу методов нужны развернутые фреймы
+            flow = new FlowObfuscator(next, encryptionSeed(), flowBudget, flowExcluded::contains);
+            next = flow;
+        }
+        org.objectweb.asm.commons.Remapper classRemapping =
+                resourceRewriter != null ? new ClassStringRemapper(remapper) : remapper;
+        StringEncryptor encryptor = null;
+        if (protect && encryptStrings) {
+            encryptor = new StringEncryptor(next, classReader, classRemapping, encryptionSeed());
+            next = encryptor;
+        }
+        ClassVisitor classRemapper = new ClassRemapper(next, classRemapping);
+        Set<String> removedMembers = removedMembersOf(classData);
+        if (removedMembers != null) {
+            classRemapper = new MemberFilter(classRemapper, removedMembers);
+        }
+        classReader.accept(classRemapper, fullRewrite || flow != null ? ClassReader.EXPAND_FRAMES : 0);
+
+        byte[] result = classWriter.toByteArray();
+        if (encryptor != null) {
+            stats.add("strings.encrypted", encryptor.encryptedCount());
+        }
+        if (flow != null) {
+            stats.add("flow.methods", flow.transformedMethods());
+            stats.add("flow.addedBytes", flow.addedBytes());
+            stats.add("flow.skippedHot", flow.skippedHot());
+            stats.add("flow.skippedBudget", flow.skippedBudget());
+            if (flow.transformedMethods() > 0) {
+                stats.recordFlow(classReader.getClassName(), flow.transformedMethods(), flow.addedBytes());
+                if (!quiet) {
+                    log.println("Поток запутан: " + classReader.getClassName() + ", методов "
+                            + flow.transformedMethods() + ", +" + flow.addedBytes() + " байт");
                 }
             }
+        }
+        return result;
+    }
 
-            // Добавляем маппинг методов
-            for (Map.Entry<String, String> entry : methodMappings.entrySet()) {
-                String[] parts = entry.getKey().split("\\.");
-                if (parts.length == 2) {
-                    String className = parts[0];
-                    String methodWithDesc = parts[1];
-                    String newMethodName = entry.getValue();
+    private static String classNameIn(byte[] classData) {
+        try {
+            return new ClassReader(classData).getClassName();
+        } catch (RuntimeException e) {
+            return "?";
+        }
+    }
 
-                    // Извлекаем только имя метода (до '(')
-                    int idx = methodWithDesc.indexOf('(');
-                    String methodNameOnly = (idx != -1) ? methodWithDesc.substring(0, idx) : methodWithDesc;
+    private long encryptionSeed() {
+        return seed != null ? seed : 0L;
+    }
 
-                    String mappedClass = classMappings.getOrDefault(className, className);
+    private List<String> sortByReferences(Map<String, String> mappings) {
+        if (mappings instanceof SymbolMap) {
+            // --low-memory: ключи остаются номерами символов
+            return ((SymbolMap) mappings).keysByWeight(this::referenceCount);
+        }
+        // Счетчики выбираются один раз, а не при каждом сравнении
+        String[] names = mappings.keySet().toArray(new String[0]);
+        Integer[] order = new Integer[names.length];
+        int[] counts = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            counts[i] = referenceCount(names[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byCount = Integer.compare(counts[b], counts[a]);
+            return byCount != 0 ? byCount : names[a].compareTo(names[b]);
+        });
+        List<String> sorted = new ArrayList<>(names.length);
+        for (Integer i : order) {
+            sorted.add(names[i]);
+        }
+        return sorted;
+    }
 
-                    if (!methodNameOnly.equals(newMethodName)) {
-                        remapMappings.put(className + "/" + methodNameOnly, mappedClass + "/" + newMethodName);
-                    }
-                }
-            }
+    private int referenceCount(String key) {
+        int id = referenceKeys.find(key);
+        return id == SymbolTable.NONE ? 0 : referenceCounts[id];
+    }
 
-            ClassVisitor remapper = new ClassRemapper(classWriter, new SimpleRemapper(remapMappings));
-            classReader.accept(remapper, ClassReader.EXPAND_FRAMES);
+    private boolean isRenamedWithOuter(String className) {
+        int idx = className.indexOf('$');
+        if (idx <= 0) {
+            return false;
+        }
+        String outer = className.substring(0, idx);
+        return classMappings.containsKey(outer) && shouldObfuscate(outer);
+    }
 
-            return classWriter.toByteArray();
+    private boolean isObfuscatedField(String fieldKey) {
+        return shouldObfuscateField(fieldKey);
+    }
 
-        } catch (Exception e) {
-            System.err.println("Ошибка при обфускации класса: " + e.getMessage());
-            e.printStackTrace();
-            return classData;
+    private boolean isObfuscatedMethod(String methodKey) {
+        if (!shouldObfuscateMethod(methodKey)) {
+            return false;
         }
+        int group = methodGroup(methodKey);
+        return group < 0 || (!hierarchy.isFixed(group) && !keptMethodGroups.contains(group));
     }
 
-    private void renameClassFile(Path baseDir, Path classFile) throws IOException {
-        String originalClassName = getClassName(baseDir, classFile);
-        String obfuscatedClassName = classMappings.get(originalClassName);
+    private int methodGroup(String methodKey) {
+        int dot = methodKey.indexOf('.');
+        return hierarchy.methodGroup(methodKey.substring(0, dot), methodKey.substring(dot + 1));
+    }
 
-        if (obfuscatedClassName != null && !obfuscatedClassName.equals(originalClassName)) {
-            Path newPath = getClassPath(baseDir, obfuscatedClassName);
-            Files.createDirectories(newPath.getParent());
-            Files.move(classFile, newPath, StandardCopyOption.REPLACE_EXISTING);
-            System.out.println("Переименован файл: " + originalClassName + " -> " + obfuscatedClassName);
-        }
+    /** Область имен члена: семейство классов, связанных наследованием. */
+    private String familyOf(String memberKey) {
+        return hierarchy.familyOf(memberKey.substring(0, memberKey.indexOf('.')));
     }
 
-    private boolean shouldObfuscate(String className) {
+    static boolean shouldObfuscate(String className) {
         // Не обфусцируем стандартные классы Java
         if (className.startsWith("java/") ||
                 className.startsWith("javax/") ||
@@ -340,145 +1187,357 @@ public class JarObfuscator {
             return false;
         }
 
-        // Не обфусцируем загрузчики ресурсов
-        if (className.contains("RsrcLoader") || className.contains("cfg3wgjn5gc")) {
+        // Имена module-info и package-info задает спецификация (в том числе в META-INF/versions/N/)
+        if (className.equals("module-info") || className.equals("package-info")
+                || className.endsWith("/package-info")) {
+            return false;
+        }
+
+        // Не обфусцируем загрузчики ресурсов и вложенных JAR (Eclipse jar-in-jar, Spring Boot)
+        if (className.contains("RsrcLoader") || className.contains("cfg3wgjn5gc")
+                || className.startsWith("org/eclipse/jdt/internal/jarinjarloader/")
+                || className.startsWith("org/springframework/boot/loader/")) {
             return false;
         }
 
         return true;
     }
 
+    /**
+     * Члены аннотаций и записей (record) читаются по имени через рефлексию,
+     * члены необфусцируемых классов тоже сохраняют имена.
+     */
+    private ClassMetadata renamableOwner(String memberKey) {
+        String owner = memberKey.substring(0, memberKey.indexOf('.'));
+        ClassMetadata metadata = classMetadata.get(owner);
+        if (metadata == null || !shouldObfuscate(owner) || metadata.isAnnotation() || metadata.isRecord()) {
+            return null;
+        }
+        return metadata;
+    }
+
     private boolean shouldObfuscateField(String fieldKey) {
-        return !fieldKey.contains("serialVersionUID") &&
-                !fieldKey.contains("main") &&
-                !fieldKey.contains("INSTANCE");
+        ClassMetadata metadata = renamableOwner(fieldKey);
+        if (metadata == null) {
+            return false;
+        }
+        String name = fieldKey.substring(fieldKey.indexOf('.') + 1);
+        if (SERIALIZATION_FIELDS.contains(name)) {
+            return false;
+        }
+        // Константы перечислений ищутся по имени в Enum.valueOf
+        Integer access = metadata.fields.get(name);
+        return access == null || (access & Opcodes.ACC_ENUM) == 0;
     }
 
+    /**
+     * Правила для отдельного метода. Переопределения библиотечных методов
+     * (toString, run, ...) исключаются через группы переопределения в isObfuscatedMethod.
+     */
     private boolean shouldObfuscateMethod(String methodKey) {
-        return !methodKey.contains("main") &&
-                !methodKey.contains("toString") &&
-                !methodKey.contains("equals") &&
-                !methodKey.contains("hashCode") &&
-                !methodKey.contains("<init>") &&
-                !methodKey.contains("<clinit>");
+        ClassMetadata metadata = renamableOwner(methodKey);
+        if (metadata == null) {
+            return false;
+        }
+        String method = methodKey.substring(methodKey.indexOf('.') + 1);
+        if (method.startsWith("<init>") || method.startsWith("<clinit>") || SERIALIZATION_METHODS.contains(method)) {
+            return false;
+        }
+        Integer access = metadata.methods.get(method);
+        if (access != null) {
+            if ((access & Opcodes.ACC_NATIVE) != 0) {
+                return false;
+            }
+            if ((access & Opcodes.ACC_STATIC) != 0 && method.equals("main([Ljava/lang/String;)V")) {
+                return false;
+            }
+        }
+        // values() и valueOf(String) перечислений вызываются через рефлексию (EnumSet, switch, Enum.valueOf)
+        return !metadata.isEnum() ||
+                !(method.startsWith("values()") || method.startsWith("valueOf(Ljava/lang/String;)"));
     }
 
-    private String generateUniqueClassName() {
-        String name;
-        do {
-            name = "c" + generateRandomString(CLASS_NAME_LENGTH);
-        } while (usedNames.contains(name));
-        usedNames.add(name);
-        return name;
+    List<ClassEntry> readClassEntries(JarFile jarFile) throws IOException {
+        List<ClassEntry> classes = new ArrayList<>();
+        readClassEntries(jarFile, Long.MAX_VALUE, classes::addAll);
+        return classes;
     }
 
-    private String generateUniqueFieldName() {
-        String name;
-        do {
-            name = "f" + generateRandomString(FIELD_NAME_LENGTH);
-        } while (usedNames.contains(name));
-        usedNames.add(name);
-        return name;
+    /**
+     * Читает классы JAR порциями не больше chunkBytes (по несжатому размеру, порция
+     * из одного класса может быть больше) и отдает каждую порцию обработчику.
+     * Попутно читает провайдеры META-INF/services для --shrink. С --nested-jars
+     * в порции попадают и классы вложенных JAR.
+     */
+    void readClassEntries(JarFile jarFile, long chunkBytes,
+                          ParallelEngine.Task<List<ClassEntry>, ?> handler) throws IOException {
+        ClassChunker chunker = new ClassChunker(chunkBytes, handler);
+        Enumeration<JarEntry> entries = jarFile.entries();
+
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String entryNameNormalized = entry.getName().replace('\\', '/');
+            if (entryNameNormalized.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+                originalManifestPresent = true;
+            }
+
+            if (!entry.isDirectory() && entryNameNormalized.endsWith(".class")) {
+                ClassEntry classEntry;
+                try (InputStream is = jarFile.getInputStream(entry)) {
+                    classEntry = new ClassEntry(entry.getName(), is.readAllBytes());
+                }
+                classEntry.method = entry.getMethod();
+                chunker.add(classEntry);
+            } else if (!entry.isDirectory() && isNestedJar(entryNameNormalized)) {
+                try (InputStream is = jarFile.getInputStream(entry)) {
+                    readNestedClassEntries(entryNameNormalized, is, chunker);
+                }
+            } else if (shrink && !entry.isDirectory() && isServiceEntry(entryNameNormalized)) {
+                try (InputStream is = jarFile.getInputStream(entry)) {
+                    readServiceProviders(entryNameNormalized, is);
+                }
+            }
+        }
+        chunker.flush();
     }
 
-    private String generateUniqueMethodName() {
-        String name;
-        do {
-            name = "m" + generateRandomString(METHOD_NAME_LENGTH);
-        } while (usedNames.contains(name));
-        usedNames.add(name);
-        return name;
+    /** Классы и провайдеры сервисов вложенного JAR, вложенные JAR следующего уровня - рекурсивно. */
+    private void readNestedClassEntries(String container, InputStream in, ClassChunker chunker) throws IOException {
+        ZipInputStream zis = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            String entryName = entry.getName().replace('\\', '/');
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entryName.endsWith(".class")) {
+                ClassEntry classEntry = new ClassEntry(container, entry.getName(), zis.readAllBytes());
+                classEntry.method = entry.getMethod();
+                chunker.add(classEntry);
+            } else if (isNestedJar(entryName)) {
+                readNestedClassEntries(container + "!/" + entryName, zis, chunker);
+            } else if (shrink && isServiceEntry(entryName)) {
+                readServiceProviders(entryName, zis);
+            }
+        }
     }
 
-    private String generateRandomString(int length) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+    /** Запись исходного JAR и ее имя в выходном. */
+    static final class OutputEntry {
+        final String name;
+        final String sourceName;
+        final JarEntry source;
+
+        OutputEntry(String name, String sourceName, JarEntry source) {
+            this.name = name;
+            this.sourceName = sourceName;
+            this.source = source;
+        }
+
+        boolean isClass() {
+            return !source.isDirectory() && sourceName.endsWith(".class");
         }
-        return sb.toString();
     }
 
-    private String getClassName(Path baseDir, Path classFile) {
-        String relativePath = baseDir.relativize(classFile).toString();
-        return relativePath.substring(0, relativePath.length() - 6)
-                .replace(File.separatorChar, '/');
+    /**
+     * Записи исходного JAR (без манифеста) в порядке выходного: по новым именам
+     * записей, а не по порядку в исходном файле.
+     */
+    List<OutputEntry> outputEntries(JarFile jarFile) {
+        List<OutputEntry> outputs = new ArrayList<>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String entryName = entry.getName().replace('\\', '/');
+            if (entryName.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+                continue;
+            }
+            String name = !entry.isDirectory() && entryName.endsWith(".class")
+                    ? outputNameOf(entryName) : resourceNameOf(entryName);
+            outputs.add(new OutputEntry(name, entryName, entry));
+        }
+        outputs.sort((a, b) -> entryOrder.compare(a.name, b.name));
+        return outputs;
     }
 
-    private Path getClassPath(Path baseDir, String className) {
-        return baseDir.resolve(className.replace('/', File.separatorChar) + ".class");
+    /** Имя записи класса в выходном JAR: корень (BOOT-INF/classes/ и т.п.) сохраняется. */
+    private String outputNameOf(String classEntryName) {
+        String className = classNameOf(classEntryName);
+        String obfuscatedClassName = classMappings.get(className);
+        if (obfuscatedClassName == null || obfuscatedClassName.equals(className)) {
+            return classEntryName;
+        }
+        return classEntryName.substring(0, classEntryName.length() - className.length() - 6)
+                + obfuscatedClassName + ".class";
     }
 
-    private void extractJar(Path jarPath, Path outputDir) throws IOException {
-        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
-            Enumeration<JarEntry> entries = jarFile.entries();
+    JarWriter newJarWriter(OutputStream out) throws IOException {
+        JarWriter writer = new JarWriter(out, engine, compressionLevels);
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        buildManifest().write(manifest);
+        writer.add("META-INF/MANIFEST.MF", manifest.toByteArray(), ZipEntry.DEFLATED);
+        return writer;
+    }
 
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                Path entryPath = outputDir.resolve(entry.getName());
+    void writeNestedJar(JarFile jarFile, JarEntry entry, String entryName,
+                        JarWriter writer) throws IOException {
+        byte[] data;
+        try (InputStream is = jarFile.getInputStream(entry)) {
+            data = rewriteNestedJar(entryName, is);
+        }
+        writer.add(entryName, data, entry.getMethod());
+    }
 
-                String entryNameNormalized = entry.getName().replace('\\', '/');
-                if (entryNameNormalized.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
-                    originalManifestPresent = true;
+    /**
+     * Пересобирает вложенный JAR тем же конвейером, что и основной: классы порциями
+     * переписываются параллельно, JAR следующего уровня пересобираются рекурсивно.
+     * Записи идут в том же порядке, что и в основном JAR, без правила --compression
+     * метод сжатия записи сохраняется: загрузчики Spring Boot читают STORED-записи без
+     * распаковки. Манифест вложенного JAR копируется как обычная запись.
+     */
+    private byte[] rewriteNestedJar(String container, InputStream in) throws IOException {
+        // Вложенный JAR читается целиком: порядок записей в нем не тот, что на выходе
+        List<ZipEntry> entries = new ArrayList<>();
+        Map<ZipEntry, byte[]> contents = new HashMap<>();
+        Map<ZipEntry, String> names = new HashMap<>();
+        ZipInputStream zis = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            String entryName = entry.getName().replace('\\', '/');
+            if (!entry.isDirectory() && entryName.endsWith(".class")) {
+                if (isShrunkClass(classNameOf(entryName))) {
+                    continue;
                 }
-
-                if (entry.isDirectory()) {
-                    Files.createDirectories(entryPath);
+                names.put(entry, outputNameOf(entryName));
+            } else {
+                names.put(entry, resourceNameOf(entryName));
+            }
+            entries.add(entry);
+            contents.put(entry, zis.readAllBytes());
+        }
+        entries.sort((a, b) -> entryOrder.compare(names.get(a), names.get(b)));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JarWriter writer = new JarWriter(buffer, engine, compressionLevels)) {
+            ClassChunker chunker = new ClassChunker(STREAM_CHUNK_BYTES, chunk -> {
+                writeChunk(writer, chunk);
+                return null;
+            });
+            for (ZipEntry nested : entries) {
+                String entryName = nested.getName().replace('\\', '/');
+                byte[] data = contents.remove(nested);
+                if (!nested.isDirectory() && entryName.endsWith(".class")) {
+                    ClassEntry classEntry = new ClassEntry(container, nested.getName(), data);
+                    classEntry.method = nested.getMethod();
+                    chunker.add(classEntry);
+                    continue;
+                }
+                chunker.flush();
+                if (!nested.isDirectory() && isNestedJar(entryName)) {
+                    data = rewriteNestedJar(container + "!/" + entryName, new ByteArrayInputStream(data));
                 } else {
-                    Files.createDirectories(entryPath.getParent());
-                    try (InputStream is = jarFile.getInputStream(entry)) {
-                        Files.copy(is, entryPath, StandardCopyOption.REPLACE_EXISTING);
-                    }
+                    data = rewriteResource(entryName, data);
                 }
+                writer.add(names.get(nested), data, nested.getMethod());
+            }
+            chunker.flush();
+        }
+        stats.add("nestedJars", 1);
+        return buffer.toByteArray();
+    }
+
+    void writeChunk(JarWriter writer, List<ClassEntry> chunk) throws IOException {
+        engine.forEach(chunk, entry -> {
+            entry.data = transformClass(entry.data);
+            return null;
+        });
+        for (ClassEntry entry : chunk) {
+            writeClassEntry(writer, entry);
+        }
+        chunk.clear();
+    }
+
+    void writeClassEntry(JarWriter writer, ClassEntry classEntry) throws IOException {
+        String entryName = classEntry.entryName.replace('\\', '/');
+        String obfuscatedClassName = classMappings.get(classEntry.className);
+        if (obfuscatedClassName != null && !obfuscatedClassName.equals(classEntry.className)) {
+            entryName = classEntry.entryNameFor(obfuscatedClassName);
+            if (!quiet) {
+                log.println("Переименован файл: " + classEntry.className + " -> " + obfuscatedClassName);
             }
         }
+        writer.add(entryName, classEntry.data, classEntry.method);
     }
 
-    private void createJar(Path sourceDir, Path outputPath) throws IOException {
+    void copyEntry(JarFile jarFile, JarEntry entry, String entryName, JarWriter writer) throws IOException {
+        try (InputStream is = jarFile.getInputStream(entry)) {
+            writer.add(entryName, rewriteResource(entry.getName(), is.readAllBytes()), entry.getMethod());
+        }
+    }
+
+    /** Имя записи-ресурса в выходном JAR: файл META-INF/services называется по интерфейсу. */
+    String resourceNameOf(String entryName) {
+        return resourceRewriter != null ? resourceRewriter.entryNameOf(entryName) : entryName;
+    }
+
+    /** Текстовый ресурс с новыми именами классов, остальные записи - как есть. */
+    byte[] rewriteResource(String entryName, byte[] data) {
+        if (resourceRewriter == null || !ResourceRewriter.isTextResource(entryName.replace('\\', '/'))) {
+            return data;
+        }
+        byte[] rewritten = resourceRewriter.rewrite(data);
+        if (rewritten != data) {
+            stats.add("resources.rewritten", 1);
+            if (!quiet) {
+                log.println("Переписан ресурс: " + entryName);
+            }
+        }
+        return rewritten;
+    }
+
+    private Manifest buildManifest() {
         Manifest manifest = new Manifest();
         Attributes attrs = manifest.getMainAttributes();
+        if (originalAttributes != null) {
+            // Class-Path, Spring-Boot-Lib и прочие атрибуты переносятся как есть
+            attrs.putAll(originalAttributes);
+        }
         attrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
 
         // Основной Main-Class
         if (obfuscatedMainClassName != null) {
             attrs.put(Attributes.Name.MAIN_CLASS, obfuscatedMainClassName.replace('/', '.'));
-            System.out.println("Установлен Main-Class: " + obfuscatedMainClassName.replace('/', '.'));
+            log.println("Установлен Main-Class: " + obfuscatedMainClassName.replace('/', '.'));
         }
 
         // Rsrc атрибуты
         if (obfuscatedRsrcMainClass != null) {
             attrs.put(new Attributes.Name("Rsrc-Main-Class"), obfuscatedRsrcMainClass);
-            System.out.println("Установлен Rsrc-Main-Class: " + obfuscatedRsrcMainClass);
+            log.println("Установлен Rsrc-Main-Class: " + obfuscatedRsrcMainClass);
         } else if (rsrcMainClass != null) {
             attrs.put(new Attributes.Name("Rsrc-Main-Class"), rsrcMainClass);
-            System.out.println("Установлен оригинальный Rsrc-Main-Class: " + rsrcMainClass);
+            log.println("Установлен оригинальный Rsrc-Main-Class: " + rsrcMainClass);
         }
 
         if (rsrcClassPath != null) {
             attrs.put(new Attributes.Name("Rsrc-Class-Path"), rsrcClassPath);
-            System.out.println("Установлен Rsrc-Class-Path: " + rsrcClassPath);
-        }
-
-        try (JarOutputStream jos = new JarOutputStream(
-                new FileOutputStream(outputPath.toFile()), manifest)) {
-
-            Files.walk(sourceDir)
-                    .filter(path -> !Files.isDirectory(path))
-                    .forEach(path -> {
-                        try {
-                            String entryName = sourceDir.relativize(path).toString()
-                                    .replace(File.separatorChar, '/');
-                            if (entryName.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
-                                return;
-                            }
-
-                            jos.putNextEntry(new JarEntry(entryName));
-                            Files.copy(path, jos);
-                            jos.closeEntry();
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
-                    });
+            log.println("Установлен Rsrc-Class-Path: " + rsrcClassPath);
+        }
+
+        if (obfuscatedStartClass != null) {
+            attrs.put(new Attributes.Name("Start-Class"), obfuscatedStartClass);
         }
+
+        return manifest;
+    }
+
+    /** app_obfuscated.jar -> app_obfuscated.classlist */
+    static Path classListPath(Path outputPath) {
+        String fileName = outputPath.getFileName().toString();
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".jar")) {
+            fileName = fileName.substring(0, fileName.length() - 4);
+        }
+        return outputPath.resolveSibling(fileName + ".classlist");
     }
 
     private Path getOutputPath(Path originalPath) {
@@ -500,55 +1559,426 @@ public class JarObfuscator {
         return parent.resolve(newFileName);
     }
 
-    private void deleteDirectory(Path path) throws IOException {
-        Files.walk(path)
-                .sorted(Comparator.reverseOrder())
-                .map(Path::toFile)
-                .forEach(File::delete);
+    static class ClassEntry {
+        final String entryName;
+        final String className;
+        // Путь вложенного JAR ("BOOT-INF/lib/a.jar", "a.jar!/b.jar") или null для основного
+        final String container;
+        // Метод сжатия исходной записи, STORED сохраняется при записи
+        int method = ZipEntry.DEFLATED;
+        byte[] data;
+
+        ClassEntry(String entryName, byte[] data) {
+            this(null, entryName, data);
+        }
+
+        ClassEntry(String container, String entryName, byte[] data) {
+            this.container = container;
+            this.entryName = entryName;
+            this.className = classNameOf(entryName.replace('\\', '/'));
+            this.data = data;
+        }
+
+        /** Имя записи для нового имени класса: корень (BOOT-INF/classes/ и т.п.) сохраняется. */
+        String entryNameFor(String newClassName) {
+            return renamedEntryName(entryName.replace('\\', '/'), newClassName);
+        }
+    }
+
+    /** Запись entryName после переименования ее класса в newClassName, префикс корня тот же. */
+    static String renamedEntryName(String entryName, String newClassName) {
+        String className = classNameOf(entryName);
+        return entryName.substring(0, entryName.length() - className.length() - 6) + newClassName + ".class";
+    }
+
+    /**
+     * Имя класса по имени записи: без ".class" и без корня классов Spring Boot,
+     * WAR или multi-release JAR (BOOT-INF/classes/, WEB-INF/classes/, META-INF/versions/N/).
+     */
+    static String classNameOf(String entryName) {
+        String className = entryName.substring(0, entryName.length() - 6);
+        for (String root : CLASS_ROOTS) {
+            if (className.startsWith(root)) {
+                return className.substring(root.length());
+            }
+        }
+        if (className.startsWith("META-INF/versions/")) {
+            int slash = className.indexOf('/', "META-INF/versions/".length());
+            if (slash > 0) {
+                return className.substring(slash + 1);
+            }
+        }
+        return className;
+    }
+
+    /**
+     * Проверяет выходной JAR ({@link ClassVerifier}): первый проход читает заголовки,
+     * второй - байткод и ссылки, каждая порция параллельно; с --low-memory JAR читается
+     * для второго прохода заново. Классы,
+     * которые не удалось переписать, тоже ошибки. Замечания попадают в лог и в отчет.
+     */
+    private void verifyOutput(Path originalPath, Path outputPath) throws IOException {
+        log.println("Проверка выходного JAR...");
+        List<Path> inputPaths = new ArrayList<>();
+        inputPaths.add(originalPath);
+        inputPaths.addAll(libraryPaths);
+        try (ParallelEngine engine = new ParallelEngine(threads);
+             LibraryClassPath ownLibraries = sharedLibraries == null ? new LibraryClassPath(libraryPaths) : null;
+             LibraryClassPath input = new LibraryClassPath(inputPaths)) {
+            ClassVerifier verifier = new ClassVerifier(sharedLibraries != null ? sharedLibraries : ownLibraries,
+                    this::isStaleClassName, lowMemory ? new SymbolTable() : null);
+            // Заголовки исходных классов; с --low-memory они освобождены и читаются из исходного JAR
+            Map<String, ClassMetadata> inputMetadata = classMetadata;
+            verifier.compareWith(name -> {
+                ClassMetadata metadata = inputMetadata.get(name);
+                return metadata != null ? metadata : input.find(name);
+            }, classMappings, fieldMappings, methodMappings);
+            // Без --low-memory байты классов остаются в памяти до второго прохода
+            List<byte[]> outputClasses = lowMemory ? null : Collections.synchronizedList(new ArrayList<>());
+            forEachOutputClass(outputPath, engine, classData -> {
+                verifier.addClass(classData);
+                if (outputClasses != null) {
+                    outputClasses.add(classData);
+                }
+            });
+            if (outputClasses != null) {
+                engine.forEach(outputClasses, classData -> {
+                    verifier.verify(classData);
+                    return null;
+                });
+            } else {
+                forEachOutputClass(outputPath, engine, verifier::verify);
+            }
+            for (Map.Entry<String, String> failed : new TreeMap<>(failedClasses).entrySet()) {
+                verifier.error(failed.getKey(), "класс не переписан: " + failed.getValue());
+            }
+            reportVerification(verifier);
+        }
+    }
+
+    /** Старое имя переименованного класса: в выходном JAR его быть не должно. */
+    private boolean isStaleClassName(String name) {
+        String newName = classMappings.get(name);
+        return newName != null && !newName.equals(name);
+    }
+
+    /** Классы выходного JAR (с --nested-jars - и вложенных JAR) порциями, порция - параллельно. */
+    private void forEachOutputClass(Path jar, ParallelEngine engine, Consumer<byte[]> action) throws IOException {
+        ClassChunker chunker = new ClassChunker(STREAM_CHUNK_BYTES, chunk -> {
+            engine.forEach(chunk, entry -> {
+                action.accept(entry.data);
+                return null;
+            });
+            return null;
+        });
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (entry.isDirectory() || !(entryName.endsWith(".class") || isNestedJar(entryName))) {
+                    continue;
+                }
+                try (InputStream is = jarFile.getInputStream(entry)) {
+                    if (entryName.endsWith(".class")) {
+                        chunker.add(new ClassEntry(entryName, is.readAllBytes()));
+                    } else {
+                        addNestedClasses(new ZipInputStream(is), chunker);
+                    }
+                }
+            }
+        }
+        chunker.flush();
+    }
+
+    private void addNestedClasses(ZipInputStream zis, ClassChunker chunker) throws IOException {
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            String entryName = entry.getName();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entryName.endsWith(".class")) {
+                chunker.add(new ClassEntry(entryName, zis.readAllBytes()));
+            } else if (isNestedJar(entryName)) {
+                addNestedClasses(new ZipInputStream(new ByteArrayInputStream(zis.readAllBytes())), chunker);
+            }
+        }
+    }
+
+    private void reportVerification(ClassVerifier verifier) {
+        List<ClassVerifier.Problem> problems = verifier.problems();
+        stats.add("verify.classes", verifier.classCount());
+        stats.add("verify.methods", verifier.methodCount());
+        stats.add("verify.errors", verifier.errorCount());
+        stats.add("verify.warnings", verifier.warningCount());
+        log.println("Проверено классов: " + verifier.classCount() + ", методов: " + verifier.methodCount()
+                + "; ошибок: " + verifier.errorCount() + ", предупреждений: " + verifier.warningCount());
+
+        int errorsShown = 0;
+        int warningsShown = 0;
+        for (ClassVerifier.Problem problem : problems) {
+            String originalName = verifier.originalName(problem.className);
+            stats.recordProblem(problem.error, problem.className, originalName, problem.message);
+            boolean show = problem.error ? errorsShown++ < 20 : !quiet && warningsShown++ < 5;
+            if (show) {
+                log.println("  " + (problem.error ? "ошибка" : "предупреждение") + ": " + problem.className
+                        + (originalName.equals(problem.className) ? "" : " (" + originalName + ")")
+                        + ": " + problem.message);
+            }
+        }
+        if (errorsShown > 20 || warningsShown > 5) {
+            log.println("  ... полный список - в отчете (--report)");
+        }
+        verificationErrors = verifier.errorCount();
+    }
+
+    /** Вложенный JAR, который пересобирается вместе с основным (--nested-jars). */
+    boolean isNestedJar(String entryName) {
+        return nestedJars && entryName.endsWith(".jar");
+    }
+
+    /** Порции классов по несжатому размеру: порция отдается обработчику при переполнении. */
+    static final class ClassChunker {
+        private final long chunkBytes;
+        private final ParallelEngine.Task<List<ClassEntry>, ?> handler;
+        private List<ClassEntry> chunk = new ArrayList<>();
+        private long size = 0;
+
+        ClassChunker(long chunkBytes, ParallelEngine.Task<List<ClassEntry>, ?> handler) {
+            this.chunkBytes = chunkBytes;
+            this.handler = handler;
+        }
+
+        void add(ClassEntry entry) throws IOException {
+            if (!chunk.isEmpty() && size + entry.data.length > chunkBytes) {
+                flush();
+            }
+            chunk.add(entry);
+            size += entry.data.length;
+        }
+
+        void flush() throws IOException {
+            if (!chunk.isEmpty()) {
+                handler.apply(chunk);
+                chunk = new ArrayList<>();
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * Пропускает удаленные при сжатии поля и методы класса.
+     */
+    private static class MemberFilter extends ClassVisitor {
+        private final Set<String> removedMembers;
+
+        MemberFilter(ClassVisitor classVisitor, Set<String> removedMembers) {
+            super(Opcodes.ASM9, classVisitor);
+            this.removedMembers = removedMembers;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor,
+                                       String signature, Object value) {
+            if (removedMembers.contains(name)) {
+                return null;
+            }
+            return super.visitField(access, name, descriptor, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                         String signature, String[] exceptions) {
+            if (removedMembers.contains(name + descriptor)) {
+                return null;
+            }
+            return super.visitMethod(access, name, descriptor, signature, exceptions);
+        }
     }
 
     private static class ClassInfoCollector extends ClassVisitor {
         private String className;
-        private final Set<String> fields = new HashSet<>();
-        private final Set<String> methods = new HashSet<>();
-
-        public ClassInfoCollector() {
+        private String superName;
+        private String[] interfaces;
+        private int access;
+        private final Map<String, Integer> fields = new HashMap<>();
+        private final Map<String, String> fieldDescriptors = new HashMap<>();
+        private final Map<String, Integer> methods = new HashMap<>();
+        private final Map<String, Integer> referenceCounts = new HashMap<>();
+        // "owner.name" метода интерфейса -> дескриптор (null, если у лямбды есть мосты)
+        private final Map<String, String> lambdaDescriptors = new HashMap<>();
+        // Ссылки для удаления недостижимого кода (null, если сжатие выключено)
+        private final Shrinker.ClassUsage usage;
+
+        public ClassInfoCollector(boolean collectUsage) {
             super(Opcodes.ASM9);
+            this.usage = collectUsage ? new Shrinker.ClassUsage() : null;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (usage != null) {
+                Shrinker.ClassUsage.addType(usage.classReferences, Type.getType(descriptor));
+            }
+            return null;
         }
 
         @Override
         public void visit(int version, int access, String name, String signature,
                           String superName, String[] interfaces) {
             this.className = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.access = access;
             super.visit(version, access, name, signature, superName, interfaces);
         }
 
         @Override
         public FieldVisitor visitField(int access, String name, String descriptor,
                                        String signature, Object value) {
-            fields.add(name);
-            return super.visitField(access, name, descriptor, signature, value);
+            fields.put(name, access);
+            fieldDescriptors.put(name, descriptor);
+            if (usage == null) {
+                return null;
+            }
+            List<String> references = usage.member(name);
+            Shrinker.ClassUsage.addType(references, Type.getType(descriptor));
+            return new FieldVisitor(Opcodes.ASM9) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    Shrinker.ClassUsage.addType(references, Type.getType(descriptor));
+                    return null;
+                }
+            };
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name, String descriptor,
                                          String signature, String[] exceptions) {
-            methods.add(name + descriptor);
-            return super.visitMethod(access, name, descriptor, signature, exceptions);
+            methods.put(name + descriptor, access);
+            List<String> references = usage != null ? usage.member(name + descriptor) : null;
+            if (references != null) {
+                Shrinker.ClassUsage.addType(references, Type.getMethodType(descriptor));
+                if (exceptions != null) {
+                    for (String exception : exceptions) {
+                        Shrinker.ClassUsage.addClass(references, exception);
+                    }
+                }
+            }
+            return new MethodVisitor(Opcodes.ASM9) {
+                @Override
+                public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                    countReference(owner);
+                    countReference(owner + "." + name);
+                    if (references != null) {
+                        Shrinker.ClassUsage.addField(references, owner, name);
+                    }
+                }
+
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                                            boolean isInterface) {
+                    countReference(owner);
+                    countReference(owner + "." + name + descriptor);
+                    if (references != null) {
+                        Shrinker.ClassUsage.addMethod(references, owner, name, descriptor);
+                    }
+                }
+
+                @Override
+                public void visitTypeInsn(int opcode, String type) {
+                    countReference(type);
+                    if (references != null) {
+                        Shrinker.ClassUsage.addClass(references, type);
+                    }
+                }
+
+                @Override
+                public void visitLdcInsn(Object value) {
+                    if (references != null) {
+                        Shrinker.ClassUsage.addConstant(references, value);
+                    }
+                }
+
+                @Override
+                public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                    if (references != null) {
+                        Shrinker.ClassUsage.addType(references, Type.getType(descriptor));
+                    }
+                }
+
+                @Override
+                public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+                    if (references != null && type != null) {
+                        Shrinker.ClassUsage.addClass(references, type);
+                    }
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    if (references != null) {
+                        Shrinker.ClassUsage.addType(references, Type.getType(descriptor));
+                    }
+                    return null;
+                }
+
+                @Override
+                public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                                   Object... bootstrapMethodArguments) {
+                    if (references != null) {
+                        Shrinker.ClassUsage.addConstant(references, bootstrapMethodHandle);
+                        for (Object argument : bootstrapMethodArguments) {
+                            Shrinker.ClassUsage.addConstant(references, argument);
+                        }
+                        Shrinker.ClassUsage.addType(references, Type.getMethodType(descriptor));
+                    }
+                    if (!bootstrapMethodHandle.getOwner().equals("java/lang/invoke/LambdaMetafactory")) {
+                        return;
+                    }
+                    Type returnType = Type.getReturnType(descriptor);
+                    if (returnType.getSort() != Type.OBJECT) {
+                        return;
+                    }
+                    String key = returnType.getInternalName() + "." + name;
+                    String samDescriptor = null;
+                    // altMetafactory может добавлять мосты с другими дескрипторами - точный метод неизвестен
+                    if (bootstrapMethodHandle.getName().equals("metafactory")
+                            && bootstrapMethodArguments.length > 0
+                            && bootstrapMethodArguments[0] instanceof Type) {
+                        samDescriptor = ((Type) bootstrapMethodArguments[0]).getDescriptor();
+                    }
+                    if (lambdaDescriptors.containsKey(key)
+                            && !Objects.equals(lambdaDescriptors.get(key), samDescriptor)) {
+                        samDescriptor = null;
+                    }
+                    lambdaDescriptors.put(key, samDescriptor);
+                }
+            };
         }
 
-        public String getClassName() {
-            return className;
+        private void countReference(String key) {
+            referenceCounts.merge(key, 1, Integer::sum);
         }
 
-        public Set<String> getFields() {
-            return fields;
+        public ClassMetadata getMetadata() {
+            return new ClassMetadata(className, superName, interfaces, access, methods, fields);
         }
 
-        public Set<String> getMethods() {
-            return methods;
+        public Map<String, String> getFieldDescriptors() {
+            return fieldDescriptors;
+        }
+
+        public Map<String, Integer> getReferenceCounts() {
+            return referenceCounts;
         }
-    }
-}
 
-//ci7ud9t4yif <- start.class
\ No newline at end of file
+        public Map<String, String> getLambdaDescriptors() {
+            return lambdaDescriptors;
+        }
+
+        public Shrinker.ClassUsage getUsage() {
+            return usage;
+        }
+    }
+}
\ No newline at end of file
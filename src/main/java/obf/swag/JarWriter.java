@@ -0,0 +1,342 @@
+package obf.swag;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Запись JAR с параллельным сжатием и воспроизводимым результатом.
+ *
+ * Записи копятся порцией (до CHUNK_BYTES несжатых байт), порция сжимается параллельно
+ * через {@link ParallelEngine} и пишется в порядке добавления. Заголовки ZIP пишутся
+ * здесь же: у всех записей одно и то же время (DOS_TIME/DOS_DATE), нет extra-полей и
+ * комментариев, поэтому одинаковые записи в одинаковом порядке дают байт в байт
+ * одинаковый файл. Порядок задает вызывающий, см. {@link #OUTPUT_ORDER}.
+ *
+ * Метод сжатия выбирается по расширению записи (--compression): уровень deflate 0-9
+ * или stored. Без правила для расширения запись, которая в исходном JAR была STORED,
+ * остается STORED (вложенные JAR Spring Boot), остальные сжимаются уровнем по умолчанию.
+ * Директории (имя на /) пишутся пустыми STORED-записями. Больше 65535 записей или 4 ГБ - ZIP64.
+ */
+final class JarWriter implements Closeable {
+    /** Уровень "без сжатия" в правилах --compression. */
+    static final int STORED = -1;
+    static final int DEFAULT_LEVEL = 6;
+    static final long CHUNK_BYTES = 4L * 1024 * 1024;
+    // 1980-02-01 00:00:00: как у воспроизводимых сборок Maven, DOS-дата 1980-01-01 часть
+    // инструментов с учетом часового пояса читает как 1979 год
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (2 << 5) | 1;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_COUNT_LIMIT = 0xFFFF;
+
+    private final CountingOutputStream out;
+    private final ParallelEngine engine;
+    private final Map<String, Integer> levels;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final List<Entry> pending = new ArrayList<>();
+    private long pendingBytes = 0;
+    private final List<Entry> written = new ArrayList<>();
+    private long storedCount = 0;
+
+    private static final class Entry {
+        final byte[] nameBytes;
+        final int level;
+        byte[] data;
+        int method;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+
+        Entry(String name, byte[] data, int level) {
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.data = data;
+            this.level = level;
+        }
+    }
+
+    /**
+     * @param levels уровень по расширению в нижнем регистре, "*" - для остальных записей;
+     *               см. {@link #parseLevels}
+     */
+    JarWriter(OutputStream out, ParallelEngine engine, Map<String, Integer> levels) {
+        this.out = new CountingOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.engine = engine;
+        this.levels = levels;
+    }
+
+    /**
+     * Правила --compression через запятую: "9" или "stored" - для всех сжимаемых записей,
+     * "расширение=уровень" - для одного расширения ("class=9,jar=stored,png=stored").
+     */
+    static Map<String, Integer> parseLevels(String spec) {
+        Map<String, Integer> levels = new HashMap<>();
+        for (String rule : spec.split(",")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int eq = rule.indexOf('=');
+            String extension = eq < 0 ? "*" : rule.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+            if (extension.startsWith(".")) {
+                extension = extension.substring(1);
+            }
+            levels.put(extension, parseLevel(eq < 0 ? rule : rule.substring(eq + 1).trim()));
+        }
+        return levels;
+    }
+
+    private static int parseLevel(String value) {
+        if (value.equalsIgnoreCase("stored")) {
+            return STORED;
+        }
+        int level;
+        try {
+            level = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            level = -2;
+        }
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Уровень сжатия должен быть 0-9 или stored: " + value);
+        }
+        return level;
+    }
+
+    /**
+     * Порядок записей выходного JAR: META-INF/MANIFEST.MF первым (его ищет JarInputStream),
+     * затем остальные META-INF/, затем все по имени.
+     */
+    static final Comparator<String> OUTPUT_ORDER = (a, b) -> {
+        int byRank = Integer.compare(rank(a), rank(b));
+        return byRank != 0 ? byRank : a.compareTo(b);
+    };
+
+    private static int rank(String name) {
+        if (name.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+            return 0;
+        }
+        return name.startsWith("META-INF/") ? 1 : 2;
+    }
+
+    /**
+     * Добавляет запись; originalMethod - метод сжатия в исходном JAR (ZipEntry.STORED
+     * сохраняется, если для расширения нет правила).
+     */
+    void add(String name, byte[] data, int originalMethod) throws IOException {
+        int level = name.endsWith("/") ? STORED : levelFor(name, originalMethod);
+        pending.add(new Entry(name, data, level));
+        pendingBytes += data.length;
+        if (pendingBytes >= CHUNK_BYTES) {
+            flush();
+        }
+    }
+
+    private int levelFor(String name, int originalMethod) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (dot > slash) {
+            Integer level = levels.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+            if (level != null) {
+                return level;
+            }
+        }
+        if (originalMethod == ZipEntry.STORED) {
+            return STORED;
+        }
+        return levels.getOrDefault("*", DEFAULT_LEVEL);
+    }
+
+    /** Сжимает накопленную порцию параллельно и пишет ее в порядке добавления. */
+    void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        engine.forEach(pending, entry -> {
+            compress(entry);
+            return null;
+        });
+        for (Entry entry : pending) {
+            writeLocal(entry);
+        }
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    private void compress(Entry entry) {
+        CRC32 crc = new CRC32();
+        crc.update(entry.data);
+        entry.crc = crc.getValue();
+        entry.size = entry.data.length;
+        if (entry.level == STORED) {
+            entry.method = ZipEntry.STORED;
+            entry.compressedSize = entry.size;
+            return;
+        }
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(entry.level, true);
+        } else {
+            deflater.reset();
+            deflater.setLevel(entry.level);
+        }
+        try {
+            deflater.setInput(entry.data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, entry.data.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+            entry.method = ZipEntry.DEFLATED;
+            entry.data = compressed.toByteArray();
+            entry.compressedSize = entry.data.length;
+        } finally {
+            deflaters.offer(deflater);
+        }
+    }
+
+    private void writeLocal(Entry entry) throws IOException {
+        entry.offset = out.count;
+        writeInt(0x04034b50);
+        writeShort(entry.method == ZipEntry.STORED ? 10 : 20);
+        writeShort(UTF8_FLAG);
+        writeShort(entry.method);
+        writeShort(DOS_TIME);
+        writeShort(DOS_DATE);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.nameBytes.length);
+        writeShort(0);
+        out.write(entry.nameBytes);
+        out.write(entry.data);
+        if (entry.method == ZipEntry.STORED) {
+            storedCount++;
+        }
+        // Данные больше не нужны, центральному каталогу хватит заголовка
+        entry.data = null;
+        written.add(entry);
+    }
+
+    long entryCount() {
+        return written.size() + pending.size();
+    }
+
+    long storedCount() {
+        return storedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            writeCentralDirectory();
+            out.flush();
+        } finally {
+            for (Deflater deflater : deflaters) {
+                deflater.end();
+            }
+            deflaters.clear();
+            out.close();
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = out.count;
+        for (Entry entry : written) {
+            boolean zip64 = entry.offset >= ZIP64_LIMIT;
+            writeInt(0x02014b50);
+            writeShort(zip64 ? 45 : 20);
+            writeShort(zip64 ? 45 : entry.method == ZipEntry.STORED ? 10 : 20);
+            writeShort(UTF8_FLAG);
+            writeShort(entry.method);
+            writeShort(DOS_TIME);
+            writeShort(DOS_DATE);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(entry.nameBytes.length);
+            writeShort(zip64 ? 12 : 0);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt(zip64 ? ZIP64_LIMIT : entry.offset);
+            out.write(entry.nameBytes);
+            if (zip64) {
+                writeShort(0x0001);
+                writeShort(8);
+                writeLong(entry.offset);
+            }
+        }
+        long end = out.count;
+        long size = end - start;
+        int count = written.size();
+        if (count >= ZIP64_COUNT_LIMIT || start >= ZIP64_LIMIT || size >= ZIP64_LIMIT) {
+            writeInt(0x06064b50);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(size);
+            writeLong(start);
+            writeInt(0x07064b50);
+            writeInt(0);
+            writeLong(end);
+            writeInt(1);
+        }
+        writeInt(0x06054b50);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, ZIP64_COUNT_LIMIT));
+        writeShort(Math.min(count, ZIP64_COUNT_LIMIT));
+        writeInt(Math.min(size, ZIP64_LIMIT));
+        writeInt(Math.min(start, ZIP64_LIMIT));
+        writeShort(0);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & 0xFFFFFFFFL);
+        writeInt(value >>> 32);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package obf.swag;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Библиотечные классы, которые не обфусцируются, но задают иерархию: JAR-файлы и
+ * директории из --libs и классы JDK. Метаданные читаются при первом обращении
+ * и кэшируются, отсутствующие классы тоже запоминаются.
+ */
+final class LibraryClassPath implements Closeable {
+    private static final ClassMetadata MISSING = new ClassMetadata("", null, null, 0,
+            Collections.emptyMap(), Collections.emptyMap());
+
+    private final List<JarFile> jars = new ArrayList<>();
+    private final List<Path> directories = new ArrayList<>();
+    private final Map<String, ClassMetadata> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param entries JAR-файлы и директории с классами
+     */
+    LibraryClassPath(List<Path> entries) throws IOException {
+        for (Path entry : entries) {
+            if (Files.isDirectory(entry)) {
+                directories.add(entry);
+            } else if (Files.exists(entry)) {
+                jars.add(new JarFile(entry.toFile()));
+            } else {
+                throw new FileNotFoundException("Библиотека не найдена: " + entry);
+            }
+        }
+    }
+
+    /** Разбирает список путей через File.pathSeparator. */
+    static List<Path> parsePaths(String paths) {
+        List<Path> result = new ArrayList<>();
+        for (String path : paths.split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                result.add(Paths.get(path));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает метаданные класса или null, если класс не найден ни в библиотеках, ни в JDK.
+     */
+    ClassMetadata find(String internalName) {
+        ClassMetadata metadata = cache.computeIfAbsent(internalName, this::load);
+        return metadata != MISSING ? metadata : null;
+    }
+
+    int cachedClassCount() {
+        return cache.size();
+    }
+
+    private ClassMetadata load(String internalName) {
+        String resource = internalName + ".class";
+        try {
+            for (JarFile jar : jars) {
+                JarEntry entry = jar.getJarEntry(resource);
+                if (entry != null) {
+                    try (InputStream is = jar.getInputStream(entry)) {
+                        return ClassMetadata.read(is.readAllBytes());
+                    }
+                }
+            }
+            for (Path directory : directories) {
+                Path file = directory.resolve(resource);
+                if (Files.exists(file)) {
+                    return ClassMetadata.read(Files.readAllBytes(file));
+                }
+            }
+            // Классы JDK из runtime-образа; загрузчик платформы не видит classpath обфускатора
+            try (InputStream is = ClassLoader.getPlatformClassLoader().getResourceAsStream(resource)) {
+                if (is != null) {
+                    return ClassMetadata.read(is.readAllBytes());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Не удалось прочитать библиотечный класс " + internalName + ": " + e.getMessage());
+        }
+        return MISSING;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (JarFile jar : jars) {
+            jar.close();
+        }
+    }
+}
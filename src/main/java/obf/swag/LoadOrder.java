@@ -0,0 +1,123 @@
+package obf.swag;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Порядок загрузки классов при старте приложения (--load-order): записи выходного JAR
+ * идут в этом порядке, по нему же пишется список классов для CDS/AppCDS.
+ *
+ * Понимает три формата трассы, строки других видов пропускаются:
+ *  - java -Xlog:class+load ...:   [0.051s][info][class,load] com.example.App source: file:/app.jar
+ *  - java -verbose:class (JDK 8): [Loaded com.example.App from file:/app.jar]
+ *  - список классов CDS (-XX:DumpLoadedClassList): com/example/App
+ * Скрытые классы (лямбды, $$Lambda, /0x...) и записи @lambda-proxy в CDS-список не попадают:
+ * их нельзя загрузить по имени.
+ */
+final class LoadOrder {
+    private static final Pattern UNIFIED_LOG = Pattern.compile("\\[class,load\\s*]\\s+(\\S+)\\s+source:");
+    private static final Pattern VERBOSE_CLASS = Pattern.compile("^\\[Loaded (\\S+) from ");
+    private static final Pattern CLASS_LIST = Pattern.compile("^([\\w$/]+)(\\s|$)");
+
+    // Внутренние имена в порядке первой загрузки
+    private final List<String> classes;
+
+    private LoadOrder(List<String> classes) {
+        this.classes = classes;
+    }
+
+    static LoadOrder read(Path trace) throws IOException {
+        Set<String> classes = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(trace, StandardCharsets.UTF_8)) {
+            String name = classNameOf(line.trim());
+            if (name != null && !isHidden(name)) {
+                classes.add(name);
+            }
+        }
+        return new LoadOrder(new ArrayList<>(classes));
+    }
+
+    private static String classNameOf(String line) {
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith("@")) {
+            return null;
+        }
+        Matcher matcher = UNIFIED_LOG.matcher(line);
+        if (matcher.find()) {
+            return matcher.group(1).replace('.', '/');
+        }
+        matcher = VERBOSE_CLASS.matcher(line);
+        if (matcher.find()) {
+            return matcher.group(1).replace('.', '/');
+        }
+        if (line.startsWith("[")) {
+            return null;
+        }
+        matcher = CLASS_LIST.matcher(line);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static boolean isHidden(String name) {
+        return name.contains("/0x") || name.contains("$$Lambda") || name.startsWith("[");
+    }
+
+    int size() {
+        return classes.size();
+    }
+
+    /** Те же классы под новыми именами; null от rename - класс выброшен (--shrink). */
+    LoadOrder renamed(UnaryOperator<String> rename) {
+        List<String> renamed = new ArrayList<>(classes.size());
+        for (String name : classes) {
+            String newName = rename.apply(name);
+            if (newName != null) {
+                renamed.add(newName);
+            }
+        }
+        return new LoadOrder(renamed);
+    }
+
+    /**
+     * Порядок записей: манифест и META-INF/ как в {@link JarWriter#OUTPUT_ORDER}, затем
+     * классы трассы в порядке загрузки (корень BOOT-INF/classes/ и т.п. не важен),
+     * затем остальные записи по имени.
+     */
+    Comparator<String> entryOrder() {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < classes.size(); i++) {
+            positions.putIfAbsent(classes.get(i), i);
+        }
+        return (a, b) -> {
+            int byPosition = Integer.compare(position(positions, a), position(positions, b));
+            return byPosition != 0 ? byPosition : JarWriter.OUTPUT_ORDER.compare(a, b);
+        };
+    }
+
+    private static int position(Map<String, Integer> positions, String entryName) {
+        if (entryName.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+            return -2;
+        }
+        if (entryName.startsWith("META-INF/") && !entryName.startsWith("META-INF/versions/")) {
+            return -1;
+        }
+        if (!entryName.endsWith(".class")) {
+            return Integer.MAX_VALUE;
+        }
+        return positions.getOrDefault(JarObfuscator.classNameOf(entryName), Integer.MAX_VALUE);
+    }
+
+    /** Список классов для -XX:SharedClassListFile: одно внутреннее имя на строку. */
+    void writeClassList(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String name : classes) {
+                out.write(name);
+                out.write('\n');
+            }
+        }
+    }
+}
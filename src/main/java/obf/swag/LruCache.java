@@ -0,0 +1,135 @@
+package obf.swag;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Небольшой LRU-кэш с ограничением по числу записей и суммарному весу.
+ *
+ * Вес записи может расти, пока она используется (кэш классов наполняется во время
+ * работы), поэтому он пересчитывается при каждом put() и release(), а не запоминается.
+ *
+ * Записи с ресурсами (открытые JAR) берутся через {@link #acquire} и возвращаются через
+ * {@link #release}: кэш считает, сколько задач держит запись, и закрывает вытесненную
+ * запись (disposer), когда ее отпустит последняя. Записи без ресурсов (disposer == null)
+ * при вытеснении просто забываются.
+ */
+final class LruCache<K, V> {
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Consumer<V> disposer;
+    // Сколько задач держат запись (в кэше или уже вытесненную)
+    private final Map<V, Integer> leases = new IdentityHashMap<>();
+    private long evictions = 0;
+
+    /** Создает запись по ключу при промахе. */
+    interface Loader<K, V> {
+        V load(K key) throws IOException;
+    }
+
+    LruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+        this(maxEntries, maxWeight, weigher, null);
+    }
+
+    LruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher, Consumer<V> disposer) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.disposer = disposer;
+    }
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /** Добавляет или обновляет запись и вытесняет самые старые, пока кэш не уложится в лимиты. */
+    synchronized void put(K key, V value) {
+        V previous = entries.put(key, value);
+        if (previous != null && previous != value) {
+            evicted(previous);
+        }
+        trim();
+    }
+
+    /**
+     * Запись по ключу, при промахе - новая от loader; один ключ - один экземпляр, даже если
+     * промахнулись несколько задач сразу. Каждый acquire парный с {@link #release}.
+     */
+    synchronized V acquire(K key, Loader<K, V> loader) throws IOException {
+        V value = entries.get(key);
+        if (value == null) {
+            value = loader.load(key);
+            entries.put(key, value);
+        }
+        leases.merge(value, 1, Integer::sum);
+        return value;
+    }
+
+    /** Задача больше не держит запись; вес мог вырасти - лимиты проверяются заново. */
+    synchronized void release(V value) {
+        Integer count = leases.get(value);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            leases.put(value, count - 1);
+        } else {
+            leases.remove(value);
+            if (!entries.containsValue(value)) {
+                dispose(value);
+            }
+        }
+        trim();
+    }
+
+    /** Забывает все записи; свободные закрываются сразу, занятые - при release. */
+    synchronized void clear() {
+        List<V> values = new ArrayList<>(entries.values());
+        entries.clear();
+        values.forEach(this::evicted);
+    }
+
+    private void trim() {
+        long weight = weight();
+        Iterator<V> eldest = entries.values().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || weight > maxWeight)) {
+            V value = eldest.next();
+            weight -= weigher.applyAsLong(value);
+            eldest.remove();
+            evictions++;
+            evicted(value);
+        }
+    }
+
+    private void evicted(V value) {
+        if (!leases.containsKey(value)) {
+            dispose(value);
+        }
+    }
+
+    private void dispose(V value) {
+        if (disposer != null) {
+            disposer.accept(value);
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long weight() {
+        long weight = 0;
+        for (V value : entries.values()) {
+            weight += weigher.applyAsLong(value);
+        }
+        return weight;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+}
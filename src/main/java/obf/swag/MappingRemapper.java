@@ -0,0 +1,263 @@
+package obf.swag;
+
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.*;
+
+/**
+ * Неизменяемый индекс переименований, который строится один раз после generateMappings()
+ * и используется всеми трансформациями классов.
+ *
+ * Классы хранятся в одной таблице, поля и методы - в компактных таблицах по владельцу,
+ * поэтому поиск не зависит от общего числа символов в JAR. Если член не объявлен
+ * во владельце из ссылки, он ищется у предков из JAR.
+ *
+ * Индекс из {@link #direct} своих таблиц не строит и ищет прямо в маппингах по ключу
+ * владелец.имя (режим --low-memory): медленнее, зато без второй копии всех символов.
+ */
+final class MappingRemapper extends Remapper {
+    // Ограничение глубины обхода иерархии (защита от циклов в некорректном байткоде)
+    private static final int MAX_DEPTH = 64;
+
+    private final Map<String, String> classes;
+    private final Map<String, OwnerTable> owners;
+    private final Map<String, String[]> supertypes;
+    private final Map<String, String> lambdaDescriptors;
+    // Маппинги JarObfuscator для поиска без таблиц по владельцу (null - таблицы есть)
+    private final Map<String, String> fieldMappings;
+    private final Map<String, String> methodMappings;
+
+    private MappingRemapper(Map<String, String> classes, Map<String, OwnerTable> owners,
+                            Map<String, String[]> supertypes, Map<String, String> lambdaDescriptors) {
+        this(classes, owners, supertypes, lambdaDescriptors, null, null);
+    }
+
+    private MappingRemapper(Map<String, String> classes, Map<String, OwnerTable> owners,
+                            Map<String, String[]> supertypes, Map<String, String> lambdaDescriptors,
+                            Map<String, String> fieldMappings, Map<String, String> methodMappings) {
+        this.classes = classes;
+        this.owners = owners;
+        this.supertypes = supertypes;
+        this.lambdaDescriptors = lambdaDescriptors;
+        this.fieldMappings = fieldMappings;
+        this.methodMappings = methodMappings;
+    }
+
+    /**
+     * Индекс без информации об иерархии: члены ищутся только в указанном владельце.
+     */
+    static MappingRemapper build(Map<String, String> classMappings,
+                                 Map<String, String> fieldMappings,
+                                 Map<String, String> methodMappings) {
+        return build(classMappings, fieldMappings, methodMappings,
+                Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * Строит индекс из маппингов JarObfuscator. Ключи полей имеют вид "owner.name",
+     * ключи методов - "owner.name(desc)". Объявленные члены попадают в таблицы и без
+     * переименования: на них останавливается поиск по иерархии.
+     *
+     * @param supertypes        прямые предки классов JAR: [суперкласс, интерфейсы...]
+     * @param lambdaDescriptors дескрипторы методов функциональных интерфейсов,
+     *                          реализуемых лямбдами: "owner.name" -> "(desc)"
+     */
+    static MappingRemapper build(Map<String, String> classMappings,
+                                 Map<String, String> fieldMappings,
+                                 Map<String, String> methodMappings,
+                                 Map<String, String[]> supertypes,
+                                 Map<String, String> lambdaDescriptors) {
+        Map<String, String> classes = new HashMap<>();
+        for (Map.Entry<String, String> entry : classMappings.entrySet()) {
+            String value = entry.getValue();
+            if (value != null && !entry.getKey().equals(value)) {
+                classes.put(entry.getKey(), value);
+            }
+        }
+
+        Map<String, OwnerTable> owners = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : fieldMappings.entrySet()) {
+            String key = entry.getKey();
+            int dot = key.indexOf('.');
+            String newName = entry.getValue();
+            if (dot <= 0 || newName == null) {
+                continue;
+            }
+            owners.computeIfAbsent(key.substring(0, dot), k -> new OwnerTable())
+                    .fields.put(key.substring(dot + 1), newName);
+        }
+
+        for (Map.Entry<String, String> entry : methodMappings.entrySet()) {
+            String key = entry.getKey();
+            int dot = key.indexOf('.');
+            int paren = key.indexOf('(', dot + 1);
+            String newName = entry.getValue();
+            if (dot <= 0 || paren < 0 || newName == null) {
+                continue;
+            }
+            String methodName = key.substring(dot + 1, paren);
+            // Для необфусцированных методов значение содержит дескриптор - имя не меняется
+            if (newName.indexOf('(') >= 0) {
+                newName = methodName;
+            }
+            owners.computeIfAbsent(key.substring(0, dot), k -> new OwnerTable())
+                    .addMethod(methodName, key.substring(paren), newName);
+        }
+
+        return new MappingRemapper(classes, owners, supertypes, lambdaDescriptors);
+    }
+
+    /**
+     * Индекс поверх самих маппингов: ключ владелец.имя склеивается при каждом поиске.
+     * Маппинги не должны меняться, пока индекс используется.
+     */
+    static MappingRemapper direct(Map<String, String> classMappings,
+                                  Map<String, String> fieldMappings,
+                                  Map<String, String> methodMappings,
+                                  Map<String, String[]> supertypes,
+                                  Map<String, String> lambdaDescriptors) {
+        return new MappingRemapper(classMappings, null, supertypes, lambdaDescriptors,
+                fieldMappings, methodMappings);
+    }
+
+    /** Количество переименованных классов в индексе. */
+    int classCount() {
+        return classes.size();
+    }
+
+    @Override
+    public String map(String internalName) {
+        String mapped = classes.get(internalName);
+        // В маппингах JarObfuscator есть и непереименованные классы (null или то же имя)
+        return mapped != null && !mapped.equals(internalName) ? mapped : null;
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String descriptor) {
+        String mapped = findField(owner, name, 0);
+        return mapped != null ? mapped : name;
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String descriptor) {
+        String mapped = findMethod(owner, name, descriptor, 0);
+        return mapped != null ? mapped : name;
+    }
+
+    /**
+     * Имя метода функционального интерфейса, который реализует лямбда. Интерфейс -
+     * возвращаемый тип дескриптора invokedynamic.
+     */
+    @Override
+    public String mapInvokeDynamicMethodName(String name, String descriptor) {
+        int end = descriptor.lastIndexOf(')');
+        if (end < 0 || descriptor.charAt(end + 1) != 'L') {
+            return name;
+        }
+        String owner = descriptor.substring(end + 2, descriptor.length() - 1);
+        String methodDescriptor = lambdaDescriptors.get(owner + "." + name);
+        return methodDescriptor != null ? mapMethodName(owner, name, methodDescriptor) : name;
+    }
+
+    /**
+     * Поле ищется как при разрешении ссылки в JVM: сам класс, интерфейсы, затем суперкласс.
+     */
+    private String findField(String owner, String name, int depth) {
+        if (owner == null || depth > MAX_DEPTH) {
+            return null;
+        }
+        String mapped = declaredField(owner, name);
+        if (mapped != null) {
+            return mapped;
+        }
+        String[] parents = supertypes.get(owner);
+        if (parents == null) {
+            return null;
+        }
+        for (int i = 1; i < parents.length; i++) {
+            mapped = findField(parents[i], name, depth + 1);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
+        return findField(parents[0], name, depth + 1);
+    }
+
+    /**
+     * Метод ищется в классе, затем в суперклассах и интерфейсах. Переопределения
+     * переименованы одинаково, поэтому подходит первое найденное объявление.
+     */
+    private String findMethod(String owner, String name, String descriptor, int depth) {
+        if (owner == null || depth > MAX_DEPTH) {
+            return null;
+        }
+        String mapped = declaredMethod(owner, name, descriptor);
+        if (mapped != null) {
+            return mapped;
+        }
+        String[] parents = supertypes.get(owner);
+        if (parents == null) {
+            return null;
+        }
+        for (String parent : parents) {
+            mapped = findMethod(parent, name, descriptor, depth + 1);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
+        return null;
+    }
+
+    private String declaredField(String owner, String name) {
+        if (owners == null) {
+            return fieldMappings.get(owner + "." + name);
+        }
+        OwnerTable table = owners.get(owner);
+        return table != null ? table.fields.get(name) : null;
+    }
+
+    private String declaredMethod(String owner, String name, String descriptor) {
+        if (owners == null) {
+            String mapped = methodMappings.get(owner + "." + name + descriptor);
+            // Для необфусцированных методов значение содержит дескриптор - имя не меняется
+            return mapped != null && mapped.indexOf('(') >= 0 ? name : mapped;
+        }
+        OwnerTable table = owners.get(owner);
+        return table != null ? table.findMethod(name, descriptor) : null;
+    }
+
+    /**
+     * Таблица членов одного класса. Методы сгруппированы по имени, перегрузки лежат
+     * в плоском массиве пар (дескриптор, новое имя), чтобы поиск не склеивал строки.
+     */
+    private static final class OwnerTable {
+        private final Map<String, String> fields = new HashMap<>();
+        private final Map<String, String[]> methods = new HashMap<>();
+
+        void addMethod(String name, String descriptor, String newName) {
+            String[] slots = methods.get(name);
+            if (slots == null) {
+                methods.put(name, new String[]{descriptor, newName});
+            } else {
+                String[] grown = Arrays.copyOf(slots, slots.length + 2);
+                grown[slots.length] = descriptor;
+                grown[slots.length + 1] = newName;
+                methods.put(name, grown);
+            }
+        }
+
+        String findMethod(String name, String descriptor) {
+            String[] slots = methods.get(name);
+            if (slots == null) {
+                return null;
+            }
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i].equals(descriptor)) {
+                    return slots[i + 1];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package obf.swag;
+
+import org.objectweb.asm.Type;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Набор переименований в формате ключей JarObfuscator: классы по internal name,
+ * поля по "owner.name", методы по "owner.name(desc)". Хранит только реально
+ * переименованные символы.
+ *
+ * Умеет читать и писать mapping.txt в формате ProGuard и компактный двоичный формат.
+ * При чтении файл отображается в память и индексируются только заголовки классов;
+ * члены класса разбираются при первом обращении к нему. Поэтому загрузка файла
+ * из миллионов строк стоит одного линейного прохода по байтам.
+ */
+public final class MappingSet {
+    private static final int BINARY_MAGIC = 0x4F42464D; // "OBFM"
+    private static final int BINARY_VERSION = 2;
+    private static final String ARROW = " -> ";
+
+    // Блоки по исходному internal name класса, в порядке файла
+    private final Map<String, OwnerBlock> owners = new LinkedHashMap<>();
+
+    /**
+     * Собирает набор из таблиц JarObfuscator. Записи без переименования пропускаются.
+     */
+    static MappingSet fromMappings(Map<String, String> classMappings,
+                                   Map<String, String> fieldMappings,
+                                   Map<String, String> methodMappings,
+                                   Map<String, String> fieldDescriptors) {
+        MappingSet set = new MappingSet();
+        for (Map.Entry<String, String> entry : classMappings.entrySet()) {
+            String value = entry.getValue();
+            if (value != null && !value.equals(entry.getKey())) {
+                set.block(entry.getKey()).newOwner = value;
+            }
+        }
+        for (Map.Entry<String, String> entry : fieldMappings.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            int dot = key.indexOf('.');
+            String name = key.substring(dot + 1);
+            if (value != null && !value.equals(name)) {
+                OwnerBlock block = set.block(key.substring(0, dot));
+                block.fields.put(name, value);
+                String descriptor = fieldDescriptors.get(key);
+                if (descriptor != null) {
+                    block.fieldDescriptors.put(name, descriptor);
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : methodMappings.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            int dot = key.indexOf('.');
+            // Для необфусцированных методов значение содержит дескриптор
+            if (value != null && value.indexOf('(') < 0
+                    && !value.equals(key.substring(dot + 1, key.indexOf('(', dot)))) {
+                set.block(key.substring(0, dot)).methods.put(key.substring(dot + 1), value);
+            }
+        }
+        return set;
+    }
+
+    private OwnerBlock block(String owner) {
+        OwnerBlock block = owners.get(owner);
+        if (block == null) {
+            block = new OwnerBlock(owner, owner, null, 0, 0, false);
+            owners.put(owner, block);
+        }
+        return block;
+    }
+
+    public String getClassName(String className) {
+        OwnerBlock block = owners.get(className);
+        return block != null && !block.newOwner.equals(className) ? block.newOwner : null;
+    }
+
+    public String getFieldName(String fieldKey) {
+        int dot = fieldKey.indexOf('.');
+        OwnerBlock block = owners.get(fieldKey.substring(0, dot));
+        return block != null ? block.members().fields.get(fieldKey.substring(dot + 1)) : null;
+    }
+
+    public String getMethodName(String methodKey) {
+        int dot = methodKey.indexOf('.');
+        OwnerBlock block = owners.get(methodKey.substring(0, dot));
+        return block != null ? block.members().methods.get(methodKey.substring(dot + 1)) : null;
+    }
+
+    /** Классы набора: исходное internal name -> новое (включая не переименованные владельцы членов). */
+    public Set<String> owners() {
+        return Collections.unmodifiableSet(owners.keySet());
+    }
+
+    /** Новое имя владельца (или исходное, если класс не переименован). */
+    public String getOwnerName(String owner) {
+        OwnerBlock block = owners.get(owner);
+        return block != null ? block.newOwner : null;
+    }
+
+    /** Переименованные поля класса: исходное имя -> новое. */
+    public Map<String, String> fieldsOf(String owner) {
+        OwnerBlock block = owners.get(owner);
+        return block != null ? Collections.unmodifiableMap(block.members().fields) : Collections.emptyMap();
+    }
+
+    /** Переименованные методы класса: имя с дескриптором -> новое имя. */
+    public Map<String, String> methodsOf(String owner) {
+        OwnerBlock block = owners.get(owner);
+        return block != null ? Collections.unmodifiableMap(block.members().methods) : Collections.emptyMap();
+    }
+
+    /** Новые имена классов набора. Для чтения не требуется разбор членов. */
+    public Collection<String> classNames() {
+        List<String> names = new ArrayList<>(owners.size());
+        for (OwnerBlock block : owners.values()) {
+            if (!block.newOwner.equals(block.owner)) {
+                names.add(block.newOwner);
+            }
+        }
+        return names;
+    }
+
+    /** Новые имена членов одного класса. Разбирает только блок этого класса. */
+    public Collection<String> memberNames(String owner) {
+        OwnerBlock block = owners.get(owner);
+        if (block == null) {
+            return Collections.emptyList();
+        }
+        block.members();
+        List<String> names = new ArrayList<>(block.fields.size() + block.methods.size());
+        names.addAll(block.fields.values());
+        names.addAll(block.methods.values());
+        return names;
+    }
+
+    /** Количество классов в наборе. */
+    public int size() {
+        return owners.size();
+    }
+
+    // ---------------------------------------------------------------- чтение
+
+    /**
+     * Читает файл маппингов, формат определяется по содержимому.
+     */
+    public static MappingSet read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Файл маппингов больше 2 ГБ: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() >= 4 && buffer.getInt(0) == BINARY_MAGIC) {
+            return readBinary(buffer);
+        }
+        return readProGuard(buffer);
+    }
+
+    /**
+     * Индексирует заголовки классов ProGuard mapping.txt ("a.b.C -> x.y:").
+     * Строки членов (с отступом) только пропускаются до первого обращения к классу.
+     */
+    static MappingSet readProGuard(ByteBuffer buffer) throws IOException {
+        MappingSet set = new MappingSet();
+        int limit = buffer.limit();
+        int position = 0;
+        OwnerBlock current = null;
+
+        while (position < limit) {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            byte first = buffer.get(position);
+            if (first != ' ' && first != '\t' && first != '#' && first != '\n' && first != '\r') {
+                if (current != null) {
+                    current.end = position;
+                }
+                String line = decode(buffer, position, lineEnd - position).trim();
+                int arrow = line.indexOf(ARROW);
+                if (arrow < 0) {
+                    throw new IOException("Ожидается ' -> ' в строке: " + line);
+                }
+                int end = line.endsWith(":") ? line.length() - 1 : line.length();
+                String owner = line.substring(0, arrow).trim().replace('.', '/');
+                String newOwner = line.substring(arrow + ARROW.length(), end).trim().replace('.', '/');
+                current = new OwnerBlock(owner, newOwner, buffer, Math.min(lineEnd + 1, limit), limit, false);
+                set.owners.put(owner, current);
+            }
+            position = lineEnd + 1;
+        }
+        return set;
+    }
+
+    /**
+     * Двоичный формат: для каждого класса исходное и новое имя и длина блока членов,
+     * поэтому при загрузке блоки пропускаются целиком.
+     */
+    static MappingSet readBinary(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        if (in.getInt() != BINARY_MAGIC || in.getInt() != BINARY_VERSION) {
+            throw new IOException("Неизвестный формат двоичного файла маппингов");
+        }
+        MappingSet set = new MappingSet();
+        int classCount = in.getInt();
+        for (int i = 0; i < classCount; i++) {
+            String owner = readString(in);
+            String newOwner = readString(in);
+            int length = in.getInt();
+            int start = in.position();
+            set.owners.put(owner, new OwnerBlock(owner, newOwner, buffer, start, start + length, true));
+            in.position(start + length);
+        }
+        return set;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        String value = decode(in, in.position(), length);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void parseProGuardMembers(OwnerBlock block, String text) throws IOException {
+        int position = 0;
+        while (position < text.length()) {
+            int lineEnd = text.indexOf('\n', position);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            String line = text.substring(position, lineEnd);
+            position = lineEnd + 1;
+
+            int arrow = line.indexOf(ARROW);
+            if (arrow < 0) {
+                if (!line.trim().isEmpty() && line.trim().charAt(0) != '#') {
+                    throw new IOException("Ожидается ' -> ' в строке: " + line);
+                }
+                continue;
+            }
+
+            String newName = line.substring(arrow + ARROW.length()).trim();
+            int start = skipLineNumbers(line, 0, arrow);
+            int paren = line.indexOf('(', start);
+
+            if (paren >= 0 && paren < arrow) {
+                //     1:5:void foo(int,java.lang.String):12:16 -> a
+                int space = line.lastIndexOf(' ', paren);
+                String name = line.substring(space + 1, paren);
+                if (name.indexOf('.') >= 0) {
+                    // Метод, встроенный из другого класса - нужен только для retrace
+                    continue;
+                }
+                int close = line.indexOf(')', paren);
+                String descriptor = toMethodDescriptor(line, start, space, paren + 1, close);
+                if (!name.equals(newName)) {
+                    block.methods.put(name + descriptor, newName);
+                }
+            } else {
+                //     int counter -> a
+                int space = line.lastIndexOf(' ', arrow - 1);
+                String name = line.substring(space + 1, arrow);
+                if (!name.equals(newName)) {
+                    block.fields.put(name, newName);
+                    block.fieldDescriptors.put(name, toDescriptor(line.substring(start, space).trim()));
+                }
+            }
+        }
+    }
+
+    private static int skipLineNumbers(String line, int from, int limit) {
+        int i = from;
+        while (i < limit && (line.charAt(i) == ' ' || line.charAt(i) == '\t')) {
+            i++;
+        }
+        int mark = i;
+        while (i < limit && (Character.isDigit(line.charAt(i)) || line.charAt(i) == ':')) {
+            i++;
+        }
+        // Номера строк всегда заканчиваются двоеточием перед типом
+        return i > mark && line.charAt(i - 1) == ':' ? i : mark;
+    }
+
+    private static String toMethodDescriptor(String line, int typeStart, int typeEnd, int argsStart, int argsEnd) {
+        StringBuilder sb = new StringBuilder("(");
+        int i = argsStart;
+        while (i < argsEnd) {
+            int comma = line.indexOf(',', i);
+            if (comma < 0 || comma > argsEnd) {
+                comma = argsEnd;
+            }
+            sb.append(toDescriptor(line.substring(i, comma).trim()));
+            i = comma + 1;
+        }
+        sb.append(')');
+        sb.append(toDescriptor(line.substring(typeStart, typeEnd).trim()));
+        return sb.toString();
+    }
+
+    static String toDescriptor(String javaType) {
+        int dims = 0;
+        int end = javaType.length();
+        while (end >= 2 && javaType.charAt(end - 1) == ']' && javaType.charAt(end - 2) == '[') {
+            dims++;
+            end -= 2;
+        }
+        String base = javaType.substring(0, end);
+        StringBuilder sb = new StringBuilder(base.length() + dims + 2);
+        for (int i = 0; i < dims; i++) {
+            sb.append('[');
+        }
+        switch (base) {
+            case "void": sb.append('V'); break;
+            case "boolean": sb.append('Z'); break;
+            case "byte": sb.append('B'); break;
+            case "char": sb.append('C'); break;
+            case "short": sb.append('S'); break;
+            case "int": sb.append('I'); break;
+            case "long": sb.append('J'); break;
+            case "float": sb.append('F'); break;
+            case "double": sb.append('D'); break;
+            default: sb.append('L').append(base.replace('.', '/')).append(';'); break;
+        }
+        return sb.toString();
+    }
+
+    private static void parseBinaryMembers(OwnerBlock block, ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(block.start);
+        int fieldCount = in.getInt();
+        for (int j = 0; j < fieldCount; j++) {
+            String name = readString(in);
+            String descriptor = readString(in);
+            block.fields.put(name, readString(in));
+            if (!descriptor.isEmpty()) {
+                block.fieldDescriptors.put(name, descriptor);
+            }
+        }
+        int methodCount = in.getInt();
+        for (int j = 0; j < methodCount; j++) {
+            String signature = readString(in);
+            block.methods.put(signature, readString(in));
+        }
+    }
+
+    // ---------------------------------------------------------------- запись
+
+    /**
+     * Пишет файл маппингов: расширение .bin - двоичный формат, иначе ProGuard mapping.txt.
+     */
+    public void write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            if (file.getFileName().toString().endsWith(".bin")) {
+                writeBinary(out);
+            } else {
+                writeProGuard(out);
+            }
+        }
+    }
+
+    void writeProGuard(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        for (OwnerBlock block : sortedBlocks()) {
+            writer.write(block.owner.replace('/', '.'));
+            writer.write(ARROW);
+            writer.write(block.newOwner.replace('/', '.'));
+            writer.write(":\n");
+            for (String name : sortedKeys(block.fields)) {
+                String descriptor = block.fieldDescriptors.get(name);
+                writer.write("    ");
+                writer.write(descriptor == null ? "java.lang.Object" : Type.getType(descriptor).getClassName());
+                writer.write(' ');
+                writer.write(name);
+                writer.write(ARROW);
+                writer.write(block.fields.get(name));
+                writer.write('\n');
+            }
+            for (String signature : sortedKeys(block.methods)) {
+                int paren = signature.indexOf('(');
+                Type type = Type.getMethodType(signature.substring(paren));
+                writer.write("    ");
+                writer.write(type.getReturnType().getClassName());
+                writer.write(' ');
+                writer.write(signature, 0, paren);
+                writer.write('(');
+                Type[] arguments = type.getArgumentTypes();
+                for (int i = 0; i < arguments.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(arguments[i].getClassName());
+                }
+                writer.write(')');
+                writer.write(ARROW);
+                writer.write(block.methods.get(signature));
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
+    void writeBinary(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        List<OwnerBlock> blocks = sortedBlocks();
+        data.writeInt(BINARY_MAGIC);
+        data.writeInt(BINARY_VERSION);
+        data.writeInt(blocks.size());
+
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        DataOutputStream memberData = new DataOutputStream(members);
+        for (OwnerBlock block : blocks) {
+            members.reset();
+            memberData.writeInt(block.fields.size());
+            for (String name : sortedKeys(block.fields)) {
+                writeString(memberData, name);
+                writeString(memberData, block.fieldDescriptors.getOrDefault(name, ""));
+                writeString(memberData, block.fields.get(name));
+            }
+            memberData.writeInt(block.methods.size());
+            for (String signature : sortedKeys(block.methods)) {
+                writeString(memberData, signature);
+                writeString(memberData, block.methods.get(signature));
+            }
+            memberData.flush();
+
+            writeString(data, block.owner);
+            writeString(data, block.newOwner);
+            data.writeInt(members.size());
+            members.writeTo(data);
+        }
+        data.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Слишком длинное имя: " + value.substring(0, 64) + "...");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private List<OwnerBlock> sortedBlocks() {
+        List<OwnerBlock> blocks = new ArrayList<>(owners.values());
+        blocks.sort(Comparator.comparing(block -> block.owner));
+        for (OwnerBlock block : blocks) {
+            block.members();
+        }
+        return blocks;
+    }
+
+    private static List<String> sortedKeys(Map<String, String> map) {
+        List<String> keys = new ArrayList<>(map.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Члены одного класса. Если блок прочитан из файла, он разбирается при первом обращении.
+     */
+    private static final class OwnerBlock {
+        final String owner;
+        String newOwner;
+        final Map<String, String> fields = new HashMap<>();
+        final Map<String, String> fieldDescriptors = new HashMap<>();
+        // Ключ - имя с дескриптором
+        final Map<String, String> methods = new HashMap<>();
+
+        private ByteBuffer source;
+        private final int start;
+        private int end;
+        private final boolean binary;
+
+        OwnerBlock(String owner, String newOwner, ByteBuffer source, int start, int end, boolean binary) {
+            this.owner = owner;
+            this.newOwner = newOwner;
+            this.source = source;
+            this.start = start;
+            this.end = end;
+            this.binary = binary;
+        }
+
+        synchronized OwnerBlock members() {
+            if (source == null) {
+                return this;
+            }
+            if (binary) {
+                parseBinaryMembers(this, source);
+            } else {
+                try {
+                    parseProGuardMembers(this, decode(source, start, end - start));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            source = null;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package obf.swag;
+
+/**
+ * Служебный член, который добавляет преобразование (кэш строк, поле непрозрачного
+ * предиката), уже есть в классе. Класс переписывается без такого преобразования.
+ */
+final class NameClashException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    NameClashException(String owner, String name) {
+        super("Имя " + name + " уже занято в " + owner);
+    }
+}
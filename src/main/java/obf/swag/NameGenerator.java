@@ -0,0 +1,41 @@
+package obf.swag;
+
+/**
+ * Источник новых имен для классов, полей и методов.
+ *
+ * JarObfuscator сначала резервирует все имена, которые нельзя выдавать (оставленные
+ * без изменений символы и готовые имена из импортированных маппингов), затем запрашивает
+ * имена в порядке убывания числа ссылок на символ.
+ */
+interface NameGenerator {
+
+    /** Запрещает выдавать указанное имя. */
+    void reserve(String name);
+
+    /** Запрещает выдавать имя члена только внутри указанного владельца. */
+    void reserveMember(String owner, String name);
+
+    String nextClassName();
+
+    /** Новое имя поля; имена полей уникальны в пределах владельца. */
+    String nextFieldName(String owner);
+
+    /** Новое имя метода; имена методов уникальны в пределах владельца. */
+    String nextMethodName(String owner);
+
+    /**
+     * Создает генератор по имени режима: "random" (случайные имена, как раньше)
+     * или "short" (короткие имена a, b, ..., aa по счетчику). Seed делает случайный
+     * режим воспроизводимым и не влияет на режим "short".
+     */
+    static NameGenerator create(String mode, Long seed) {
+        switch (mode) {
+            case "random":
+                return new RandomNameGenerator(seed);
+            case "short":
+                return new CompactNameGenerator();
+            default:
+                throw new IllegalArgumentException("Неизвестный режим имен: " + mode);
+        }
+    }
+}
@@ -0,0 +1,653 @@
+package obf.swag;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Локальный сервер обфускации: JVM остается прогретой между сборками.
+ *
+ * Слушает HTTP только на loopback-адресе:
+ * <pre>
+ * POST /obfuscate?path=/abs/app.jar&amp;shrink&amp;names=short  - JAR на диске, ответ - JSON
+ * POST /obfuscate?name=app.jar&amp;...  (тело - байты JAR)     - ответ - байты обфусцированного JAR
+ * GET  /stats                                              - состояние сервера и кэшей
+ * </pre>
+ * Параметры запроса - опции обфускатора без "--" (флаг без значения или со значением true).
+ *
+ * Доступ: каждый запрос несет заголовок "Authorization: Bearer &lt;токен&gt;" (токен выдается
+ * при старте, см. --token-file), Host и Origin - только loopback-адреса. Заголовок
+ * Authorization браузер не отправит с чужой страницы без preflight, а проверка Host
+ * закрывает DNS rebinding. Пути (path и опции с файлами: libs, mapping-in/out, report,
+ * incremental, flow-exclude, load-order) принимаются только внутри --work-dir; без него
+ * сервер работает только с JAR в теле запроса.
+ *
+ * Между запросами сохраняются библиотечные классы (по набору --libs) и инкрементальные
+ * кэши JAR (маппинги и переписанные классы по ключу key, по умолчанию - путь JAR),
+ * оба в LRU с ограничением размера. Запросы с одним ключом выполняются по очереди.
+ * Набор библиотек открывается один раз на ключ и закрывается после вытеснения, когда
+ * его отпустит последняя задача.
+ *
+ * Нагрузка ограничивается в два шага: запрос сверх workers + queue сразу получает 503,
+ * а принятый ждет свободного исполнителя и своей доли памяти. Память задачи оценивается
+ * по распакованному размеру классов JAR и вложенных JAR; задача больше --job-memory
+ * получает 413.
+ */
+final class ObfuscationServer {
+    // Во сколько раз память обработки больше распакованных классов
+    // (байты, метаданные, маппинги и результат)
+    private static final int MEMORY_FACTOR = 4;
+    // Во сколько раз классы вложенного JAR больше его сжатых байт (deflate классов - 2-3 раза)
+    private static final int NESTED_EXPANSION = 3;
+    private static final int KEY_LOCKS = 64;
+    private static final Set<String> RESERVED_PARAMETERS = Set.of("path", "name", "key");
+    // Опции обфускатора, значение которых - путь (libs - список путей)
+    private static final Set<String> PATH_OPTIONS = Set.of(
+            "libs", "mapping-in", "mapping-out", "report", "incremental", "flow-exclude", "load-order");
+    private static final Set<String> LOOPBACK_HOSTS = Set.of("127.0.0.1", "localhost", "[::1]");
+
+    private int port = 7878;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int queue = 16;
+    // Ограничения в мегабайтах
+    private long jobMemory = Math.min(512, Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024));
+    private final long memoryBudget = Runtime.getRuntime().maxMemory() * 3 / 4 / (1024 * 1024);
+    private int cachedLibraryClasses = 50_000;
+    private int cachedJars = 16;
+    private long cachedJarMegabytes = 256;
+    // Директория, внутри которой разрешены пути запросов (null - пути запрещены)
+    private Path workDir = null;
+    private Path tokenFile = null;
+    private byte[] token;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private Semaphore admission;
+    private Semaphore running;
+    private Semaphore memory;
+    private LruCache<String, LibraryClassPath> libraries;
+    private LruCache<String, IncrementalCache> jarCaches;
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejectedBusy = new AtomicLong();
+    private final AtomicLong rejectedTooLarge = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+
+    /** Ошибка запроса с HTTP-статусом ответа. */
+    private static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public static void main(String[] args) {
+        ObfuscationServer server = new ObfuscationServer();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--port") && i + 1 < args.length) {
+                server.port = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--workers") && i + 1 < args.length) {
+                server.workers = positive(arg, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--queue") && i + 1 < args.length) {
+                server.queue = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--job-memory") && i + 1 < args.length) {
+                server.jobMemory = positive(arg, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--cache-classes") && i + 1 < args.length) {
+                server.cachedLibraryClasses = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--cache-jars") && i + 1 < args.length) {
+                server.cachedJars = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--cache-jar-memory") && i + 1 < args.length) {
+                server.cachedJarMegabytes = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--work-dir") && i + 1 < args.length) {
+                server.workDir = Paths.get(args[++i]);
+            } else if (arg.equals("--token-file") && i + 1 < args.length) {
+                server.tokenFile = Paths.get(args[++i]);
+            } else {
+                printUsage();
+                return;
+            }
+        }
+
+        try {
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить сервер: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Использование: java -jar obfuscator.jar serve [опции]");
+        System.out.println("  --port <n>              порт на 127.0.0.1 (по умолчанию 7878)");
+        System.out.println("  --workers <n>           одновременных задач (по умолчанию - половина ядер)");
+        System.out.println("  --queue <n>             задач в очереди сверх workers, остальным 503 (по умолчанию 16)");
+        System.out.println("  --job-memory <MB>       предел памяти одной задачи, больше - 413 (по умолчанию 512)");
+        System.out.println("  --cache-classes <n>     библиотечных классов в кэше (по умолчанию 50000)");
+        System.out.println("  --cache-jars <n>        инкрементальных кэшей JAR (по умолчанию 16)");
+        System.out.println("  --cache-jar-memory <MB> суммарный размер кэшей JAR (по умолчанию 256)");
+        System.out.println("  --work-dir <dir>        пути в запросах (path, libs, report, ...) - только внутри dir;");
+        System.out.println("                          без нее принимаются только JAR в теле запроса");
+        System.out.println("  --token-file <file>     токен доступа: читается из файла, если его нет - создается");
+        System.out.println("                          (по умолчанию токен новый при каждом старте и печатается)");
+    }
+
+    private static int positive(String option, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(option + " должно быть больше 0: " + value);
+        }
+        return value;
+    }
+
+    void start() throws IOException {
+        if (workDir != null) {
+            if (!Files.isDirectory(workDir)) {
+                throw new FileNotFoundException("Рабочая директория не найдена: " + workDir);
+            }
+            workDir = workDir.toRealPath();
+        }
+        token = loadToken().getBytes(StandardCharsets.UTF_8);
+        admission = new Semaphore(workers + queue);
+        running = new Semaphore(workers, true);
+        memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, Math.max(jobMemory, memoryBudget)), true);
+        libraries = new LruCache<>(Integer.MAX_VALUE, cachedLibraryClasses, LibraryClassPath::cachedClassCount,
+                ObfuscationServer::close);
+        jarCaches = new LruCache<>(cachedJars, cachedJarMegabytes * 1024 * 1024, IncrementalCache::cachedBytes);
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+
+        // Пул обработчиков не ограничен: лишние запросы только получают 503,
+        // тяжелая часть ограничена семафорами
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/obfuscate", this::handleObfuscate);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Сервер обфускации: http://127.0.0.1:" + server.getAddress().getPort()
+                + " (задач: " + workers + ", очередь: " + queue + ", память задачи: " + jobMemory
+                + " МБ, всего: " + memoryBudget + " МБ)");
+        System.out.println(tokenFile != null ? "Токен доступа: " + tokenFile.toAbsolutePath()
+                : "Токен доступа: " + new String(token, StandardCharsets.UTF_8));
+        System.out.println(workDir != null ? "Пути запросов - внутри " + workDir
+                : "Пути в запросах запрещены (нет --work-dir)");
+    }
+
+    /** Токен из --token-file; если файла нет - новый, файл создается только для владельца. */
+    private String loadToken() throws IOException {
+        if (tokenFile != null && Files.exists(tokenFile)) {
+            String existing = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+            if (existing.isEmpty()) {
+                throw new IOException("Пустой файл токена: " + tokenFile);
+            }
+            return existing;
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : random) {
+            sb.append(String.format("%02x", b));
+        }
+        String generated = sb.toString();
+        if (tokenFile != null) {
+            try {
+                Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(
+                        PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                // Не POSIX (Windows): права наследуются от директории пользователя
+                Files.createFile(tokenFile);
+            }
+            Files.write(tokenFile, generated.getBytes(StandardCharsets.UTF_8));
+        }
+        return generated;
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+            libraries.clear();
+        }
+    }
+
+    // ---------------------------------------------------------------- обработчики
+
+    private void handleObfuscate(HttpExchange exchange) throws IOException {
+        try {
+            checkAccess(exchange);
+            if (!exchange.getRequestMethod().equals("POST")) {
+                throw new RequestException(405, "нужен POST");
+            }
+            if (!admission.tryAcquire()) {
+                rejectedBusy.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                throw new RequestException(503, "сервер занят, повторите позже");
+            }
+            try {
+                accepted.incrementAndGet();
+                handleJob(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+            } finally {
+                admission.release();
+            }
+        } catch (RequestException e) {
+            if (e.status == 413) {
+                rejectedTooLarge.incrementAndGet();
+            }
+            sendJson(exchange, e.status, "{\"status\": \"error\", \"message\": " + RunStats.quote(e.getMessage()) + "}");
+        } catch (Exception | OutOfMemoryError e) {
+            failed.incrementAndGet();
+            System.err.println("Ошибка задачи: " + e);
+            sendJson(exchange, 500, "{\"status\": \"error\", \"message\": " + RunStats.quote(String.valueOf(e)) + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleJob(HttpExchange exchange, List<String[]> parameters) throws Exception {
+        String path = parameter(parameters, "path");
+        String name = parameter(parameters, "name");
+        String key = parameter(parameters, "key");
+        JarObfuscator obfuscator = createObfuscator(parameters);
+
+        Path uploadDir = null;
+        Path jarPath;
+        if (path != null) {
+            jarPath = confine("path", path);
+            if (!Files.isRegularFile(jarPath)) {
+                throw new RequestException(404, "JAR файл не найден: " + path);
+            }
+            if (key == null) {
+                key = jarPath.toString();
+            }
+        } else {
+            String fileName = uploadFileName(name);
+            uploadDir = Files.createTempDirectory("obf-server");
+            jarPath = uploadDir.resolve(fileName);
+        }
+
+        try {
+            if (uploadDir != null) {
+                // JAR в теле запроса: размер ограничен пределом памяти задачи еще до оценки
+                readBody(exchange.getRequestBody(), jarPath, jobMemory * 1024 * 1024);
+            }
+            int megabytes = estimateMegabytes(jarPath, hasParameter(parameters, "nested-jars"));
+            if (megabytes > jobMemory) {
+                throw new RequestException(413, "оценка памяти задачи " + megabytes
+                        + " МБ больше предела " + jobMemory + " МБ");
+            }
+
+            long start = System.nanoTime();
+            running.acquire();
+            try {
+                memory.acquire(megabytes);
+                try {
+                    active.incrementAndGet();
+                    runJob(obfuscator, jarPath, key);
+                } finally {
+                    active.decrementAndGet();
+                    memory.release(megabytes);
+                }
+            } finally {
+                running.release();
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            completed.incrementAndGet();
+
+            Path output = jarPath.resolveSibling(outputFileName(jarPath));
+            System.out.println("Задача: " + jarPath.getFileName() + " - " + millis + " мс");
+            if (uploadDir != null) {
+                exchange.getResponseHeaders().set("Content-Type", "application/java-archive");
+                exchange.getResponseHeaders().set("X-Obfuscation-Millis", Long.toString(millis));
+                exchange.sendResponseHeaders(200, Files.size(output));
+                try (OutputStream out = exchange.getResponseBody()) {
+                    Files.copy(output, out);
+                }
+            } else {
+                sendJson(exchange, 200, "{\"status\": \"ok\", \"output\": " + RunStats.quote(output.toString())
+                        + ", \"millis\": " + millis + ", \"stats\": " + obfuscator.getStats().toJson().trim() + "}");
+            }
+        } finally {
+            if (uploadDir != null) {
+                deleteDirectory(uploadDir);
+            }
+        }
+    }
+
+    /** Имя файла для JAR из тела запроса: последняя часть name, всегда с .jar. */
+    private static String uploadFileName(String name) throws RequestException {
+        if (name == null) {
+            return "upload.jar";
+        }
+        Path fileName;
+        try {
+            fileName = Paths.get(name).getFileName();
+        } catch (InvalidPathException e) {
+            fileName = null;
+        }
+        if (fileName == null || fileName.toString().isEmpty()) {
+            throw new RequestException(400, "name: нет имени файла: " + name);
+        }
+        String value = fileName.toString();
+        return value.endsWith(".jar") ? value : value + ".jar";
+    }
+
+    /**
+     * Запуск с прогретыми кэшами; задачи с одним ключом выполняются по очереди.
+     * Библиотеки берутся из кэша на время задачи: вытесненные JAR закроет последняя задача.
+     */
+    private void runJob(JarObfuscator obfuscator, Path jarPath, String key) throws IOException {
+        List<Path> libraryPaths = obfuscator.getLibraries();
+        LibraryClassPath classPath = libraries.acquire(libraryPaths.toString(),
+                librariesKey -> new LibraryClassPath(libraryPaths));
+        try {
+            obfuscator.useLibraries(classPath);
+            runWithCache(obfuscator, jarPath, key);
+        } finally {
+            // Вес кэша классов мог вырасти - release пересчитывает лимиты
+            libraries.release(classPath);
+        }
+    }
+
+    private void runWithCache(JarObfuscator obfuscator, Path jarPath, String key) throws IOException {
+        if (key == null) {
+            obfuscator.obfuscateJar(jarPath.toString());
+        } else {
+            synchronized (keyLocks[Math.floorMod(key.hashCode(), KEY_LOCKS)]) {
+                IncrementalCache cache = jarCaches.get(key);
+                if (cache == null) {
+                    cache = IncrementalCache.inMemory();
+                }
+                obfuscator.useCache(cache);
+                obfuscator.obfuscateJar(jarPath.toString());
+                jarCaches.put(key, cache);
+            }
+        }
+    }
+
+    private static void close(LibraryClassPath classPath) {
+        try {
+            classPath.close();
+        } catch (IOException e) {
+            System.err.println("Не удалось закрыть библиотеки: " + e);
+        }
+    }
+
+    private JarObfuscator createObfuscator(List<String[]> parameters) throws RequestException {
+        JarObfuscator obfuscator = new JarObfuscator();
+        obfuscator.setThreads(1);
+        obfuscator.setQuiet(true);
+        obfuscator.setLog(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<String> options = new ArrayList<>();
+        for (String[] parameter : parameters) {
+            if (RESERVED_PARAMETERS.contains(parameter[0])) {
+                continue;
+            }
+            if (parameter[0].equals("jmx")) {
+                throw new RequestException(400, "jmx на сервере не поддерживается");
+            }
+            options.add("--" + parameter[0]);
+            if (PATH_OPTIONS.contains(parameter[0]) && parameter[1] != null) {
+                options.add(confinePaths(parameter[0], parameter[1]));
+            } else if (parameter[1] != null && !parameter[1].equals("true")) {
+                options.add(parameter[1]);
+            }
+        }
+        String[] args = options.toArray(new String[0]);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                int next = CommandLine.parseOption(obfuscator, args, i);
+                if (next < 0) {
+                    throw new RequestException(400, "неизвестная опция: " + args[i]);
+                }
+                i = next;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        return obfuscator;
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            checkAccess(exchange);
+        } catch (RequestException e) {
+            sendJson(exchange, e.status, "{\"status\": \"error\", \"message\": " + RunStats.quote(e.getMessage()) + "}");
+            exchange.close();
+            return;
+        }
+        long uptime = (System.nanoTime() - startNanos) / 1_000_000_000L;
+        String json = "{\n"
+                + "  \"uptimeSeconds\": " + uptime + ",\n"
+                + "  \"accepted\": " + accepted.get() + ",\n"
+                + "  \"completed\": " + completed.get() + ",\n"
+                + "  \"failed\": " + failed.get() + ",\n"
+                + "  \"active\": " + active.get() + ",\n"
+                + "  \"waiting\": " + (workers + queue - admission.availablePermits() - active.get()) + ",\n"
+                + "  \"rejectedBusy\": " + rejectedBusy.get() + ",\n"
+                + "  \"rejectedTooLarge\": " + rejectedTooLarge.get() + ",\n"
+                + "  \"freeMemoryMegabytes\": " + memory.availablePermits() + ",\n"
+                + "  \"libraryCaches\": " + libraries.size() + ",\n"
+                + "  \"libraryClasses\": " + libraries.weight() + ",\n"
+                + "  \"libraryEvictions\": " + libraries.evictions() + ",\n"
+                + "  \"jarCaches\": " + jarCaches.size() + ",\n"
+                + "  \"jarCacheBytes\": " + jarCaches.weight() + ",\n"
+                + "  \"jarCacheEvictions\": " + jarCaches.evictions() + "\n"
+                + "}\n";
+        try {
+            sendJson(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ---------------------------------------------------------------- доступ
+
+    /** Токен, Host и Origin запроса. */
+    private void checkAccess(HttpExchange exchange) throws RequestException {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !isLoopback(host)) {
+            throw new RequestException(403, "Host должен быть loopback-адресом");
+        }
+        String origin = exchange.getRequestHeaders().getFirst("Origin");
+        if (origin != null) {
+            try {
+                URI uri = new URI(origin);
+                if (uri.getHost() == null || !isLoopback(uri.getAuthority())) {
+                    throw new RequestException(403, "запросы с чужих страниц запрещены");
+                }
+            } catch (URISyntaxException e) {
+                throw new RequestException(403, "неверный Origin");
+            }
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] presented = authorization != null && authorization.startsWith("Bearer ")
+                ? authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8) : null;
+        if (presented == null || !MessageDigest.isEqual(presented, token)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            throw new RequestException(401, "нужен заголовок Authorization: Bearer <токен>");
+        }
+    }
+
+    /** host или host:port с loopback-адресом. */
+    private static boolean isLoopback(String hostAndPort) {
+        String host = hostAndPort.trim().toLowerCase(Locale.ROOT);
+        int end = host.startsWith("[") ? host.indexOf(']') + 1 : host.indexOf(':');
+        if (end > 0) {
+            String port = host.substring(end);
+            if (!port.isEmpty() && !port.matches(":\\d{1,5}")) {
+                return false;
+            }
+            host = host.substring(0, end);
+        }
+        return LOOPBACK_HOSTS.contains(host);
+    }
+
+    /** Путь запроса внутри --work-dir (относительный - от нее), иначе 403. */
+    private Path confine(String option, String value) throws RequestException {
+        if (workDir == null) {
+            throw new RequestException(403, option + ": пути в запросах запрещены, запустите сервер с --work-dir");
+        }
+        Path path = workDir.resolve(value).normalize();
+        // Символические ссылки раскрываются по ближайшему существующему предку
+        Path existing = path;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        try {
+            if (existing == null || !existing.toRealPath().startsWith(workDir)) {
+                throw new RequestException(403, option + ": путь вне рабочей директории: " + value);
+            }
+        } catch (IOException e) {
+            throw new RequestException(403, option + ": путь недоступен: " + value);
+        }
+        return path;
+    }
+
+    /** То же для списка путей через File.pathSeparator (libs). */
+    private String confinePaths(String option, String value) throws RequestException {
+        List<String> paths = new ArrayList<>();
+        for (String part : value.split(File.pathSeparator)) {
+            if (!part.isEmpty()) {
+                paths.add(confine(option, part).toString());
+            }
+        }
+        return String.join(File.pathSeparator, paths);
+    }
+
+    // ---------------------------------------------------------------- вспомогательное
+
+    /**
+     * Оценка памяти задачи в мегабайтах по центральному каталогу JAR: распакованный
+     * размер классов, умноженный на MEMORY_FACTOR. Вложенный JAR (BOOT-INF/lib/*.jar)
+     * держится в памяти целиком, а с --nested-jars еще и разбирается: его классы
+     * считаются как NESTED_EXPANSION его размеров.
+     */
+    private static int estimateMegabytes(Path jarPath, boolean nestedJars) throws IOException {
+        long bytes = Files.size(jarPath);
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                boolean nested = name.endsWith(".jar");
+                if (!name.endsWith(".class") && !nested) {
+                    continue;
+                }
+                // Размер может быть неизвестен (-1) - тогда берем сжатый с запасом
+                long size = Math.max(0, entry.getSize() >= 0 ? entry.getSize() : entry.getCompressedSize() * 4);
+                if (!nested) {
+                    bytes += size * MEMORY_FACTOR;
+                } else {
+                    bytes += nestedJars ? size * NESTED_EXPANSION * MEMORY_FACTOR : size;
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes / (1024 * 1024) + 1);
+    }
+
+    private static void readBody(InputStream in, Path target, long limit) throws IOException, RequestException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > limit) {
+                    throw new RequestException(413, "JAR больше предела памяти задачи");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        if (total == 0) {
+            throw new RequestException(400, "нужен параметр path или JAR в теле запроса");
+        }
+    }
+
+    private static String outputFileName(Path jarPath) {
+        String fileName = jarPath.getFileName().toString();
+        return (fileName.toLowerCase().endsWith(".jar") ? fileName.substring(0, fileName.length() - 4) : fileName)
+                + "_obfuscated.jar";
+    }
+
+    /** Параметры запроса в исходном порядке: [имя, значение или null]. */
+    private static List<String[]> parseQuery(String query) {
+        List<String[]> parameters = new ArrayList<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : null;
+            parameters.add(new String[]{name, value});
+        }
+        return parameters;
+    }
+
+    private static boolean hasParameter(List<String[]> parameters, String name) {
+        for (String[] parameter : parameters) {
+            if (parameter[0].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String parameter(List<String[]> parameters, String name) {
+        for (String[] parameter : parameters) {
+            if (parameter[0].equals(name)) {
+                return parameter[1];
+            }
+        }
+        return null;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package obf.swag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Пул потоков для независимой обработки классов (анализ и переписывание байткода).
+ *
+ * Результаты всегда возвращаются в порядке входного списка, поэтому итог
+ * не зависит от того, как задачи распределились по потокам.
+ */
+final class ParallelEngine implements AutoCloseable {
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    @FunctionalInterface
+    interface Task<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    ParallelEngine(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть больше 0: " + threads);
+        }
+        this.threads = threads;
+        // При одном потоке задачи выполняются в вызывающем потоке без пула
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Применяет задачу к каждому элементу и возвращает результаты в исходном порядке.
+     */
+    <T, R> List<R> map(List<T> items, Task<T, R> task) throws IOException {
+        if (pool == null || items.size() < 2) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+
+        try {
+            return pool.submit(() -> items.parallelStream()
+                    .map(item -> {
+                        try {
+                            return task.apply(item);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Обработка прервана", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Выполняет задачу для каждого элемента, результат не нужен.
+     */
+    <T> void forEach(List<T> items, Task<T, ?> task) throws IOException {
+        map(items, task);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
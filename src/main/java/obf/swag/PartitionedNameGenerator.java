@@ -0,0 +1,56 @@
+package obf.swag;
+
+/**
+ * Доля имен классов для одной из нескольких независимых групп пакетного режима.
+ *
+ * Каждое имя принадлежит ровно одной доле (по хешу имени), генератор группы пропускает
+ * чужие имена. Группы обрабатываются параллельно, но не выдают одинаковых имен классов,
+ * и результат не зависит от порядка, в котором они работали. Имена полей и методов
+ * уникальны внутри класса, их делить не нужно.
+ */
+final class PartitionedNameGenerator implements NameGenerator {
+    private final NameGenerator delegate;
+    private final int partition;
+    private final int partitions;
+
+    PartitionedNameGenerator(NameGenerator delegate, int partition, int partitions) {
+        this.delegate = delegate;
+        this.partition = partition;
+        this.partitions = partitions;
+    }
+
+    /** Номер доли, которой принадлежит имя класса. */
+    static int partitionOf(String className, int partitions) {
+        int h = className.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), partitions);
+    }
+
+    @Override
+    public void reserve(String name) {
+        delegate.reserve(name);
+    }
+
+    @Override
+    public void reserveMember(String owner, String name) {
+        delegate.reserveMember(owner, name);
+    }
+
+    @Override
+    public String nextClassName() {
+        String name;
+        do {
+            name = delegate.nextClassName();
+        } while (partitionOf(name, partitions) != partition);
+        return name;
+    }
+
+    @Override
+    public String nextFieldName(String owner) {
+        return delegate.nextFieldName(owner);
+    }
+
+    @Override
+    public String nextMethodName(String owner) {
+        return delegate.nextMethodName(owner);
+    }
+}
@@ -0,0 +1,67 @@
+package obf.swag;
+
+import java.util.Random;
+
+/**
+ * Случайные имена с префиксами c/f/m и проверкой уникальности по общему множеству.
+ * С заданным seed последовательность имен воспроизводима.
+ *
+ * Множество выданных имен - таблица символов: на больших JAR это сотни тысяч имен.
+ */
+final class RandomNameGenerator implements NameGenerator {
+    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789";
+    private static final int CLASS_NAME_LENGTH = 10;
+    private static final int FIELD_NAME_LENGTH = 8;
+    private static final int METHOD_NAME_LENGTH = 8;
+
+    private final Random random;
+    private final SymbolTable usedNames = new SymbolTable();
+
+    RandomNameGenerator(Long seed) {
+        this.random = seed != null ? new Random(seed) : new Random();
+    }
+
+    @Override
+    public void reserve(String name) {
+        usedNames.intern(name);
+    }
+
+    @Override
+    public void reserveMember(String owner, String name) {
+        usedNames.intern(name);
+    }
+
+    @Override
+    public String nextClassName() {
+        return generateUnique('c', CLASS_NAME_LENGTH);
+    }
+
+    @Override
+    public String nextFieldName(String owner) {
+        return generateUnique('f', FIELD_NAME_LENGTH);
+    }
+
+    @Override
+    public String nextMethodName(String owner) {
+        return generateUnique('m', METHOD_NAME_LENGTH);
+    }
+
+    private String generateUnique(char prefix, int length) {
+        char[] chars = new char[length + 1];
+        chars[0] = prefix;
+        String name;
+        do {
+            for (int i = 1; i <= length; i++) {
+                chars[i] = CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+            }
+            name = new String(chars);
+        } while (!add(name));
+        return name;
+    }
+
+    private boolean add(String name) {
+        int size = usedNames.size();
+        usedNames.intern(name);
+        return usedNames.size() > size;
+    }
+}
@@ -0,0 +1,190 @@
+package obf.swag;
+
+import java.util.*;
+
+/**
+ * Быстрая проверка, ссылается ли класс хотя бы на один переименованный символ.
+ *
+ * Читается только пул констант: каждая строка CONSTANT_Utf8 сравнивается с именами
+ * переименованных классов и членов, а в дескрипторах и сигнатурах проверяется каждый
+ * тип вида Lимя;. Проверка консервативная - лишнее совпадение (строковая константа,
+ * совпавшая с именем) только отправляет класс на обычное переписывание.
+ * Классы без совпадений копируются в результат байт в байт.
+ *
+ * Имена лежат в {@link SymbolTable}: на больших JAR их сотни тысяч.
+ */
+final class ReferenceScanner {
+    private static final int CONSTANT_UTF8 = 1;
+
+    private final SymbolTable classNames;
+    private final SymbolTable memberNames;
+
+    ReferenceScanner(SymbolTable classNames, SymbolTable memberNames) {
+        this.classNames = classNames;
+        this.memberNames = memberNames;
+    }
+
+    /**
+     * Собирает старые имена переименованных символов из маппингов
+     * (ключи членов - владелец.имя и владелец.имя+дескриптор).
+     *
+     * @param classStrings строки с именем класса через точку тоже требуют переписывания
+     *                     (см. {@link ClassStringRemapper})
+     */
+    static ReferenceScanner fromMappings(Map<String, String> classMappings,
+                                         Map<String, String> fieldMappings,
+                                         Map<String, String> methodMappings,
+                                         boolean classStrings) {
+        SymbolTable classNames = new SymbolTable();
+        for (Map.Entry<String, String> entry : classMappings.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().equals(entry.getKey())) {
+                classNames.intern(entry.getKey());
+                if (classStrings && entry.getKey().indexOf('/') >= 0) {
+                    classNames.intern(entry.getKey().replace('/', '.'));
+                }
+            }
+        }
+        SymbolTable memberNames = new SymbolTable();
+        for (Map.Entry<String, String> entry : fieldMappings.entrySet()) {
+            String name = entry.getKey().substring(entry.getKey().indexOf('.') + 1);
+            if (entry.getValue() != null && !entry.getValue().equals(name)) {
+                memberNames.intern(name);
+            }
+        }
+        for (Map.Entry<String, String> entry : methodMappings.entrySet()) {
+            String nameAndDesc = entry.getKey().substring(entry.getKey().indexOf('.') + 1);
+            String name = nameAndDesc.substring(0, nameAndDesc.indexOf('('));
+            String newName = entry.getValue();
+            if (newName != null && !newName.equals(nameAndDesc) && !newName.equals(name)) {
+                memberNames.intern(name);
+            }
+        }
+        return new ReferenceScanner(classNames, memberNames);
+    }
+
+    /**
+     * true, если класс нужно переписывать. Непонятный пул констант (новый тег,
+     * обрезанный файл) тоже дает true - такой класс разберет ASM.
+     */
+    boolean references(byte[] classData) {
+        if (classData.length < 10) {
+            return true;
+        }
+        int count = readUnsignedShort(classData, 8);
+        int offset = 10;
+        char[] buffer = new char[64];
+        for (int index = 1; index < count; index++) {
+            if (offset >= classData.length) {
+                return true;
+            }
+            int tag = classData[offset];
+            switch (tag) {
+                case CONSTANT_UTF8: {
+                    if (offset + 3 > classData.length) {
+                        return true;
+                    }
+                    int length = readUnsignedShort(classData, offset + 1);
+                    int start = offset + 3;
+                    if (start + length > classData.length) {
+                        return true;
+                    }
+                    if (length > buffer.length) {
+                        buffer = new char[length];
+                    }
+                    if (matches(classData, start, length, buffer)) {
+                        return true;
+                    }
+                    offset = start + length;
+                    break;
+                }
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    offset += 5;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    offset += 9;
+                    index++;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    offset += 3;
+                    break;
+                case 15: // MethodHandle
+                    offset += 4;
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(byte[] data, int start, int length, char[] buffer) {
+        // Модифицированный UTF-8: 1-3 байта на символ, \0 и суррогаты тоже в этих формах
+        int chars = 0;
+        boolean descriptor = false;
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            int b = data[i] & 0xFF;
+            char c;
+            if (b < 0x80) {
+                c = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && i + 1 < end) {
+                c = (char) (((b & 0x1F) << 6) | (data[++i] & 0x3F));
+            } else if (i + 2 < end) {
+                c = (char) (((b & 0x0F) << 12) | ((data[i + 1] & 0x3F) << 6) | (data[i + 2] & 0x3F));
+                i += 2;
+            } else {
+                return true;
+            }
+            if (c == ';') {
+                descriptor = true;
+            }
+            buffer[chars++] = c;
+        }
+
+        String value = new String(buffer, 0, chars);
+        if (contains(classNames, value) || contains(memberNames, value)) {
+            return true;
+        }
+        return descriptor && referencesType(value);
+    }
+
+    /** Ищет переименованный класс среди типов Lимя; и Lимя<...>; дескриптора или сигнатуры. */
+    private boolean referencesType(String value) {
+        if (value.contains(">.")) {
+            // Вложенный класс параметризованного внешнего (Outer<T>.Inner) - пусть разбирает ASM
+            return true;
+        }
+        int from = value.indexOf('L');
+        while (from >= 0) {
+            int end = from + 1;
+            while (end < value.length() && value.charAt(end) != ';' && value.charAt(end) != '<') {
+                end++;
+            }
+            if (end < value.length() && contains(classNames, value.substring(from + 1, end))) {
+                return true;
+            }
+            from = value.indexOf('L', from + 1);
+        }
+        return false;
+    }
+
+    private static boolean contains(SymbolTable names, String value) {
+        return names.find(value) != SymbolTable.NONE;
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+}
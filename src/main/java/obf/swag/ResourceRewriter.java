@@ -0,0 +1,302 @@
+package obf.swag;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Переписывает имена переименованных классов в текстовых ресурсах: META-INF/services,
+ * spring.factories, XML, properties, YAML и т.п. (см. {@link #isTextResource}).
+ *
+ * Старые имена всех классов с пакетом, через точку (com.example.Impl) и через слэш
+ * (com/example/Impl), собраны в один автомат Ахо-Корасик над байтами UTF-8. Файл
+ * проходится один раз, совпадения заменяются по ходу, время не зависит от числа классов.
+ * Имя заменяется, только если это отдельный токен: слева и справа не буква/цифра/_/$
+ * и не продолжение квалифицированного имени (org.com.example.Impl, com.example.Impl.x).
+ * Имена без пакета не заменяются: в тексте они неотличимы от обычных слов.
+ * Файлы с нулевыми байтами (UTF-16, двоичные) не меняются.
+ */
+final class ResourceRewriter {
+    private static final String SERVICES = "META-INF/services/";
+    private static final Set<String> TEXT_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "properties", "factories", "imports", "handlers", "schemas",
+            "xml", "json", "yml", "yaml", "conf", "tld"));
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final Map<String, String> classMappings;
+    // Автомат: переходы в открытой хеш-таблице (узел << 8 | байт) -> узел
+    private final long[] edgeKeys;
+    private final int[] edgeTargets;
+    // Переходы из корня без хеш-таблицы: в обычном тексте автомат почти все время в корне
+    private final int[] rootEdges = new int[256];
+    private final int[] fail;
+    // Образец, который кончается в узле, и ближайший по суффиксным ссылкам узел с образцом
+    private final int[] match;
+    private final int[] dictionary;
+    private final int[] patternLength;
+    private final byte[][] replacements;
+    private final byte[] separators;
+    private final LongAdder replaced = new LongAdder();
+
+    private ResourceRewriter(Map<String, String> classMappings, Trie trie, List<byte[]> replacements,
+                             List<Integer> lengths, byte[] separators) {
+        this.classMappings = classMappings;
+        this.edgeKeys = trie.edgeKeys;
+        this.edgeTargets = trie.edgeTargets;
+        this.match = Arrays.copyOf(trie.match, trie.size);
+        this.fail = new int[trie.size];
+        this.dictionary = new int[trie.size];
+        this.replacements = replacements.toArray(new byte[0][]);
+        this.patternLength = new int[lengths.size()];
+        for (int i = 0; i < patternLength.length; i++) {
+            patternLength[i] = lengths.get(i);
+        }
+        this.separators = separators;
+        for (int b = 0; b < rootEdges.length; b++) {
+            int target = edge(edgeKeys, edgeTargets, ROOT, (byte) b);
+            rootEdges[b] = target != NONE ? target : ROOT;
+        }
+        linkSuffixes(trie);
+    }
+
+    /** Автомат по всем переименованным классам (старое внутреннее имя -> новое). */
+    static ResourceRewriter build(Map<String, String> classMappings) {
+        Trie trie = new Trie();
+        List<byte[]> replacements = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        ByteArrayOutputStream separators = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> entry : classMappings.entrySet()) {
+            String oldName = entry.getKey();
+            String newName = entry.getValue();
+            if (newName == null || newName.equals(oldName) || oldName.indexOf('/') < 0) {
+                continue;
+            }
+            for (char separator : new char[]{'.', '/'}) {
+                byte[] pattern = oldName.replace('/', separator).getBytes(StandardCharsets.UTF_8);
+                trie.add(pattern, replacements.size());
+                replacements.add(newName.replace('/', separator).getBytes(StandardCharsets.UTF_8));
+                lengths.add(pattern.length);
+                separators.write(separator);
+            }
+        }
+        return new ResourceRewriter(classMappings, trie, replacements, lengths, separators.toByteArray());
+    }
+
+    /** Ресурсы, в которых ищутся имена классов. Манифест переписывается отдельно. */
+    static boolean isTextResource(String entryName) {
+        if (entryName.endsWith("/")) {
+            return false;
+        }
+        if (entryName.startsWith(SERVICES)) {
+            return entryName.length() > SERVICES.length();
+        }
+        int slash = entryName.lastIndexOf('/');
+        int dot = entryName.lastIndexOf('.');
+        return dot > slash && TEXT_EXTENSIONS.contains(entryName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /** META-INF/services/<старое имя интерфейса> -> META-INF/services/<новое>, остальные - как есть. */
+    String entryNameOf(String entryName) {
+        if (!entryName.startsWith(SERVICES) || entryName.length() == SERVICES.length()) {
+            return entryName;
+        }
+        String service = entryName.substring(SERVICES.length()).replace('.', '/');
+        String newName = classMappings.get(service);
+        if (newName == null || newName.equals(service)) {
+            return entryName;
+        }
+        return SERVICES + newName.replace('/', '.');
+    }
+
+    /** Содержимое с новыми именами; тот же массив, если заменять нечего. */
+    byte[] rewrite(byte[] data) {
+        ByteArrayOutputStream out = null;
+        int copied = 0;
+        int state = ROOT;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == 0) {
+                return data;
+            }
+            state = next(state, data[i]);
+            int node = match[state] != NONE ? state : dictionary[state];
+            for (; node != ROOT; node = dictionary[node]) {
+                int pattern = match[node];
+                int start = i + 1 - patternLength[pattern];
+                byte separator = separators[pattern];
+                if (start >= copied && isTokenStart(data, start, separator) && isTokenEnd(data, i + 1, separator)) {
+                    if (out == null) {
+                        out = new ByteArrayOutputStream(data.length + 64);
+                    }
+                    out.write(data, copied, start - copied);
+                    out.write(replacements[pattern], 0, replacements[pattern].length);
+                    copied = i + 1;
+                    replaced.increment();
+                    break;
+                }
+            }
+        }
+        if (out == null) {
+            return data;
+        }
+        out.write(data, copied, data.length - copied);
+        return out.toByteArray();
+    }
+
+    /** Сколько имен заменено во всех ресурсах. */
+    long replacedNames() {
+        return replaced.sum();
+    }
+
+    private static boolean isTokenStart(byte[] data, int start, byte separator) {
+        if (start == 0) {
+            return true;
+        }
+        byte before = data[start - 1];
+        return !isNamePart(before) && !(before == separator && start >= 2 && isNamePart(data[start - 2]));
+    }
+
+    private static boolean isTokenEnd(byte[] data, int end, byte separator) {
+        if (end == data.length) {
+            return true;
+        }
+        byte after = data[end];
+        return !isNamePart(after) && !(after == separator && end + 1 < data.length && isNamePart(data[end + 1]));
+    }
+
+    private static boolean isNamePart(byte b) {
+        // Байты не-ASCII символов считаются частью имени
+        return b < 0 || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '_' || b == '$';
+    }
+
+    private int next(int state, byte b) {
+        while (state != ROOT) {
+            int target = edge(edgeKeys, edgeTargets, state, b);
+            if (target != NONE) {
+                return target;
+            }
+            state = fail[state];
+        }
+        return rootEdges[b & 0xFF];
+    }
+
+    /** Суффиксные ссылки обходом в ширину. */
+    private void linkSuffixes(Trie trie) {
+        int[] queue = new int[trie.size];
+        int head = 0;
+        int tail = 0;
+        for (int child = trie.firstChild[ROOT]; child != NONE; child = trie.nextSibling[child]) {
+            fail[child] = ROOT;
+            dictionary[child] = ROOT;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = trie.firstChild[node]; child != NONE; child = trie.nextSibling[child]) {
+                byte b = trie.label[child];
+                int suffix = fail[node];
+                int target = edge(edgeKeys, edgeTargets, suffix, b);
+                while (target == NONE && suffix != ROOT) {
+                    suffix = fail[suffix];
+                    target = edge(edgeKeys, edgeTargets, suffix, b);
+                }
+                fail[child] = target != NONE ? target : ROOT;
+                dictionary[child] = match[fail[child]] != NONE ? fail[child] : dictionary[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private static int edge(long[] keys, int[] targets, int node, byte b) {
+        long key = edgeKey(node, b);
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return targets[slot];
+            }
+        }
+        return NONE;
+    }
+
+    private static long edgeKey(int node, byte b) {
+        // +1: нулевой ключ обозначает пустую ячейку
+        return (((long) node << 8) | (b & 0xFF)) + 1;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    /** Бор образцов; списки детей нужны только для построения суффиксных ссылок. */
+    private static final class Trie {
+        long[] edgeKeys = new long[1024];
+        int[] edgeTargets = new int[1024];
+        int edgeCount = 0;
+        int size = 1;
+        int[] match = {NONE};
+        int[] firstChild = {NONE};
+        int[] nextSibling = {NONE};
+        byte[] label = {0};
+
+        void add(byte[] pattern, int id) {
+            int node = ROOT;
+            for (byte b : pattern) {
+                int child = edge(edgeKeys, edgeTargets, node, b);
+                if (child == NONE) {
+                    child = newNode(node, b);
+                }
+                node = child;
+            }
+            if (match[node] == NONE) {
+                match[node] = id;
+            }
+        }
+
+        private int newNode(int parent, byte b) {
+            if (size == match.length) {
+                int capacity = size * 2;
+                match = Arrays.copyOf(match, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                label = Arrays.copyOf(label, capacity);
+            }
+            int node = size++;
+            match[node] = NONE;
+            firstChild[node] = NONE;
+            nextSibling[node] = firstChild[parent];
+            firstChild[parent] = node;
+            label[node] = b;
+            putEdge(parent, b, node);
+            return node;
+        }
+
+        private void putEdge(int node, byte b, int target) {
+            if ((edgeCount + 1) * 2 > edgeKeys.length) {
+                long[] oldKeys = edgeKeys;
+                int[] oldTargets = edgeTargets;
+                edgeKeys = new long[oldKeys.length * 2];
+                edgeTargets = new int[oldKeys.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != 0) {
+                        insert(oldKeys[i], oldTargets[i]);
+                    }
+                }
+            }
+            insert(edgeKey(node, b), target);
+            edgeCount++;
+        }
+
+        private void insert(long key, int target) {
+            int mask = edgeKeys.length - 1;
+            int slot = slot(key, mask);
+            while (edgeKeys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            edgeKeys[slot] = key;
+            edgeTargets[slot] = target;
+        }
+    }
+}
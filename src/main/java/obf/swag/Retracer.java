@@ -0,0 +1,522 @@
+package obf.swag;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Восстановление исходных имен в стектрейсах и логах по файлу маппингов.
+ *
+ * Обратный индекс классов строится один раз: обфусцированное имя -> исходное.
+ * Таблица членов класса (обфусцированное имя -> исходное) заполняется при первом
+ * обращении к классу, поэтому построение не зависит от числа членов в маппингах.
+ * Ввод обрабатывается как байты: каждая последовательность символов вида a.b.C$D.m
+ * ищется в индексе прямо по диапазону байтов, без создания строк, остальные байты
+ * копируются без изменений. Имя без точки (a, b при --names short) заменяется только
+ * в заголовке исключения, в остальном тексте это обычное слово.
+ *
+ * Большие файлы отображаются в память и делятся на сегменты по границам строк,
+ * сегменты обрабатываются параллельно и пишутся в исходном порядке.
+ */
+public final class Retracer {
+    private static final int SEGMENT_SIZE = 32 << 20;
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
+    private static final byte[] CAUSED_BY = utf8("Caused by: ");
+    private static final byte[] SUPPRESSED = utf8("Suppressed: ");
+    private static final byte[] THREAD_EXCEPTION = utf8("Exception in thread \"");
+    private static final byte[] QUOTE_SPACE = utf8("\" ");
+
+    private final MappingSet mappings;
+    private final NameTable<OwnerEntry> classes;
+
+    private Retracer(MappingSet mappings, NameTable<OwnerEntry> classes) {
+        this.mappings = mappings;
+        this.classes = classes;
+    }
+
+    /**
+     * Строит обратный индекс по набору маппингов.
+     */
+    public static Retracer build(MappingSet mappings) {
+        NameTable<OwnerEntry> classes = new NameTable<>(mappings.size());
+        for (String owner : mappings.owners()) {
+            String obfuscatedOwner = mappings.getOwnerName(owner).replace('/', '.');
+            classes.put(utf8(obfuscatedOwner), new OwnerEntry(owner, !obfuscatedOwner.equals(owner.replace('/', '.'))));
+        }
+        return new Retracer(mappings, classes);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = parseThreads(args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        if (threads < 1 || positional.isEmpty() || positional.size() > 3) {
+            System.out.println("Использование: java -jar obfuscator.jar retrace [--threads <n>] <маппинги> [вход] [выход]");
+            System.out.println("Без входного файла читается stdin, без выходного - пишется stdout.");
+            return;
+        }
+
+        try {
+            Retracer retracer = build(MappingSet.read(Paths.get(positional.get(0))));
+            OutputStream out = positional.size() > 2
+                    ? Files.newOutputStream(Paths.get(positional.get(2)))
+                    : new FileOutputStream(FileDescriptor.out);
+            try (OutputStream output = new BufferedOutputStream(out, STREAM_BUFFER_SIZE)) {
+                if (positional.size() > 1) {
+                    retracer.retrace(Paths.get(positional.get(1)), output, threads);
+                } else {
+                    retracer.retrace(System.in, output);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка retrace: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /** Значение --threads; 0, если это не целое число больше 0. */
+    private static int parseThreads(String value) {
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // Сообщение ниже
+        }
+        System.err.println("--threads должно быть целым числом больше 0: " + value);
+        return 0;
+    }
+
+    /**
+     * Потоковая обработка: читает вход блоками, обрабатывает целые строки.
+     */
+    public void retrace(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        ByteSink sink = new ByteSink(STREAM_BUFFER_SIZE);
+        int filled = 0;
+        int read;
+
+        while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            int lastNewline = filled - 1;
+            while (lastNewline >= 0 && buffer[lastNewline] != '\n') {
+                lastNewline--;
+            }
+            if (lastNewline < 0) {
+                if (filled == buffer.length) {
+                    // Строка длиннее буфера - увеличиваем буфер
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                continue;
+            }
+            retrace(ByteBuffer.wrap(buffer), 0, lastNewline + 1, sink);
+            sink.writeTo(out);
+            int rest = filled - lastNewline - 1;
+            System.arraycopy(buffer, lastNewline + 1, buffer, 0, rest);
+            filled = rest;
+        }
+
+        if (filled > 0) {
+            retrace(ByteBuffer.wrap(buffer), 0, filled, sink);
+            sink.writeTo(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Обработка файла: сегменты по границам строк отображаются в память
+     * и обрабатываются параллельно, результат пишется в исходном порядке.
+     */
+    public void retrace(Path file, OutputStream out, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ParallelEngine engine = new ParallelEngine(threads)) {
+            List<long[]> segments = splitSegments(channel);
+
+            // Одновременно в памяти не больше threads результатов
+            for (int from = 0; from < segments.size(); from += threads) {
+                List<long[]> batch = segments.subList(from, Math.min(segments.size(), from + threads));
+                List<ByteSink> results = engine.map(batch, segment -> {
+                    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, segment[0], segment[1] - segment[0]);
+                    ByteSink sink = new ByteSink(mapped.limit() + (mapped.limit() >> 3));
+                    retrace(mapped, 0, mapped.limit(), sink);
+                    return sink;
+                });
+                for (ByteSink sink : results) {
+                    sink.writeTo(out);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static List<long[]> splitSegments(FileChannel channel) throws IOException {
+        List<long[]> segments = new ArrayList<>();
+        long size = channel.size();
+        long start = 0;
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+
+        while (start < size) {
+            long end = Math.min(size, start + SEGMENT_SIZE);
+            // Сдвигаем конец сегмента до ближайшего перевода строки
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+            segments.add(new long[]{start, end});
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Обрабатывает диапазон байтов [from, to) и дописывает результат в sink.
+     */
+    void retrace(ByteBuffer buffer, int from, int to, ByteSink sink) {
+        // Одна копия дескриптора на вызов: позиция меняется только при копировании в sink
+        ByteBuffer in = buffer.duplicate();
+        int copyFrom = from;
+        int i = from;
+
+        while (i < to) {
+            if (!isNameByte(in.get(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < to && isNameByte(in.get(i))) {
+                i++;
+            }
+            // Точки в конце (конец предложения) к имени не относятся
+            int end = i;
+            while (end > start && in.get(end - 1) == '.') {
+                end--;
+            }
+            if (end > start && replaceName(in, from, to, start, end, sink, copyFrom)) {
+                copyFrom = end;
+            }
+        }
+        sink.write(in, copyFrom, to);
+    }
+
+    private boolean replaceName(ByteBuffer in, int from, int to, int start, int end, ByteSink sink, int copyFrom) {
+        byte first = in.get(start);
+        if (first >= '0' && first <= '9') {
+            // Имена классов не начинаются с цифры (даты, числа в логах)
+            return false;
+        }
+
+        int dot = end - 1;
+        while (dot > start && in.get(dot) != '.') {
+            dot--;
+        }
+
+        // Короткие имена без пакета (a, b) совпадают с обычными словами: такое имя
+        // заменяется только там, где в стектрейсе стоит класс
+        OwnerEntry whole = classes.get(in, start, end);
+        if (whole != null && whole.renamed && (dot > start || isClassPosition(in, from, to, start, end))) {
+            sink.write(in, copyFrom, start);
+            sink.write(whole.originalName);
+            return true;
+        }
+
+        if (dot <= start) {
+            return false;
+        }
+
+        OwnerEntry owner = classes.get(in, start, dot);
+        if (owner == null) {
+            return false;
+        }
+        byte[] originalMember = owner.members(mappings).get(in, dot + 1, end);
+        if (originalMember == null && !owner.renamed) {
+            return false;
+        }
+
+        // Член мог остаться без переименования (main, run...), тогда меняется только класс
+        sink.write(in, copyFrom, start);
+        if (owner.renamed) {
+            sink.write(owner.originalName);
+        } else {
+            sink.write(in, start, dot);
+        }
+        if (originalMember != null) {
+            sink.write('.');
+            sink.write(originalMember);
+        } else {
+            sink.write(in, dot, end);
+        }
+        return true;
+    }
+
+    /**
+     * Имя стоит на месте класса исключения: в начале строки, после "Caused by: ",
+     * "Suppressed: " или "Exception in thread "..." ", и за ним ':' или конец строки.
+     */
+    private static boolean isClassPosition(ByteBuffer in, int from, int to, int start, int end) {
+        if (end < to) {
+            byte after = in.get(end);
+            if (after != ':' && after != '\n' && after != '\r') {
+                return false;
+            }
+        }
+        int lineStart = start;
+        while (lineStart > from && in.get(lineStart - 1) != '\n') {
+            lineStart--;
+        }
+        int prefix = lineStart;
+        while (prefix < start && (in.get(prefix) == ' ' || in.get(prefix) == '\t')) {
+            prefix++;
+        }
+        return prefix == start
+                || endsWith(in, prefix, start, CAUSED_BY)
+                || endsWith(in, prefix, start, SUPPRESSED)
+                || (startsWith(in, prefix, start, THREAD_EXCEPTION) && endsWith(in, prefix, start, QUOTE_SPACE));
+    }
+
+    private static boolean startsWith(ByteBuffer in, int from, int to, byte[] text) {
+        return to - from >= text.length && matchesAt(in, from, text);
+    }
+
+    private static boolean endsWith(ByteBuffer in, int from, int to, byte[] text) {
+        return to - from >= text.length && matchesAt(in, to - text.length, text);
+    }
+
+    private static boolean matchesAt(ByteBuffer in, int at, byte[] text) {
+        for (int i = 0; i < text.length; i++) {
+            if (in.get(at + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '_' || b == '$' || b == '.';
+    }
+
+    /**
+     * Класс из маппингов: исходное имя и лениво построенная таблица его членов.
+     */
+    private static final class OwnerEntry {
+        final String owner;
+        final byte[] originalName;
+        final boolean renamed;
+        private volatile NameTable<byte[]> members;
+
+        OwnerEntry(String owner, boolean renamed) {
+            this.owner = owner;
+            this.originalName = utf8(owner.replace('/', '.'));
+            this.renamed = renamed;
+        }
+
+        NameTable<byte[]> members(MappingSet mappings) {
+            NameTable<byte[]> table = members;
+            if (table == null) {
+                synchronized (this) {
+                    table = members;
+                    if (table == null) {
+                        table = buildMembers(mappings);
+                        members = table;
+                    }
+                }
+            }
+            return table;
+        }
+
+        private NameTable<byte[]> buildMembers(MappingSet mappings) {
+            Map<String, String> fields = mappings.fieldsOf(owner);
+            Map<String, String> methods = mappings.methodsOf(owner);
+            // Обратное отображение; одинаковые новые имена перегрузок склеиваются через '|'
+            Map<String, String> reverse = new HashMap<>();
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                reverse.merge(field.getValue(), field.getKey(), Retracer::joinAlternatives);
+            }
+            for (Map.Entry<String, String> method : methods.entrySet()) {
+                String signature = method.getKey();
+                reverse.merge(method.getValue(), signature.substring(0, signature.indexOf('(')),
+                        Retracer::joinAlternatives);
+            }
+            NameTable<byte[]> table = new NameTable<>(reverse.size());
+            for (Map.Entry<String, String> entry : reverse.entrySet()) {
+                table.put(utf8(entry.getKey()), utf8(entry.getValue()));
+            }
+            return table;
+        }
+    }
+
+    private static String joinAlternatives(String first, String second) {
+        return first.equals(second) ? first : first + "|" + second;
+    }
+
+    /**
+     * Хэш-таблица с открытой адресацией по ключам в UTF-8,
+     * поиск по диапазону ByteBuffer без выделения памяти.
+     */
+    private static final class NameTable<V> {
+        private byte[][] keys;
+        private Object[] values;
+        private int size;
+
+        NameTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+            keys = new byte[capacity][];
+            values = new Object[capacity];
+        }
+
+        void put(byte[] key, V value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != null) {
+                if (Arrays.equals(keys[slot], key)) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(ByteBuffer in, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + in.get(i);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(h) & mask;
+            byte[] key;
+            while ((key = keys[slot]) != null) {
+                if (matches(key, in, start, end)) {
+                    return (V) values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer in, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != in.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new Object[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int hash(byte[] bytes) {
+            int h = 0;
+            for (byte b : bytes) {
+                h = 31 * h + b;
+            }
+            return mix(h);
+        }
+
+        private static int mix(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Растущий байтовый буфер результата, переиспользуется между блоками.
+     */
+    static final class ByteSink {
+        private byte[] data;
+        private int length;
+
+        ByteSink(int capacity) {
+            data = new byte[Math.max(capacity, 16)];
+        }
+
+        void write(int b) {
+            ensure(1);
+            data[length++] = (byte) b;
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+        }
+
+        /** Копирует диапазон [from, to); меняет позицию буфера. */
+        void write(ByteBuffer in, int from, int to) {
+            int count = to - from;
+            if (count <= 0) {
+                return;
+            }
+            ensure(count);
+            in.position(from);
+            in.get(data, length, count);
+            length += count;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(data, 0, length);
+            length = 0;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package obf.swag;
+
+import org.objectweb.asm.ClassReader;
+
+import javax.management.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Измерения одного запуска: длительность этапов, счетчики (классы, члены, байты, кэш)
+ * и гистограмма времени переписывания классов с самыми медленными классами.
+ *
+ * Счетчики и гистограмма потокобезопасны - переписывание идет параллельно.
+ * Результат выводится в JSON или CSV (по расширению файла) и через JMX.
+ */
+final class RunStats implements RunStatsMXBean {
+    private static final int SLOWEST_LIMIT = 10;
+    // Гистограмма: значения меньше 16 нс - по одному на корзину, дальше по 8 корзин на степень двойки
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (64 - 4) * SUB_BUCKETS;
+
+    private final String jarName;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile String currentPhase = "";
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder transformCount = new LongAdder();
+    private final PriorityQueue<SlowClass> slowest = new PriorityQueue<>(Comparator.comparingLong(s -> s.nanos));
+    private volatile long slowestThreshold = 0;
+    // Прирост кода от --flow по классам: {методов, байт}
+    private final Map<String, long[]> flowGrowth = new ConcurrentHashMap<>();
+    // Замечания проверки выходного JAR: {error|warning, класс, исходное имя, текст}
+    private final List<String[]> problems = Collections.synchronizedList(new ArrayList<>());
+
+    private ObjectName registeredName;
+
+    RunStats(String jarName) {
+        this.jarName = jarName;
+    }
+
+    /** Этап с результатом. */
+    interface Step<T> {
+        T run() throws IOException;
+    }
+
+    /** Этап без результата. */
+    interface Action {
+        void run() throws IOException;
+    }
+
+    /**
+     * Выполняет этап и добавляет его длительность:
+     * List<ClassEntry> classes = stats.phase("read", () -> readClassEntries(jarFile));
+     */
+    <T> T phase(String name, Step<T> step) throws IOException {
+        long start = System.nanoTime();
+        currentPhase = name;
+        try {
+            return step.run();
+        } finally {
+            phaseNanos.merge(name, System.nanoTime() - start, Long::sum);
+            currentPhase = "";
+        }
+    }
+
+    void phase(String name, Action action) throws IOException {
+        phase(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    void add(String counter, long delta) {
+        counters.computeIfAbsent(counter, c -> new LongAdder()).add(delta);
+    }
+
+    long get(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * Время переписывания одного класса. Имя класса читается из байтов только
+     * для кандидатов в список самых медленных.
+     */
+    void recordTransform(byte[] classData, long nanos) {
+        histogram.incrementAndGet(bucketOf(nanos));
+        transformCount.increment();
+        if (nanos <= slowestThreshold) {
+            return;
+        }
+        String className;
+        try {
+            className = new ClassReader(classData).getClassName();
+        } catch (RuntimeException e) {
+            className = "?";
+        }
+        synchronized (slowest) {
+            slowest.add(new SlowClass(className, nanos));
+            if (slowest.size() > SLOWEST_LIMIT) {
+                slowest.poll();
+            }
+            if (slowest.size() == SLOWEST_LIMIT) {
+                slowestThreshold = slowest.peek().nanos;
+            }
+        }
+    }
+
+    /** Методы класса, измененные --flow, и прирост их кода в байтах. */
+    void recordFlow(String className, int methods, int addedBytes) {
+        flowGrowth.merge(className, new long[]{methods, addedBytes},
+                (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]});
+    }
+
+    /** Замечание проверки выходного JAR, см. {@link ClassVerifier}. */
+    void recordProblem(boolean error, String className, String originalName, String message) {
+        problems.add(new String[]{error ? "error" : "warning", className, originalName, message});
+    }
+
+    private List<String[]> problemSnapshot() {
+        synchronized (problems) {
+            return new ArrayList<>(problems);
+        }
+    }
+
+    /** Классы по убыванию прироста кода, при равном приросте - по имени. */
+    private List<Map.Entry<String, long[]>> flowGrowthByClass() {
+        List<Map.Entry<String, long[]>> classes = new ArrayList<>(flowGrowth.entrySet());
+        classes.sort((a, b) -> {
+            int bySize = Long.compare(b.getValue()[1], a.getValue()[1]);
+            return bySize != 0 ? bySize : a.getKey().compareTo(b.getKey());
+        });
+        return classes;
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    /** Верхняя граница корзины (исключительно) в наносекундах. */
+    static long bucketLimit(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) (sub + 1) << (exponent - 3));
+    }
+
+    /** Перцентиль времени переписывания (верхняя граница корзины), нс. */
+    long percentileNanos(double percentile) {
+        long total = transformCount.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += histogram.get(bucket);
+            if (seen >= Math.max(1, rank)) {
+                return bucketLimit(bucket);
+            }
+        }
+        return bucketLimit(BUCKET_COUNT - 1);
+    }
+
+    List<SlowClass> slowestClasses() {
+        synchronized (slowest) {
+            List<SlowClass> result = new ArrayList<>(slowest);
+            result.sort(Comparator.comparingLong((SlowClass s) -> s.nanos).reversed());
+            return result;
+        }
+    }
+
+    static final class SlowClass {
+        final String className;
+        final long nanos;
+
+        SlowClass(String className, long nanos) {
+            this.className = className;
+            this.nanos = nanos;
+        }
+    }
+
+    long totalNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /** Короткая сводка по этапам для консоли. */
+    void printSummary(PrintStream out) {
+        StringBuilder sb = new StringBuilder("Время по этапам:");
+        synchronized (phaseNanos) {
+            for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+                sb.append(' ').append(phase.getKey()).append('=').append(phase.getValue() / 1_000_000).append("мс");
+            }
+        }
+        sb.append(", всего ").append(totalNanos() / 1_000_000).append("мс");
+        out.println(sb);
+        if (transformCount.sum() > 0) {
+            out.println("Переписывание класса: p50 " + micros(percentileNanos(50)) + " мкс, p99 "
+                    + micros(percentileNanos(99)) + " мкс");
+        }
+    }
+
+    /** Пишет отчет: .csv - CSV, иначе JSON. */
+    void writeReport(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        String content = name.endsWith(".csv") ? toCsv() : toJson();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"jar\": ").append(quote(jarName)).append(",\n");
+        sb.append("  \"totalMillis\": ").append(millis(totalNanos())).append(",\n");
+
+        sb.append("  \"phases\": [");
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : phaseSnapshot().entrySet()) {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    {\"name\": ").append(quote(phase.getKey()))
+                    .append(", \"millis\": ").append(millis(phase.getValue())).append('}');
+            first = false;
+        }
+        sb.append("\n  ],\n");
+
+        sb.append("  \"counters\": {");
+        first = true;
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    ").append(quote(counter.getKey())).append(": ").append(counter.getValue());
+            first = false;
+        }
+        sb.append("\n  },\n");
+
+        sb.append("  \"transform\": {\n");
+        sb.append("    \"count\": ").append(transformCount.sum()).append(",\n");
+        sb.append("    \"p50Micros\": ").append(micros(percentileNanos(50))).append(",\n");
+        sb.append("    \"p90Micros\": ").append(micros(percentileNanos(90))).append(",\n");
+        sb.append("    \"p99Micros\": ").append(micros(percentileNanos(99))).append(",\n");
+        sb.append("    \"histogram\": [");
+        first = true;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            long count = histogram.get(bucket);
+            if (count > 0) {
+                sb.append(first ? "\n" : ",\n");
+                sb.append("      {\"upToMicros\": ").append(micros(bucketLimit(bucket)))
+                        .append(", \"count\": ").append(count).append('}');
+                first = false;
+            }
+        }
+        sb.append("\n    ],\n");
+        sb.append("    \"slowest\": [");
+        first = true;
+        for (SlowClass slow : slowestClasses()) {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("      {\"class\": ").append(quote(slow.className))
+                    .append(", \"micros\": ").append(micros(slow.nanos)).append('}');
+            first = false;
+        }
+        sb.append("\n    ]\n");
+        sb.append("  }");
+        if (!flowGrowth.isEmpty()) {
+            sb.append(",\n  \"flow\": [");
+            first = true;
+            for (Map.Entry<String, long[]> growth : flowGrowthByClass()) {
+                sb.append(first ? "\n" : ",\n");
+                sb.append("    {\"class\": ").append(quote(growth.getKey()))
+                        .append(", \"methods\": ").append(growth.getValue()[0])
+                        .append(", \"addedBytes\": ").append(growth.getValue()[1]).append('}');
+                first = false;
+            }
+            sb.append("\n  ]");
+        }
+        List<String[]> verifyProblems = problemSnapshot();
+        if (!verifyProblems.isEmpty()) {
+            sb.append(",\n  \"verify\": [");
+            first = true;
+            for (String[] problem : verifyProblems) {
+                sb.append(first ? "\n" : ",\n");
+                sb.append("    {\"severity\": ").append(quote(problem[0]))
+                        .append(", \"class\": ").append(quote(problem[1]))
+                        .append(", \"original\": ").append(quote(problem[2]))
+                        .append(", \"message\": ").append(quote(problem[3])).append('}');
+                first = false;
+            }
+            sb.append("\n  ]");
+        }
+        sb.append("\n}\n");
+        return sb.toString();
+    }
+
+    /** Плоский CSV: раздел, имя, значение. */
+    String toCsv() {
+        StringBuilder sb = new StringBuilder("section,name,value\n");
+        sb.append("run,jar,").append(csv(jarName)).append('\n');
+        sb.append("run,totalMillis,").append(millis(totalNanos())).append('\n');
+        for (Map.Entry<String, Long> phase : phaseSnapshot().entrySet()) {
+            sb.append("phaseMillis,").append(csv(phase.getKey())).append(',').append(millis(phase.getValue())).append('\n');
+        }
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            sb.append("counter,").append(csv(counter.getKey())).append(',').append(counter.getValue()).append('\n');
+        }
+        sb.append("transform,count,").append(transformCount.sum()).append('\n');
+        sb.append("transform,p50Micros,").append(micros(percentileNanos(50))).append('\n');
+        sb.append("transform,p90Micros,").append(micros(percentileNanos(90))).append('\n');
+        sb.append("transform,p99Micros,").append(micros(percentileNanos(99))).append('\n');
+        for (SlowClass slow : slowestClasses()) {
+            sb.append("slowestMicros,").append(csv(slow.className)).append(',').append(micros(slow.nanos)).append('\n');
+        }
+        for (Map.Entry<String, long[]> growth : flowGrowthByClass()) {
+            sb.append("flowAddedBytes,").append(csv(growth.getKey())).append(',').append(growth.getValue()[1]).append('\n');
+        }
+        for (String[] problem : problemSnapshot()) {
+            sb.append(problem[0].equals("error") ? "verifyError," : "verifyWarning,").append(csv(problem[2]))
+                    .append(',').append(csv(problem[3])).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private Map<String, Long> phaseSnapshot() {
+        synchronized (phaseNanos) {
+            return new LinkedHashMap<>(phaseNanos);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000.0);
+    }
+
+    /** Строка JSON в кавычках с экранированием. */
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /** Регистрирует статистику в платформенном MBeanServer на время запуска. */
+    void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("obf.swag:type=RunStats");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать MBean: " + e.getMessage());
+        }
+    }
+
+    void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            System.err.println("Не удалось снять регистрацию MBean: " + e.getMessage());
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public String getCurrentPhase() {
+        return currentPhase;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> phase : phaseSnapshot().entrySet()) {
+            result.put(phase.getKey(), phase.getValue() / 1_000_000);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            result.put(counter.getKey(), counter.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public long getTransformCount() {
+        return transformCount.sum();
+    }
+
+    @Override
+    public double getTransformP50Micros() {
+        return percentileNanos(50) / 1_000.0;
+    }
+
+    @Override
+    public double getTransformP99Micros() {
+        return percentileNanos(99) / 1_000.0;
+    }
+
+    @Override
+    public List<String> getSlowestClasses() {
+        List<String> result = new ArrayList<>();
+        for (SlowClass slow : slowestClasses()) {
+            result.add(slow.className + ": " + micros(slow.nanos));
+        }
+        return result;
+    }
+}
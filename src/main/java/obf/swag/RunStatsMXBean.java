@@ -0,0 +1,27 @@
+package obf.swag;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика текущего запуска через JMX (jconsole, VisualVM): объект obf.swag:type=RunStats.
+ */
+public interface RunStatsMXBean {
+
+    /** Выполняемый сейчас этап или пустая строка. */
+    String getCurrentPhase();
+
+    /** Длительность завершенных этапов в миллисекундах, в порядке выполнения. */
+    Map<String, Long> getPhaseMillis();
+
+    Map<String, Long> getCounters();
+
+    long getTransformCount();
+
+    double getTransformP50Micros();
+
+    double getTransformP99Micros();
+
+    /** Самые медленные классы: "имя: мкс". */
+    List<String> getSlowestClasses();
+}
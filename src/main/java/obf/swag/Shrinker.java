@@ -0,0 +1,515 @@
+package obf.swag;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Удаление неиспользуемых классов, методов и полей.
+ *
+ * Классы и члены JAR нумеруются одним диапазоном: сначала классы, затем члены каждого
+ * класса подряд (поля, потом методы). Ссылки между ними хранятся в плоских массивах
+ * смежности, достижимые узлы отмечаются в BitSet, обход идет по стеку без рекурсии.
+ *
+ * Виртуальные вызовы учитываются через группы переопределения из ClassHierarchy:
+ * если достижим один метод группы, достижимы все ее методы в достижимых классах.
+ * Методы, переопределяющие библиотечные (run, toString, ...), достижимы вместе с классом.
+ */
+final class Shrinker {
+    // Префиксы ссылок в ClassUsage
+    static final char REF_CLASS = 'C';
+    static final char REF_FIELD = 'F';
+    static final char REF_METHOD = 'M';
+    static final char REF_STRING = 'S';
+
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Ссылки одного класса, собранные при анализе: на уровне класса (аннотации)
+     * и для каждого члена (ключ поля - имя, ключ метода - имя + дескриптор).
+     */
+    static final class ClassUsage {
+        final List<String> classReferences = new ArrayList<>();
+        final Map<String, List<String>> memberReferences = new HashMap<>();
+
+        List<String> member(String memberKey) {
+            return memberReferences.computeIfAbsent(memberKey, k -> new ArrayList<>());
+        }
+
+        static void addType(List<String> references, Type type) {
+            if (type.getSort() == Type.ARRAY) {
+                type = type.getElementType();
+            }
+            if (type.getSort() == Type.OBJECT) {
+                references.add(REF_CLASS + type.getInternalName());
+            } else if (type.getSort() == Type.METHOD) {
+                for (Type argument : type.getArgumentTypes()) {
+                    addType(references, argument);
+                }
+                addType(references, type.getReturnType());
+            }
+        }
+
+        static void addClass(List<String> references, String internalName) {
+            if (internalName.startsWith("[")) {
+                addType(references, Type.getType(internalName));
+            } else {
+                references.add(REF_CLASS + internalName);
+            }
+        }
+
+        static void addField(List<String> references, String owner, String name) {
+            addClass(references, owner);
+            references.add(REF_FIELD + owner + "." + name);
+        }
+
+        static void addMethod(List<String> references, String owner, String name, String descriptor) {
+            addClass(references, owner);
+            references.add(REF_METHOD + owner + "." + name + descriptor);
+        }
+
+        private static boolean looksLikeClassName(String value) {
+            return value.length() < 256 && (value.indexOf('.') > 0 || value.indexOf('/') > 0)
+                    && value.indexOf(' ') < 0;
+        }
+
+        /** Константа пула: тип, ссылка на метод или поле, строка с возможным именем класса. */
+        static void addConstant(List<String> references, Object value) {
+            if (value instanceof Type) {
+                addType(references, (Type) value);
+            } else if (value instanceof Handle) {
+                Handle handle = (Handle) value;
+                if (handle.getTag() <= Opcodes.H_PUTSTATIC) {
+                    addField(references, handle.getOwner(), handle.getName());
+                } else {
+                    addMethod(references, handle.getOwner(), handle.getName(), handle.getDesc());
+                }
+            } else if (value instanceof String && looksLikeClassName((String) value)) {
+                references.add(REF_STRING + (String) value);
+            }
+        }
+    }
+
+    private final Map<String, ClassMetadata> classes;
+    private final Map<String, ClassUsage> usages;
+    private final ClassHierarchy hierarchy;
+
+    // Номера узлов: классы [0, classCount), далее члены
+    private final Map<String, Integer> nodeIds = new HashMap<>();
+    private final List<String> nodeKeys = new ArrayList<>();
+    private final int classCount;
+    private int[] memberOwner;
+    private int[] classMembersStart;
+    private int[] classMembersEnd;
+    private boolean[] isMethod;
+
+    // Ребра в формате CSR: ребра узла n - edges[edgeStart[n] .. edgeStart[n + 1])
+    private int[] edgeStart;
+    private int[] edges;
+
+    // Группы переопределения: номер группы метода (или -1), члены групп в формате CSR
+    private int[] methodGroup;
+    private boolean[] groupFixed;
+    private int[] groupStart;
+    private int[] groupMembers;
+
+    private final BitSet roots = new BitSet();
+    private final Map<String, Integer> resolved = new HashMap<>();
+
+    /**
+     * @param classes          метаданные классов JAR
+     * @param usages           ссылки классов JAR
+     * @param keepFieldByName  поля, имена которых ищет JVM или рефлексия: достижимы вместе с классом
+     * @param keepMethodByName то же для методов (конструкторы, инициализаторы, сериализация, ...)
+     */
+    Shrinker(Map<String, ClassMetadata> classes, Map<String, ClassUsage> usages, ClassHierarchy hierarchy,
+             Predicate<String> keepFieldByName, Predicate<String> keepMethodByName) {
+        this.classes = classes;
+        this.usages = usages;
+        this.hierarchy = hierarchy;
+
+        for (String className : classes.keySet()) {
+            addNode(className);
+        }
+        classCount = nodeKeys.size();
+        numberMembers();
+        buildGroups();
+        buildEdges(keepFieldByName, keepMethodByName);
+    }
+
+    private int addNode(String key) {
+        int id = nodeKeys.size();
+        nodeIds.put(key, id);
+        nodeKeys.add(key);
+        return id;
+    }
+
+    private void numberMembers() {
+        int memberCount = 0;
+        for (ClassMetadata metadata : classes.values()) {
+            memberCount += metadata.fields.size() + metadata.methods.size();
+        }
+        memberOwner = new int[classCount + memberCount];
+        isMethod = new boolean[classCount + memberCount];
+        classMembersStart = new int[classCount];
+        classMembersEnd = new int[classCount];
+
+        for (int classId = 0; classId < classCount; classId++) {
+            ClassMetadata metadata = classes.get(nodeKeys.get(classId));
+            classMembersStart[classId] = nodeKeys.size();
+            // Сортировка делает нумерацию независимой от порядка обхода HashMap
+            for (String field : new TreeSet<>(metadata.fields.keySet())) {
+                memberOwner[addNode(metadata.name + "." + field)] = classId;
+            }
+            for (String method : new TreeSet<>(metadata.methods.keySet())) {
+                int node = addNode(metadata.name + "." + method);
+                memberOwner[node] = classId;
+                isMethod[node] = true;
+            }
+            classMembersEnd[classId] = nodeKeys.size();
+        }
+    }
+
+    private void buildGroups() {
+        int nodeCount = nodeKeys.size();
+        methodGroup = new int[nodeCount];
+        Arrays.fill(methodGroup, -1);
+        Map<Integer, Integer> denseGroups = new HashMap<>();
+        List<Integer> roots = new ArrayList<>();
+        int[] groupSizes = new int[nodeCount];
+        for (int node = classCount; node < nodeCount; node++) {
+            if (!isMethod[node]) {
+                continue;
+            }
+            String key = nodeKeys.get(node);
+            int dot = key.indexOf('.');
+            int root = hierarchy.methodGroup(key.substring(0, dot), key.substring(dot + 1));
+            if (root < 0) {
+                continue;
+            }
+            Integer group = denseGroups.get(root);
+            if (group == null) {
+                group = roots.size();
+                denseGroups.put(root, group);
+                roots.add(root);
+            }
+            methodGroup[node] = group;
+            groupSizes[group]++;
+        }
+
+        int groupCount = roots.size();
+        groupFixed = new boolean[groupCount];
+        groupStart = new int[groupCount + 1];
+        for (int group = 0; group < groupCount; group++) {
+            groupFixed[group] = hierarchy.isFixed(roots.get(group));
+            groupStart[group + 1] = groupStart[group] + groupSizes[group];
+        }
+        groupMembers = new int[groupStart[groupCount]];
+        int[] fill = Arrays.copyOf(groupStart, groupCount);
+        for (int node = classCount; node < nodeCount; node++) {
+            if (methodGroup[node] >= 0) {
+                groupMembers[fill[methodGroup[node]]++] = node;
+            }
+        }
+    }
+
+    private void buildEdges(Predicate<String> keepFieldByName, Predicate<String> keepMethodByName) {
+        int nodeCount = nodeKeys.size();
+        edgeStart = new int[nodeCount + 1];
+        int[] buffer = new int[1024];
+        int size = 0;
+
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStart[node] = size;
+            int[] nodeEdges = node < classCount
+                    ? classEdges(node, keepFieldByName, keepMethodByName)
+                    : memberEdges(node);
+            if (size + nodeEdges.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + nodeEdges.length));
+            }
+            System.arraycopy(nodeEdges, 0, buffer, size, nodeEdges.length);
+            size += nodeEdges.length;
+        }
+        edgeStart[nodeCount] = size;
+        edges = Arrays.copyOf(buffer, size);
+    }
+
+    private int[] classEdges(int classId, Predicate<String> keepFieldByName, Predicate<String> keepMethodByName) {
+        ClassMetadata metadata = classes.get(nodeKeys.get(classId));
+        IntList result = new IntList();
+        addClassEdge(result, metadata.superName);
+        for (String iface : metadata.interfaces) {
+            addClassEdge(result, iface);
+        }
+        ClassUsage usage = usages.get(metadata.name);
+        if (usage != null) {
+            addReferences(result, usage.classReferences);
+        }
+
+        // Сериализация читает и пишет все поля экземпляра через рефлексию
+        boolean serializable = hierarchy.hasAncestor(metadata.name, "java/io/Serializable");
+        for (int member = classMembersStart[classId]; member < classMembersEnd[classId]; member++) {
+            String key = nodeKeys.get(member);
+            boolean keep;
+            if (isMethod[member]) {
+                keep = keepMethodByName.test(key);
+            } else {
+                keep = keepFieldByName.test(key) || (serializable && (metadata.fields.get(
+                        key.substring(key.indexOf('.') + 1)) & Opcodes.ACC_STATIC) == 0);
+            }
+            if (keep) {
+                result.add(member);
+            }
+        }
+        return result.toArray();
+    }
+
+    private int[] memberEdges(int member) {
+        IntList result = new IntList();
+        result.add(memberOwner[member]);
+        String key = nodeKeys.get(member);
+        ClassUsage usage = usages.get(key.substring(0, key.indexOf('.')));
+        if (usage != null) {
+            List<String> references = usage.memberReferences.get(key.substring(key.indexOf('.') + 1));
+            if (references != null) {
+                addReferences(result, references);
+            }
+        }
+        return result.toArray();
+    }
+
+    private void addClassEdge(IntList result, String className) {
+        Integer id = className != null ? nodeIds.get(className) : null;
+        if (id != null && id < classCount) {
+            result.add(id);
+        }
+    }
+
+    private void addReferences(IntList result, List<String> references) {
+        for (String reference : references) {
+            String target = reference.substring(1);
+            switch (reference.charAt(0)) {
+                case REF_CLASS:
+                    addClassEdge(result, target);
+                    break;
+                case REF_STRING:
+                    // Class.forName("a.b.C") и подобные строки с именами классов JAR
+                    addClassEdge(result, target.replace('.', '/'));
+                    break;
+                default:
+                    int member = resolve(reference);
+                    if (member >= 0) {
+                        result.add(member);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Находит объявление поля или метода по ссылке, как это делает JVM:
+     * во владельце из ссылки или у его предков из JAR. -1 - член библиотечный.
+     */
+    private int resolve(String reference) {
+        Integer cached = resolved.get(reference);
+        if (cached != null) {
+            return cached;
+        }
+        String target = reference.substring(1);
+        int dot = target.indexOf('.');
+        int result = reference.charAt(0) == REF_FIELD
+                ? resolveField(target.substring(0, dot), target.substring(dot + 1), 0)
+                : resolveMethod(target.substring(0, dot), target.substring(dot + 1), 0);
+        resolved.put(reference, result);
+        return result;
+    }
+
+    private int resolveField(String owner, String name, int depth) {
+        ClassMetadata metadata = owner != null && depth < MAX_DEPTH ? classes.get(owner) : null;
+        if (metadata == null) {
+            return -1;
+        }
+        if (metadata.fields.containsKey(name)) {
+            return nodeIds.get(owner + "." + name);
+        }
+        for (String iface : metadata.interfaces) {
+            int found = resolveField(iface, name, depth + 1);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return resolveField(metadata.superName, name, depth + 1);
+    }
+
+    private int resolveMethod(String owner, String method, int depth) {
+        ClassMetadata metadata = owner != null && depth < MAX_DEPTH ? classes.get(owner) : null;
+        if (metadata == null) {
+            return -1;
+        }
+        if (metadata.methods.containsKey(method)) {
+            return nodeIds.get(owner + "." + method);
+        }
+        int found = resolveMethod(metadata.superName, method, depth + 1);
+        for (int i = 0; found < 0 && i < metadata.interfaces.length; i++) {
+            found = resolveMethod(metadata.interfaces[i], method, depth + 1);
+        }
+        return found;
+    }
+
+    /** Класс - точка входа: достижим сам класс и все, что достижимо вместе с ним. */
+    void keepClass(String className) {
+        Integer id = nodeIds.get(className);
+        if (id != null && id < classCount) {
+            roots.set(id);
+        }
+    }
+
+    /** Класс и все его члены (явные правила --keep). */
+    void keepClassWithMembers(String className) {
+        Integer id = nodeIds.get(className);
+        if (id != null && id < classCount) {
+            roots.set(id);
+            roots.set(classMembersStart[id], classMembersEnd[id]);
+        }
+    }
+
+    /** Член класса по ключу "owner.name" или "owner.name(desc)". */
+    void keepMember(String memberKey) {
+        Integer id = nodeIds.get(memberKey);
+        if (id != null && id >= classCount) {
+            roots.set(id);
+        }
+    }
+
+    boolean hasRoots() {
+        return !roots.isEmpty();
+    }
+
+    /**
+     * Обходит граф от точек входа и возвращает недостижимые классы и члены.
+     */
+    Result shrink() {
+        int nodeCount = nodeKeys.size();
+        BitSet live = new BitSet(nodeCount);
+        BitSet liveGroups = new BitSet(groupFixed.length);
+        // Узел попадает в стек только один раз - при первой отметке
+        int[] stack = new int[nodeCount];
+        int top = 0;
+
+        for (int node = roots.nextSetBit(0); node >= 0; node = roots.nextSetBit(node + 1)) {
+            live.set(node);
+            stack[top++] = node;
+        }
+
+        while (top > 0) {
+            int node = stack[--top];
+            for (int i = edgeStart[node]; i < edgeStart[node + 1]; i++) {
+                int target = edges[i];
+                if (!live.get(target)) {
+                    live.set(target);
+                    stack[top++] = target;
+                }
+            }
+
+            if (node < classCount) {
+                // Новый достижимый класс: его методы из живых или библиотечных групп тоже достижимы
+                for (int member = classMembersStart[node]; member < classMembersEnd[node]; member++) {
+                    int group = methodGroup[member];
+                    if (group >= 0 && !live.get(member) && (liveGroups.get(group) || groupFixed[group])) {
+                        live.set(member);
+                        stack[top++] = member;
+                    }
+                }
+            } else if (methodGroup[node] >= 0 && !liveGroups.get(methodGroup[node])) {
+                // Первый достижимый метод группы: достижимы ее методы во всех достижимых классах
+                int group = methodGroup[node];
+                liveGroups.set(group);
+                for (int i = groupStart[group]; i < groupStart[group + 1]; i++) {
+                    int member = groupMembers[i];
+                    if (!live.get(member) && live.get(memberOwner[member])) {
+                        live.set(member);
+                        stack[top++] = member;
+                    }
+                }
+            }
+        }
+
+        Result result = new Result();
+        for (int node = live.nextClearBit(0); node < nodeCount; node = live.nextClearBit(node + 1)) {
+            String key = nodeKeys.get(node);
+            if (node < classCount) {
+                result.removedClasses.add(key);
+            } else if (live.get(memberOwner[node])) {
+                int dot = key.indexOf('.');
+                result.removedMembers.computeIfAbsent(key.substring(0, dot), k -> new HashSet<>())
+                        .add(key.substring(dot + 1));
+                if (isMethod[node]) {
+                    result.removedMethodCount++;
+                } else {
+                    result.removedFieldCount++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Результат: удаляемые классы и члены оставшихся классов. */
+    static final class Result {
+        final Set<String> removedClasses = new HashSet<>();
+        // Класс -> имена полей и имена + дескрипторы методов
+        final Map<String, Set<String>> removedMembers = new HashMap<>();
+        int removedFieldCount;
+        int removedMethodCount;
+
+        boolean isRemoved(String memberKey) {
+            int dot = memberKey.indexOf('.');
+            Set<String> members = removedMembers.get(memberKey.substring(0, dot));
+            return removedClasses.contains(memberKey.substring(0, dot))
+                    || (members != null && members.contains(memberKey.substring(dot + 1)));
+        }
+    }
+
+    /**
+     * Правило --keep: имя класса с точками, '*' - любая часть имени внутри пакета,
+     * '**' - любая последовательность пакетов, например com.example.api.**.
+     */
+    static Pattern compileKeepRule(String rule) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < rule.length(); i++) {
+            char c = rule.charAt(i);
+            if (c == '*') {
+                if (i + 1 < rule.length() && rule.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '.' || c == '/') {
+                regex.append('/');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
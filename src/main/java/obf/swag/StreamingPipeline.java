@@ -0,0 +1,96 @@
+package obf.swag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Режим --low-memory: JAR читается дважды (анализ и запись), байты классов в памяти
+ * только в пределах одной порции.
+ */
+final class StreamingPipeline {
+    private final JarObfuscator obfuscator;
+    private final PrintStream log;
+
+    StreamingPipeline(JarObfuscator obfuscator) {
+        this.obfuscator = obfuscator;
+        this.log = obfuscator.getLog();
+    }
+
+    void run(Path originalPath, Path outputPath) throws IOException {
+        RunStats stats = obfuscator.getStats();
+        try (JarFile jarFile = new JarFile(originalPath.toFile());
+             ParallelEngine engine = new ParallelEngine(obfuscator.getThreads())) {
+            obfuscator.useEngine(engine);
+
+            log.println("Сбор информации о классах (потоковое чтение)...");
+            stats.phase("collectClassInfo", () -> {
+                obfuscator.readOriginalManifest(jarFile);
+                collectClassInfo(jarFile);
+            });
+
+            obfuscator.prepareMappings();
+
+            log.println("Обфускация байткода и создание нового JAR...");
+            stats.phase("transformAndWrite", () -> writeJar(jarFile, outputPath));
+
+            log.println("Результат сохранен в: " + outputPath);
+
+        } finally {
+            obfuscator.useEngine(null);
+        }
+    }
+
+    /** Классы читаются порциями, байты порции отбрасываются сразу после анализа. */
+    private void collectClassInfo(JarFile jarFile) throws IOException {
+        obfuscator.readClassEntries(jarFile, JarObfuscator.STREAM_CHUNK_BYTES, chunk -> {
+            obfuscator.collectClassInfo(chunk);
+            return null;
+        });
+    }
+
+    /**
+     * Классы читаются из исходного JAR порциями, переписываются параллельно и сразу
+     * пишутся. Порция сбрасывается перед каждой другой записью, поэтому порядок записей
+     * тот же, что и без --low-memory.
+     */
+    private void writeJar(JarFile jarFile, Path outputPath) throws IOException {
+        try (JarWriter writer = obfuscator.newJarWriter(Files.newOutputStream(outputPath))) {
+            JarObfuscator.ClassChunker chunker = new JarObfuscator.ClassChunker(JarObfuscator.STREAM_CHUNK_BYTES,
+                    chunk -> {
+                        obfuscator.writeChunk(writer, chunk);
+                        return null;
+                    });
+
+            for (JarObfuscator.OutputEntry output : obfuscator.outputEntries(jarFile)) {
+                JarEntry entry = output.source;
+                if (entry.isDirectory()) {
+                    writer.add(output.name, new byte[0], ZipEntry.STORED);
+                } else if (output.isClass()) {
+                    if (obfuscator.isShrunkClass(JarObfuscator.classNameOf(output.sourceName))) {
+                        continue;
+                    }
+                    JarObfuscator.ClassEntry classEntry;
+                    try (InputStream is = jarFile.getInputStream(entry)) {
+                        classEntry = new JarObfuscator.ClassEntry(entry.getName(), is.readAllBytes());
+                    }
+                    classEntry.method = entry.getMethod();
+                    chunker.add(classEntry);
+                } else {
+                    chunker.flush();
+                    if (obfuscator.isNestedJar(output.sourceName)) {
+                        obfuscator.writeNestedJar(jarFile, entry, output.name, writer);
+                    } else {
+                        obfuscator.copyEntry(jarFile, entry, output.name, writer);
+                    }
+                }
+            }
+            chunker.flush();
+        }
+    }
+}
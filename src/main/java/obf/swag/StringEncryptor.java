@@ -0,0 +1,479 @@
+package obf.swag;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.*;
+
+/**
+ * Шифрование строковых констант (--encrypt-strings). Стоит в цепочке после ClassRemapper
+ * и видит новые имена класса и членов, а ldc - уже с новыми значениями: номера строк
+ * строятся по исходному пулу, пропущенному через тот же Remapper (строки-имена классов
+ * {@link ClassStringRemapper} тоже шифруются).
+ *
+ * Каждый ldc "строка" в методах класса заменяется вызовом по номеру строки:
+ *
+ *   ldc "text"   ->   sipush 3; invokestatic Owner.$$s(I)Ljava/lang/String;
+ *
+ * $$s - несколько байт: элемент статического final-массива и проверка на null, JIT
+ * встраивает его в место вызова. Только при первом обращении $$l расшифровывает строку,
+ * делает intern() (== между литералами работает как раньше) и кладет в массив. Массив
+ * создается в начале <clinit>.
+ * Замена не добавляет ветвлений в исходные методы и не меняет высоту стека, поэтому их
+ * фреймы и max_stack остаются верными; фреймы новых методов пишутся вручную.
+ *
+ * Постоянные части рецептов конкатенации (invokedynamic makeConcatWithConstants) в классах
+ * Java 11+ становятся ConstantDynamic с расшифровкой в bootstrap-методе $$c: JVM вызывает
+ * его один раз на место вызова, дальше конкатенация работает с готовой строкой.
+ *
+ * Ключ свой у каждого класса (seed и имя класса), шифр - XOR с гаммой по номеру строки
+ * и позиции символа: цель - убрать строки из пула констант, а не стойкость.
+ * Интерфейсы и module-info не меняются. Если имя служебного члена уже занято, бросается
+ * {@link NameClashException} - класс переписывается без шифрования.
+ */
+final class StringEncryptor extends ClassVisitor {
+    // Строк на класс: tableswitch и ldc в $$l - около 10 байт кода на строку
+    static final int MAX_STRINGS = 4096;
+    private static final int MAX_CONSTANT_BYTES = 65535;
+    private static final String CACHE = "$$s";
+    private static final String LOOKUP = "$$s";
+    private static final String LOOKUP_DESC = "(I)Ljava/lang/String;";
+    private static final String LOAD = "$$l";
+    private static final String DECRYPT = "$$d";
+    private static final String DECRYPT_DESC = "(Ljava/lang/String;I)Ljava/lang/String;";
+    private static final String BOOTSTRAP = "$$c";
+    private static final String BOOTSTRAP_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/Class;Ljava/lang/String;I)Ljava/lang/String;";
+    private static final String CONCAT_FACTORY = "java/lang/invoke/StringConcatFactory";
+    // Служебные члены начинаются с "$$" (как и поле FlowObfuscator)
+    private static final Set<String> RESERVED = Set.of(CACHE, LOAD, DECRYPT, BOOTSTRAP);
+
+    // Номер строки = порядок среди CONSTANT_String исходного класса (после mapValue)
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final String[] encrypted;
+    private final long seed;
+
+    private String owner;
+    private int version;
+    private boolean enabled;
+    private int k1;
+    private int k2;
+    private int k3;
+    private boolean cacheInitialized;
+    private boolean clinitVisited;
+    private boolean decryptUsed;
+    private boolean bootstrapUsed;
+    // Ключи частей рецептов идут после номеров строк массива
+    private int nextRecipeKey;
+    private int encryptedCount;
+
+    StringEncryptor(ClassVisitor classVisitor, ClassReader source, Remapper remapper, long seed) {
+        super(Opcodes.ASM9, classVisitor);
+        this.seed = seed;
+        char[] buffer = new char[source.getMaxStringLength()];
+        for (int item = 1; item < source.getItemCount() && indices.size() < MAX_STRINGS; item++) {
+            int offset = source.getItem(item);
+            if (offset > 0 && source.readByte(offset - 1) == 8) {
+                Object value = remapper.mapValue(source.readConst(item, buffer));
+                if (value instanceof String) {
+                    indices.putIfAbsent((String) value, indices.size());
+                }
+            }
+        }
+        this.encrypted = new String[indices.size()];
+        this.nextRecipeKey = indices.size();
+    }
+
+    /** Есть ли в классе строковые константы (тогда его нельзя копировать как есть). */
+    static boolean hasStrings(byte[] classData) {
+        ClassReader reader = new ClassReader(classData);
+        for (int item = 1; item < reader.getItemCount(); item++) {
+            int offset = reader.getItem(item);
+            if (offset > 0 && classData[offset - 1] == 8) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Число зашифрованных строк: разных ldc-констант и частей рецептов. */
+    int encryptedCount() {
+        return encryptedCount;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.owner = name;
+        this.version = version;
+        this.enabled = (access & (Opcodes.ACC_INTERFACE | Opcodes.ACC_MODULE)) == 0;
+        Random random = new Random(seed * 31 + name.hashCode());
+        k1 = random.nextInt() | 1;
+        k2 = random.nextInt() | 1;
+        k3 = random.nextInt();
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        checkName(name);
+        return super.visitField(access, name, descriptor, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        checkName(name);
+        MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+        if (!enabled || methodVisitor == null) {
+            return methodVisitor;
+        }
+        boolean clinit = name.equals("<clinit>");
+        clinitVisited |= clinit;
+        return new MethodVisitor(Opcodes.ASM9, methodVisitor) {
+            @Override
+            public void visitCode() {
+                super.visitCode();
+                if (clinit && encrypted.length > 0) {
+                    // Массив создается первым делом: строки могут понадобиться уже в <clinit>
+                    initializeCache(mv);
+                }
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                Integer index = value instanceof String ? indexOf((String) value) : null;
+                if (index == null) {
+                    super.visitLdcInsn(value);
+                    return;
+                }
+                pushInt(mv, index);
+                super.visitMethodInsn(Opcodes.INVOKESTATIC, owner, LOOKUP, LOOKUP_DESC, false);
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                               Object... bootstrapMethodArguments) {
+                if (bootstrapMethodHandle.getOwner().equals(CONCAT_FACTORY)
+                        && bootstrapMethodHandle.getName().equals("makeConcatWithConstants")
+                        && (version & 0xFFFF) >= Opcodes.V11) {
+                    bootstrapMethodArguments = encryptRecipe(bootstrapMethodArguments);
+                }
+                super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+            }
+
+            @Override
+            public void visitMaxs(int maxStack, int maxLocals) {
+                super.visitMaxs(clinit && cacheInitialized ? Math.max(maxStack, 1) : maxStack, maxLocals);
+            }
+        };
+    }
+
+    @Override
+    public void visitEnd() {
+        if (enabled) {
+            boolean literals = hasEncryptedLiterals();
+            if (literals && !clinitVisited) {
+                MethodVisitor clinit = super.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+                clinit.visitCode();
+                initializeCache(clinit);
+                clinit.visitInsn(Opcodes.RETURN);
+                clinit.visitMaxs(1, 0);
+                clinit.visitEnd();
+            }
+            if (cacheInitialized) {
+                super.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+                        CACHE, "[Ljava/lang/String;", null, null).visitEnd();
+            }
+            if (literals) {
+                writeLookup();
+                writeLoad();
+            }
+            if (decryptUsed) {
+                writeDecrypt();
+            }
+            if (bootstrapUsed) {
+                writeBootstrap();
+            }
+        }
+        super.visitEnd();
+    }
+
+    private void checkName(String name) {
+        if (enabled && RESERVED.contains(name)) {
+            throw new NameClashException(owner, name);
+        }
+    }
+
+    /** Номер зашифрованной строки или null, если строка остается как есть. */
+    private Integer indexOf(String value) {
+        Integer index = indices.get(value);
+        if (index == null || value.isEmpty()) {
+            return null;
+        }
+        if (encrypted[index] == null) {
+            String cipher = encrypt(value, index);
+            if (utfLength(cipher) > MAX_CONSTANT_BYTES) {
+                indices.remove(value);
+                return null;
+            }
+            encrypted[index] = cipher;
+            encryptedCount++;
+            decryptUsed = true;
+        }
+        return index;
+    }
+
+    private boolean hasEncryptedLiterals() {
+        for (String cipher : encrypted) {
+            if (cipher != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Рецепт "Hello \u0001!" с константами превращается в "\u0002\u0001\u0002", а
+     * постоянные части - в аргументы ConstantDynamic, которые расшифровывает $$c.
+     */
+    private Object[] encryptRecipe(Object[] arguments) {
+        if (arguments.length == 0 || !(arguments[0] instanceof String)) {
+            return arguments;
+        }
+        String recipe = (String) arguments[0];
+        StringBuilder newRecipe = new StringBuilder();
+        List<Object> newArguments = new ArrayList<>();
+        newArguments.add(null);
+        StringBuilder literal = new StringBuilder();
+        int constant = 1;
+        int added = 0;
+        for (int i = 0; i <= recipe.length(); i++) {
+            char c = i < recipe.length() ? recipe.charAt(i) : '\u0001';
+            if (c != '\u0001' && c != '\u0002') {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                Object part = encryptedConstant(literal.toString());
+                if (part == null) {
+                    return arguments;
+                }
+                newRecipe.append('\u0002');
+                newArguments.add(part);
+                literal.setLength(0);
+                added++;
+            }
+            if (i == recipe.length()) {
+                break;
+            }
+            newRecipe.append(c);
+            if (c == '\u0002') {
+                // Константы с символами \u0001/\u0002 javac передает отдельно - шифруются так же
+                Object argument = arguments[constant++];
+                Object part = argument instanceof String ? encryptedConstant((String) argument) : null;
+                newArguments.add(part != null ? part : argument);
+                added += part != null ? 1 : 0;
+            }
+        }
+        if (added == 0) {
+            // В рецепте не было постоянных частей
+            return arguments;
+        }
+        newArguments.set(0, newRecipe.toString());
+        encryptedCount += added;
+        decryptUsed = true;
+        bootstrapUsed = true;
+        return newArguments.toArray();
+    }
+
+    /** ConstantDynamic, который при связывании вернет value, или null для слишком длинной строки. */
+    private ConstantDynamic encryptedConstant(String value) {
+        int key = nextRecipeKey++;
+        String cipher = encrypt(value, key);
+        if (utfLength(cipher) > MAX_CONSTANT_BYTES) {
+            return null;
+        }
+        return new ConstantDynamic("s", "Ljava/lang/String;",
+                new Handle(Opcodes.H_INVOKESTATIC, owner, BOOTSTRAP, BOOTSTRAP_DESC, false), cipher, key);
+    }
+
+    private String encrypt(String value, int index) {
+        char[] chars = value.toCharArray();
+        for (int j = 0; j < chars.length; j++) {
+            chars[j] = (char) (chars[j] ^ ((j * k1 + index * k2) ^ k3));
+        }
+        return new String(chars);
+    }
+
+    private void initializeCache(MethodVisitor methodVisitor) {
+        pushInt(methodVisitor, encrypted.length);
+        methodVisitor.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/String");
+        methodVisitor.visitFieldInsn(Opcodes.PUTSTATIC, owner, CACHE, "[Ljava/lang/String;");
+        cacheInitialized = true;
+    }
+
+    /**
+     * $$s(i): строка из массива, при первом обращении - через $$l. Массива еще нет, если
+     * код класса выполняется до его <clinit> (наследник, созданный в <clinit> предка):
+     * тогда тоже $$l. После инициализации класса JIT считает final-поле константой
+     * и проверку массива на null убирает.
+     */
+    private void writeLookup() {
+        MethodVisitor mv = super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                LOOKUP, LOOKUP_DESC, null, null);
+        mv.visitCode();
+        Label load = new Label();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, owner, CACHE, "[Ljava/lang/String;");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitJumpInsn(Opcodes.IFNULL, load);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitJumpInsn(Opcodes.IFNULL, load);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(load);
+        // На стеке null: массив или его элемент
+        frame(mv, Opcodes.F_SAME1, 0, null, 1, new Object[]{"java/lang/Object"});
+        mv.visitInsn(Opcodes.POP);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, LOAD, LOOKUP_DESC, false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(2, 1);
+        mv.visitEnd();
+    }
+
+    /** $$l(i): выбор зашифрованной строки по номеру, расшифровка, intern() и запись в массив, если он уже есть. */
+    private void writeLoad() {
+        MethodVisitor mv = super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                LOAD, LOOKUP_DESC, null, null);
+        mv.visitCode();
+        Label missing = new Label();
+        Label decrypt = new Label();
+        Label[] cases = new Label[encrypted.length];
+        for (int i = 0; i < cases.length; i++) {
+            cases[i] = encrypted[i] != null ? new Label() : missing;
+        }
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitTableSwitchInsn(0, cases.length - 1, missing, cases);
+        for (int i = 0; i < cases.length; i++) {
+            if (encrypted[i] != null) {
+                mv.visitLabel(cases[i]);
+                frame(mv, Opcodes.F_SAME, 0, null, 0, null);
+                mv.visitLdcInsn(encrypted[i]);
+                mv.visitJumpInsn(Opcodes.GOTO, decrypt);
+            }
+        }
+        mv.visitLabel(missing);
+        frame(mv, Opcodes.F_SAME, 0, null, 0, null);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(decrypt);
+        frame(mv, Opcodes.F_SAME1, 0, null, 1, new Object[]{"java/lang/String"});
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, DECRYPT, DECRYPT_DESC, false);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "intern", "()Ljava/lang/String;", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        Label done = new Label();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, owner, CACHE, "[Ljava/lang/String;");
+        mv.visitJumpInsn(Opcodes.IFNULL, done);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, owner, CACHE, "[Ljava/lang/String;");
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.AASTORE);
+        mv.visitLabel(done);
+        frame(mv, Opcodes.F_APPEND, 1, new Object[]{"java/lang/String"}, 0, null);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(3, 2);
+        mv.visitEnd();
+    }
+
+    /** $$d(cipher, key): c[j] ^= (j * k1 + key * k2) ^ k3. */
+    private void writeDecrypt() {
+        MethodVisitor mv = super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                DECRYPT, DECRYPT_DESC, null, null);
+        mv.visitCode();
+        Label loop = new Label();
+        Label done = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "toCharArray", "()[C", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 2);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 3);
+        mv.visitLabel(loop);
+        frame(mv, Opcodes.F_APPEND, 2, new Object[]{"[C", Opcodes.INTEGER}, 0, null);
+        mv.visitVarInsn(Opcodes.ILOAD, 3);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitInsn(Opcodes.ARRAYLENGTH);
+        mv.visitJumpInsn(Opcodes.IF_ICMPGE, done);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitVarInsn(Opcodes.ILOAD, 3);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitVarInsn(Opcodes.ILOAD, 3);
+        mv.visitInsn(Opcodes.CALOAD);
+        mv.visitVarInsn(Opcodes.ILOAD, 3);
+        mv.visitLdcInsn(k1);
+        mv.visitInsn(Opcodes.IMUL);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitLdcInsn(k2);
+        mv.visitInsn(Opcodes.IMUL);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitLdcInsn(k3);
+        mv.visitInsn(Opcodes.IXOR);
+        mv.visitInsn(Opcodes.IXOR);
+        mv.visitInsn(Opcodes.I2C);
+        mv.visitInsn(Opcodes.CASTORE);
+        mv.visitIincInsn(3, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, loop);
+        mv.visitLabel(done);
+        frame(mv, Opcodes.F_SAME, 0, null, 0, null);
+        mv.visitTypeInsn(Opcodes.NEW, "java/lang/String");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/String", "<init>", "([C)V", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(6, 4);
+        mv.visitEnd();
+    }
+
+    /** $$c: bootstrap-метод ConstantDynamic для частей рецептов конкатенации. */
+    private void writeBootstrap() {
+        MethodVisitor mv = super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                BOOTSTRAP, BOOTSTRAP_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 3);
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, DECRYPT, DECRYPT_DESC, false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(2, 5);
+        mv.visitEnd();
+    }
+
+    /** Фреймы нужны с Java 6 (версия 50); в более старых классах их не пишем. */
+    private void frame(MethodVisitor mv, int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        if ((version & 0xFFFF) >= Opcodes.V1_6) {
+            mv.visitFrame(type, numLocal, local, numStack, stack);
+        }
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /** Длина строки в модифицированном UTF-8 пула констант. */
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+}
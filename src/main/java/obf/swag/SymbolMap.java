@@ -0,0 +1,270 @@
+package obf.swag;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Map строк на строки поверх общей {@link SymbolTable}: ключ и значение - номера символов
+ * в двух массивах int, сами строки лежат в таблице один раз. Для режима --low-memory
+ * вместо HashMap маппингов, где ключи владелец.имя и владелец.имя+дескриптор живут
+ * отдельными String в каждой из карт.
+ *
+ * Порядок обхода - порядок добавления. Значение null допускается. Удаленная запись
+ * остается дырой до следующего расширения. get() каждый раз собирает новую String
+ * из байт таблицы - это цена компактности.
+ */
+final class SymbolMap extends AbstractMap<String, String> {
+    private static final int REMOVED = -2;
+    private static final int NULL = -1;
+
+    private final SymbolTable symbols;
+    // номера символов в порядке добавления
+    private int[] keys = new int[64];
+    private int[] values = new int[64];
+    private int used = 0;
+    private int size = 0;
+    // позиция в keys + 1, 0 - пустая ячейка
+    private int[] index = new int[128];
+
+    SymbolMap(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return position(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int position = position(key);
+        return position >= 0 ? decode(values[position]) : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int id = symbols.intern(key);
+        int position = position(id);
+        if (position >= 0) {
+            String previous = decode(values[position]);
+            values[position] = encode(value);
+            return previous;
+        }
+        append(id, encode(value));
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int position = position(key);
+        if (position < 0) {
+            return null;
+        }
+        String previous = decode(values[position]);
+        removeAt(position);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        keys = new int[64];
+        values = new int[64];
+        index = new int[128];
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * Ключи по убыванию веса, при равном весе - по алфавиту (как String.compareTo).
+     * Список держит только номера символов, строка собирается при обращении к элементу.
+     */
+    List<String> keysByWeight(ToIntFunction<String> weight) {
+        int[] ids = new int[size];
+        int[] weights = new int[size];
+        Integer[] order = new Integer[size];
+        int count = 0;
+        for (int position = 0; position < used; position++) {
+            if (keys[position] != REMOVED) {
+                ids[count] = keys[position];
+                weights[count] = weight.applyAsInt(symbols.get(keys[position]));
+                order[count] = count;
+                count++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byWeight = Integer.compare(weights[b], weights[a]);
+            return byWeight != 0 ? byWeight : symbols.compare(ids[a], ids[b]);
+        });
+        int[] sorted = new int[size];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ids[order[i]];
+        }
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return symbols.get(sorted[index]);
+            }
+
+            @Override
+            public int size() {
+                return sorted.length;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int next = skipRemoved(0);
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < used;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (next >= used) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next;
+                        next = skipRemoved(next + 1);
+                        return new SymbolEntry(last);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0 || keys[last] == REMOVED) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                    }
+                };
+            }
+        };
+    }
+
+    private final class SymbolEntry extends SimpleEntry<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int position;
+
+        SymbolEntry(int position) {
+            super(symbols.get(keys[position]), decode(values[position]));
+            this.position = position;
+        }
+
+        @Override
+        public String setValue(String value) {
+            values[position] = encode(value);
+            return super.setValue(value);
+        }
+    }
+
+    private int skipRemoved(int position) {
+        while (position < used && keys[position] == REMOVED) {
+            position++;
+        }
+        return position;
+    }
+
+    private int position(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int id = symbols.find((String) key);
+        return id == SymbolTable.NONE ? -1 : position(id);
+    }
+
+    private int position(int id) {
+        int mask = index.length - 1;
+        for (int slot = slot(id, mask); ; slot = (slot + 1) & mask) {
+            int position = index[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (keys[position] == id) {
+                return position;
+            }
+        }
+    }
+
+    private void append(int id, int value) {
+        if (used == keys.length) {
+            if (size < used / 2) {
+                // больше половины - дыры от удаления, места хватит после сжатия
+                rebuild(index.length);
+            } else {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+        }
+        keys[used] = id;
+        values[used] = value;
+        used++;
+        size++;
+        if (used * 4 > index.length * 3) {
+            rebuild(index.length * 2);
+        } else {
+            place(used - 1);
+        }
+    }
+
+    private void removeAt(int position) {
+        // ячейка индекса остается и указывает на дыру, цепочки проб не рвутся
+        keys[position] = REMOVED;
+        size--;
+    }
+
+    private void rebuild(int capacity) {
+        int live = 0;
+        for (int position = 0; position < used; position++) {
+            if (keys[position] != REMOVED) {
+                keys[live] = keys[position];
+                values[live] = values[position];
+                live++;
+            }
+        }
+        used = live;
+        index = new int[capacity];
+        for (int position = 0; position < used; position++) {
+            place(position);
+        }
+    }
+
+    private void place(int position) {
+        int mask = index.length - 1;
+        int slot = slot(keys[position], mask);
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position + 1;
+    }
+
+    private int slot(int id, int mask) {
+        int hash = symbols.hash(id);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int encode(String value) {
+        return value == null ? NULL : symbols.intern(value);
+    }
+
+    private String decode(int value) {
+        return value == NULL ? null : symbols.get(value);
+    }
+}
@@ -0,0 +1,190 @@
+package obf.swag;
+
+import java.util.Arrays;
+
+/**
+ * Таблица символов для режима --low-memory: каждая строка хранится один раз в общем
+ * массиве байт и дальше представлена своим номером (int).
+ *
+ * Кодировка - как модифицированный UTF-8 в class-файлах (латиница по байту на символ,
+ * любые char, в том числе одиночные суррогаты, кодируются без потерь). Индекс -
+ * открытая адресация по String.hashCode(), поэтому поиск по готовой строке не требует
+ * ее кодирования. Символ стоит примерно длина + 12 байт против ~70 байт у String
+ * с массивом и узлом HashMap.
+ *
+ * Удалить символ нельзя. Чтение из нескольких потоков безопасно, пока никто не пишет.
+ */
+final class SymbolTable {
+    static final int NONE = -1;
+
+    private byte[] bytes = new byte[4096];
+    private int used = 0;
+    // начало символа i; конец - offsets[i + 1]
+    private int[] offsets = new int[257];
+    private int[] hashes = new int[256];
+    private int count = 0;
+    // номер символа + 1, 0 - пустая ячейка
+    private int[] index = new int[512];
+
+    int size() {
+        return count;
+    }
+
+    /** Примерный размер таблицы в куче, байт. */
+    long memoryBytes() {
+        return bytes.length + 4L * (offsets.length + hashes.length + index.length);
+    }
+
+    /** Номер строки; строка добавляется, если ее еще нет. */
+    int intern(String value) {
+        int hash = value.hashCode();
+        int mask = index.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = index[slot] - 1;
+            if (id < 0) {
+                break;
+            }
+            if (hashes[id] == hash && equalsAt(id, value)) {
+                return id;
+            }
+        }
+        return add(value, hash);
+    }
+
+    /** Номер строки или NONE. */
+    int find(String value) {
+        int hash = value.hashCode();
+        int mask = index.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = index[slot] - 1;
+            if (id < 0) {
+                return NONE;
+            }
+            if (hashes[id] == hash && equalsAt(id, value)) {
+                return id;
+            }
+        }
+    }
+
+    String get(int id) {
+        int start = offsets[id];
+        int end = offsets[id + 1];
+        char[] chars = new char[end - start];
+        int length = 0;
+        for (int i = start; i < end; i += width(i)) {
+            chars[length++] = charAt(i);
+        }
+        return new String(chars, 0, length);
+    }
+
+    int hash(int id) {
+        return hashes[id];
+    }
+
+    /** Сравнение как у String.compareTo, без сборки строк. */
+    int compare(int a, int b) {
+        int i = offsets[a];
+        int endA = offsets[a + 1];
+        int j = offsets[b];
+        int endB = offsets[b + 1];
+        while (i < endA && j < endB) {
+            char charA = charAt(i);
+            char charB = charAt(j);
+            if (charA != charB) {
+                return charA - charB;
+            }
+            i += width(i);
+            j += width(j);
+        }
+        // Общее начало совпало - короче та строка, что кончилась раньше
+        return (i < endA ? 1 : 0) - (j < endB ? 1 : 0);
+    }
+
+    private char charAt(int i) {
+        int b = bytes[i] & 0xFF;
+        if (b < 0x80) {
+            return (char) b;
+        } else if ((b & 0xE0) == 0xC0) {
+            return (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+        }
+        return (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+    }
+
+    private int width(int i) {
+        int b = bytes[i] & 0xFF;
+        return b < 0x80 ? 1 : (b & 0xE0) == 0xC0 ? 2 : 3;
+    }
+
+    private int add(String value, int hash) {
+        if (count == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            offsets = Arrays.copyOf(offsets, hashes.length + 1);
+        }
+        ensureBytes(value.length() * 3);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                bytes[used++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[used++] = (byte) (0xC0 | (c >> 6));
+                bytes[used++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[used++] = (byte) (0xE0 | (c >> 12));
+                bytes[used++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[used++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        int id = count++;
+        hashes[id] = hash;
+        offsets[id + 1] = used;
+
+        // Заполнение индекса не больше 3/4
+        if (count * 4 > index.length * 3) {
+            rehash(index.length * 2);
+        } else {
+            place(id);
+        }
+        return id;
+    }
+
+    private void ensureBytes(int extra) {
+        if (used + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + extra));
+        }
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        for (int id = 0; id < count; id++) {
+            place(id);
+        }
+    }
+
+    private void place(int id) {
+        int mask = index.length - 1;
+        int slot = mix(hashes[id]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = id + 1;
+    }
+
+    private boolean equalsAt(int id, String value) {
+        int i = offsets[id];
+        int end = offsets[id + 1];
+        for (int k = 0; k < value.length(); k++) {
+            if (i >= end) {
+                return false;
+            }
+            if (charAt(i) != value.charAt(k)) {
+                return false;
+            }
+            i += width(i);
+        }
+        return i == end;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,209 @@
+package obf.swag;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Режим --temp-dir (прежний): JAR распаковывается во временную директорию, классы
+ * переписываются на месте и переименовываются файлами, выходной JAR собирается из
+ * директории по списку распакованных записей.
+ */
+final class TempDirPipeline {
+    private final JarObfuscator obfuscator;
+    private final PrintStream log;
+
+    TempDirPipeline(JarObfuscator obfuscator) {
+        this.obfuscator = obfuscator;
+        this.log = obfuscator.getLog();
+    }
+
+    void run(Path originalPath, Path outputPath) throws IOException {
+        RunStats stats = obfuscator.getStats();
+        Path tempDir = Files.createTempDirectory("jar_obfuscate");
+
+        try (ParallelEngine engine = new ParallelEngine(obfuscator.getThreads())) {
+            obfuscator.useEngine(engine);
+
+            log.println("Распаковка JAR...");
+            List<String> extractedEntries = stats.phase("extractJar", () -> {
+                List<String> entries = extractJar(originalPath, tempDir);
+                readOriginalManifest(tempDir);
+                return entries;
+            });
+
+            log.println("Сбор информации о классах...");
+            stats.phase("collectClassInfo",
+                    () -> obfuscator.collectClassInfo(listClassFiles(tempDir), Files::readAllBytes));
+
+            obfuscator.prepareMappings();
+
+            log.println("Обфускация байткода...");
+            stats.phase("transform", () -> obfuscateAllClasses(tempDir, engine));
+
+            log.println("Создание нового JAR...");
+            stats.phase("createJar", () -> createJar(tempDir, renamedEntries(extractedEntries), outputPath));
+
+            log.println("Результат сохранен в: " + outputPath);
+
+        } finally {
+            obfuscator.useEngine(null);
+            log.println("Очистка временных файлов...");
+            deleteDirectory(tempDir);
+        }
+    }
+
+    /** Распаковывает JAR и возвращает имена распакованных записей, у директорий - с / на конце. */
+    List<String> extractJar(Path jarPath, Path outputDir) throws IOException {
+        List<String> extracted = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                Path entryPath = outputDir.resolve(entry.getName());
+                String entryNameNormalized = entry.getName().replace('\\', '/');
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(entryPath);
+                    extracted.add(entryNameNormalized);
+                } else {
+                    Files.createDirectories(entryPath.getParent());
+                    try (InputStream is = jarFile.getInputStream(entry)) {
+                        Files.copy(is, entryPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    extracted.add(entryNameNormalized);
+                    if (obfuscator.isShrink() && JarObfuscator.isServiceEntry(entryNameNormalized)) {
+                        try (InputStream is = Files.newInputStream(entryPath)) {
+                            obfuscator.readServiceProviders(entryNameNormalized, is);
+                        }
+                    }
+                }
+            }
+        }
+        return extracted;
+    }
+
+    private void readOriginalManifest(Path tempDir) throws IOException {
+        Path manifestPath = tempDir.resolve("META-INF/MANIFEST.MF");
+        if (Files.exists(manifestPath)) {
+            try (InputStream is = Files.newInputStream(manifestPath)) {
+                obfuscator.readManifestAttributes(is);
+            }
+        }
+    }
+
+    private List<Path> listClassFiles(Path tempDir) throws IOException {
+        // Сортируем, чтобы порядок обработки не зависел от файловой системы
+        try (var paths = Files.walk(tempDir)) {
+            return paths.filter(path -> path.toString().endsWith(".class"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void obfuscateAllClasses(Path tempDir, ParallelEngine engine) throws IOException {
+        List<Path> classFiles = new ArrayList<>();
+        for (Path classFile : listClassFiles(tempDir)) {
+            if (obfuscator.isShrunkClass(getClassName(tempDir, classFile))) {
+                Files.delete(classFile);
+            } else {
+                classFiles.add(classFile);
+            }
+        }
+
+        log.println("Найдено классов для обфускации: " + classFiles.size()
+                + " (потоков: " + engine.getThreads() + ")");
+
+        // Каждый класс переписывается независимо, индекс переименований только читается
+        engine.forEach(classFiles, classFile -> {
+            obfuscateSingleClass(classFile);
+            return null;
+        });
+
+        for (Path classFile : classFiles) {
+            renameClassFile(tempDir, classFile);
+        }
+    }
+
+    private void obfuscateSingleClass(Path classFile) throws IOException {
+        byte[] originalData = Files.readAllBytes(classFile);
+        byte[] obfuscatedData = obfuscator.transformClass(originalData);
+        Files.write(classFile, obfuscatedData);
+    }
+
+    private void renameClassFile(Path baseDir, Path classFile) throws IOException {
+        String entryName = getEntryName(baseDir, classFile);
+        String originalClassName = JarObfuscator.classNameOf(entryName);
+        String obfuscatedClassName = obfuscator.newClassName(originalClassName);
+
+        if (!obfuscatedClassName.equals(originalClassName)) {
+            Path newPath = getEntryPath(baseDir, JarObfuscator.renamedEntryName(entryName, obfuscatedClassName));
+            Files.createDirectories(newPath.getParent());
+            Files.move(classFile, newPath, StandardCopyOption.REPLACE_EXISTING);
+            if (!obfuscator.isQuiet()) {
+                log.println("Переименован файл: " + originalClassName + " -> " + obfuscatedClassName);
+            }
+        }
+    }
+
+    /** Имя класса распакованного файла, как у записи JAR: корень классов отбрасывается. */
+    private String getClassName(Path baseDir, Path classFile) {
+        return JarObfuscator.classNameOf(getEntryName(baseDir, classFile));
+    }
+
+    private String getEntryName(Path baseDir, Path classFile) {
+        return baseDir.relativize(classFile).toString().replace(File.separatorChar, '/');
+    }
+
+    private Path getEntryPath(Path baseDir, String entryName) {
+        return baseDir.resolve(entryName.replace('/', File.separatorChar));
+    }
+
+    /**
+     * Собирает JAR из распакованной директории по известному списку записей (обход
+     * директории не нужен). Файлы, удаленные при обработке, пропускаются.
+     */
+    void createJar(Path sourceDir, List<String> entryNames, Path outputPath) throws IOException {
+        Comparator<String> entryOrder = obfuscator.getEntryOrder();
+        List<String> names = new ArrayList<>(entryNames);
+        names.removeIf(name -> name.equalsIgnoreCase("META-INF/MANIFEST.MF"));
+        names.sort((a, b) -> entryOrder.compare(obfuscator.resourceNameOf(a), obfuscator.resourceNameOf(b)));
+        try (JarWriter writer = obfuscator.newJarWriter(Files.newOutputStream(outputPath))) {
+            for (String name : names) {
+                Path path = sourceDir.resolve(name);
+                if (name.endsWith("/")) {
+                    writer.add(name, new byte[0], ZipEntry.STORED);
+                } else if (Files.isRegularFile(path)) {
+                    byte[] data = Files.readAllBytes(path);
+                    if (!name.endsWith(".class")) {
+                        data = obfuscator.rewriteResource(name, data);
+                    }
+                    writer.add(obfuscator.resourceNameOf(name), data, ZipEntry.DEFLATED);
+                }
+            }
+        }
+    }
+
+    /** Имена распакованных файлов после переименования классов. */
+    private List<String> renamedEntries(List<String> extractedEntries) {
+        List<String> names = new ArrayList<>(extractedEntries.size());
+        for (String name : extractedEntries) {
+            if (name.endsWith(".class")) {
+                name = JarObfuscator.renamedEntryName(name, obfuscator.newClassName(JarObfuscator.classNameOf(name)));
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        Files.walk(path)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+}
@@ -0,0 +1,16 @@
+package obf.swag;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Выходной JAR не прошел проверку ({@link ClassVerifier}). JAR, маппинги и отчет
+ * остаются на диске для разбора.
+ */
+final class VerificationException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    VerificationException(Path jar, long errors) {
+        super("Выходной JAR не прошел проверку, ошибок: " + errors + " (" + jar + ")");
+    }
+}
@@ -0,0 +1,171 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassHierarchyTest {
+    private static final int PUBLIC_ABSTRACT = Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT;
+    private static final int INTERFACE = PUBLIC_ABSTRACT | Opcodes.ACC_INTERFACE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void groupsInterfaceMethodWithAbstractAndConcreteOverrides() throws IOException {
+        ClassHierarchy hierarchy = hierarchy();
+
+        int group = hierarchy.methodGroup("test/Task", "exec()V");
+        assertTrue(group >= 0);
+        assertEquals(group, hierarchy.methodGroup("test/Base", "exec()V"));
+        assertEquals(group, hierarchy.methodGroup("test/Impl", "exec()V"));
+        assertFalse(hierarchy.isFixed(group));
+        // Тот же метод в классе вне иерархии - отдельная группа
+        assertNotEquals(group, hierarchy.methodGroup("test/Other", "exec()V"));
+    }
+
+    @Test
+    void fixesGroupAnchoredInLibrary() throws IOException {
+        ClassHierarchy hierarchy = hierarchy();
+
+        // Base реализует и Task, и java.lang.Runnable: run() всей группы - библиотечный
+        int group = hierarchy.methodGroup("test/Task", "run()V");
+        assertEquals(group, hierarchy.methodGroup("test/Base", "run()V"));
+        assertEquals(group, hierarchy.methodGroup("test/Impl", "run()V"));
+        assertTrue(hierarchy.isFixed(group));
+        assertFalse(hierarchy.isFixed(hierarchy.methodGroup("test/Other", "run()V")));
+    }
+
+    @Test
+    void skipsStaticPrivateMethodsAndConstructors() throws IOException {
+        ClassHierarchy hierarchy = hierarchy();
+
+        assertEquals(-1, hierarchy.methodGroup("test/Impl", "<init>()V"));
+        assertEquals(-1, hierarchy.methodGroup("test/Impl", "helper()V"));
+        assertEquals(-1, hierarchy.methodGroup("java/lang/Runnable", "run()V"));
+    }
+
+    @Test
+    void fixesGroupWithUnresolvedAncestor() throws IOException {
+        Map<String, ClassMetadata> classes = new LinkedHashMap<>();
+        classes.put("test/Plugin", metadata("test/Plugin", "missing/Api", new String[0], Opcodes.ACC_PUBLIC,
+                Map.of("exec()V", Opcodes.ACC_PUBLIC)));
+        try (LibraryClassPath libraries = new LibraryClassPath(List.of())) {
+            ClassHierarchy hierarchy = ClassHierarchy.build(classes, libraries);
+
+            assertTrue(hierarchy.isFixed(hierarchy.methodGroup("test/Plugin", "exec()V")));
+            assertEquals(List.of("missing/Api"), hierarchy.unresolvedClasses());
+        }
+    }
+
+    @Test
+    void renamesWholeGroupToOneName() throws IOException {
+        Path jar = dir.resolve("app.jar");
+        writeJar(jar);
+        Path mappingFile = dir.resolve("mapping.txt");
+        JarObfuscator obfuscator = new JarObfuscator();
+        obfuscator.setLog(new PrintStream(OutputStream.nullOutputStream()));
+        obfuscator.setQuiet(true);
+        obfuscator.setSeed(1);
+        obfuscator.setMappingOutput(mappingFile);
+        obfuscator.obfuscateJar(jar.toString());
+        MappingSet mappings = MappingSet.read(mappingFile);
+
+        String exec = mappings.getMethodName("test/Task.exec()V");
+        assertNotNull(exec);
+        assertNotEquals("exec", exec);
+        assertEquals(exec, mappings.getMethodName("test/Base.exec()V"));
+        assertEquals(exec, mappings.getMethodName("test/Impl.exec()V"));
+        // Группа с java.lang.Runnable.run() сохраняет имя целиком
+        assertNull(mappings.getMethodName("test/Task.run()V"));
+        assertNull(mappings.getMethodName("test/Base.run()V"));
+        assertNull(mappings.getMethodName("test/Impl.run()V"));
+    }
+
+    /**
+     * interface Task { void run(); void exec(); }
+     * abstract class Base implements Task, Runnable { abstract run(); abstract exec(); }
+     * class Impl extends Base { run(); exec(); private helper(); }
+     * class Other { run(); exec(); }
+     */
+    private static ClassHierarchy hierarchy() throws IOException {
+        Map<String, ClassMetadata> classes = new LinkedHashMap<>();
+        for (byte[] classData : classes()) {
+            ClassMetadata metadata = ClassMetadata.read(classData);
+            classes.put(metadata.name, metadata);
+        }
+        try (LibraryClassPath libraries = new LibraryClassPath(List.of())) {
+            return ClassHierarchy.build(classes, libraries);
+        }
+    }
+
+    private static List<byte[]> classes() {
+        List<byte[]> classes = new ArrayList<>();
+        classes.add(classFile(INTERFACE, "test/Task", "java/lang/Object", new String[0], PUBLIC_ABSTRACT, false));
+        classes.add(classFile(PUBLIC_ABSTRACT, "test/Base", "java/lang/Object",
+                new String[]{"test/Task", "java/lang/Runnable"}, PUBLIC_ABSTRACT, true));
+        classes.add(classFile(Opcodes.ACC_PUBLIC, "test/Impl", "test/Base", new String[0], Opcodes.ACC_PUBLIC, true));
+        classes.add(classFile(Opcodes.ACC_PUBLIC, "test/Other", "java/lang/Object", new String[0],
+                Opcodes.ACC_PUBLIC, true));
+        return classes;
+    }
+
+    private static byte[] classFile(int access, String name, String superName, String[] interfaces,
+                                    int methodAccess, boolean constructor) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V11, access | (constructor ? Opcodes.ACC_SUPER : 0), name, null, superName,
+                interfaces);
+        if (constructor) {
+            MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            init.visitCode();
+            init.visitVarInsn(Opcodes.ALOAD, 0);
+            init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+            init.visitInsn(Opcodes.RETURN);
+            init.visitMaxs(0, 0);
+            init.visitEnd();
+        }
+        method(writer, methodAccess, "run");
+        method(writer, methodAccess, "exec");
+        if (name.equals("test/Impl")) {
+            method(writer, Opcodes.ACC_PRIVATE, "helper");
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void method(ClassWriter writer, int access, String name) {
+        MethodVisitor mv = writer.visitMethod(access, name, "()V", null, null);
+        if ((access & Opcodes.ACC_ABSTRACT) == 0) {
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+        }
+        mv.visitEnd();
+    }
+
+    private static ClassMetadata metadata(String name, String superName, String[] interfaces, int access,
+                                          Map<String, Integer> methods) {
+        return new ClassMetadata(name, superName, interfaces, access, methods, Map.of());
+    }
+
+    private static void writeJar(Path jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (byte[] classData : classes()) {
+                out.putNextEntry(new JarEntry(new ClassReader(classData).getClassName() + ".class"));
+                out.write(classData);
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassVerifierTest {
+
+    @Test
+    void acceptsRecordsAndSealedClasses() throws IOException {
+        ClassVerifier verifier = verify(name -> false, pointRecord(), shape(), circle("test/Shape"));
+
+        assertEquals(0, verifier.errorCount(), () -> verifier.problems().toString());
+        assertEquals(3, verifier.classCount());
+    }
+
+    @Test
+    void reportsStaleClassName() throws IOException {
+        ClassVerifier verifier = verify("old/Shape"::equals, circle("old/Shape"));
+
+        assertEquals(1, verifier.errorCount());
+        assertTrue(verifier.problems().get(0).message.contains("old/Shape"), () -> verifier.problems().toString());
+    }
+
+    private static ClassVerifier verify(Predicate<String> staleName, byte[]... classes) throws IOException {
+        try (LibraryClassPath libraries = new LibraryClassPath(List.of())) {
+            ClassVerifier verifier = new ClassVerifier(libraries, staleName, null);
+            for (byte[] classData : classes) {
+                verifier.addClass(classData);
+            }
+            for (byte[] classData : classes) {
+                verifier.verify(classData);
+            }
+            return verifier;
+        }
+    }
+
+    /** public record Point(int x) */
+    private static byte[] pointRecord() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_RECORD,
+                "test/Point", null, "java/lang/Record", null);
+        writer.visitRecordComponent("x", "I", null).visitEnd();
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "x", "I", null, null).visitEnd();
+
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(I)V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Record", "<init>", "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ILOAD, 1);
+        init.visitFieldInsn(Opcodes.PUTFIELD, "test/Point", "x", "I");
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(2, 2);
+        init.visitEnd();
+
+        MethodVisitor x = writer.visitMethod(Opcodes.ACC_PUBLIC, "x", "()I", null, null);
+        x.visitCode();
+        x.visitVarInsn(Opcodes.ALOAD, 0);
+        x.visitFieldInsn(Opcodes.GETFIELD, "test/Point", "x", "I");
+        x.visitInsn(Opcodes.IRETURN);
+        x.visitMaxs(1, 1);
+        x.visitEnd();
+
+        // Абстрактные методы Record реализуются здесь, а не через ObjectMethods
+        abstractMethodStub(writer, "equals", "(Ljava/lang/Object;)Z", 2);
+        abstractMethodStub(writer, "hashCode", "()I", 1);
+        abstractMethodStub(writer, "toString", "()Ljava/lang/String;", 1);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /** Метод, который вызывает одноименный метод Object. */
+    private static void abstractMethodStub(ClassWriter writer, String name, String descriptor, int locals) {
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, name, descriptor, null, null);
+        mv.visitCode();
+        for (int i = 0; i < locals; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, i);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", name, descriptor, false);
+        mv.visitInsn(Type.getReturnType(descriptor).getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(locals, locals);
+        mv.visitEnd();
+    }
+
+    /** public abstract sealed class Shape permits Circle */
+    private static byte[] shape() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_SUPER,
+                "test/Shape", null, "java/lang/Object", null);
+        writer.visitPermittedSubclass("test/Circle");
+        constructor(writer, "java/lang/Object");
+        writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "area", "()D", null, null).visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /** public final class Circle extends Shape */
+    private static byte[] circle(String superName) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                "test/Circle", null, superName, null);
+        constructor(writer, superName);
+        MethodVisitor area = writer.visitMethod(Opcodes.ACC_PUBLIC, "area", "()D", null, null);
+        area.visitCode();
+        area.visitInsn(Opcodes.DCONST_1);
+        area.visitInsn(Opcodes.DRETURN);
+        area.visitMaxs(2, 1);
+        area.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void constructor(ClassWriter writer, String superName) {
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(1, 1);
+        init.visitEnd();
+    }
+}
@@ -0,0 +1,140 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlowObfuscatorTest {
+    private static final String OWNER = "test/Counter";
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+
+    @Test
+    void transformsMethodAndKeepsBehavior() throws Exception {
+        Result result = obfuscate(counterClass(20), UNLIMITED, Set.of());
+
+        assertEquals(1, result.flow.transformedMethods());
+        assertTrue(result.flow.addedBytes() > 0);
+        assertEquals(result.flow.addedBytes(), codeSize(result.data) - codeSize(counterClass(20)));
+        assertEquals(25, define(result.data).getMethod("count", int.class).invoke(null, 5));
+    }
+
+    @Test
+    void leavesSmallMethodsAlone() {
+        // 8 * 4 + 2 байта - не больше MaxInlineSize
+        byte[] original = counterClass(8);
+        Result result = obfuscate(original, UNLIMITED, Set.of());
+
+        assertEquals(0, result.flow.transformedMethods());
+        assertEquals(0, result.flow.skippedBudget());
+        assertEquals(codeSize(original), codeSize(result.data));
+    }
+
+    @Test
+    void skipsExcludedHotMethods() {
+        Result result = obfuscate(counterClass(20), UNLIMITED, Set.of(OWNER + ".count"));
+
+        assertEquals(0, result.flow.transformedMethods());
+        assertEquals(1, result.flow.skippedHot());
+    }
+
+    @Test
+    void skipsMethodWhenNoJumpFitsTheBudget() {
+        Result result = obfuscate(counterClass(20), 4, Set.of());
+
+        assertEquals(0, result.flow.transformedMethods());
+        assertEquals(1, result.flow.skippedBudget());
+        assertEquals(codeSize(counterClass(20)), codeSize(result.data));
+    }
+
+    @Test
+    void staysWithinTheBudget() throws Exception {
+        int unlimited = obfuscate(counterClass(60), UNLIMITED, Set.of()).flow.addedBytes();
+        int budget = unlimited / 2;
+        Result result = obfuscate(counterClass(60), budget, Set.of());
+
+        assertEquals(1, result.flow.transformedMethods());
+        assertTrue(result.flow.addedBytes() > 0 && result.flow.addedBytes() <= budget,
+                result.flow.addedBytes() + " > " + budget);
+        assertEquals(65, define(result.data).getMethod("count", int.class).invoke(null, 5));
+    }
+
+    @Test
+    void keepsMethodsWithinFreqInlineSize() {
+        // 80 * 4 + 2 = 322 байта: до FreqInlineSize остается 3 байта, переход не помещается
+        Result result = obfuscate(counterClass(80), UNLIMITED, Set.of());
+
+        assertEquals(0, result.flow.transformedMethods());
+        assertEquals(1, result.flow.skippedBudget());
+    }
+
+    @Test
+    void keepsMethodsWithinHugeMethodLimit() throws Exception {
+        Result result = obfuscate(counterClass(200), UNLIMITED, Set.of());
+
+        assertEquals(1, result.flow.transformedMethods());
+        assertTrue(codeSize(result.data) <= FlowObfuscator.HUGE_METHOD_LIMIT);
+        assertEquals(205, define(result.data).getMethod("count", int.class).invoke(null, 5));
+    }
+
+    private static Result obfuscate(byte[] classData, int budget, Set<String> excluded) {
+        ClassReader reader = new ClassReader(classData);
+        ClassWriter writer = new ClassWriter(0);
+        FlowObfuscator flow = new FlowObfuscator(writer, 7, budget, excluded::contains);
+        reader.accept(flow, ClassReader.EXPAND_FRAMES);
+        return new Result(writer.toByteArray(), flow);
+    }
+
+    /** public class Counter { static int count(int x) { x += 1; ... statements раз; return x; } } */
+    private static byte[] counterClass(int statements) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, OWNER, null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "count", "(I)I", null, null);
+        mv.visitCode();
+        for (int i = 0; i < statements; i++) {
+            mv.visitVarInsn(Opcodes.ILOAD, 0);
+            mv.visitInsn(Opcodes.ICONST_1);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitVarInsn(Opcodes.ISTORE, 0);
+        }
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static int codeSize(byte[] classData) {
+        ClassNode node = new ClassNode();
+        new ClassReader(classData).accept(node, 0);
+        for (MethodNode method : node.methods) {
+            if (method.name.equals("count")) {
+                return FlowObfuscator.codeSize(method.instructions);
+            }
+        }
+        throw new AssertionError("нет метода count");
+    }
+
+    private static Class<?> define(byte[] classData) {
+        return new ClassLoader(FlowObfuscatorTest.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(null, classData, 0, classData.length);
+            }
+        }.define();
+    }
+
+    private static final class Result {
+        final byte[] data;
+        final FlowObfuscator flow;
+
+        Result(byte[] data, FlowObfuscator flow) {
+            this.data = data;
+            this.flow = flow;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalCacheTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void hitsOnUnchangedInput() {
+        IncrementalCache cache = IncrementalCache.inMemory();
+        byte[] output = store(cache, remapper("a", "b"));
+
+        // Новый индекс с теми же маппингами - как следующий запуск
+        assertSame(output, cache.lookup(hash(), remapper("a", "b")));
+        assertNull(cache.lookup(IncrementalCache.hash(new byte[]{1}), remapper("a", "b")));
+    }
+
+    @Test
+    void missesAfterSupertypeMethodIsRenamed() {
+        IncrementalCache cache = IncrementalCache.inMemory();
+        store(cache, remapper("a", "b"));
+
+        // Sub вызывает унаследованный run(): ответ на запрос (Sub, run) берется у Base
+        assertNull(cache.lookup(hash(), remapper("c", "b")));
+    }
+
+    @Test
+    void missesAfterReferencedFieldMappingChanges() {
+        IncrementalCache cache = IncrementalCache.inMemory();
+        store(cache, remapper("a", "b"));
+
+        assertNull(cache.lookup(hash(), remapper("a", "d")));
+        assertNull(cache.lookup(hash(), remapper("a", "value")));
+    }
+
+    @Test
+    void roundTripsThroughClassesFile() throws IOException {
+        IncrementalCache cache = IncrementalCache.open(dir);
+        byte[] output = store(cache, remapper("a", "b"));
+        cache.save(mappings("a", "b"));
+        assertTrue(Files.exists(dir.resolve("classes.bin")));
+
+        IncrementalCache reopened = IncrementalCache.open(dir);
+        assertEquals(1, reopened.previousEntryCount());
+        assertEquals(output.length, reopened.cachedBytes());
+        assertEquals("a", reopened.previousMappings().getMethodName("test/Base.run()V"));
+        assertArrayEquals(output, reopened.lookup(hash(), remapper("a", "b")));
+        assertNull(reopened.lookup(hash(), remapper("c", "b")));
+    }
+
+    @Test
+    void dropsEntriesNotUsedInTheLastRun() throws IOException {
+        IncrementalCache cache = IncrementalCache.open(dir);
+        store(cache, remapper("a", "b"));
+        cache.save(mappings("a", "b"));
+        cache.save(mappings("a", "b"));
+
+        assertEquals(0, IncrementalCache.open(dir).previousEntryCount());
+    }
+
+    @Test
+    void treatsDamagedClassesFileAsEmptyCache() throws IOException {
+        IncrementalCache cache = IncrementalCache.open(dir);
+        store(cache, remapper("a", "b"));
+        cache.save(mappings("a", "b"));
+        Path classes = dir.resolve("classes.bin");
+        byte[] data = Files.readAllBytes(classes);
+        Files.write(classes, Arrays.copyOf(data, data.length / 2));
+
+        IncrementalCache reopened = IncrementalCache.open(dir);
+        assertEquals(0, reopened.previousEntryCount());
+        assertNull(reopened.previousMappings().getMethodName("test/Base.run()V"));
+    }
+
+    /** Переписывает Sub через RecordingRemapper и кладет результат в кэш, как transformClassCached. */
+    private static byte[] store(IncrementalCache cache, Remapper remapper) {
+        IncrementalCache.RecordingRemapper recorder = new IncrementalCache.RecordingRemapper(remapper);
+        ClassReader reader = new ClassReader(subClass());
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new ClassRemapper(writer, recorder), 0);
+        byte[] output = writer.toByteArray();
+        cache.store(hash(), recorder, output);
+        return output;
+    }
+
+    /** Base.run() -> runName, Other.value -> valueName; Sub наследует от Base. */
+    private static MappingRemapper remapper(String runName, String valueName) {
+        return MappingRemapper.build(Map.of(), Map.of("test/Other.value", valueName),
+                Map.of("test/Base.run()V", runName), Map.of("test/Sub", new String[]{"test/Base"}), Map.of());
+    }
+
+    private static MappingSet mappings(String runName, String valueName) {
+        return MappingSet.fromMappings(Map.of(), Map.of("test/Other.value", valueName),
+                Map.of("test/Base.run()V", runName), Map.of("test/Other.value", "I"));
+    }
+
+    private static String hash() {
+        return IncrementalCache.hash(subClass());
+    }
+
+    /** class Sub extends Base { void call() { run(); int v = Other.value; } } */
+    private static byte[] subClass() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_SUPER, "test/Sub", null, "test/Base", null);
+        MethodVisitor mv = writer.visitMethod(0, "call", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "test/Sub", "run", "()V", false);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "test/Other", "value", "I");
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,105 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappingSetTest {
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"mapping.txt", "mapping.bin"})
+    void roundTrip(String fileName) throws IOException {
+        MappingSet written = sample();
+        Path file = dir.resolve(fileName);
+        written.write(file);
+        MappingSet read = MappingSet.read(file);
+
+        assertEquals(written.owners(), read.owners());
+        for (String owner : written.owners()) {
+            assertEquals(written.getOwnerName(owner), read.getOwnerName(owner), owner);
+            assertEquals(written.fieldsOf(owner), read.fieldsOf(owner), owner);
+            assertEquals(written.methodsOf(owner), read.methodsOf(owner), owner);
+        }
+        assertEquals("a", read.getClassName("com/acme/Main"));
+        assertEquals("a$b", read.getClassName("com/acme/Main$Inner"));
+        assertNull(read.getClassName("com/acme/Keep"));
+        assertEquals("c", read.getFieldName("com/acme/Main.names"));
+        assertEquals("d", read.getMethodName("com/acme/Main.run(I[Ljava/lang/String;J)V"));
+        assertEquals("e", read.getMethodName("com/acme/Main.run(Ljava/util/List;)Ljava/lang/Object;"));
+        assertEquals("f", read.getMethodName("com/acme/Keep.helper([[DZ)[I"));
+        assertNull(read.getMethodName("com/acme/Main.main([Ljava/lang/String;)V"));
+    }
+
+    @Test
+    void writesTheSameProGuardTextAfterRoundTrip() throws IOException {
+        Path first = dir.resolve("first.txt");
+        Path second = dir.resolve("second.txt");
+        sample().write(first);
+        MappingSet.read(first).write(second);
+
+        assertEquals(Files.readString(first), Files.readString(second));
+    }
+
+    @Test
+    void readsProGuardLineNumbersAndComments() throws IOException {
+        Path file = dir.resolve("proguard.txt");
+        Files.write(file, List.of(
+                "# compiler: R8",
+                "com.acme.Main -> a:",
+                "    java.lang.String name -> a",
+                "    1:5:void run(int,java.lang.String[]):12:16 -> b",
+                "    6:6:void com.acme.Util.inlined():3:3 -> b",
+                "    int keep -> keep",
+                "com.acme.Keep -> com.acme.Keep:",
+                "    long helper(long) -> c"), StandardCharsets.UTF_8);
+        MappingSet read = MappingSet.read(file);
+
+        assertEquals("a", read.getClassName("com/acme/Main"));
+        assertEquals("a", read.getFieldName("com/acme/Main.name"));
+        assertNull(read.getFieldName("com/acme/Main.keep"));
+        assertEquals("b", read.getMethodName("com/acme/Main.run(I[Ljava/lang/String;)V"));
+        assertEquals(Map.of("run(I[Ljava/lang/String;)V", "b"), read.methodsOf("com/acme/Main"));
+        assertNull(read.getClassName("com/acme/Keep"));
+        assertEquals("c", read.getMethodName("com/acme/Keep.helper(J)J"));
+    }
+
+    @Test
+    void rejectsLineWithoutArrow() throws IOException {
+        Path file = dir.resolve("broken.txt");
+        Files.writeString(file, "com.acme.Main a\n");
+
+        assertThrows(IOException.class, () -> MappingSet.read(file));
+    }
+
+    private static MappingSet sample() {
+        Map<String, String> classes = new HashMap<>();
+        classes.put("com/acme/Main", "a");
+        classes.put("com/acme/Main$Inner", "a$b");
+        classes.put("com/acme/Keep", "com/acme/Keep");
+        Map<String, String> fields = new HashMap<>();
+        fields.put("com/acme/Main.count", "b");
+        fields.put("com/acme/Main.names", "c");
+        fields.put("com/acme/Main.same", "same");
+        Map<String, String> descriptors = new HashMap<>();
+        descriptors.put("com/acme/Main.count", "I");
+        descriptors.put("com/acme/Main.names", "[Ljava/lang/String;");
+        Map<String, String> methods = new HashMap<>();
+        methods.put("com/acme/Main.run(I[Ljava/lang/String;J)V", "d");
+        methods.put("com/acme/Main.run(Ljava/util/List;)Ljava/lang/Object;", "e");
+        methods.put("com/acme/Keep.helper([[DZ)[I", "f");
+        // Не переименованный метод хранится с дескриптором и в маппинги не попадает
+        methods.put("com/acme/Main.main([Ljava/lang/String;)V", "main([Ljava/lang/String;)V");
+        return MappingSet.fromMappings(classes, fields, methods, descriptors);
+    }
+}
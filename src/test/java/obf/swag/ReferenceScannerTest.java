@@ -0,0 +1,129 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.*;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceScannerTest {
+    private final ReferenceScanner scanner = scanner(true);
+
+    @Test
+    void copiesClassWithoutRenamedSymbols() {
+        assertFalse(scanner.references(plainClass()));
+        assertFalse(scanner.references(userClass(cv -> {
+            cv.visitField(Opcodes.ACC_PRIVATE, "keep", "Lcom/acme/ImplFactory;", null, null);
+            cv.visitField(Opcodes.ACC_PRIVATE, "other", "Lcom/acme/Keep;", null, null);
+        })));
+    }
+
+    @Test
+    void findsRenamedClassInDescriptor() {
+        assertTrue(scanner.references(userClass(cv ->
+                cv.visitField(Opcodes.ACC_PRIVATE, "impl", "[Lcom/acme/Impl;", null, null))));
+        assertTrue(scanner.references(userClass(cv ->
+                emptyMethod(cv, "take", "(ILcom/acme/Impl;J)V", null))));
+    }
+
+    @Test
+    void findsRenamedClassInGenericSignature() {
+        assertTrue(scanner.references(userClass(cv -> cv.visitField(Opcodes.ACC_PRIVATE, "items",
+                "Ljava/util/List;", "Ljava/util/List<Lcom/acme/Impl;>;", null))));
+        assertTrue(scanner.references(userClass(cv -> emptyMethod(cv, "all", "()Ljava/util/Map;",
+                "()Ljava/util/Map<Ljava/lang/String;+Lcom/acme/Impl;>;"))));
+    }
+
+    @Test
+    void findsInnerClassOfParameterizedOuter() {
+        // Outer<T>.Inner: в сигнатуре нет строки com/acme/Outer$Inner целиком
+        assertTrue(scanner.references(userClass(cv -> cv.visitField(Opcodes.ACC_PRIVATE, "inner",
+                "Ljava/lang/Object;", "Lcom/acme/Outer<Ljava/lang/String;>.Inner;", null))));
+    }
+
+    @Test
+    void findsRenamedMemberName() {
+        assertTrue(scanner.references(userClass(cv -> {
+            MethodVisitor mv = cv.visitMethod(Opcodes.ACC_STATIC, "call", "()I", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.ICONST_1);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, "com/acme/Keep", "compute", "(I)I", false);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(1, 0);
+            mv.visitEnd();
+        })));
+        assertTrue(scanner.references(userClass(cv ->
+                cv.visitField(Opcodes.ACC_PRIVATE, "count", "I", null, null))));
+        // Не переименованные члены (значение с дескриптором или то же имя) не в счет
+        assertFalse(scanner.references(userClass(cv -> {
+            emptyMethod(cv, "main", "([Ljava/lang/String;)V", null);
+            cv.visitField(Opcodes.ACC_PRIVATE, "same", "I", null, null);
+        })));
+    }
+
+    @Test
+    void findsDottedClassNameString() {
+        byte[] classData = userClass(cv -> {
+            MethodVisitor mv = cv.visitMethod(Opcodes.ACC_STATIC, "name", "()Ljava/lang/String;", null, null);
+            mv.visitCode();
+            mv.visitLdcInsn("com.acme.Impl");
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(1, 0);
+            mv.visitEnd();
+        });
+
+        assertTrue(scanner.references(classData));
+        // Без замены имен в строках (--no-resource-rewrite) строка класс не меняет
+        assertFalse(scanner(false).references(classData));
+    }
+
+    @Test
+    void rewritesClassWithUnreadableConstantPool() {
+        byte[] classData = plainClass();
+
+        assertTrue(scanner.references(Arrays.copyOf(classData, 9)));
+        assertTrue(scanner.references(Arrays.copyOf(classData, 20)));
+        assertTrue(scanner.references(Arrays.copyOf(classData, classData.length / 2)));
+        // Неизвестный тег первой константы
+        byte[] unknownTag = classData.clone();
+        unknownTag[10] = 99;
+        assertTrue(scanner.references(unknownTag));
+    }
+
+    private static ReferenceScanner scanner(boolean classStrings) {
+        Map<String, String> classes = new HashMap<>();
+        classes.put("com/acme/Impl", "a");
+        classes.put("com/acme/Outer$Inner", "b");
+        classes.put("com/acme/Keep", "com/acme/Keep");
+        Map<String, String> fields = new HashMap<>();
+        fields.put("com/acme/Impl.count", "c");
+        fields.put("com/acme/Impl.same", "same");
+        Map<String, String> methods = new HashMap<>();
+        methods.put("com/acme/Keep.compute(I)I", "d");
+        methods.put("com/acme/Keep.main([Ljava/lang/String;)V", "main([Ljava/lang/String;)V");
+        return ReferenceScanner.fromMappings(classes, fields, methods, classStrings);
+    }
+
+    private static byte[] plainClass() {
+        return userClass(cv -> emptyMethod(cv, "run", "(Ljava/lang/String;)V", null));
+    }
+
+    /** class test/User со всеми членами от content. */
+    private static byte[] userClass(Consumer<ClassVisitor> content) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_SUPER, "test/User", null, "java/lang/Object", null);
+        content.accept(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void emptyMethod(ClassVisitor cv, String name, String descriptor, String signature) {
+        MethodVisitor mv = cv.visitMethod(Opcodes.ACC_STATIC, name, descriptor, signature, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, Type.getArgumentsAndReturnSizes(descriptor) >> 2);
+        mv.visitEnd();
+    }
+}
@@ -0,0 +1,90 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceRewriterTest {
+    private final ResourceRewriter rewriter = ResourceRewriter.build(Map.of(
+            "com/acme/Impl", "a/b",
+            "com/acme/Impl$Inner", "a/c",
+            "com/acme/Service", "a/d",
+            "Plain", "e"));
+
+    @Test
+    void replacesDottedAndSlashedNames() {
+        assertEquals("a.b\n", rewrite("com.acme.Impl\n"));
+        assertEquals("<bean class=\"a.b\"/>", rewrite("<bean class=\"com.acme.Impl\"/>"));
+        assertEquals("path: a/b.class", rewrite("path: com/acme/Impl.class"));
+        assertEquals("x=a.b,a.d", rewrite("x=com.acme.Impl,com.acme.Service"));
+        assertEquals(5, rewriter.replacedNames());
+    }
+
+    @Test
+    void replacesOnlyWholeTokens() {
+        // Продолжение идентификатора справа и слева
+        assertUnchanged("com.acme.ImplFactory");
+        assertUnchanged("com.acme.Impl_2");
+        assertUnchanged("xcom.acme.Impl");
+        assertUnchanged("$com.acme.Impl");
+        // Продолжение квалифицированного имени
+        assertUnchanged("org.com.acme.Impl");
+        assertUnchanged("com.acme.Impl.Nested");
+        assertUnchanged("org/com/acme/Impl");
+        // Не-ASCII буквы - тоже часть имени
+        assertUnchanged("com.acme.Implé");
+    }
+
+    @Test
+    void separatorAtTokenEdgeIsNotAContinuation() {
+        assertEquals("a.b.", rewrite("com.acme.Impl."));
+        assertEquals("/a/b/", rewrite("/com/acme/Impl/"));
+        assertEquals("a.b#run", rewrite("com.acme.Impl#run"));
+        // Разделитель другого вида не продолжает имя
+        assertEquals("a.b/x", rewrite("com.acme.Impl/x"));
+    }
+
+    @Test
+    void prefersTheLongestName() {
+        assertEquals("a.c", rewrite("com.acme.Impl$Inner"));
+        assertEquals("a.b ", rewrite("com.acme.Impl "));
+    }
+
+    @Test
+    void leavesNamesWithoutPackageAndBinaryData() {
+        assertUnchanged("Plain");
+        byte[] utf16 = "com.acme.Impl".getBytes(StandardCharsets.UTF_16LE);
+        assertSame(utf16, rewriter.rewrite(utf16));
+    }
+
+    @Test
+    void returnsTheSameArrayWhenNothingChanges() {
+        byte[] data = "nothing to do".getBytes(StandardCharsets.UTF_8);
+        assertSame(data, rewriter.rewrite(data));
+    }
+
+    @Test
+    void renamesServiceEntries() {
+        assertEquals("META-INF/services/a.d", rewriter.entryNameOf("META-INF/services/com.acme.Service"));
+        assertEquals("META-INF/services/java.lang.Runnable",
+                rewriter.entryNameOf("META-INF/services/java.lang.Runnable"));
+        assertEquals("config/com.acme.Service", rewriter.entryNameOf("config/com.acme.Service"));
+        assertTrue(ResourceRewriter.isTextResource("META-INF/services/com.acme.Service"));
+        assertTrue(ResourceRewriter.isTextResource("META-INF/spring.factories"));
+        assertTrue(ResourceRewriter.isTextResource("app.YML"));
+        assertFalse(ResourceRewriter.isTextResource("META-INF/services/"));
+        assertFalse(ResourceRewriter.isTextResource("img/logo.png"));
+        assertFalse(ResourceRewriter.isTextResource("dir.xml/file"));
+    }
+
+    private String rewrite(String text) {
+        return new String(rewriter.rewrite(text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    private void assertUnchanged(String text) {
+        assertEquals(text, rewrite(text), "имя внутри другого токена не заменяется");
+    }
+}
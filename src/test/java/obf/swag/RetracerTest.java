@@ -0,0 +1,139 @@
+package obf.swag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetracerTest {
+    @TempDir
+    Path dir;
+
+    private Retracer retracer;
+
+    @BeforeEach
+    void readMappings() throws IOException {
+        Path file = dir.resolve("mapping.txt");
+        Files.write(file, List.of(
+                "com.acme.Main -> a:",
+                "    java.lang.String name -> c",
+                "    void run(int) -> b",
+                "    void run(java.lang.String) -> b",
+                "    void stop() -> d",
+                "com.acme.Main$Inner -> a$b:",
+                "    void call() -> a",
+                "com.acme.Keep -> com.acme.Keep:",
+                "    long helper(long) -> e"), StandardCharsets.UTF_8);
+        retracer = Retracer.build(MappingSet.read(file));
+    }
+
+    @Test
+    void restoresStackFrames() throws IOException {
+        assertEquals(
+                "com.acme.Main: boom\n"
+                        + "\tat com.acme.Main$Inner.call(SourceFile:7)\n"
+                        + "\tat com.acme.Main.run(SourceFile:12)\n"
+                        + "\tat com.acme.Main.stop(SourceFile:3)\n"
+                        + "\tat com.acme.Keep.helper(SourceFile:40)\n"
+                        + "\tat java.lang.Thread.run(Thread.java:833)\n",
+                retrace("a: boom\n"
+                        + "\tat a$b.a(SourceFile:7)\n"
+                        + "\tat a.b(SourceFile:12)\n"
+                        + "\tat a.d(SourceFile:3)\n"
+                        + "\tat com.acme.Keep.e(SourceFile:40)\n"
+                        + "\tat java.lang.Thread.run(Thread.java:833)\n"));
+    }
+
+    @Test
+    void keepsUnrenamedMembersAndUnknownNames() throws IOException {
+        // Член без маппинга остается, класс восстанавливается
+        assertEquals("com.acme.Main.main", retrace("a.main"));
+        assertEquals("com.acme.Main.name", retrace("a.c"));
+        assertEquals("com.acme.Keep.other x.y.Z", retrace("com.acme.Keep.other x.y.Z"));
+    }
+
+    @Test
+    void ignoresNumbersAndTrailingDots() throws IOException {
+        assertEquals("took 12.5 ms, 1.a", retrace("took 12.5 ms, 1.a"));
+        assertEquals("failed: com.acme.Main.stop.", retrace("failed: a.d."));
+        assertEquals("(com.acme.Main$Inner.call...)", retrace("(a$b.a...)"));
+    }
+
+    @Test
+    void keepsShortNamesInProse() throws IOException {
+        assertEquals("not a valid b, wrote a file\n", retrace("not a valid b, wrote a file\n"));
+        assertEquals("java.lang.IllegalStateException: a\n", retrace("java.lang.IllegalStateException: a\n"));
+        assertEquals("see a: b\n", retrace("see a: b\n"));
+    }
+
+    @Test
+    void restoresShortNamesInExceptionHeaders() throws IOException {
+        assertEquals(
+                "Exception in thread \"main\" com.acme.Main: a is not valid\n"
+                        + "Caused by: com.acme.Main$Inner\n"
+                        + "\tSuppressed: com.acme.Main: b\n"
+                        + "com.acme.Main",
+                retrace("Exception in thread \"main\" a: a is not valid\n"
+                        + "Caused by: a$b\n"
+                        + "\tSuppressed: a: b\n"
+                        + "a"));
+    }
+
+    @Test
+    void joinsDifferentNamesOfOneObfuscatedMember() throws IOException {
+        Path file = dir.resolve("clash.txt");
+        Files.write(file, List.of(
+                "com.acme.Main -> a:",
+                "    int count -> b",
+                "    void size() -> b"), StandardCharsets.UTF_8);
+        String restored = retrace(Retracer.build(MappingSet.read(file)), "a.b");
+
+        assertTrue(restored.equals("com.acme.Main.count|size") || restored.equals("com.acme.Main.size|count"),
+                restored);
+    }
+
+    @Test
+    void handlesLinesLongerThanTheBuffer() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (line.length() < 3 << 20) {
+            line.append("at a.b ");
+        }
+        String input = line + "\nat a.d";
+        String expected = input.replace("a.b", "com.acme.Main.run").replace("a.d", "com.acme.Main.stop");
+
+        assertEquals(expected, retrace(input));
+    }
+
+    @Test
+    void fileModeMatchesStreamMode() throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            log.append(i).append(" ERROR at a.b(SourceFile:").append(i % 100).append(") a$b.a\n");
+        }
+        Path input = dir.resolve("app.log");
+        Files.writeString(input, log);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        retracer.retrace(input, out, 4);
+
+        assertEquals(retrace(log.toString()), out.toString(StandardCharsets.UTF_8));
+    }
+
+    private String retrace(String text) throws IOException {
+        return retrace(retracer, text);
+    }
+
+    private static String retrace(Retracer retracer, String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        retracer.retrace(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,242 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.jar.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Классы для всех проверок:
+ * <pre>
+ * class Main { static void main(String[] args) { Shape s = new Circle(); s.area(); } }
+ * abstract class Shape { abstract double area(); void unused() {} }
+ * class Circle extends Shape implements Runnable { double area(); void run(); void helper(); }
+ * class Square extends Shape { double area(); }
+ * class Unused { }
+ * class api.Plugin { int count; void start(); }
+ * </pre>
+ */
+class ShrinkerTest {
+    private static final String MAIN_DESCRIPTOR = "([Ljava/lang/String;)V";
+    // Конструкторы и main ищет JVM - они достижимы вместе с классом
+    private static final Predicate<String> KEEP_METHOD =
+            key -> key.contains(".<") || key.endsWith(".main" + MAIN_DESCRIPTOR);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsWhatMainClassReaches() throws IOException {
+        Shrinker.Result result = shrink(shrinker -> shrinker.keepClass("test/Main"));
+
+        assertEquals(Set.of("test/Square", "test/Unused", "test/api/Plugin"), result.removedClasses);
+        assertFalse(result.isRemoved("test/Main.main" + MAIN_DESCRIPTOR));
+        assertFalse(result.isRemoved("test/Shape.area()D"));
+        assertTrue(result.isRemoved("test/Shape.unused()V"));
+        assertTrue(result.isRemoved("test/Circle.helper()V"));
+    }
+
+    @Test
+    void keepsOverridesInReachableSubtypes() throws IOException {
+        Shrinker.Result result = shrink(shrinker -> shrinker.keepClass("test/Main"));
+
+        // Circle.area() напрямую не вызывается, но переопределяет вызванный Shape.area()
+        assertFalse(result.isRemoved("test/Circle.area()D"));
+        // Circle.run() никто не вызывает, но его вызовет библиотека через Runnable
+        assertFalse(result.isRemoved("test/Circle.run()V"));
+        // Square.area() из той же группы, но сам Square недостижим
+        assertTrue(result.isRemoved("test/Square.area()D"));
+    }
+
+    @Test
+    void keepsClassesMatchingKeepRule() throws IOException {
+        assertTrue(Shrinker.compileKeepRule("test.api.**").matcher("test/api/Plugin").matches());
+        assertTrue(Shrinker.compileKeepRule("test.*").matcher("test/Main").matches());
+        assertFalse(Shrinker.compileKeepRule("test.*").matcher("test/api/Plugin").matches());
+
+        Shrinker.Result result = shrink(shrinker -> shrinker.keepClassWithMembers("test/api/Plugin"));
+
+        assertFalse(result.removedClasses.contains("test/api/Plugin"));
+        assertFalse(result.isRemoved("test/api/Plugin.count"));
+        assertFalse(result.isRemoved("test/api/Plugin.start()V"));
+        assertTrue(result.removedClasses.contains("test/Main"));
+    }
+
+    @Test
+    void keepsOnlyTheKeptMember() throws IOException {
+        Shrinker.Result result = shrink(shrinker -> shrinker.keepMember("test/Circle.helper()V"));
+
+        assertFalse(result.removedClasses.contains("test/Circle"));
+        assertFalse(result.removedClasses.contains("test/Shape"));
+        assertFalse(result.isRemoved("test/Circle.helper()V"));
+        assertTrue(result.isRemoved("test/Circle.area()D"));
+    }
+
+    @Test
+    void shrinksJarFromManifestMainClass() throws Exception {
+        Path jar = dir.resolve("app.jar");
+        writeJar(jar);
+        JarObfuscator obfuscator = new JarObfuscator();
+        obfuscator.setLog(new PrintStream(OutputStream.nullOutputStream()));
+        obfuscator.setQuiet(true);
+        obfuscator.setSeed(1);
+        obfuscator.setShrink(true);
+        obfuscator.addKeepRule("test.api.**");
+        obfuscator.obfuscateJar(jar.toString());
+
+        Path output = dir.resolve("app_obfuscated.jar");
+        String mainClass;
+        int classCount = 0;
+        try (JarFile jarFile = new JarFile(output.toFile())) {
+            mainClass = jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    classCount++;
+                }
+            }
+        }
+        // Main, Shape, Circle и api.Plugin по правилу --keep
+        assertEquals(4, classCount);
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toUri().toURL()}, null)) {
+            Method main = loader.loadClass(mainClass).getMethod("main", String[].class);
+            main.invoke(null, (Object) new String[0]);
+        }
+    }
+
+    private interface Roots {
+        void keep(Shrinker shrinker);
+    }
+
+    private static Shrinker.Result shrink(Roots roots) throws IOException {
+        Map<String, ClassMetadata> classes = new LinkedHashMap<>();
+        for (byte[] classData : classes()) {
+            ClassMetadata metadata = ClassMetadata.read(classData);
+            classes.put(metadata.name, metadata);
+        }
+        try (LibraryClassPath libraries = new LibraryClassPath(List.of())) {
+            ClassHierarchy hierarchy = ClassHierarchy.build(classes, libraries);
+            Shrinker shrinker = new Shrinker(classes, usages(), hierarchy, key -> false, KEEP_METHOD);
+            roots.keep(shrinker);
+            return shrinker.shrink();
+        }
+    }
+
+    /** Ссылки из кода классов - то же, что собирает анализ JarObfuscator. */
+    private static Map<String, Shrinker.ClassUsage> usages() {
+        Map<String, Shrinker.ClassUsage> usages = new HashMap<>();
+        Shrinker.ClassUsage main = new Shrinker.ClassUsage();
+        List<String> mainCode = main.member("main" + MAIN_DESCRIPTOR);
+        Shrinker.ClassUsage.addClass(mainCode, "test/Circle");
+        Shrinker.ClassUsage.addMethod(mainCode, "test/Circle", "<init>", "()V");
+        Shrinker.ClassUsage.addMethod(mainCode, "test/Shape", "area", "()D");
+        usages.put("test/Main", main);
+        for (String[] subclass : new String[][]{{"test/Shape", "java/lang/Object"}, {"test/Circle", "test/Shape"},
+                {"test/Square", "test/Shape"}, {"test/Unused", "java/lang/Object"},
+                {"test/api/Plugin", "java/lang/Object"}}) {
+            Shrinker.ClassUsage usage = new Shrinker.ClassUsage();
+            Shrinker.ClassUsage.addMethod(usage.member("<init>()V"), subclass[1], "<init>", "()V");
+            usages.put(subclass[0], usage);
+        }
+        return usages;
+    }
+
+    private static List<byte[]> classes() {
+        List<byte[]> classes = new ArrayList<>();
+
+        ClassWriter main = newClass(Opcodes.ACC_PUBLIC, "test/Main", "java/lang/Object");
+        MethodVisitor mv = main.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", MAIN_DESCRIPTOR,
+                null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, "test/Circle");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "test/Circle", "<init>", "()V", false);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "test/Shape", "area", "()D", false);
+        mv.visitInsn(Opcodes.POP2);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        classes.add(finish(main));
+
+        ClassWriter shape = newClass(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "test/Shape", "java/lang/Object");
+        shape.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "area", "()D", null, null).visitEnd();
+        method(shape, "unused", "()V");
+        classes.add(finish(shape));
+
+        ClassWriter circle = newClass(Opcodes.ACC_PUBLIC, "test/Circle", "test/Shape", "java/lang/Runnable");
+        method(circle, "area", "()D");
+        method(circle, "run", "()V");
+        method(circle, "helper", "()V");
+        classes.add(finish(circle));
+
+        ClassWriter square = newClass(Opcodes.ACC_PUBLIC, "test/Square", "test/Shape");
+        method(square, "area", "()D");
+        classes.add(finish(square));
+
+        classes.add(finish(newClass(Opcodes.ACC_PUBLIC, "test/Unused", "java/lang/Object")));
+
+        ClassWriter plugin = newClass(Opcodes.ACC_PUBLIC, "test/api/Plugin", "java/lang/Object");
+        plugin.visitField(Opcodes.ACC_PUBLIC, "count", "I", null, null).visitEnd();
+        method(plugin, "start", "()V");
+        classes.add(finish(plugin));
+        return classes;
+    }
+
+    /** Класс с конструктором по умолчанию. */
+    private static ClassWriter newClass(int access, String name, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V11, access | Opcodes.ACC_SUPER, name, null, superName, interfaces);
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        return writer;
+    }
+
+    /** Публичный метод без аргументов, возвращает 0 нужного типа. */
+    private static void method(ClassWriter writer, String name, String descriptor) {
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, name, descriptor, null, null);
+        mv.visitCode();
+        if (descriptor.endsWith("D")) {
+            mv.visitInsn(Opcodes.DCONST_1);
+            mv.visitInsn(Opcodes.DRETURN);
+        } else {
+            mv.visitInsn(Opcodes.RETURN);
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static byte[] finish(ClassWriter writer) {
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void writeJar(Path jar) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "test.Main");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            for (byte[] classData : classes()) {
+                out.putNextEntry(new JarEntry(new ClassReader(classData).getClassName() + ".class"));
+                out.write(classData);
+                out.closeEntry();
+            }
+        }
+    }
+}
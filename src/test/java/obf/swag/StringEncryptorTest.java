@@ -0,0 +1,90 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringEncryptorTest {
+    private static final String OWNER = "test/Owner";
+
+    @Test
+    void encryptsRemappedClassNames() throws Exception {
+        Remapper remapper = new ClassStringRemapper(new SimpleRemapper("com/acme/Impl", "x/Y"));
+        byte[] encrypted = encrypt(ownerClass(), remapper);
+
+        Set<String> strings = stringConstants(encrypted);
+        assertFalse(strings.contains("x.Y"), "новое имя класса осталось открытым: " + strings);
+        assertFalse(strings.contains("com.acme.Impl"), "старое имя класса осталось: " + strings);
+        assertFalse(strings.contains("hello"), "строка осталась открытой: " + strings);
+
+        Class<?> owner = define(encrypted);
+        assertEquals("x.Y", owner.getMethod("name").invoke(null));
+        assertEquals("hello", owner.getMethod("greeting").invoke(null));
+    }
+
+    @Test
+    void keepsStringsWithoutRenamedClass() throws Exception {
+        Remapper remapper = new ClassStringRemapper(new SimpleRemapper(Map.of()));
+        byte[] encrypted = encrypt(ownerClass(), remapper);
+
+        assertTrue(Collections.disjoint(stringConstants(encrypted), Set.of("com.acme.Impl", "hello")));
+        Class<?> owner = define(encrypted);
+        assertEquals("com.acme.Impl", owner.getMethod("name").invoke(null));
+    }
+
+    private static byte[] encrypt(byte[] classData, Remapper remapper) {
+        ClassReader reader = new ClassReader(classData);
+        ClassWriter writer = new ClassWriter(0);
+        StringEncryptor encryptor = new StringEncryptor(writer, reader, remapper, 42);
+        reader.accept(new ClassRemapper(encryptor, remapper), 0);
+        assertEquals(2, encryptor.encryptedCount());
+        return writer.toByteArray();
+    }
+
+    /** public class Owner { name() = "com.acme.Impl"; greeting() = "hello" } */
+    private static byte[] ownerClass() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, OWNER, null, "java/lang/Object", null);
+        constant(writer, "name", "com.acme.Impl");
+        constant(writer, "greeting", "hello");
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void constant(ClassWriter writer, String name, String value) {
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name,
+                "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(value);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(1, 0);
+        mv.visitEnd();
+    }
+
+    private static Set<String> stringConstants(byte[] classData) {
+        ClassReader reader = new ClassReader(classData);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        Set<String> strings = new HashSet<>();
+        for (int item = 1; item < reader.getItemCount(); item++) {
+            int offset = reader.getItem(item);
+            if (offset > 0 && reader.readByte(offset - 1) == 8) {
+                strings.add((String) reader.readConst(item, buffer));
+            }
+        }
+        return strings;
+    }
+
+    private static Class<?> define(byte[] classData) {
+        return new ClassLoader(StringEncryptorTest.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(null, classData, 0, classData.length);
+            }
+        }.define();
+    }
+}
@@ -0,0 +1,81 @@
+package obf.swag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+
+    @Test
+    void internsEachStringOnce() {
+        SymbolTable table = new SymbolTable();
+        int impl = table.intern("com/acme/Impl");
+        int run = table.intern("run");
+        assertNotEquals(impl, run);
+        assertEquals(impl, table.intern(new String("com/acme/Impl")));
+        assertEquals(2, table.size());
+        assertEquals(run, table.find("run"));
+        assertEquals(SymbolTable.NONE, table.find("ru"));
+        assertEquals(SymbolTable.NONE, table.find("runs"));
+        assertEquals("run".hashCode(), table.hash(run));
+    }
+
+    @Test
+    void keepsAnyCharsWithoutLoss() {
+        // Нулевой символ, кириллица, символ вне BMP и одиночный суррогат
+        String[] values = {"", "a\0b", "Класс", "😀", "x\uD800y", "߿ࠀ￿"};
+        SymbolTable table = new SymbolTable();
+        int[] ids = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ids[i] = table.intern(values[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], table.get(ids[i]));
+            assertEquals(ids[i], table.find(values[i]));
+        }
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        SymbolTable table = new SymbolTable();
+        long initialBytes = table.memoryBytes();
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, table.intern("com/acme/generated/Class" + i));
+        }
+        assertEquals(10_000, table.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, table.find("com/acme/generated/Class" + i));
+            assertEquals("com/acme/generated/Class" + i, table.get(i));
+        }
+        assertTrue(table.memoryBytes() > initialBytes);
+    }
+
+    @Test
+    void findsStringsWithEqualHashes() {
+        // "Aa" и "BB" имеют одинаковый hashCode
+        SymbolTable table = new SymbolTable();
+        int aa = table.intern("AaAa");
+        int bb = table.intern("BBBB");
+        int mixed = table.intern("AaBB");
+        assertEquals(3, new HashSet<>(List.of(aa, bb, mixed)).size());
+        assertEquals(bb, table.find("BBBB"));
+        assertEquals(SymbolTable.NONE, table.find("BBAa"));
+    }
+
+    @Test
+    void comparesLikeString() {
+        String[] values = {"", "a", "ab", "b", "B", "Яблоко", "ябл", "😀", "￿", "a\0", "é"};
+        SymbolTable table = new SymbolTable();
+        for (String value : values) {
+            table.intern(value);
+        }
+        for (int a = 0; a < values.length; a++) {
+            for (int b = 0; b < values.length; b++) {
+                assertEquals(Integer.signum(values[a].compareTo(values[b])), Integer.signum(table.compare(a, b)),
+                        values[a] + " <> " + values[b]);
+            }
+        }
+    }
+}